@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.benchmarks;
+
+import static io.grpc.benchmarks.Utils.pickUnusedPort;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.internal.AbstractManagedChannelImplBuilder;
+import io.grpc.internal.AbstractServerImplBuilder;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the message throughput of reading a large server stream through a blocking iterator,
+ * with different {@link ClientCalls#BLOCKING_STREAM_PREFETCH} windows, and through the async stub.
+ */
+@State(Scope.Benchmark)
+public class BlockingServerStreamingBenchmark {
+  private static final int MESSAGES_PER_CALL = 10000;
+
+  public enum Transport {
+    INPROCESS, NETTY
+  }
+
+  @Param({"INPROCESS", "NETTY"})
+  public Transport transport;
+
+  @Param({"1", "16", "128"})
+  public int prefetch;
+
+  @Param({"16", "1024"})
+  public int messageSize;
+
+  private final MethodDescriptor<byte[], byte[]> method =
+      MethodDescriptor.<byte[], byte[]>newBuilder()
+          .setType(MethodType.SERVER_STREAMING)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName("bench", "stream"))
+          .setRequestMarshaller(new ByteArrayMarshaller())
+          .setResponseMarshaller(new ByteArrayMarshaller())
+          .build();
+  private ManagedChannel channel;
+  private Server server;
+  private CallOptions callOptions;
+
+  @Setup
+  public void setUp() throws Exception {
+    AbstractServerImplBuilder<?> serverBuilder;
+    AbstractManagedChannelImplBuilder<?> channelBuilder;
+    switch (transport) {
+      case INPROCESS:
+      {
+        String name = "bench" + Math.random();
+        serverBuilder = InProcessServerBuilder.forName(name);
+        channelBuilder = InProcessChannelBuilder.forName(name);
+        break;
+      }
+      case NETTY:
+      {
+        InetSocketAddress address = new InetSocketAddress("localhost", pickUnusedPort());
+        serverBuilder = NettyServerBuilder.forAddress(address);
+        channelBuilder = NettyChannelBuilder.forAddress(address)
+            .negotiationType(NegotiationType.PLAINTEXT);
+        break;
+      }
+      default:
+        throw new Exception("Unknown transport: " + transport);
+    }
+
+    final byte[] response = new byte[messageSize];
+    server = serverBuilder
+        .addService(ServerServiceDefinition.builder(new ServiceDescriptor("bench", method))
+            .addMethod(method, ServerCalls.asyncServerStreamingCall(
+                new ServerCalls.ServerStreamingMethod<byte[], byte[]>() {
+                  @Override
+                  public void invoke(byte[] request, StreamObserver<byte[]> responseObserver) {
+                    final ServerCallStreamObserver<byte[]> observer =
+                        (ServerCallStreamObserver<byte[]>) responseObserver;
+                    observer.setOnReadyHandler(new Runnable() {
+                      int sent;
+
+                      @Override
+                      public void run() {
+                        while (observer.isReady() && sent < MESSAGES_PER_CALL) {
+                          observer.onNext(response);
+                          sent++;
+                        }
+                        if (sent == MESSAGES_PER_CALL) {
+                          sent++;
+                          observer.onCompleted();
+                        }
+                      }
+                    });
+                  }
+                }))
+            .build())
+        .build()
+        .start();
+    channel = channelBuilder.build();
+    callOptions = CallOptions.DEFAULT.withOption(ClientCalls.BLOCKING_STREAM_PREFETCH, prefetch);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    channel.shutdownNow();
+    server.shutdownNow();
+    channel.awaitTermination(1, TimeUnit.SECONDS);
+    server.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Reads the whole stream through the blocking iterator.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(MESSAGES_PER_CALL)
+  public void blockingIterator(Blackhole bh) {
+    Iterator<byte[]> responses =
+        ClientCalls.blockingServerStreamingCall(channel, method, callOptions, new byte[0]);
+    while (responses.hasNext()) {
+      bh.consume(responses.next());
+    }
+  }
+
+  /**
+   * Reads the whole stream through the async stub, as a baseline. The prefetch window doesn't
+   * apply.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(MESSAGES_PER_CALL)
+  public void asyncObserver(final Blackhole bh) throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    ClientCalls.asyncServerStreamingCall(channel.newCall(method, callOptions), new byte[0],
+        new StreamObserver<byte[]>() {
+          @Override
+          public void onNext(byte[] value) {
+            bh.consume(value);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            latch.countDown();
+          }
+
+          @Override
+          public void onCompleted() {
+            latch.countDown();
+          }
+        });
+    latch.await();
+  }
+
+  private static final class ByteArrayMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+    @Override
+    public InputStream stream(byte[] value) {
+      return new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public byte[] parse(InputStream stream) {
+      try {
+        return ByteStreams.toByteArray(stream);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+}
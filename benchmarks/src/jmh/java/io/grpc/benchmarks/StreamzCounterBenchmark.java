@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.benchmarks;
+
+import io.grpc.monitoring.streamz.Counter1;
+import io.grpc.monitoring.streamz.Counter2;
+import io.grpc.monitoring.streamz.CounterCell;
+import io.grpc.monitoring.streamz.Field;
+import io.grpc.monitoring.streamz.Metadata;
+import io.grpc.monitoring.streamz.Metric1;
+import io.grpc.monitoring.streamz.Metric2;
+import io.grpc.monitoring.streamz.MetricFactory;
+import io.grpc.monitoring.streamz.TestMetricFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmark for incrementing one streamz cell from many threads, as for a per-method request
+ * counter. Counters use striped cells, compared with a {@code Long} metric's single-atomic cell.
+ * Also compares the ways of finding the cell of a counter with several fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamzCounterBenchmark {
+
+  private final MetricFactory factory = new TestMetricFactory();
+  private final Counter1<String> counter = factory.newCounter(
+      "grpc.io/benchmarks/streamz/counter", new Metadata("Striped counter"),
+      Field.ofString("/method"));
+  private final Metric1<String, Long> metric = factory.newMetric(
+      "grpc.io/benchmarks/streamz/metric", Long.class, new Metadata("Atomic long metric"),
+      Field.ofString("/method"));
+  private final Metric1.CellKey<String> key = Metric1.createCellKey("hot");
+  private final Counter2<String, Integer> counter2 = factory.newCounter(
+      "grpc.io/benchmarks/streamz/counter2", new Metadata("Counter with two fields"),
+      Field.ofString("/method"), Field.ofInteger("/code"));
+  private final String method = "/grpc.testing.TestService/UnaryCall";
+  private final Integer code = 0;
+  private final CounterCell handle = counter2.cell(method, code);
+
+  @Benchmark
+  @Threads(1)
+  public void counter1Thread() {
+    counter.increment(key);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void counter8Threads() {
+    counter.increment(key);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void counter64Threads() {
+    counter.increment(key);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void atomicMetric1Thread() {
+    metric.increment(key);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void atomicMetric8Threads() {
+    metric.increment(key);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void atomicMetric64Threads() {
+    metric.increment(key);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void counter2CellKey() {
+    counter2.increment(Metric2.createCellKey(method, code));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void counter2Fields() {
+    counter2.increment(method, code);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void counter2Handle() {
+    handle.increment();
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.benchmarks;
+
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.internal.IoUtils;
+import io.grpc.thrift.Message;
+import io.grpc.thrift.MessageFactory;
+import io.grpc.thrift.ThriftUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for the Thrift marshaller, compared with serializing and parsing a message with a new
+ * {@link TSerializer} or {@link TDeserializer} as it used to.
+ */
+@State(Scope.Benchmark)
+public class ThriftMarshallerBenchmark {
+
+  @Param({"small", "large"})
+  public String messageSize;
+
+  private final MessageFactory<Message> factory = new MessageFactory<Message>() {
+    @Override
+    public Message newInstance() {
+      return new Message();
+    }
+  };
+  private final Marshaller<Message> binaryMarshaller = ThriftUtils.marshaller(factory);
+  private final Marshaller<Message> compactMarshaller =
+      ThriftUtils.marshaller(factory, new TCompactProtocol.Factory());
+  private final ByteArrayOutputStream target = new ByteArrayOutputStream();
+  private Message message;
+  private byte[] binaryBytes;
+  private byte[] compactBytes;
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    message = new Message();
+    message.setI(42);
+    message.setB(true);
+    if ("small".equals(messageSize)) {
+      message.setS("hello");
+    } else {
+      message.setS(new String(new char[1024]).replace('\0', 'x'));
+      message.setL(new ArrayList<Integer>(Collections.nCopies(256, 1000000007)));
+    }
+    binaryBytes = new TSerializer().serialize(message);
+    compactBytes = new TSerializer(new TCompactProtocol.Factory()).serialize(message);
+  }
+
+  /**
+   * Serializes the message the way the framer does, with a new {@link TSerializer}.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int serializeWithNewSerializer() throws Exception {
+    target.reset();
+    byte[] bytes = new TSerializer().serialize(message);
+    target.write(bytes, 0, bytes.length);
+    return bytes.length;
+  }
+
+  /**
+   * Serializes the message the way the framer does, with the binary protocol.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int serializeBinary() throws Exception {
+    return drain(binaryMarshaller.stream(message));
+  }
+
+  /**
+   * Serializes the message the way the framer does, with the compact protocol.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int serializeCompact() throws Exception {
+    return drain(compactMarshaller.stream(message));
+  }
+
+  /**
+   * Parses the message with a new {@link TDeserializer}, after reading the stream into an array.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Message parseWithNewDeserializer() throws Exception {
+    byte[] bytes = IoUtils.toByteArray(new ByteArrayInputStream(binaryBytes));
+    Message parsed = new Message();
+    new TDeserializer().deserialize(parsed, bytes);
+    return parsed;
+  }
+
+  /**
+   * Parses the message with the binary protocol.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Message parseBinary() {
+    return binaryMarshaller.parse(new ByteArrayInputStream(binaryBytes));
+  }
+
+  /**
+   * Parses the message with the compact protocol.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Message parseCompact() {
+    return compactMarshaller.parse(new ByteArrayInputStream(compactBytes));
+  }
+
+  private int drain(InputStream stream) throws Exception {
+    target.reset();
+    // The framer asks for the length of the message before draining it.
+    stream.available();
+    return ((Drainable) stream).drainTo(target);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.benchmarks;
+
+import com.google.common.util.concurrent.Futures;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Unary calls over the in-process transport with {@code directExecutor()} on both sides, so that
+ * the whole call runs on the benchmark thread. Meant to be run with {@code -prof gc} to track the
+ * per-call allocation of the call path, e.g.
+ * {@code ./gradlew :grpc-benchmarks:jmh -PjmhIncludeSingleClass=UnaryCallAllocationBenchmark}
+ * with {@code profilers = ['gc']} in the jmh block.
+ */
+@State(Scope.Benchmark)
+public class UnaryCallAllocationBenchmark {
+  private static final byte[] EMPTY = new byte[0];
+
+  private final MethodDescriptor<byte[], byte[]> method =
+      MethodDescriptor.<byte[], byte[]>newBuilder()
+          .setType(MethodType.UNARY)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName("bench", "unary"))
+          .setRequestMarshaller(new EmptyMarshaller())
+          .setResponseMarshaller(new EmptyMarshaller())
+          .build();
+  private Server server;
+  private ManagedChannel channel;
+
+  @Setup
+  public void setUp() throws Exception {
+    String name = "bench" + Math.random();
+    server = InProcessServerBuilder.forName(name)
+        .directExecutor()
+        .addService(ServerServiceDefinition.builder(new ServiceDescriptor("bench", method))
+            .addMethod(method, ServerCalls.asyncUnaryCall(
+                new ServerCalls.UnaryMethod<byte[], byte[]>() {
+                  @Override
+                  public void invoke(byte[] request, StreamObserver<byte[]> responseObserver) {
+                    responseObserver.onNext(EMPTY);
+                    responseObserver.onCompleted();
+                  }
+                }))
+            .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    channel.shutdownNow();
+    server.shutdownNow();
+    channel.awaitTermination(1, TimeUnit.SECONDS);
+    server.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Makes one unary call, which completes before the method returns.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public byte[] unaryCall() throws Exception {
+    return Futures.getDone(
+        ClientCalls.futureUnaryCall(channel.newCall(method, CallOptions.DEFAULT), EMPTY));
+  }
+
+  /**
+   * Marshals empty messages without allocating.
+   */
+  private static final class EmptyMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+    @Override
+    public InputStream stream(byte[] value) {
+      return new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public byte[] parse(InputStream stream) {
+      return EMPTY;
+    }
+  }
+}
@@ -190,7 +190,8 @@ public class Context {
   private final Object[][] keyValueEntries;
   private final boolean cascadesCancellation;
   private ArrayList<ExecutableListener> listeners;
-  private CancellationListener parentListener = new ParentListener();
+  // Created along with listeners, as most contexts never have any. Guarded by this.
+  private CancellationListener parentListener;
   private final boolean canBeCancelled;
 
   /**
@@ -456,6 +457,9 @@ public class Context {
             // we can cascade listener notification.
             listeners = new ArrayList<ExecutableListener>();
             listeners.add(executableListener);
+            if (parentListener == null) {
+              parentListener = new ParentListener();
+            }
             parent.addListener(parentListener, DirectExecutor.INSTANCE);
           } else {
             listeners.add(executableListener);
@@ -500,11 +504,13 @@ public class Context {
       return;
     }
     ArrayList<ExecutableListener> tmpListeners;
+    CancellationListener tmpParentListener;
     synchronized (this) {
       if (listeners == null) {
         return;
       }
       tmpListeners = listeners;
+      tmpParentListener = parentListener;
       listeners = null;
     }
     // Deliver events to non-child context listeners before we notify child contexts. We do this
@@ -521,7 +527,7 @@ public class Context {
         tmpListeners.get(i).deliver();
       }
     }
-    parent.removeListener(parentListener);
+    parent.removeListener(tmpParentListener);
   }
 
   // Used in tests to ensure that listeners are defined and released when cancellation cascades.
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link java.io.OutputStream} that can lend its destination as a {@link ByteBuffer}, for
+ * marshallers that can serialize into one directly rather than through {@code write()} calls.
+ *
+ * <p>Bytes put in a lent buffer only become part of the stream once they are
+ * {@link #commitWritableByteBuffer committed}.
+ */
+@ExperimentalApi
+public interface HasWritableByteBuffer {
+  /**
+   * Gets a {@link ByteBuffer} that at least {@code length} bytes can be written to, starting at its
+   * position. Returns {@code null} if the stream cannot take that many bytes in a single buffer,
+   * in which case they should be written to the stream instead. The buffer is only valid until the
+   * stream is written to, committed to or closed.
+   */
+  @Nullable
+  ByteBuffer getWritableByteBuffer(int length);
+
+  /**
+   * Appends to the stream the {@code length} bytes put in the buffer last returned by
+   * {@link #getWritableByteBuffer}, starting at the position it had when it was returned.
+   */
+  void commitWritableByteBuffer(int length);
+}
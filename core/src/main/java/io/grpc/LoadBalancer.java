@@ -229,16 +229,19 @@ public abstract class LoadBalancer {
    */
   @Immutable
   public static final class PickResult {
-    private static final PickResult NO_RESULT = new PickResult(null, Status.OK);
+    private static final PickResult NO_RESULT = new PickResult(null, null, Status.OK);
 
     @Nullable private final Subchannel subchannel;
+    @Nullable private final StreamTracker streamTracker;
     // An error to be propagated to the application if subchannel == null
     // Or OK if there is no error.
     // subchannel being null and error being OK means RPC needs to wait
     private final Status status;
 
-    private PickResult(@Nullable Subchannel subchannel, Status status) {
+    private PickResult(
+        @Nullable Subchannel subchannel, @Nullable StreamTracker streamTracker, Status status) {
       this.subchannel = subchannel;
+      this.streamTracker = streamTracker;
       this.status = Preconditions.checkNotNull(status, "status");
     }
 
@@ -303,7 +306,21 @@ public abstract class LoadBalancer {
      * </ol>
      */
     public static PickResult withSubchannel(Subchannel subchannel) {
-      return new PickResult(Preconditions.checkNotNull(subchannel, "subchannel"), Status.OK);
+      return withSubchannel(subchannel, null);
+    }
+
+    /**
+     * A decision to proceed the RPC on a Subchannel, and to notify {@code streamTracker} of the
+     * stream that is started for it.  See {@link #withSubchannel(Subchannel)} for how the decision
+     * is carried out.
+     *
+     * @param streamTracker notified of the stream started on the Subchannel, or {@code null}
+     */
+    @ExperimentalApi
+    public static PickResult withSubchannel(
+        Subchannel subchannel, @Nullable StreamTracker streamTracker) {
+      return new PickResult(
+          Preconditions.checkNotNull(subchannel, "subchannel"), streamTracker, Status.OK);
     }
 
     /**
@@ -315,7 +332,7 @@ public abstract class LoadBalancer {
      */
     public static PickResult withError(Status error) {
       Preconditions.checkArgument(!error.isOk(), "error status shouldn't be OK");
-      return new PickResult(null, error);
+      return new PickResult(null, null, error);
     }
 
     /**
@@ -342,12 +359,47 @@ public abstract class LoadBalancer {
       return status;
     }
 
+    /**
+     * The stream tracker if this result was created by {@link #withSubchannel(Subchannel,
+     * StreamTracker)} with a non-null tracker, or null otherwise.
+     */
+    @ExperimentalApi
+    @Nullable
+    public StreamTracker getStreamTracker() {
+      return streamTracker;
+    }
+
     @Override
     public String toString() {
-      return "[subchannel=" + subchannel + " status=" + status + "]";
+      return "[subchannel=" + subchannel + " streamTracker=" + streamTracker
+          + " status=" + status + "]";
     }
   }
 
+  /**
+   * Learns about the streams started on a Subchannel picked with {@link
+   * PickResult#withSubchannel(Subchannel, StreamTracker)}, e.g., to report client-side load to a
+   * load-balancer service.
+   *
+   * <p>The methods are called from the transport and application threads, and must be thread-safe
+   * and cheap.
+   */
+  @ExperimentalApi
+  @ThreadSafe
+  public abstract static class StreamTracker {
+    /**
+     * Called when a stream has been started on the picked Subchannel.
+     */
+    public void streamStarted() {}
+
+    /**
+     * Called when a stream that {@link #streamStarted} was called for has been closed.
+     *
+     * @param status the status the stream was closed with
+     */
+    public void streamClosed(Status status) {}
+  }
+
   /**
    * Provides essentials for LoadBalancer implementations.
    */
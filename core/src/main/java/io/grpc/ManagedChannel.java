@@ -31,6 +31,8 @@
 
 package io.grpc;
 
+import com.google.common.base.Preconditions;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -102,4 +104,63 @@ public abstract class ManagedChannel extends Channel {
   public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
     throw new UnsupportedOperationException("Not implemented");
   }
+
+  /**
+   * Connects the channel, and waits until it is READY or the deadline expires.  Servers can call
+   * this before reporting themselves as ready, so that the first RPCs don't pay for name
+   * resolution and connection establishment.
+   *
+   * @param deadline the time after which to give up waiting
+   * @return {@code true} if the channel is READY, {@code false} if the deadline has expired or the
+   *         channel has been shut down
+   *
+   * @throws UnsupportedOperationException if not supported by implementation
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/28")
+  public boolean warmUp(Deadline deadline) throws InterruptedException {
+    return warmUp(1, deadline);
+  }
+
+  /**
+   * Connects the channel, and waits until at least {@code minReadySubchannels} of its
+   * connections are READY or the deadline expires.  How many connections a channel makes depends
+   * on its load balancer, e.g., "pick_first" only ever makes one.
+   *
+   * <p>The default implementation only supports waiting for a single connection, based on {@link
+   * #getState} and {@link #notifyWhenStateChanged}.
+   *
+   * @param minReadySubchannels the number of READY connections to wait for
+   * @param deadline the time after which to give up waiting
+   * @return {@code true} if enough connections are READY, {@code false} if the deadline has
+   *         expired or the channel has been shut down
+   *
+   * @throws UnsupportedOperationException if not supported by implementation
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/28")
+  public boolean warmUp(int minReadySubchannels, Deadline deadline) throws InterruptedException {
+    Preconditions.checkArgument(minReadySubchannels > 0, "minReadySubchannels must be positive");
+    Preconditions.checkNotNull(deadline, "deadline");
+    if (minReadySubchannels > 1) {
+      throw new UnsupportedOperationException("Not implemented");
+    }
+    while (true) {
+      ConnectivityState state = getState(true);
+      if (state == ConnectivityState.READY) {
+        return true;
+      }
+      if (state == ConnectivityState.SHUTDOWN) {
+        return false;
+      }
+      final CountDownLatch stateChanged = new CountDownLatch(1);
+      notifyWhenStateChanged(state, new Runnable() {
+          @Override
+          public void run() {
+            stateChanged.countDown();
+          }
+        });
+      if (!stateChanged.await(deadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+  }
 }
@@ -157,8 +157,9 @@ public abstract class ManagedChannelBuilder<T extends ManagedChannelBuilder<T>>
   /**
    * Provides a custom {@link LoadBalancer.Factory} for the channel.
    *
-   * <p>If this method is not called, the builder will use {@link PickFirstBalancerFactory}
-   * for the channel.
+   * <p>If this method is not called, the channel will use the {@code "loadBalancingPolicy"} of the
+   * service config from the {@link NameResolver}, or {@link PickFirstBalancerFactory} if the
+   * service config doesn't choose one.
    *
    * <p>Calling this will make the channel to run the LBv2 code path. See <a
    * href="https://github.com/grpc/grpc-java/issues/2656" target="_blank">#2656</a> for more
@@ -201,6 +202,54 @@ public abstract class ManagedChannelBuilder<T extends ManagedChannelBuilder<T>>
   @ExperimentalApi("https://github.com/grpc/grpc-java/issues/2022")
   public abstract T idleTimeout(long value, TimeUnit unit);
 
+  /**
+   * Makes the channel leave the initial idle mode as soon as it is built, and connect every
+   * subchannel as soon as its load balancer creates it, instead of waiting for the first RPC.
+   * This takes name resolution and connection establishment out of the latency of the first RPCs.
+   *
+   * <p>The channel may still go to idle mode afterwards, as set by {@link #idleTimeout}.
+   *
+   * <p>This is an advisory option. Do not rely on any specific behavior related to this option.
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/28")
+  public T connectEagerly() {
+    // intentional nop
+    return thisT();
+  }
+
+  /**
+   * Sets the maximum number of calls that may wait for a transport to become available, e.g.,
+   * while the channel is connecting or has no ready subchannel.  When a new call would exceed the
+   * limit, either the new call or the oldest waiting call fails with {@link
+   * Status.Code#RESOURCE_EXHAUSTED}, depending on {@code policy}.  If not called, the number of
+   * waiting calls is not limited.
+   *
+   * <p>This method is advisory, and implementations may decide to not enforce this.
+   *
+   * @throws IllegalArgumentException if max is not positive.
+   */
+  @ExperimentalApi
+  public T maxPendingCalls(int max, PendingCallOverflowPolicy policy) {
+    // intentional nop
+    return thisT();
+  }
+
+  /**
+   * What to do when a new call would exceed the limit set by {@link #maxPendingCalls}.
+   */
+  @ExperimentalApi
+  public enum PendingCallOverflowPolicy {
+    /**
+     * Fail the new call, leaving the waiting calls alone.
+     */
+    FAIL_NEW_CALLS,
+
+    /**
+     * Fail the call that has been waiting the longest, and let the new call wait.
+     */
+    FAIL_OLDEST_CALLS
+  }
+
   /**
    * Sets the maximum message size allowed to be received on the channel. If not called,
    * defaults to 4 MiB. The default provides protection to clients who haven't considered the
@@ -220,6 +269,53 @@ public abstract class ManagedChannelBuilder<T extends ManagedChannelBuilder<T>>
     return thisT();
   }
 
+  /**
+   * Sets the maximum total size in bytes of the messages buffered by all the calls of the channel
+   * for retries and hedging.  When the limit is reached, calls stop being retried or hedged.  If
+   * not called, defaults to 16 MiB.
+   *
+   * <p>This method is advisory, and implementations may decide to not enforce this.
+   *
+   * @throws IllegalArgumentException if bytes is not positive.
+   */
+  @ExperimentalApi
+  public T retryBufferSize(long bytes) {
+    // intentional nop
+    return thisT();
+  }
+
+  /**
+   * Sets the maximum size in bytes of the messages buffered by a single call for retries and
+   * hedging.  When the limit is reached, the call stops being retried or hedged.  If not called,
+   * defaults to 1 MiB.
+   *
+   * <p>This method is advisory, and implementations may decide to not enforce this.
+   *
+   * @throws IllegalArgumentException if bytes is not positive.
+   */
+  @ExperimentalApi
+  public T perRpcBufferLimit(long bytes) {
+    // intentional nop
+    return thisT();
+  }
+
+  /**
+   * Enables throttling of retries and hedging for the channel.  The channel starts with {@code
+   * maxTokens} tokens.  Every failed attempt costs one token, and every successful call returns
+   * {@code tokenRatio} tokens.  Calls are only retried or hedged while the channel has more than
+   * half of {@code maxTokens}, which keeps retries from overloading servers that are already
+   * failing.  If not called, retries and hedging are not throttled.
+   *
+   * <p>This method is advisory, and implementations may decide to not enforce this.
+   *
+   * @throws IllegalArgumentException if maxTokens or tokenRatio is not positive.
+   */
+  @ExperimentalApi
+  public T retryThrottling(float maxTokens, float tokenRatio) {
+    // intentional nop
+    return thisT();
+  }
+
   /**
    * Builds a channel using the given parameters.
    */
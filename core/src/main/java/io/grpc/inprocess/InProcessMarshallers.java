@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.inprocess;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.Drainable;
+import io.grpc.ExperimentalApi;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Utilities for passing messages between in-process clients and servers without serializing them.
+ *
+ * <p>The in-process transport hands the stream created by the sender's marshaller straight to the
+ * receiver's. Protobuf marshallers already take advantage of this, returning the sent message
+ * itself since protobufs are immutable. {@link #passByReference} extends it to other message
+ * types.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/1783")
+public final class InProcessMarshallers {
+  private InProcessMarshallers() {
+  }
+
+  /**
+   * Makes the copy of a message that the receiver of an in-process call gets, in place of
+   * serializing and parsing it.
+   */
+  public interface MessageCopier<T> {
+    /**
+     * Returns a message equal to {@code message} that may be used independently of it.
+     */
+    T copy(T message);
+  }
+
+  /**
+   * Returns a copier for immutable messages, which returns them as is.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> MessageCopier<T> immutableMessages() {
+    return (MessageCopier<T>) IMMUTABLE_COPIER;
+  }
+
+  /**
+   * Returns a marshaller that, when both ends of an in-process call use {@code marshaller}, gives
+   * the receiver a {@code copier} copy of the sent message instead of parsing it. Messages are
+   * serialized with {@code marshaller} as usual when sent over other transports, or when received
+   * with a different marshaller.
+   */
+  public static <T> Marshaller<T> passByReference(
+      Marshaller<T> marshaller, MessageCopier<T> copier) {
+    return new ReferenceMarshaller<T>(marshaller, copier);
+  }
+
+  private static final MessageCopier<Object> IMMUTABLE_COPIER = new MessageCopier<Object>() {
+    @Override
+    public Object copy(Object message) {
+      return message;
+    }
+  };
+
+  private static final class ReferenceMarshaller<T> implements Marshaller<T> {
+    private final Marshaller<T> delegate;
+    private final MessageCopier<T> copier;
+    // Whether the streams of the delegate know the length of their message. Until one has been
+    // read, streams are handed to the framer as of unknown length, which needs no copy either way.
+    private volatile boolean delegateKnowsLength;
+
+    ReferenceMarshaller(Marshaller<T> delegate, MessageCopier<T> copier) {
+      this.delegate = checkNotNull(delegate, "marshaller");
+      this.copier = checkNotNull(copier, "copier");
+    }
+
+    @Override
+    public InputStream stream(T value) {
+      if (delegateKnowsLength) {
+        return new KnownLengthReferenceInputStream(this, value);
+      }
+      return new ReferenceInputStream(this, value);
+    }
+
+    @Override
+    public T parse(InputStream stream) {
+      if (stream instanceof ReferenceInputStream) {
+        ReferenceInputStream referenceStream = (ReferenceInputStream) stream;
+        // The same delegate marshaller guarantees the message has the expected type.
+        if (referenceStream.owner.delegate == delegate && referenceStream.message != null) {
+          @SuppressWarnings("unchecked")
+          T message = (T) referenceStream.message;
+          return copier.copy(message);
+        }
+      }
+      return delegate.parse(stream);
+    }
+  }
+
+  /**
+   * Holds a message, and only serializes it once it is read from.
+   */
+  private static class ReferenceInputStream extends InputStream implements Drainable {
+    final ReferenceMarshaller<?> owner;
+    // Set to null once serialized.
+    @Nullable Object message;
+    @Nullable private InputStream serialized;
+
+    <T> ReferenceInputStream(ReferenceMarshaller<T> owner, T message) {
+      this.owner = owner;
+      this.message = message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private InputStream serialized() throws IOException {
+      if (serialized == null) {
+        InputStream stream = ((Marshaller<Object>) owner.delegate).stream(message);
+        boolean knowsLength =
+            stream instanceof KnownLength || stream instanceof ByteArrayInputStream;
+        owner.delegateKnowsLength = knowsLength;
+        if (!knowsLength && this instanceof KnownLength) {
+          // available() has to return the length of the whole message
+          stream = new ByteArrayInputStream(ByteStreams.toByteArray(stream));
+        }
+        serialized = stream;
+        message = null;
+      }
+      return serialized;
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      InputStream stream = serialized();
+      if (stream instanceof Drainable) {
+        return ((Drainable) stream).drainTo(target);
+      }
+      return (int) ByteStreams.copy(stream, target);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return serialized().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return serialized().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return serialized().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return serialized().available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (serialized != null) {
+        serialized.close();
+      }
+    }
+  }
+
+  /**
+   * A {@link ReferenceInputStream} for delegates whose streams know their length.
+   */
+  private static final class KnownLengthReferenceInputStream extends ReferenceInputStream
+      implements KnownLength {
+    <T> KnownLengthReferenceInputStream(ReferenceMarshaller<T> owner, T message) {
+      super(owner, message);
+    }
+  }
+}
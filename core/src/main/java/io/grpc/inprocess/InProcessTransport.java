@@ -44,6 +44,7 @@ import io.grpc.Status;
 import io.grpc.internal.ClientStream;
 import io.grpc.internal.ClientStreamListener;
 import io.grpc.internal.ConnectionClientTransport;
+import io.grpc.internal.GrpcUtil;
 import io.grpc.internal.LogId;
 import io.grpc.internal.ManagedClientTransport;
 import io.grpc.internal.NoopClientStream;
@@ -337,6 +338,7 @@ class InProcessTransport implements ServerTransport, ConnectionClientTransport {
       @Override
       public synchronized void writeMessage(InputStream message) {
         if (closed) {
+          GrpcUtil.closeQuietly(message);
           return;
         }
         if (clientRequested > 0) {
@@ -498,6 +500,7 @@ class InProcessTransport implements ServerTransport, ConnectionClientTransport {
       @Override
       public synchronized void writeMessage(InputStream message) {
         if (closed) {
+          GrpcUtil.closeQuietly(message);
           return;
         }
         if (serverRequested > 0) {
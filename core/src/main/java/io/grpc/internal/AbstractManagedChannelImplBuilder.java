@@ -46,9 +46,9 @@ import io.grpc.DecompressorRegistry;
 import io.grpc.LoadBalancer;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.NameResolver;
 import io.grpc.NameResolverProvider;
-import io.grpc.PickFirstBalancerFactory;
 import io.grpc.ResolvedServerInfo;
 import io.grpc.ResolvedServerInfoGroup;
 import java.net.SocketAddress;
@@ -89,6 +89,18 @@ public abstract class AbstractManagedChannelImplBuilder
   @VisibleForTesting
   static final long IDLE_MODE_MIN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(1);
 
+  /**
+   * The default limit of the messages buffered for retries and hedging by all the calls.
+   */
+  @VisibleForTesting
+  static final long DEFAULT_RETRY_BUFFER_SIZE_IN_BYTES = 1L << 24;  // 16M
+
+  /**
+   * The default limit of the messages buffered for retries and hedging by a single call.
+   */
+  @VisibleForTesting
+  static final long DEFAULT_PER_RPC_BUFFER_LIMIT_IN_BYTES = 1L << 20;  // 1M
+
   @Nullable
   private Executor executor;
 
@@ -118,8 +130,29 @@ public abstract class AbstractManagedChannelImplBuilder
 
   private long idleTimeoutMillis = IDLE_MODE_DEFAULT_TIMEOUT_MILLIS;
 
+  private boolean connectEagerly;
+
+  private int maxPendingCalls = Integer.MAX_VALUE;
+
+  private PendingCallOverflowPolicy pendingCallOverflowPolicy =
+      PendingCallOverflowPolicy.FAIL_NEW_CALLS;
+
   private int maxInboundMessageSize = GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE;
 
+  @Override
+  public final T connectEagerly() {
+    connectEagerly = true;
+    return thisT();
+  }
+
+  @Override
+  public final T maxPendingCalls(int max, PendingCallOverflowPolicy policy) {
+    checkArgument(max > 0, "max must be positive");
+    maxPendingCalls = max;
+    pendingCallOverflowPolicy = Preconditions.checkNotNull(policy, "policy");
+    return thisT();
+  }
+
   // Can be overriden by subclasses.
   @Override
   public T maxInboundMessageSize(int max) {
@@ -132,6 +165,33 @@ public abstract class AbstractManagedChannelImplBuilder
     return maxInboundMessageSize;
   }
 
+  private long retryBufferSize = DEFAULT_RETRY_BUFFER_SIZE_IN_BYTES;
+
+  private long perRpcBufferLimit = DEFAULT_PER_RPC_BUFFER_LIMIT_IN_BYTES;
+
+  @Nullable
+  private RetryThrottle retryThrottle;
+
+  @Override
+  public final T retryBufferSize(long bytes) {
+    checkArgument(bytes > 0L, "retry buffer size must be positive");
+    retryBufferSize = bytes;
+    return thisT();
+  }
+
+  @Override
+  public final T perRpcBufferLimit(long bytes) {
+    checkArgument(bytes > 0L, "per RPC buffer limit must be positive");
+    perRpcBufferLimit = bytes;
+    return thisT();
+  }
+
+  @Override
+  public final T retryThrottling(float maxTokens, float tokenRatio) {
+    retryThrottle = new RetryThrottle(maxTokens, tokenRatio);
+    return thisT();
+  }
+
   @Nullable
   private StatsContextFactory statsFactory;
 
@@ -281,7 +341,7 @@ public abstract class AbstractManagedChannelImplBuilder
         new ExponentialBackoffPolicy.Provider(),
         nameResolverFactory,
         getNameResolverParams(),
-        firstNonNull(loadBalancerFactory, PickFirstBalancerFactory.getInstance()),
+        firstNonNull(loadBalancerFactory, AutoConfiguredLoadBalancerFactory.getInstance()),
         transportFactory,
         firstNonNull(decompressorRegistry, DecompressorRegistry.getDefaultInstance()),
         firstNonNull(compressorRegistry, CompressorRegistry.getDefaultInstance()),
@@ -290,6 +350,12 @@ public abstract class AbstractManagedChannelImplBuilder
         SharedResourcePool.forResource(GrpcUtil.SHARED_CHANNEL_EXECUTOR),
         GrpcUtil.STOPWATCH_SUPPLIER,
         idleTimeoutMillis,
+        connectEagerly,
+        maxPendingCalls,
+        pendingCallOverflowPolicy,
+        retryBufferSize,
+        perRpcBufferLimit,
+        retryThrottle,
         userAgent,
         interceptors,
         firstNonNull(
@@ -172,9 +172,13 @@ public abstract class AbstractStream implements Stream {
   @Override
   public void writeMessage(InputStream message) {
     checkNotNull(message, "message");
-    outboundPhase(Phase.MESSAGE);
-    if (!framer.isClosed()) {
-      framer.writePayload(message);
+    try {
+      outboundPhase(Phase.MESSAGE);
+      if (!framer.isClosed()) {
+        framer.writePayload(message);
+      }
+    } finally {
+      GrpcUtil.closeQuietly(message);
     }
   }
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Attributes;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.LoadBalancer;
+import io.grpc.PickFirstBalancerFactory;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.Status;
+import io.grpc.util.RoundRobinLoadBalancerFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer.Factory} whose balancers follow the {@code "loadBalancingPolicy"} of the
+ * service config from the {@link io.grpc.NameResolver}, switching policy whenever it changes.  The
+ * policy is pick-first if the service config doesn't choose one.
+ */
+final class AutoConfiguredLoadBalancerFactory extends LoadBalancer.Factory {
+  private static final Logger logger =
+      Logger.getLogger(AutoConfiguredLoadBalancerFactory.class.getName());
+
+  private static final AutoConfiguredLoadBalancerFactory INSTANCE =
+      new AutoConfiguredLoadBalancerFactory();
+
+  private AutoConfiguredLoadBalancerFactory() {
+  }
+
+  static AutoConfiguredLoadBalancerFactory getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+    return new AutoConfiguredLoadBalancer(helper);
+  }
+
+  /**
+   * Returns the factory for the given policy name, or {@code null} if the policy is unknown.
+   */
+  @VisibleForTesting
+  @Nullable
+  static LoadBalancer.Factory getFactory(String policy) {
+    String normalized = policy.toLowerCase(Locale.ROOT);
+    if ("pick_first".equals(normalized)) {
+      return PickFirstBalancerFactory.getInstance();
+    }
+    if ("round_robin".equals(normalized)) {
+      return RoundRobinLoadBalancerFactory.getInstance();
+    }
+    return null;
+  }
+
+  @VisibleForTesting
+  static final class AutoConfiguredLoadBalancer extends LoadBalancer {
+    private final Helper helper;
+    private LoadBalancer.Factory delegateFactory = PickFirstBalancerFactory.getInstance();
+    private LoadBalancer delegate;
+
+    AutoConfiguredLoadBalancer(Helper helper) {
+      this.helper = helper;
+      this.delegate = delegateFactory.newLoadBalancer(helper);
+    }
+
+    @Override
+    public void handleResolvedAddresses(
+        List<ResolvedServerInfoGroup> servers, Attributes attributes) {
+      LoadBalancer.Factory newFactory = PickFirstBalancerFactory.getInstance();
+      Map<String, Object> serviceConfig =
+          attributes.get(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG);
+      if (serviceConfig != null) {
+        Object policy = serviceConfig.get("loadBalancingPolicy");
+        if (policy instanceof String) {
+          LoadBalancer.Factory factory = getFactory((String) policy);
+          if (factory != null) {
+            newFactory = factory;
+          } else {
+            logger.log(Level.WARNING, "Unknown loadBalancingPolicy {0}, using pick_first", policy);
+          }
+        }
+      }
+      if (newFactory != delegateFactory) {
+        delegate.shutdown();
+        delegateFactory = newFactory;
+        delegate = newFactory.newLoadBalancer(helper);
+      }
+      delegate.handleResolvedAddresses(servers, attributes);
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+      delegate.handleNameResolutionError(error);
+    }
+
+    @Override
+    public void handleSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+      delegate.handleSubchannelState(subchannel, stateInfo);
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @VisibleForTesting
+    LoadBalancer getDelegate() {
+      return delegate;
+    }
+  }
+}
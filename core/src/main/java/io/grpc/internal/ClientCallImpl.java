@@ -61,6 +61,7 @@ import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
 import io.grpc.Status;
 import java.io.InputStream;
+import java.util.Random;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -93,6 +94,14 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT>
   private ScheduledExecutorService deadlineCancellationExecutor;
   private DecompressorRegistry decompressorRegistry = DecompressorRegistry.getDefaultInstance();
   private CompressorRegistry compressorRegistry = CompressorRegistry.getDefaultInstance();
+  @Nullable
+  private RetriableStream.ChannelBufferMeter channelBufferUsed;
+  private long perRpcBufferLimit;
+  @Nullable
+  private RetryThrottle retryThrottle;
+  // Set instead of writing to stream directly when the call is retried or hedged.
+  @Nullable
+  private RetriableStream<ReqT> retriableStream;
 
   ClientCallImpl(MethodDescriptor<ReqT, RespT> method, Executor executor,
       CallOptions callOptions, StatsTraceContext statsTraceCtx,
@@ -142,6 +151,19 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT>
     return this;
   }
 
+  /**
+   * Enables retries and hedging for this call, as configured by the {@link RetryPolicy} or the
+   * {@link HedgingPolicy} of the call options.
+   */
+  ClientCallImpl<ReqT, RespT> setRetryParameters(
+      RetriableStream.ChannelBufferMeter channelBufferUsed, long perRpcBufferLimit,
+      @Nullable RetryThrottle retryThrottle) {
+    this.channelBufferUsed = checkNotNull(channelBufferUsed, "channelBufferUsed");
+    this.perRpcBufferLimit = perRpcBufferLimit;
+    this.retryThrottle = retryThrottle;
+    return this;
+  }
+
   @VisibleForTesting
   static void prepareHeaders(Metadata headers, DecompressorRegistry decompressorRegistry,
       Compressor compressor, StatsTraceContext statsTraceCtx) {
@@ -213,19 +235,32 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT>
 
     prepareHeaders(headers, decompressorRegistry, compressor, statsTraceCtx);
 
-    Deadline effectiveDeadline = effectiveDeadline();
+    final Deadline effectiveDeadline = effectiveDeadline();
     boolean deadlineExceeded = effectiveDeadline != null && effectiveDeadline.isExpired();
-    if (!deadlineExceeded) {
+    RetryPolicy retryPolicy = callOptions.getOption(RetryPolicy.KEY);
+    HedgingPolicy hedgingPolicy = callOptions.getOption(HedgingPolicy.KEY);
+    if (!deadlineExceeded && channelBufferUsed != null
+        && (retryPolicy != null || hedgingPolicy != null)) {
+      if (hedgingPolicy != null) {
+        // A method can't be both retried and hedged.  Hedging wins, as it is the more specific.
+        retryPolicy = null;
+      }
+      retriableStream = new RetriableStream<ReqT>(method, headers, retryPolicy, hedgingPolicy,
+          channelBufferUsed, perRpcBufferLimit, retryThrottle, deadlineCancellationExecutor,
+          statsTraceCtx, new Random()) {
+        @Override
+        ClientStream newSubstream(Metadata newHeaders) {
+          // Every attempt gets the time left before the deadline, and may pick another backend.
+          updateTimeoutHeaders(effectiveDeadline, callOptions.getDeadline(),
+              context.getDeadline(), newHeaders);
+          return newTransportStream(newHeaders);
+        }
+      };
+      stream = retriableStream;
+    } else if (!deadlineExceeded) {
       updateTimeoutHeaders(effectiveDeadline, callOptions.getDeadline(),
           context.getDeadline(), headers);
-      ClientTransport transport = clientTransportProvider.get(
-          new PickSubchannelArgsImpl(method, headers, callOptions));
-      Context origContext = context.attach();
-      try {
-        stream = transport.newStream(method, headers, callOptions, statsTraceCtx);
-      } finally {
-        context.detach(origContext);
-      }
+      stream = newTransportStream(headers);
     } else {
       stream = new FailingClientStream(DEADLINE_EXCEEDED);
     }
@@ -261,6 +296,17 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT>
     }
   }
 
+  private ClientStream newTransportStream(Metadata headers) {
+    ClientTransport transport = clientTransportProvider.get(
+        new PickSubchannelArgsImpl(method, headers, callOptions));
+    Context origContext = context.attach();
+    try {
+      return transport.newStream(method, headers, callOptions, statsTraceCtx);
+    } finally {
+      context.detach(origContext);
+    }
+  }
+
   /**
    * Based on the deadline, calculate and set the timeout to the given headers.
    */
@@ -389,9 +435,14 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT>
     Preconditions.checkState(!cancelCalled, "call was cancelled");
     Preconditions.checkState(!halfCloseCalled, "call was half-closed");
     try {
-      // TODO(notcarl): Find out if messageIs needs to be closed.
-      InputStream messageIs = method.streamRequest(message);
-      stream.writeMessage(messageIs);
+      if (retriableStream != null) {
+        // The message may be serialized again for every attempt.
+        retriableStream.sendMessage(message);
+      } else {
+        // The stream closes messageIs once it is written.
+        InputStream messageIs = method.streamRequest(message);
+        stream.writeMessage(messageIs);
+      }
     } catch (Throwable e) {
       stream.cancel(Status.CANCELLED.withCause(e).withDescription("Failed to stream message"));
       return;
@@ -167,6 +167,30 @@ public class CompositeReadableBuffer extends AbstractReadableBuffer {
     return newBuffer;
   }
 
+  @Override
+  public boolean byteBufferSupported() {
+    for (ReadableBuffer buffer : buffers) {
+      if (!buffer.byteBufferSupported()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the {@link ByteBuffer} of the first buffer with readable bytes, so it only holds all
+   * the readable bytes of this composite if they are in a single buffer.
+   */
+  @Override
+  public ByteBuffer getByteBuffer() {
+    for (ReadableBuffer buffer : buffers) {
+      if (buffer.readableBytes() > 0) {
+        return buffer.getByteBuffer();
+      }
+    }
+    return null;
+  }
+
   @Override
   public void close() {
     while (!buffers.isEmpty()) {
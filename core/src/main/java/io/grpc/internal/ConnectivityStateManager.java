@@ -37,13 +37,14 @@ import java.util.concurrent.Executor;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
- * Book-keeps the connectivity state and callbacks.
+ * Book-keeps the connectivity state and callbacks.  Only {@link #getState} may be called
+ * concurrently with the other methods.
  */
 @NotThreadSafe
 class ConnectivityStateManager {
   private ArrayList<StateCallbackEntry> callbacks;
 
-  private ConnectivityState state;
+  private volatile ConnectivityState state;
 
   ConnectivityStateManager(ConnectivityState initialState) {
     state = initialState;
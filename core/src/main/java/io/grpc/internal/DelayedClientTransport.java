@@ -31,17 +31,22 @@
 
 package io.grpc.internal;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.annotations.VisibleForTesting;
 import io.grpc.CallOptions;
 import io.grpc.Context;
 import io.grpc.LoadBalancer.PickResult;
 import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.concurrent.Executor;
 import javax.annotation.Nullable;
@@ -55,14 +60,26 @@ import javax.annotation.concurrent.GuardedBy;
  * <p>This transport owns every stream that it has created until a real transport has been picked
  * for that stream, at which point the ownership of the stream is transferred to the real transport,
  * thus the delayed transport stops owning the stream.
+ *
+ * <p>The number of pending streams is bounded.  When the limit is reached, either the new stream or
+ * the oldest pending stream fails, depending on the {@link PendingCallOverflowPolicy}.
  */
 final class DelayedClientTransport implements ManagedClientTransport {
+  /**
+   * The number of streams {@link #reprocess} picks for between taking the lock to remove them from
+   * the pending streams, so that new and cancelled streams don't wait for all of them.
+   */
+  @VisibleForTesting
+  static final int REPROCESS_BATCH_SIZE = 128;
+
   private final LogId lodId = LogId.allocate(getClass().getName());
 
   private final Object lock = new Object();
 
   private final Executor defaultAppExecutor;
   private final ChannelExecutor channelExecutor;
+  private final int maxPendingStreams;
+  private final PendingCallOverflowPolicy overflowPolicy;
 
   private Runnable reportTransportInUse;
   private Runnable reportTransportNotInUse;
@@ -98,8 +115,24 @@ final class DelayedClientTransport implements ManagedClientTransport {
    *        ChannelExecutor.
    */
   DelayedClientTransport(Executor defaultAppExecutor, ChannelExecutor channelExecutor) {
+    this(defaultAppExecutor, channelExecutor, Integer.MAX_VALUE,
+        PendingCallOverflowPolicy.FAIL_NEW_CALLS);
+  }
+
+  /**
+   * Creates a new delayed transport with a bounded number of pending streams.
+   *
+   * @param maxPendingStreams the maximum number of pending streams
+   * @param overflowPolicy which stream fails when a new stream would exceed {@code
+   *        maxPendingStreams}
+   */
+  DelayedClientTransport(Executor defaultAppExecutor, ChannelExecutor channelExecutor,
+      int maxPendingStreams, PendingCallOverflowPolicy overflowPolicy) {
+    checkArgument(maxPendingStreams > 0, "maxPendingStreams must be positive");
     this.defaultAppExecutor = defaultAppExecutor;
     this.channelExecutor = channelExecutor;
+    this.maxPendingStreams = maxPendingStreams;
+    this.overflowPolicy = checkNotNull(overflowPolicy, "overflowPolicy");
   }
 
   @Override
@@ -196,8 +229,26 @@ final class DelayedClientTransport implements ManagedClientTransport {
    * schedule tasks on channelExecutor.
    */
   @GuardedBy("lock")
-  private PendingStream createPendingStream(PickSubchannelArgs args,
+  private ClientStream createPendingStream(PickSubchannelArgs args,
       StatsTraceContext statsTraceCtx) {
+    if (pendingStreams.size() >= maxPendingStreams) {
+      final Status status = Status.RESOURCE_EXHAUSTED.withDescription(
+          "Too many calls pending for a transport (limit: " + maxPendingStreams + ")");
+      if (overflowPolicy == PendingCallOverflowPolicy.FAIL_NEW_CALLS) {
+        return new FailingClientStream(status);
+      }
+      // Shed the oldest one.  The set stays in use, so there is no need to report anything.
+      Iterator<PendingStream> it = pendingStreams.iterator();
+      final PendingStream oldest = it.next();
+      it.remove();
+      // Cancelling calls the listener of the stream, which must not be done under the lock
+      channelExecutor.executeLater(new Runnable() {
+          @Override
+          public void run() {
+            oldest.cancel(status);
+          }
+        });
+    }
     PendingStream pendingStream = new PendingStream(args, statsTraceCtx);
     pendingStreams.add(pendingStream);
     if (pendingStreams.size() == 1) {
@@ -276,11 +327,14 @@ final class DelayedClientTransport implements ManagedClientTransport {
    * streams will be served by the latest picker (if a same picker is given more than once, they are
    * considered different pickers) as soon as possible.
    *
+   * <p>Every pending stream is picked again, as a picker doesn't tell which streams it would route
+   * differently, so this takes time linear in the number of pending streams. Only the removal of
+   * the picked streams is done in batches, so that the lock isn't held for the whole pass.
+   *
    * <p>This method <strong>must not</strong> be called concurrently with itself.
    */
   final void reprocess(SubchannelPicker picker) {
     ArrayList<PendingStream> toProcess;
-    ArrayList<PendingStream> toRemove = new ArrayList<PendingStream>();
     synchronized (lock) {
       lastPicker = picker;
       lastPickerVersion++;
@@ -290,7 +344,10 @@ final class DelayedClientTransport implements ManagedClientTransport {
       toProcess = new ArrayList<PendingStream>(pendingStreams);
     }
 
-    for (final PendingStream stream : toProcess) {
+    ArrayList<PendingStream> toRemove =
+        new ArrayList<PendingStream>(Math.min(toProcess.size(), REPROCESS_BATCH_SIZE));
+    for (int i = 0; i < toProcess.size(); i++) {
+      final PendingStream stream = toProcess.get(i);
       PickResult pickResult = picker.pickSubchannel(stream.args);
       CallOptions callOptions = stream.args.getCallOptions();
       final ClientTransport transport = GrpcUtil.getTransportFromPickResult(pickResult,
@@ -311,17 +368,33 @@ final class DelayedClientTransport implements ManagedClientTransport {
           });
         toRemove.add(stream);
       }  // else: stay pending
+      if (toRemove.size() == REPROCESS_BATCH_SIZE) {
+        removePendingStreams(toRemove);
+        toRemove.clear();
+      }
     }
+    removePendingStreams(toRemove);
+    channelExecutor.drain();
+  }
 
+  /**
+   * Removes the streams that have been picked for.  Caller must call {@code
+   * channelExecutor.drain()}.
+   */
+  private void removePendingStreams(ArrayList<PendingStream> toRemove) {
     synchronized (lock) {
-      // Between this synchronized and the previous one:
-      //   - Streams may have been cancelled, which may turn pendingStreams into emptiness.
+      // Between this synchronized and the one in reprocess():
+      //   - Streams may have been cancelled or shed, which may turn pendingStreams into emptiness.
       //   - shutdown() may be called, which may turn pendingStreams into null.
       if (pendingStreams == null || pendingStreams.isEmpty()) {
         return;
       }
-      pendingStreams.removeAll(toRemove);
-      if (pendingStreams.isEmpty()) {
+      boolean removed = false;
+      // One at a time, as removeAll() is quadratic when most of the streams are removed
+      for (int i = 0; i < toRemove.size(); i++) {
+        removed |= pendingStreams.remove(toRemove.get(i));
+      }
+      if (removed && pendingStreams.isEmpty()) {
         // There may be a brief gap between delayed transport clearing in-use state, and first real
         // transport starting streams and setting in-use state.  During the gap the whole channel's
         // in-use state may be false. However, it shouldn't cause spurious switching to idleness
@@ -338,7 +411,6 @@ final class DelayedClientTransport implements ManagedClientTransport {
         }
       }
     }
-    channelExecutor.drain();
   }
 
   // TODO(carl-mastrangelo): remove this once the Subchannel change is in.
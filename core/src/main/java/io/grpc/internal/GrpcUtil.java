@@ -47,6 +47,8 @@ import io.grpc.LoadBalancer.Subchannel;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.internal.SharedResourceHolder.Resource;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.URI;
@@ -57,6 +59,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
 /**
@@ -64,6 +68,8 @@ import javax.annotation.Nullable;
  */
 public final class GrpcUtil {
 
+  private static final Logger log = Logger.getLogger(GrpcUtil.class.getName());
+
   public static final Charset US_ASCII = Charset.forName("US-ASCII");
 
   // Certain production AppEngine runtimes have constraints on threading and socket handling
@@ -569,6 +575,9 @@ public final class GrpcUtil {
       transport = null;
     }
     if (transport != null) {
+      if (result.getStreamTracker() != null) {
+        return new StreamTrackingClientTransport(transport, result.getStreamTracker());
+      }
       return transport;
     }
     if (!result.getStatus().isOk() && !isWaitForReady) {
@@ -577,6 +586,20 @@ public final class GrpcUtil {
     return null;
   }
 
+  /**
+   * Closes a message stream, logging rather than throwing any {@link IOException}.
+   */
+  public static void closeQuietly(@Nullable InputStream message) {
+    if (message == null) {
+      return;
+    }
+    try {
+      message.close();
+    } catch (IOException e) {
+      log.log(Level.FINE, "Exception closing message", e);
+    }
+  }
+
   private GrpcUtil() {}
 
   private static String getImplementationVersion() {
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import io.grpc.CallOptions;
+import io.grpc.Status;
+import java.util.Set;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Policy for hedging an RPC.  An RPC whose {@link CallOptions} carries a policy under {@link #KEY}
+ * sends a new attempt every {@link #getHedgingDelayNanos hedging delay} until one of the attempts
+ * receives response headers, which then wins and the others are cancelled.  The hedging delay is
+ * typically set to a high percentile of the method's latency, so that only the slowest RPCs are
+ * hedged.
+ */
+@Immutable
+public final class HedgingPolicy {
+  /**
+   * The {@link CallOptions} key under which the hedging policy of a call is stored.
+   */
+  public static final CallOptions.Key<HedgingPolicy> KEY =
+      CallOptions.Key.of("io.grpc.internal.HedgingPolicy", null);
+
+  private final int maxAttempts;
+  private final long hedgingDelayNanos;
+  private final Set<Status.Code> nonFatalStatusCodes;
+
+  /**
+   * Creates a hedging policy.
+   *
+   * @param maxAttempts the maximum number of attempts including the original one, must be greater
+   *     than one
+   * @param hedgingDelayNanos the delay before starting the next attempt, zero for sending all the
+   *     attempts at once
+   * @param nonFatalStatusCodes the status codes that let the other attempts continue.  Any other
+   *     status fails the RPC immediately.
+   */
+  public HedgingPolicy(
+      int maxAttempts, long hedgingDelayNanos, Set<Status.Code> nonFatalStatusCodes) {
+    checkArgument(maxAttempts > 1, "maxAttempts must be greater than 1");
+    checkArgument(hedgingDelayNanos >= 0, "hedgingDelayNanos must not be negative");
+    checkNotNull(nonFatalStatusCodes, "nonFatalStatusCodes");
+    checkArgument(!nonFatalStatusCodes.contains(Status.Code.OK), "OK can't be non-fatal");
+    this.maxAttempts = maxAttempts;
+    this.hedgingDelayNanos = hedgingDelayNanos;
+    this.nonFatalStatusCodes = ImmutableSet.copyOf(nonFatalStatusCodes);
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getHedgingDelayNanos() {
+    return hedgingDelayNanos;
+  }
+
+  public Set<Status.Code> getNonFatalStatusCodes() {
+    return nonFatalStatusCodes;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof HedgingPolicy)) {
+      return false;
+    }
+    HedgingPolicy that = (HedgingPolicy) other;
+    return maxAttempts == that.maxAttempts
+        && hedgingDelayNanos == that.hedgingDelayNanos
+        && nonFatalStatusCodes.equals(that.nonFatalStatusCodes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(maxAttempts, hedgingDelayNanos, nonFatalStatusCodes);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("maxAttempts", maxAttempts)
+        .add("hedgingDelayNanos", hedgingDelayNanos)
+        .add("nonFatalStatusCodes", nonFatalStatusCodes)
+        .toString();
+  }
+}
@@ -45,6 +45,8 @@ import io.grpc.ConnectivityState;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.Status;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -67,8 +69,19 @@ import javax.annotation.concurrent.ThreadSafe;
 final class InternalSubchannel implements WithLogId {
   private static final Logger log = Logger.getLogger(InternalSubchannel.class.getName());
 
+  /**
+   * The delay before attempting to connect to the next address while the previous attempts are
+   * still in progress, as recommended by RFC 8305 (Happy Eyeballs).
+   */
+  static final long CONNECTION_ATTEMPT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
   private final LogId logId = LogId.allocate(getClass().getName());
   private final EquivalentAddressGroup addressGroup;
+  /**
+   * The addresses of {@link #addressGroup}, in the order in which they are attempted.
+   */
+  private final List<SocketAddress> connectOrder;
+  private final long connectionAttemptDelayNanos;
   private final String authority;
   private final String userAgent;
   private final BackoffPolicy.Provider backoffPolicyProvider;
@@ -108,6 +121,14 @@ final class InternalSubchannel implements WithLogId {
   @Nullable
   private ScheduledFuture<?> reconnectTask;
 
+  /**
+   * Starts the attempt to connect to the next address, if the pending ones haven't succeeded or
+   * failed in time.
+   */
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledFuture<?> connectionAttemptTask;
+
   /**
    * All transports that are not terminated. At the very least the value of {@link #activeTransport}
    * will be present, but previously used transports that still have streams or are stopping may
@@ -132,11 +153,12 @@ final class InternalSubchannel implements WithLogId {
       };
 
   /**
-   * The to-be active transport, which is not ready yet.
+   * The to-be active transports, which are not ready yet.  The first one to become ready wins, and
+   * the others are shut down.
    */
   @GuardedBy("lock")
-  @Nullable
-  private ConnectionClientTransport pendingTransport;
+  private final List<ConnectionClientTransport> pendingTransports =
+      new ArrayList<ConnectionClientTransport>();
 
   /**
    * The transport for new outgoing requests. 'lock' must be held when assigning to it. Non-null
@@ -148,11 +170,20 @@ final class InternalSubchannel implements WithLogId {
   @GuardedBy("lock")
   private ConnectivityStateInfo state = ConnectivityStateInfo.forNonError(IDLE);
 
+  /**
+   * Creates a subchannel.
+   *
+   * @param connectionAttemptDelayNanos the delay before attempting to connect to the next address
+   *     while the previous attempts are still in progress.  If not positive, each address is only
+   *     attempted after the previous one has failed.
+   */
   InternalSubchannel(EquivalentAddressGroup addressGroup, String authority, String userAgent,
-      BackoffPolicy.Provider backoffPolicyProvider,
+      BackoffPolicy.Provider backoffPolicyProvider, long connectionAttemptDelayNanos,
       ClientTransportFactory transportFactory, ScheduledExecutorService scheduledExecutor,
       Supplier<Stopwatch> stopwatchSupplier, ChannelExecutor channelExecutor, Callback callback) {
     this.addressGroup = Preconditions.checkNotNull(addressGroup, "addressGroup");
+    this.connectOrder = interleaveAddressFamilies(addressGroup.getAddresses());
+    this.connectionAttemptDelayNanos = connectionAttemptDelayNanos;
     this.authority = authority;
     this.userAgent = userAgent;
     this.backoffPolicyProvider = backoffPolicyProvider;
@@ -195,13 +226,13 @@ final class InternalSubchannel implements WithLogId {
   @GuardedBy("lock")
   private void startNewTransport() {
     Preconditions.checkState(reconnectTask == null, "Should have no reconnectTask scheduled");
+    cancelConnectionAttemptTask();
 
     if (nextAddressIndex == 0) {
       connectingTimer.reset().start();
     }
-    List<SocketAddress> addrs = addressGroup.getAddresses();
-    final SocketAddress address = addrs.get(nextAddressIndex++);
-    if (nextAddressIndex >= addrs.size()) {
+    final SocketAddress address = connectOrder.get(nextAddressIndex++);
+    if (nextAddressIndex >= connectOrder.size()) {
       nextAddressIndex = 0;
     }
 
@@ -211,12 +242,72 @@ final class InternalSubchannel implements WithLogId {
       log.log(Level.FINE, "[{0}] Created {1} for {2}",
           new Object[] {logId, transport.getLogId(), address});
     }
-    pendingTransport = transport;
+    pendingTransports.add(transport);
     transports.add(transport);
     Runnable runnable = transport.start(new TransportListener(transport, address));
     if (runnable != null) {
       channelExecutor.executeLater(runnable);
     }
+    if (nextAddressIndex != 0 && connectionAttemptDelayNanos > 0) {
+      // Don't wait for a possibly black-holed address to time out before trying the next one
+      connectionAttemptTask = scheduledExecutor.schedule(
+          new LogExceptionRunnable(new StartNextConnectionAttempt()),
+          connectionAttemptDelayNanos,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private class StartNextConnectionAttempt implements Runnable {
+    @Override
+    public void run() {
+      try {
+        synchronized (lock) {
+          connectionAttemptTask = null;
+          // The task may have already started when being cancelled
+          if (state.getState() != CONNECTING || nextAddressIndex == 0) {
+            return;
+          }
+          startNewTransport();
+        }
+      } finally {
+        channelExecutor.drain();
+      }
+    }
+  }
+
+  /**
+   * Orders the addresses so that the address families alternate, starting with the family of the
+   * first address, as per RFC 8305.  A broken family thus only delays every other attempt.
+   */
+  @VisibleForTesting
+  static List<SocketAddress> interleaveAddressFamilies(List<SocketAddress> addresses) {
+    if (addresses.isEmpty()) {
+      return addresses;
+    }
+    boolean firstIsIpv6 = isIpv6(addresses.get(0));
+    List<SocketAddress> firstFamily = new ArrayList<SocketAddress>();
+    List<SocketAddress> otherFamily = new ArrayList<SocketAddress>();
+    for (SocketAddress address : addresses) {
+      (isIpv6(address) == firstIsIpv6 ? firstFamily : otherFamily).add(address);
+    }
+    if (otherFamily.isEmpty()) {
+      return addresses;
+    }
+    List<SocketAddress> interleaved = new ArrayList<SocketAddress>(addresses.size());
+    for (int i = 0; i < firstFamily.size() || i < otherFamily.size(); i++) {
+      if (i < firstFamily.size()) {
+        interleaved.add(firstFamily.get(i));
+      }
+      if (i < otherFamily.size()) {
+        interleaved.add(otherFamily.get(i));
+      }
+    }
+    return interleaved;
+  }
+
+  private static boolean isIpv6(SocketAddress address) {
+    return address instanceof InetSocketAddress
+        && ((InetSocketAddress) address).getAddress() instanceof Inet6Address;
   }
 
   /**
@@ -286,7 +377,7 @@ final class InternalSubchannel implements WithLogId {
 
   public void shutdown() {
     ManagedClientTransport savedActiveTransport;
-    ConnectionClientTransport savedPendingTransport;
+    List<ConnectionClientTransport> savedPendingTransports;
     try {
       synchronized (lock) {
         if (state.getState() == SHUTDOWN) {
@@ -294,9 +385,9 @@ final class InternalSubchannel implements WithLogId {
         }
         gotoNonErrorState(SHUTDOWN);
         savedActiveTransport = activeTransport;
-        savedPendingTransport = pendingTransport;
+        savedPendingTransports = new ArrayList<ConnectionClientTransport>(pendingTransports);
         activeTransport = null;
-        pendingTransport = null;
+        pendingTransports.clear();
         if (transports.isEmpty()) {
           handleTermination();
           if (log.isLoggable(Level.FINE)) {
@@ -304,6 +395,7 @@ final class InternalSubchannel implements WithLogId {
           }
         }  // else: the callback will be run once all transports have been terminated
         cancelReconnectTask();
+        cancelConnectionAttemptTask();
       }
     } finally {
       channelExecutor.drain();
@@ -311,8 +403,8 @@ final class InternalSubchannel implements WithLogId {
     if (savedActiveTransport != null) {
       savedActiveTransport.shutdown();
     }
-    if (savedPendingTransport != null) {
-      savedPendingTransport.shutdown();
+    for (ConnectionClientTransport transport : savedPendingTransports) {
+      transport.shutdown();
     }
   }
 
@@ -363,6 +455,14 @@ final class InternalSubchannel implements WithLogId {
     }
   }
 
+  @GuardedBy("lock")
+  private void cancelConnectionAttemptTask() {
+    if (connectionAttemptTask != null) {
+      connectionAttemptTask.cancel(false);
+      connectionAttemptTask = null;
+    }
+  }
+
   @Override
   public LogId getLogId() {
     return logId;
@@ -396,6 +496,7 @@ final class InternalSubchannel implements WithLogId {
             new Object[] {logId, transport.getLogId(), address});
       }
       ConnectivityState savedState;
+      List<ConnectionClientTransport> losingTransports = null;
       try {
         synchronized (lock) {
           savedState = state.getState();
@@ -405,10 +506,12 @@ final class InternalSubchannel implements WithLogId {
             // activeTransport should have already been set to null by shutdown(). We keep it null.
             Preconditions.checkState(activeTransport == null,
                 "Unexpected non-null activeTransport");
-          } else if (pendingTransport == transport) {
+          } else if (pendingTransports.remove(transport)) {
             gotoNonErrorState(READY);
             activeTransport = transport;
-            pendingTransport = null;
+            cancelConnectionAttemptTask();
+            losingTransports = new ArrayList<ConnectionClientTransport>(pendingTransports);
+            pendingTransports.clear();
           }
         }
       } finally {
@@ -417,6 +520,11 @@ final class InternalSubchannel implements WithLogId {
       if (savedState == SHUTDOWN) {
         transport.shutdown();
       }
+      if (losingTransports != null) {
+        for (ConnectionClientTransport losingTransport : losingTransports) {
+          losingTransport.shutdown();
+        }
+      }
     }
 
     @Override
@@ -438,17 +546,17 @@ final class InternalSubchannel implements WithLogId {
           if (activeTransport == transport) {
             gotoNonErrorState(IDLE);
             activeTransport = null;
-          } else if (pendingTransport == transport) {
+          } else if (pendingTransports.remove(transport)) {
             Preconditions.checkState(state.getState() == CONNECTING,
                 "Expected state is CONNECTING, actual state is %s", state.getState());
             // Continue reconnect if there are still addresses to try.
-            if (nextAddressIndex == 0) {
+            if (nextAddressIndex != 0) {
+              startNewTransport();
+            } else if (pendingTransports.isEmpty()) {
               // Initiate backoff
               // Transition to TRANSIENT_FAILURE
               scheduleBackoff(s);
-            } else {
-              startNewTransport();
-            }
+            }  // else: wait for the attempts in progress
           }
         }
       } finally {
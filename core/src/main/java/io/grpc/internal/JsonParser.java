@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Parses JSON into the form expected by {@link GrpcAttributes#NAME_RESOLVER_SERVICE_CONFIG}:
+ * objects become {@code Map<String, Object>}, arrays become {@code List<Object>}, numbers become
+ * {@code Double}, and {@code true}, {@code false} and {@code null} become {@code Boolean}s and
+ * {@code null}.  The returned maps and lists are unmodifiable.
+ */
+public final class JsonParser {
+  private final String raw;
+  private int pos;
+
+  private JsonParser(String raw) {
+    this.raw = raw;
+  }
+
+  /**
+   * Parses the given JSON text.
+   *
+   * @throws IOException if the text is not valid JSON
+   */
+  @Nullable
+  public static Object parse(String raw) throws IOException {
+    JsonParser parser = new JsonParser(raw);
+    Object value = parser.parseValue();
+    parser.skipWhitespace();
+    if (parser.pos != raw.length()) {
+      throw parser.syntaxError("trailing characters");
+    }
+    return value;
+  }
+
+  @Nullable
+  private Object parseValue() throws IOException {
+    skipWhitespace();
+    if (pos == raw.length()) {
+      throw syntaxError("unexpected end of input");
+    }
+    char c = raw.charAt(pos);
+    switch (c) {
+      case '{':
+        return parseObject();
+      case '[':
+        return parseArray();
+      case '"':
+        return parseString();
+      case 't':
+        expectLiteral("true");
+        return Boolean.TRUE;
+      case 'f':
+        expectLiteral("false");
+        return Boolean.FALSE;
+      case 'n':
+        expectLiteral("null");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return parseNumber();
+        }
+        throw syntaxError("unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> parseObject() throws IOException {
+    pos++;  // '{'
+    Map<String, Object> object = new LinkedHashMap<String, Object>();
+    skipWhitespace();
+    if (consume('}')) {
+      return Collections.unmodifiableMap(object);
+    }
+    do {
+      skipWhitespace();
+      if (pos == raw.length() || raw.charAt(pos) != '"') {
+        throw syntaxError("expected a string key");
+      }
+      String key = parseString();
+      skipWhitespace();
+      if (!consume(':')) {
+        throw syntaxError("expected ':'");
+      }
+      if (object.containsKey(key)) {
+        throw syntaxError("duplicate key " + key);
+      }
+      object.put(key, parseValue());
+      skipWhitespace();
+    } while (consume(','));
+    if (!consume('}')) {
+      throw syntaxError("expected ',' or '}'");
+    }
+    return Collections.unmodifiableMap(object);
+  }
+
+  private List<Object> parseArray() throws IOException {
+    pos++;  // '['
+    List<Object> array = new ArrayList<Object>();
+    skipWhitespace();
+    if (consume(']')) {
+      return Collections.unmodifiableList(array);
+    }
+    do {
+      array.add(parseValue());
+      skipWhitespace();
+    } while (consume(','));
+    if (!consume(']')) {
+      throw syntaxError("expected ',' or ']'");
+    }
+    return Collections.unmodifiableList(array);
+  }
+
+  private String parseString() throws IOException {
+    pos++;  // '"'
+    StringBuilder sb = new StringBuilder();
+    while (pos < raw.length()) {
+      char c = raw.charAt(pos++);
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c < 0x20) {
+        throw syntaxError("unescaped control character in string");
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      if (pos == raw.length()) {
+        break;
+      }
+      char escaped = raw.charAt(pos++);
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          sb.append(escaped);
+          break;
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > raw.length()) {
+            throw syntaxError("truncated unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(raw.substring(pos, pos + 4), 16));
+          } catch (NumberFormatException e) {
+            throw syntaxError("invalid unicode escape");
+          }
+          pos += 4;
+          break;
+        default:
+          throw syntaxError("invalid escape '\\" + escaped + "'");
+      }
+    }
+    throw syntaxError("unterminated string");
+  }
+
+  private Double parseNumber() throws IOException {
+    int start = pos;
+    while (pos < raw.length()) {
+      char c = raw.charAt(pos);
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+        pos++;
+      } else {
+        break;
+      }
+    }
+    try {
+      return Double.valueOf(raw.substring(start, pos));
+    } catch (NumberFormatException e) {
+      throw syntaxError("invalid number " + raw.substring(start, pos));
+    }
+  }
+
+  private void expectLiteral(String literal) throws IOException {
+    if (!raw.startsWith(literal, pos)) {
+      throw syntaxError("expected " + literal);
+    }
+    pos += literal.length();
+  }
+
+  private boolean consume(char c) {
+    if (pos < raw.length() && raw.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private void skipWhitespace() {
+    while (pos < raw.length()) {
+      char c = raw.charAt(pos);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException("Invalid JSON at position " + pos + ": " + message);
+  }
+}
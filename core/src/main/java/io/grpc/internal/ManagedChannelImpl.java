@@ -34,7 +34,10 @@ package io.grpc.internal;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static io.grpc.ConnectivityState.CONNECTING;
 import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -48,7 +51,9 @@ import io.grpc.ClientCall;
 import io.grpc.ClientInterceptor;
 import io.grpc.ClientInterceptors;
 import io.grpc.CompressorRegistry;
+import io.grpc.ConnectivityState;
 import io.grpc.ConnectivityStateInfo;
+import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.LoadBalancer;
@@ -56,6 +61,7 @@ import io.grpc.LoadBalancer.PickResult;
 import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.SubchannelPicker;
 import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.MethodDescriptor;
 import io.grpc.NameResolver;
 import io.grpc.ResolvedServerInfoGroup;
@@ -63,8 +69,10 @@ import io.grpc.Status;
 import io.grpc.internal.ClientCallImpl.ClientTransportProvider;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -118,7 +126,14 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
   private final Supplier<Stopwatch> stopwatchSupplier;
   /** The timout before entering idle mode. */
   private final long idleTimeoutMillis;
+  /** Whether to connect every subchannel as soon as it is created. */
+  private final boolean connectEagerly;
   private final StatsContextFactory statsFactory;
+  /** The total size of the messages buffered for retries and hedging by all the calls. */
+  private final RetriableStream.ChannelBufferMeter channelBufferUsed;
+  private final long perRpcBufferLimit;
+  @Nullable
+  private final RetryThrottle retryThrottle;
 
   /**
    * Executor that runs deadline timers for requests.
@@ -133,6 +148,7 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
    * any interceptors this will just be {@link RealChannel}.
    */
   private final Channel interceptorChannel;
+  private final ServiceConfigInterceptor serviceConfigInterceptor = new ServiceConfigInterceptor();
   @Nullable private final String userAgent;
 
   // Only null after channel is terminated. Must be assigned from the channelExecutor.
@@ -154,6 +170,22 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
   // Must be mutated from channelExecutor
   private final Set<InternalSubchannel> oobChannels = new HashSet<InternalSubchannel>(1, .75f);
 
+  // The states of the subchannels of the current LoadBalancer that have left IDLE.  Must be
+  // accessed from channelExecutor.
+  private final Map<InternalSubchannel, ConnectivityState> subchannelStates =
+      new HashMap<InternalSubchannel, ConnectivityState>();
+
+  // Whether the last name resolution has failed.  Must be accessed from channelExecutor.
+  private boolean nameResolutionFailed;
+
+  // The aggregated state of the channel.  Must be mutated from channelExecutor.
+  private final ConnectivityStateManager channelStateManager =
+      new ConnectivityStateManager(IDLE);
+
+  // Must be mutated from channelExecutor.  Notified on warmUpLock whenever it may have changed.
+  private volatile int readySubchannelCount;
+  private final Object warmUpLock = new Object();
+
   // reprocess() must be run from channelExecutor
   private final DelayedClientTransport delayedTransport;
 
@@ -271,6 +303,9 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
       loadBalancer.shutdown();
       loadBalancer = null;
       subchannelPicker = null;
+      subchannelStates.clear();
+      nameResolutionFailed = false;
+      updateChannelState();
     }
   }
 
@@ -307,6 +342,7 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
     LbHelperImpl helper = new LbHelperImpl(nameResolver);
     helper.lb = loadBalancerFactory.newLoadBalancer(helper);
     this.loadBalancer = helper.lb;
+    updateChannelState();
 
     NameResolverListenerImpl listener = new NameResolverListenerImpl(helper);
     try {
@@ -316,6 +352,66 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
     }
   }
 
+  /**
+   * Makes the channel exit idle mode, and asks the IDLE subchannels to connect.
+   *
+   * <p>Must be called from channelExecutor
+   */
+  private void requestConnection() {
+    exitIdleMode();
+    for (InternalSubchannel subchannel : subchannels) {
+      // No-op unless the subchannel is IDLE
+      subchannel.obtainActiveTransport();
+    }
+  }
+
+  /**
+   * Recomputes the state of the channel from the states of its subchannels.  The channel is READY
+   * if any subchannel is READY, otherwise CONNECTING if any subchannel is CONNECTING, otherwise
+   * TRANSIENT_FAILURE if any subchannel or the name resolution has failed.
+   *
+   * <p>Must be called from channelExecutor
+   */
+  private void updateChannelState() {
+    int ready = 0;
+    boolean connecting = false;
+    boolean failed = nameResolutionFailed;
+    for (ConnectivityState state : subchannelStates.values()) {
+      if (state == READY) {
+        ready++;
+      } else if (state == CONNECTING) {
+        connecting = true;
+      } else if (state == TRANSIENT_FAILURE) {
+        failed = true;
+      }
+    }
+    ConnectivityState newState;
+    if (shutdown.get()) {
+      newState = SHUTDOWN;
+    } else if (loadBalancer == null) {
+      newState = IDLE;
+    } else if (ready > 0) {
+      newState = READY;
+    } else if (connecting) {
+      newState = CONNECTING;
+    } else if (failed) {
+      newState = TRANSIENT_FAILURE;
+    } else if (!subchannelStates.isEmpty()) {
+      // All subchannels went back to IDLE
+      newState = IDLE;
+    } else {
+      // Waiting for the NameResolver or the LoadBalancer
+      newState = CONNECTING;
+    }
+    channelStateManager.gotoState(newState);
+    if (readySubchannelCount != ready || newState == SHUTDOWN) {
+      readySubchannelCount = ready;
+      synchronized (warmUpLock) {
+        warmUpLock.notifyAll();
+      }
+    }
+  }
+
   // Must be run from channelExecutor
   private void cancelIdleTimer() {
     if (idleModeTimerFuture != null) {
@@ -387,7 +483,9 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
       DecompressorRegistry decompressorRegistry, CompressorRegistry compressorRegistry,
       ObjectPool<ScheduledExecutorService> timerServicePool,
       ObjectPool<? extends Executor> executorPool, ObjectPool<? extends Executor> oobExecutorPool,
-      Supplier<Stopwatch> stopwatchSupplier, long idleTimeoutMillis,
+      Supplier<Stopwatch> stopwatchSupplier, long idleTimeoutMillis, boolean connectEagerly,
+      int maxPendingCalls, PendingCallOverflowPolicy pendingCallOverflowPolicy,
+      long retryBufferSize, long perRpcBufferLimit, @Nullable RetryThrottle retryThrottle,
       @Nullable String userAgent,
       List<ClientInterceptor> interceptors, StatsContextFactory statsFactory) {
     this.target = checkNotNull(target, "target");
@@ -398,12 +496,15 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
     this.executorPool = checkNotNull(executorPool, "executorPool");
     this.oobExecutorPool = checkNotNull(oobExecutorPool, "oobExecutorPool");
     this.executor = checkNotNull(executorPool.getObject(), "executor");
-    this.delayedTransport = new DelayedClientTransport(this.executor, this.channelExecutor);
+    this.delayedTransport = new DelayedClientTransport(
+        this.executor, this.channelExecutor, maxPendingCalls, pendingCallOverflowPolicy);
     this.delayedTransport.start(delayedTransportListener);
     this.backoffPolicyProvider = backoffPolicyProvider;
     this.transportFactory =
         new CallCredentialsApplyingTransportFactory(transportFactory, this.executor);
-    this.interceptorChannel = ClientInterceptors.intercept(new RealChannel(), interceptors);
+    // The service config applies to the call options set by the interceptors
+    Channel channel = ClientInterceptors.intercept(new RealChannel(), serviceConfigInterceptor);
+    this.interceptorChannel = ClientInterceptors.intercept(channel, interceptors);
     this.timerServicePool = checkNotNull(timerServicePool, "timerServicePool");
     this.scheduledExecutor = checkNotNull(timerServicePool.getObject(), "timerService");
     this.stopwatchSupplier = checkNotNull(stopwatchSupplier, "stopwatchSupplier");
@@ -415,12 +516,24 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
           "invalid idleTimeoutMillis %s", idleTimeoutMillis);
       this.idleTimeoutMillis = idleTimeoutMillis;
     }
+    this.connectEagerly = connectEagerly;
     this.decompressorRegistry = checkNotNull(decompressorRegistry, "decompressorRegistry");
     this.compressorRegistry = checkNotNull(compressorRegistry, "compressorRegistry");
     this.userAgent = userAgent;
     this.statsFactory = checkNotNull(statsFactory, "statsFactory");
+    this.channelBufferUsed = new RetriableStream.ChannelBufferMeter(retryBufferSize);
+    this.perRpcBufferLimit = perRpcBufferLimit;
+    this.retryThrottle = retryThrottle;
 
     log.log(Level.FINE, "[{0}] Created with target {1}", new Object[] {getLogId(), target});
+    if (connectEagerly) {
+      channelExecutor.executeLater(new Runnable() {
+          @Override
+          public void run() {
+            exitIdleMode();
+          }
+        }).drain();
+    }
   }
 
   @VisibleForTesting
@@ -483,6 +596,7 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
         @Override
         public void run() {
           cancelIdleTimer();
+          updateChannelState();
         }
       }).drain();
     log.log(Level.FINE, "[{0}] Shutting down", getLogId());
@@ -527,6 +641,59 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
     return terminated;
   }
 
+  @Override
+  public ConnectivityState getState(boolean requestConnection) {
+    ConnectivityState savedState = channelStateManager.getState();
+    if (requestConnection && savedState == IDLE) {
+      channelExecutor.executeLater(new Runnable() {
+          @Override
+          public void run() {
+            requestConnection();
+          }
+        }).drain();
+    }
+    return savedState;
+  }
+
+  @Override
+  public void notifyWhenStateChanged(final ConnectivityState source, final Runnable callback) {
+    checkNotNull(source, "source");
+    checkNotNull(callback, "callback");
+    channelExecutor.executeLater(new Runnable() {
+        @Override
+        public void run() {
+          channelStateManager.notifyWhenStateChanged(callback, executor, source);
+        }
+      }).drain();
+  }
+
+  @Override
+  public boolean warmUp(int minReadySubchannels, Deadline deadline) throws InterruptedException {
+    checkArgument(minReadySubchannels > 0, "minReadySubchannels must be positive");
+    checkNotNull(deadline, "deadline");
+    channelExecutor.executeLater(new Runnable() {
+        @Override
+        public void run() {
+          requestConnection();
+        }
+      }).drain();
+    synchronized (warmUpLock) {
+      while (true) {
+        if (shutdown.get()) {
+          return false;
+        }
+        if (readySubchannelCount >= minReadySubchannels) {
+          return true;
+        }
+        long remainingNanos = deadline.timeRemaining(TimeUnit.NANOSECONDS);
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(warmUpLock, remainingNanos);
+      }
+    }
+  }
+
   /*
    * Creates a new outgoing call on the channel.
    */
@@ -559,7 +726,8 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
           transportProvider,
           scheduledExecutor)
               .setDecompressorRegistry(decompressorRegistry)
-              .setCompressorRegistry(compressorRegistry);
+              .setCompressorRegistry(compressorRegistry)
+              .setRetryParameters(channelBufferUsed, perRpcBufferLimit, retryThrottle);
     }
 
     @Override
@@ -606,13 +774,17 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
           + "you've already shut down");
       final SubchannelImplImpl subchannel = new SubchannelImplImpl(attrs);
       final InternalSubchannel internalSubchannel = new InternalSubchannel(
-            addressGroup, authority(), userAgent, backoffPolicyProvider, transportFactory,
+            addressGroup, authority(), userAgent, backoffPolicyProvider,
+            InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS, transportFactory,
             scheduledExecutorCopy, stopwatchSupplier, channelExecutor,
             new InternalSubchannel.Callback() {
               // All callbacks are run in channelExecutor
               @Override
               void onTerminated(InternalSubchannel is) {
                 subchannels.remove(is);
+                if (subchannelStates.remove(is) != null) {
+                  updateChannelState();
+                }
                 maybeTerminateChannel();
               }
 
@@ -621,6 +793,15 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
                 if ((newState.getState() == TRANSIENT_FAILURE || newState.getState() == IDLE)) {
                   nr.refresh();
                 }
+                // The subchannels of a balancer shut down by idle mode don't count
+                if (lb == loadBalancer) {
+                  if (newState.getState() == SHUTDOWN) {
+                    subchannelStates.remove(is);
+                  } else {
+                    subchannelStates.put(is, newState.getState());
+                  }
+                  updateChannelState();
+                }
                 lb.handleSubchannelState(subchannel, newState);
               }
 
@@ -653,6 +834,9 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
               // for it.
               subchannels.add(internalSubchannel);
             }
+            if (connectEagerly && !terminating) {
+              internalSubchannel.obtainActiveTransport();
+            }
           }
         });
       return subchannel;
@@ -667,7 +851,8 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
       final OobChannel oobChannel = new OobChannel(statsFactory, authority,
           oobExecutorPool, scheduledExecutorCopy, stopwatchSupplier, channelExecutor);
       final InternalSubchannel internalSubchannel = new InternalSubchannel(
-          addressGroup, authority, userAgent, backoffPolicyProvider, transportFactory,
+          addressGroup, authority, userAgent, backoffPolicyProvider,
+          InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS, transportFactory,
           scheduledExecutorCopy, stopwatchSupplier, channelExecutor,
           // All callback methods are run from channelExecutor
           new InternalSubchannel.Callback() {
@@ -755,6 +940,12 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
             if (terminated) {
               return;
             }
+            if (nameResolutionFailed && balancer == loadBalancer) {
+              nameResolutionFailed = false;
+              updateChannelState();
+            }
+            serviceConfigInterceptor.handleUpdate(
+                config.get(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG));
             try {
               balancer.handleResolvedAddresses(servers, config);
             } catch (Throwable e) {
@@ -780,6 +971,10 @@ public final class ManagedChannelImpl extends ManagedChannel implements WithLogI
             if (terminated) {
               return;
             }
+            if (balancer == loadBalancer) {
+              nameResolutionFailed = true;
+              updateChannelState();
+            }
             balancer.handleNameResolutionError(error);
           }
         }).drain();
@@ -40,6 +40,7 @@ import com.google.common.io.ByteStreams;
 import io.grpc.Codec;
 import io.grpc.Compressor;
 import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.KnownLength;
 import io.grpc.Status;
 import java.io.ByteArrayInputStream;
@@ -344,8 +345,11 @@ public class MessageFramer {
     }
   }
 
-  /** OutputStream whose write()s are passed to the framer. */
-  private class OutputStreamAdapter extends OutputStream {
+  /**
+   * OutputStream whose write()s are passed to the framer. It lends the current buffer to
+   * marshallers that can serialize a whole message into it directly.
+   */
+  private class OutputStreamAdapter extends OutputStream implements HasWritableByteBuffer {
     /**
      * This is slow, don't call it.  If you care about write overhead, use a BufferedOutputStream.
      * Better yet, you can use your own single byte buffer and call
@@ -361,6 +365,19 @@ public class MessageFramer {
     public void write(byte[] b, int off, int len) {
       writeRaw(b, off, len);
     }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer(int length) {
+      if (buffer == null || buffer.writableBytes() < length || !buffer.byteBufferSupported()) {
+        return null;
+      }
+      return buffer.getWritableByteBuffer();
+    }
+
+    @Override
+    public void commitWritableByteBuffer(int length) {
+      buffer.advanceWritePosition(length);
+    }
   }
 
   /**
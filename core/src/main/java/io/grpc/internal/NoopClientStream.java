@@ -58,7 +58,10 @@ public class NoopClientStream implements ClientStream {
   public void request(int numMessages) {}
 
   @Override
-  public void writeMessage(InputStream message) {}
+  public void writeMessage(InputStream message) {
+    // Streams own the messages written to them.
+    GrpcUtil.closeQuietly(message);
+  }
 
   @Override
   public void flush() {}
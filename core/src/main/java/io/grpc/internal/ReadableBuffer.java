@@ -35,6 +35,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * Interface for an abstract byte buffer. Buffers are intended to be a read-only, except for the
@@ -154,6 +155,23 @@ public interface ReadableBuffer extends Closeable {
    */
   int arrayOffset();
 
+  /**
+   * Indicates whether or not {@link #getByteBuffer} is supported.
+   */
+  boolean byteBufferSupported();
+
+  /**
+   * Gets a {@link ByteBuffer} with the next readable bytes of this buffer, or of its first part for
+   * a buffer made of several ones, without changing the read position. The returned buffer must
+   * not be modified, and is only valid until this buffer is read from or closed. Returns {@code
+   * null} if there are no readable bytes. This is an optional method, so callers should first check
+   * {@link #byteBufferSupported}.
+   *
+   * @throws UnsupportedOperationException the buffer does not support this method
+   */
+  @Nullable
+  ByteBuffer getByteBuffer();
+
   /**
    * Closes this buffer and releases any resources.
    */
@@ -34,6 +34,10 @@ package io.grpc.internal;
 import static com.google.common.base.Charsets.UTF_8;
 
 import com.google.common.base.Preconditions;
+import io.grpc.Detachable;
+import io.grpc.Drainable;
+import io.grpc.HasByteBuffer;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.KnownLength;
 import java.io.IOException;
 import java.io.InputStream;
@@ -218,6 +222,16 @@ public final class ReadableBuffers {
     public int arrayOffset() {
       return offset;
     }
+
+    @Override
+    public boolean byteBufferSupported() {
+      return true;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+      return offset == end ? null : ByteBuffer.wrap(bytes, offset, end - offset);
+    }
   }
 
   /**
@@ -305,13 +319,24 @@ public final class ReadableBuffers {
     public int arrayOffset() {
       return bytes.arrayOffset() + bytes.position();
     }
+
+    @Override
+    public boolean byteBufferSupported() {
+      return true;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+      return bytes.hasRemaining() ? bytes.slice() : null;
+    }
   }
 
   /**
    * An {@link InputStream} that is backed by a {@link ReadableBuffer}.
    */
-  private static final class BufferInputStream extends InputStream implements KnownLength {
-    final ReadableBuffer buffer;
+  private static final class BufferInputStream extends InputStream
+      implements KnownLength, HasByteBuffer, Drainable, Detachable {
+    ReadableBuffer buffer;
 
     public BufferInputStream(ReadableBuffer buffer) {
       this.buffer = Preconditions.checkNotNull(buffer, "buffer");
@@ -342,6 +367,52 @@ public final class ReadableBuffers {
       buffer.readBytes(dest, destOffset, length);
       return length;
     }
+
+    @Override
+    public long skip(long n) {
+      int length = (int) Math.min(buffer.readableBytes(), Math.max(n, 0));
+      buffer.skipBytes(length);
+      return length;
+    }
+
+    @Override
+    public boolean byteBufferSupported() {
+      return buffer.byteBufferSupported();
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+      return buffer.getByteBuffer();
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      int length = buffer.readableBytes();
+      ByteBuffer dest = null;
+      if (target instanceof HasWritableByteBuffer) {
+        dest = ((HasWritableByteBuffer) target).getWritableByteBuffer(length);
+      }
+      if (dest != null) {
+        dest.limit(dest.position() + length);
+        buffer.readBytes(dest);
+        ((HasWritableByteBuffer) target).commitWritableByteBuffer(length);
+      } else {
+        buffer.readBytes(target, length);
+      }
+      return length;
+    }
+
+    @Override
+    public InputStream detach() {
+      ReadableBuffer detached = buffer;
+      buffer = EMPTY_BUFFER;
+      return new BufferInputStream(detached);
+    }
+
+    @Override
+    public void close() throws IOException {
+      buffer.close();
+    }
   }
 
   private ReadableBuffers() {}
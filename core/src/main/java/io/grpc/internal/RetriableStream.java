@@ -0,0 +1,818 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Attributes;
+import io.grpc.Compressor;
+import io.grpc.Decompressor;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A logical {@link ClientStream} that is retried or hedged according to a {@link RetryPolicy} or a
+ * {@link HedgingPolicy}.  Each attempt is a real stream created by {@link #newSubstream}.
+ *
+ * <p>All the operations on the stream are recorded in a buffer and replayed on every new attempt,
+ * until the stream is committed to one attempt.  The stream commits when an attempt receives
+ * response headers, when an attempt closes and won't be retried, when the stream is cancelled, or
+ * when the buffer grows beyond the per-RPC or the channel-wide limit.  After the winning attempt
+ * has caught up with the buffer, the buffer is released and the operations go directly to it.
+ */
+abstract class RetriableStream<ReqT> implements ClientStream {
+  private static final Logger log = Logger.getLogger(RetriableStream.class.getName());
+
+  @VisibleForTesting
+  static final Metadata.Key<String> GRPC_PREVIOUS_RPC_ATTEMPTS =
+      Metadata.Key.of("grpc-previous-rpc-attempts", Metadata.ASCII_STRING_MARSHALLER);
+
+  @VisibleForTesting
+  static final Metadata.Key<String> GRPC_RETRY_PUSHBACK_MS =
+      Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final Status CANCELLED_BECAUSE_COMMITTED =
+      Status.CANCELLED.withDescription("Stream thrown away because RetriableStream committed");
+
+  /**
+   * Maximum number of buffered operations replayed to an attempt at a time without holding the
+   * lock.
+   */
+  private static final int DRAIN_CHUNK_SIZE = 128;
+
+  private final MethodDescriptor<ReqT, ?> method;
+  private final Metadata headers;
+  @Nullable
+  private final RetryPolicy retryPolicy;
+  @Nullable
+  private final HedgingPolicy hedgingPolicy;
+  private final ChannelBufferMeter channelBufferUsed;
+  private final long perRpcBufferLimit;
+  @Nullable
+  private final RetryThrottle throttle;
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final StatsTraceContext statsTraceCtx;
+  private final Random random;
+
+  private final Object lock = new Object();
+
+  // Null once the winning attempt has drained it.
+  @GuardedBy("lock")
+  @Nullable
+  private List<BufferEntry> buffer = new ArrayList<BufferEntry>();
+  // Attempts that have been started and not closed yet.
+  @GuardedBy("lock")
+  private final Set<Substream> activeSubstreams = new LinkedHashSet<Substream>();
+  // Attempts that have caught up with the buffer, to which new operations are applied directly.
+  @GuardedBy("lock")
+  private final Set<Substream> drainedSubstreams = new LinkedHashSet<Substream>();
+  @GuardedBy("lock")
+  private int attemptsStarted;
+  @GuardedBy("lock")
+  private long perRpcBufferUsed;
+  @GuardedBy("lock")
+  private boolean bufferLimitExceeded;
+  @GuardedBy("lock")
+  private boolean cancelled;
+  @GuardedBy("lock")
+  @Nullable
+  private Future<?> scheduledAttempt;
+  @GuardedBy("lock")
+  private long nextBackoffNanos;
+
+  // Only written under lock.
+  @Nullable
+  private volatile Substream winningSubstream;
+  // The winning attempt, once it has drained the buffer.  Only written under lock.
+  @Nullable
+  private volatile Substream passThroughSubstream;
+
+  private ClientStreamListener masterListener;
+
+  RetriableStream(MethodDescriptor<ReqT, ?> method, Metadata headers,
+      @Nullable RetryPolicy retryPolicy, @Nullable HedgingPolicy hedgingPolicy,
+      ChannelBufferMeter channelBufferUsed, long perRpcBufferLimit,
+      @Nullable RetryThrottle throttle, ScheduledExecutorService scheduledExecutorService,
+      StatsTraceContext statsTraceCtx, Random random) {
+    checkArgument((retryPolicy == null) != (hedgingPolicy == null),
+        "exactly one of retryPolicy and hedgingPolicy must be set");
+    this.method = checkNotNull(method, "method");
+    this.headers = checkNotNull(headers, "headers");
+    this.retryPolicy = retryPolicy;
+    this.hedgingPolicy = hedgingPolicy;
+    this.channelBufferUsed = checkNotNull(channelBufferUsed, "channelBufferUsed");
+    this.perRpcBufferLimit = perRpcBufferLimit;
+    this.throttle = throttle;
+    this.scheduledExecutorService =
+        checkNotNull(scheduledExecutorService, "scheduledExecutorService");
+    this.statsTraceCtx = checkNotNull(statsTraceCtx, "statsTraceCtx");
+    this.random = checkNotNull(random, "random");
+    if (retryPolicy != null) {
+      nextBackoffNanos = retryPolicy.getInitialBackoffNanos();
+    }
+  }
+
+  /**
+   * Creates a new real stream for an attempt.  The given headers include the number of previous
+   * attempts, if any.  Subclasses pick a transport for every attempt, so that hedged attempts are
+   * likely to go to different backends.
+   */
+  abstract ClientStream newSubstream(Metadata headers);
+
+  private Substream createSubstream(int previousAttempts) {
+    Metadata newHeaders = new Metadata();
+    newHeaders.merge(headers);
+    if (previousAttempts > 0) {
+      newHeaders.put(GRPC_PREVIOUS_RPC_ATTEMPTS, String.valueOf(previousAttempts));
+    }
+    Substream substream = new Substream(statsTraceCtx.elapsedNanos());
+    substream.stream = newSubstream(newHeaders);
+    return substream;
+  }
+
+  /**
+   * Replays the buffered operations to the given attempt, until it catches up with the buffer or
+   * the stream commits to another attempt.
+   */
+  private void drain(Substream substream) {
+    int index = 0;
+    List<BufferEntry> chunk;
+    while (true) {
+      synchronized (lock) {
+        Substream winner = winningSubstream;
+        if (winner != null && winner != substream) {
+          break;
+        }
+        if (buffer == null) {
+          // This attempt won and closed before catching up; the operations left are moot.
+          return;
+        }
+        if (index == buffer.size()) {
+          drainedSubstreams.add(substream);
+          if (winner == substream) {
+            releaseBufferLocked();
+          }
+          return;
+        }
+        chunk = new ArrayList<BufferEntry>(
+            buffer.subList(index, Math.min(index + DRAIN_CHUNK_SIZE, buffer.size())));
+        index += chunk.size();
+      }
+      for (BufferEntry entry : chunk) {
+        entry.runWith(substream);
+      }
+    }
+    // Lost to another attempt.  A stream can only be cancelled once it has been started.
+    if (!substream.started) {
+      substream.stream.start(NoopClientStreamListener.INSTANCE);
+    }
+    substream.stream.cancel(CANCELLED_BECAUSE_COMMITTED);
+  }
+
+  /**
+   * Records the operation and applies it to all the attempts that have drained the buffer.
+   */
+  private void delayOrExecute(BufferEntry entry) {
+    Substream passThrough = passThroughSubstream;
+    if (passThrough != null) {
+      entry.runWith(passThrough);
+      return;
+    }
+    List<Substream> drained;
+    synchronized (lock) {
+      if (buffer != null) {
+        buffer.add(entry);
+      }
+      drained = new ArrayList<Substream>(drainedSubstreams);
+    }
+    for (Substream substream : drained) {
+      entry.runWith(substream);
+    }
+  }
+
+  /**
+   * Commits to the given attempt.  Returns a task that cancels the losing attempts, which must be
+   * run without holding the lock.
+   */
+  @GuardedBy("lock")
+  private Runnable commitLocked(final Substream winner) {
+    winningSubstream = winner;
+    final Future<?> pendingAttempt = scheduledAttempt;
+    scheduledAttempt = null;
+    final List<Substream> losers = new ArrayList<Substream>(drainedSubstreams.size());
+    for (Substream substream : drainedSubstreams) {
+      if (substream != winner) {
+        losers.add(substream);
+      }
+    }
+    // The losers that have not drained the buffer will cancel themselves in drain().
+    drainedSubstreams.removeAll(losers);
+    if (drainedSubstreams.contains(winner)) {
+      releaseBufferLocked();
+    }
+    return new Runnable() {
+      @Override
+      public void run() {
+        if (pendingAttempt != null) {
+          pendingAttempt.cancel(false);
+        }
+        for (Substream loser : losers) {
+          loser.stream.cancel(CANCELLED_BECAUSE_COMMITTED);
+        }
+      }
+    };
+  }
+
+  @GuardedBy("lock")
+  private void releaseBufferLocked() {
+    buffer = null;
+    channelBufferUsed.release(perRpcBufferUsed);
+    perRpcBufferUsed = 0;
+    passThroughSubstream = winningSubstream;
+  }
+
+  /**
+   * Returns any attempt that is still running, preferring the ones that have drained the buffer.
+   */
+  @GuardedBy("lock")
+  @Nullable
+  private Substream anyActiveSubstreamLocked() {
+    if (!drainedSubstreams.isEmpty()) {
+      return drainedSubstreams.iterator().next();
+    }
+    if (!activeSubstreams.isEmpty()) {
+      return activeSubstreams.iterator().next();
+    }
+    return null;
+  }
+
+  /**
+   * Starts a new attempt, whose number has already been reserved by incrementing {@code
+   * attemptsStarted}.
+   */
+  private void startAttempt(int previousAttempts) {
+    Substream substream = createSubstream(previousAttempts);
+    Runnable postCommitTask = null;
+    synchronized (lock) {
+      activeSubstreams.add(substream);
+      if (winningSubstream == null && bufferLimitExceeded) {
+        // The buffer overflowed while no attempt was running.  This attempt is the last one.
+        postCommitTask = commitLocked(substream);
+      }
+    }
+    if (postCommitTask != null) {
+      postCommitTask.run();
+    }
+    drain(substream);
+  }
+
+  @GuardedBy("lock")
+  private void scheduleHedgeLocked(long delayNanos) {
+    scheduledAttempt = scheduledExecutorService.schedule(
+        new LogExceptionRunnable(new Runnable() {
+          @Override
+          public void run() {
+            int previousAttempts;
+            synchronized (lock) {
+              if (winningSubstream != null
+                  || attemptsStarted >= hedgingPolicy.getMaxAttempts()
+                  || (throttle != null && !throttle.isAboveThreshold())) {
+                return;
+              }
+              previousAttempts = attemptsStarted++;
+              if (attemptsStarted < hedgingPolicy.getMaxAttempts()) {
+                scheduleHedgeLocked(hedgingPolicy.getHedgingDelayNanos());
+              }
+            }
+            startAttempt(previousAttempts);
+          }
+        }), delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @GuardedBy("lock")
+  private void scheduleRetryLocked(long delayNanos) {
+    final int previousAttempts = attemptsStarted++;
+    scheduledAttempt = scheduledExecutorService.schedule(
+        new LogExceptionRunnable(new Runnable() {
+          @Override
+          public void run() {
+            startAttempt(previousAttempts);
+          }
+        }), delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public final void start(ClientStreamListener listener) {
+    masterListener = checkNotNull(listener, "listener");
+    synchronized (lock) {
+      buffer.add(new BufferEntry() {
+        @Override
+        public void runWith(Substream substream) {
+          substream.stream.start(new Sublistener(substream));
+          substream.started = true;
+        }
+      });
+      attemptsStarted = 1;
+      if (hedgingPolicy != null) {
+        scheduleHedgeLocked(hedgingPolicy.getHedgingDelayNanos());
+      }
+    }
+    startAttempt(0);
+  }
+
+  @Override
+  public final void cancel(final Status reason) {
+    boolean closeListener = false;
+    Runnable postCommitTask = null;
+    synchronized (lock) {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      if (winningSubstream == null) {
+        Substream candidate = anyActiveSubstreamLocked();
+        if (candidate == null) {
+          // No attempt is in flight, e.g., waiting for the backoff of a retry.
+          Substream noop = new Substream(0);
+          noop.stream = NoopClientStream.INSTANCE;
+          noop.started = true;
+          drainedSubstreams.add(noop);
+          candidate = noop;
+          closeListener = true;
+        }
+        postCommitTask = commitLocked(candidate);
+      }
+    }
+    if (postCommitTask != null) {
+      postCommitTask.run();
+    }
+    if (closeListener) {
+      masterListener.closed(reason, new Metadata());
+      return;
+    }
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.cancel(reason);
+      }
+    });
+  }
+
+  /**
+   * Sends a message on all the running attempts, and buffers it for the later ones.
+   */
+  final void sendMessage(final ReqT message) {
+    Substream passThrough = passThroughSubstream;
+    if (passThrough != null) {
+      passThrough.stream.writeMessage(method.streamRequest(message));
+      return;
+    }
+    long size = messageSize(message);
+    Runnable postCommitTask = null;
+    List<Substream> drained;
+    BufferEntry entry = new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.writeMessage(method.streamRequest(message));
+      }
+    };
+    synchronized (lock) {
+      if (buffer != null) {
+        buffer.add(entry);
+        perRpcBufferUsed += size;
+        boolean withinChannelLimit = channelBufferUsed.addAndCheckLimit(size);
+        if (winningSubstream == null
+            && (perRpcBufferUsed > perRpcBufferLimit || !withinChannelLimit)) {
+          bufferLimitExceeded = true;
+          Substream candidate = anyActiveSubstreamLocked();
+          if (candidate != null) {
+            postCommitTask = commitLocked(candidate);
+          }
+        }
+      }
+      drained = new ArrayList<Substream>(drainedSubstreams);
+    }
+    if (postCommitTask != null) {
+      postCommitTask.run();
+    }
+    for (Substream substream : drained) {
+      entry.runWith(substream);
+    }
+  }
+
+  private long messageSize(ReqT message) {
+    InputStream stream = method.streamRequest(message);
+    try {
+      if (stream instanceof KnownLength) {
+        try {
+          return stream.available();
+        } catch (IOException e) {
+          log.log(Level.FINE, "Unable to get the size of the message", e);
+        }
+      }
+      // The size can't be known without serializing the message, thus don't buffer it.
+      return perRpcBufferLimit + 1;
+    } finally {
+      GrpcUtil.closeQuietly(stream);
+    }
+  }
+
+  /**
+   * Not supported, {@link #sendMessage} must be used instead, so that the message can be
+   * serialized again for every attempt.
+   */
+  @Override
+  public final void writeMessage(InputStream message) {
+    throw new IllegalStateException("RetriableStream.writeMessage() should not be called directly");
+  }
+
+  @Override
+  public final void request(final int numMessages) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.request(numMessages);
+      }
+    });
+  }
+
+  @Override
+  public final void flush() {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.flush();
+      }
+    });
+  }
+
+  @Override
+  public final void halfClose() {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.halfClose();
+      }
+    });
+  }
+
+  @Override
+  public final void setAuthority(final String authority) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setAuthority(authority);
+      }
+    });
+  }
+
+  @Override
+  public final void setCompressor(final Compressor compressor) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setCompressor(compressor);
+      }
+    });
+  }
+
+  @Override
+  public final void setDecompressor(final Decompressor decompressor) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setDecompressor(decompressor);
+      }
+    });
+  }
+
+  @Override
+  public final void setMessageCompression(final boolean enable) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setMessageCompression(enable);
+      }
+    });
+  }
+
+  @Override
+  public final void setMaxInboundMessageSize(final int maxSize) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setMaxInboundMessageSize(maxSize);
+      }
+    });
+  }
+
+  @Override
+  public final void setMaxOutboundMessageSize(final int maxSize) {
+    delayOrExecute(new BufferEntry() {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setMaxOutboundMessageSize(maxSize);
+      }
+    });
+  }
+
+  @Override
+  public final boolean isReady() {
+    Substream winner = winningSubstream;
+    if (winner != null) {
+      return winner.stream.isReady();
+    }
+    List<Substream> drained;
+    synchronized (lock) {
+      drained = new ArrayList<Substream>(drainedSubstreams);
+    }
+    // Don't call into the streams with the lock held, as they may have their own locks.
+    for (Substream substream : drained) {
+      if (substream.stream.isReady()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public final Attributes getAttributes() {
+    Substream winner = winningSubstream;
+    if (winner != null) {
+      return winner.stream.getAttributes();
+    }
+    return Attributes.EMPTY;
+  }
+
+  @VisibleForTesting
+  final int getAttemptsStarted() {
+    synchronized (lock) {
+      return attemptsStarted;
+    }
+  }
+
+  /**
+   * Returns the delay before the next retry, or -1 if the RPC must not be retried.
+   */
+  @GuardedBy("lock")
+  private long retryDelayNanosLocked(Status status, Metadata trailers) {
+    if (!retryPolicy.getRetryableStatusCodes().contains(status.getCode())) {
+      return -1;
+    }
+    boolean aboveThreshold =
+        throttle == null || throttle.onQualifiedFailureThenCheckIsAboveThreshold();
+    if (!aboveThreshold || attemptsStarted >= retryPolicy.getMaxAttempts()
+        || bufferLimitExceeded) {
+      return -1;
+    }
+    Long pushback = pushbackNanos(trailers);
+    if (pushback != null) {
+      // The server asked for a specific delay, after which the backoff starts over.
+      nextBackoffNanos = retryPolicy.getInitialBackoffNanos();
+      return pushback;
+    }
+    long delayNanos = (long) (random.nextDouble() * nextBackoffNanos);
+    nextBackoffNanos = Math.min(
+        (long) (nextBackoffNanos * retryPolicy.getBackoffMultiplier()),
+        retryPolicy.getMaxBackoffNanos());
+    return delayNanos;
+  }
+
+  /**
+   * Returns the delay before the next hedged attempt after a non-fatal failure, or -1 if no more
+   * attempts are allowed.
+   */
+  @GuardedBy("lock")
+  private long hedgeDelayNanosLocked(Metadata trailers) {
+    boolean aboveThreshold =
+        throttle == null || throttle.onQualifiedFailureThenCheckIsAboveThreshold();
+    if (!aboveThreshold || attemptsStarted >= hedgingPolicy.getMaxAttempts()
+        || bufferLimitExceeded) {
+      return -1;
+    }
+    Long pushback = pushbackNanos(trailers);
+    return pushback == null ? 0 : pushback;
+  }
+
+  /**
+   * Returns the pushback delay requested by the server, null if there is none, or -1 if the server
+   * asked not to retry.
+   */
+  @Nullable
+  private static Long pushbackNanos(Metadata trailers) {
+    String pushbackStr = trailers.get(GRPC_RETRY_PUSHBACK_MS);
+    if (pushbackStr == null) {
+      return null;
+    }
+    try {
+      long pushbackMillis = Long.parseLong(pushbackStr);
+      return pushbackMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(pushbackMillis);
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  private interface BufferEntry {
+    /** Replays the buffered operation on the given attempt. */
+    void runWith(Substream substream);
+  }
+
+  /**
+   * A ClientStreamListener that forwards the events of the winning attempt to the master listener,
+   * and decides whether a closed attempt is retried or hedged.
+   */
+  private final class Sublistener implements ClientStreamListener {
+    final Substream substream;
+
+    Sublistener(Substream substream) {
+      this.substream = substream;
+    }
+
+    @Override
+    public void headersRead(Metadata headers) {
+      Runnable postCommitTask = null;
+      synchronized (lock) {
+        if (winningSubstream == null) {
+          // The first attempt that receives a response wins.
+          postCommitTask = commitLocked(substream);
+        }
+      }
+      if (postCommitTask != null) {
+        postCommitTask.run();
+      }
+      if (winningSubstream == substream) {
+        masterListener.headersRead(headers);
+      }
+    }
+
+    @Override
+    public void messageRead(InputStream message) {
+      if (winningSubstream == substream) {
+        masterListener.messageRead(message);
+      } else {
+        GrpcUtil.closeQuietly(message);
+      }
+    }
+
+    @Override
+    public void onReady() {
+      Substream winner = winningSubstream;
+      if (winner == null || winner == substream) {
+        masterListener.onReady();
+      }
+    }
+
+    @Override
+    public void closed(Status status, Metadata trailers) {
+      statsTraceCtx.attemptEnded(status, substream.startNanos);
+      Runnable postCommitTask = null;
+      synchronized (lock) {
+        activeSubstreams.remove(substream);
+        if (winningSubstream == null) {
+          drainedSubstreams.remove(substream);
+          if (retryPolicy != null) {
+            long delayNanos = retryDelayNanosLocked(status, trailers);
+            if (delayNanos >= 0) {
+              scheduleRetryLocked(delayNanos);
+              return;
+            }
+          } else if (hedgingPolicy.getNonFatalStatusCodes().contains(status.getCode())) {
+            if (!activeSubstreams.isEmpty()) {
+              // Let the other attempts carry on.
+              return;
+            }
+            long delayNanos = hedgeDelayNanosLocked(trailers);
+            if (delayNanos >= 0) {
+              if (scheduledAttempt != null) {
+                scheduledAttempt.cancel(false);
+              }
+              scheduleHedgeLocked(delayNanos);
+              return;
+            }
+          }
+          postCommitTask = commitLocked(substream);
+          if (buffer != null) {
+            // The attempt is over, thus it will never drain the buffer.
+            releaseBufferLocked();
+          }
+        }
+      }
+      if (postCommitTask != null) {
+        postCommitTask.run();
+      }
+      if (winningSubstream == substream) {
+        if (throttle != null && status.isOk()) {
+          throttle.onSuccess();
+        }
+        masterListener.closed(status, trailers);
+      }
+    }
+  }
+
+  private static final class Substream {
+    // Set right after the Substream is created.
+    ClientStream stream;
+    final long startNanos;
+    // Only accessed from the thread draining the buffer to this attempt.
+    boolean started;
+
+    Substream(long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+
+  private static final class NoopClientStreamListener implements ClientStreamListener {
+    static final NoopClientStreamListener INSTANCE = new NoopClientStreamListener();
+
+    @Override
+    public void headersRead(Metadata headers) {}
+
+    @Override
+    public void messageRead(InputStream message) {
+      GrpcUtil.closeQuietly(message);
+    }
+
+    @Override
+    public void onReady() {}
+
+    @Override
+    public void closed(Status status, Metadata trailers) {}
+  }
+
+  /**
+   * Tracks the total size of the messages buffered for retries across all the RPCs of a channel.
+   */
+  static final class ChannelBufferMeter {
+    private final long limit;
+    private final AtomicLong bufferUsed = new AtomicLong();
+
+    ChannelBufferMeter(long limit) {
+      checkArgument(limit >= 0, "limit must not be negative");
+      this.limit = limit;
+    }
+
+    /**
+     * Adds the given number of bytes, and returns whether the total is still within the limit.
+     */
+    boolean addAndCheckLimit(long bytes) {
+      return bufferUsed.addAndGet(bytes) <= limit;
+    }
+
+    void release(long bytes) {
+      bufferUsed.addAndGet(-bytes);
+    }
+
+    @VisibleForTesting
+    long getBufferUsed() {
+      return bufferUsed.get();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import io.grpc.CallOptions;
+import io.grpc.Status;
+import java.util.Set;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Policy for retrying a failed RPC.  An RPC whose {@link CallOptions} carries a policy under {@link
+ * #KEY} is transparently re-attempted when it fails with one of the {@link
+ * #getRetryableStatusCodes retryable status codes}, as long as no response headers have been
+ * received yet.
+ */
+@Immutable
+public final class RetryPolicy {
+  /**
+   * The {@link CallOptions} key under which the retry policy of a call is stored.
+   */
+  public static final CallOptions.Key<RetryPolicy> KEY =
+      CallOptions.Key.of("io.grpc.internal.RetryPolicy", null);
+
+  private final int maxAttempts;
+  private final long initialBackoffNanos;
+  private final long maxBackoffNanos;
+  private final double backoffMultiplier;
+  private final Set<Status.Code> retryableStatusCodes;
+
+  /**
+   * Creates a retry policy.
+   *
+   * @param maxAttempts the maximum number of attempts including the original one, must be greater
+   *     than one
+   * @param initialBackoffNanos the upper bound of the randomized delay before the first retry
+   * @param maxBackoffNanos the cap of the upper bound of the randomized delay
+   * @param backoffMultiplier the factor the upper bound grows by after each retry
+   * @param retryableStatusCodes the status codes that allow the RPC to be retried
+   */
+  public RetryPolicy(int maxAttempts, long initialBackoffNanos, long maxBackoffNanos,
+      double backoffMultiplier, Set<Status.Code> retryableStatusCodes) {
+    checkArgument(maxAttempts > 1, "maxAttempts must be greater than 1");
+    checkArgument(initialBackoffNanos > 0, "initialBackoffNanos must be positive");
+    checkArgument(maxBackoffNanos >= initialBackoffNanos,
+        "maxBackoffNanos must not be smaller than initialBackoffNanos");
+    checkArgument(backoffMultiplier > 0, "backoffMultiplier must be positive");
+    checkNotNull(retryableStatusCodes, "retryableStatusCodes");
+    checkArgument(!retryableStatusCodes.contains(Status.Code.OK), "OK is not retryable");
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffNanos = initialBackoffNanos;
+    this.maxBackoffNanos = maxBackoffNanos;
+    this.backoffMultiplier = backoffMultiplier;
+    this.retryableStatusCodes = ImmutableSet.copyOf(retryableStatusCodes);
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getInitialBackoffNanos() {
+    return initialBackoffNanos;
+  }
+
+  public long getMaxBackoffNanos() {
+    return maxBackoffNanos;
+  }
+
+  public double getBackoffMultiplier() {
+    return backoffMultiplier;
+  }
+
+  public Set<Status.Code> getRetryableStatusCodes() {
+    return retryableStatusCodes;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof RetryPolicy)) {
+      return false;
+    }
+    RetryPolicy that = (RetryPolicy) other;
+    return maxAttempts == that.maxAttempts
+        && initialBackoffNanos == that.initialBackoffNanos
+        && maxBackoffNanos == that.maxBackoffNanos
+        && Double.compare(backoffMultiplier, that.backoffMultiplier) == 0
+        && retryableStatusCodes.equals(that.retryableStatusCodes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(maxAttempts, initialBackoffNanos, maxBackoffNanos, backoffMultiplier,
+        retryableStatusCodes);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("maxAttempts", maxAttempts)
+        .add("initialBackoffNanos", initialBackoffNanos)
+        .add("maxBackoffNanos", maxBackoffNanos)
+        .add("backoffMultiplier", backoffMultiplier)
+        .add("retryableStatusCodes", retryableStatusCodes)
+        .toString();
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A channel-wide token bucket that stops retries and hedging when most of the recent RPCs of the
+ * channel have failed, so that a struggling backend doesn't get hit by a retry storm.
+ *
+ * <p>The bucket starts full with {@code maxTokens} tokens.  Every failed attempt that would qualify
+ * for a retry or a new hedged attempt takes one token, and every successful RPC puts back {@code
+ * tokenRatio} tokens.  New attempts are only allowed while more than half of the tokens are left.
+ */
+@ThreadSafe
+final class RetryThrottle {
+  /**
+   * Token counts are kept in thousandths of a token, so that the fractional {@code tokenRatio} can
+   * be applied with integer arithmetic.
+   */
+  private static final int THREE_DECIMAL_PLACES_SCALE_UP = 1000;
+
+  private final int maxTokens;
+  private final int threshold;
+  private final int tokenRatio;
+  private final AtomicInteger tokenCount = new AtomicInteger();
+
+  RetryThrottle(float maxTokens, float tokenRatio) {
+    checkArgument(maxTokens > 0, "maxTokens must be positive");
+    checkArgument(tokenRatio > 0, "tokenRatio must be positive");
+    this.maxTokens = (int) (maxTokens * THREE_DECIMAL_PLACES_SCALE_UP);
+    this.threshold = this.maxTokens / 2;
+    this.tokenRatio = (int) (tokenRatio * THREE_DECIMAL_PLACES_SCALE_UP);
+    tokenCount.set(this.maxTokens);
+  }
+
+  /**
+   * Returns whether new attempts are currently allowed.
+   */
+  boolean isAboveThreshold() {
+    return tokenCount.get() > threshold;
+  }
+
+  /**
+   * Takes a token for a failed attempt, and returns whether a new attempt is allowed afterwards.
+   */
+  boolean onQualifiedFailureThenCheckIsAboveThreshold() {
+    while (true) {
+      int currentCount = tokenCount.get();
+      if (currentCount == 0) {
+        return false;
+      }
+      int decremented = currentCount - THREE_DECIMAL_PLACES_SCALE_UP;
+      boolean updated = tokenCount.compareAndSet(currentCount, Math.max(decremented, 0));
+      if (updated) {
+        return decremented > threshold;
+      }
+    }
+  }
+
+  /**
+   * Puts back a fraction of a token for a successful RPC.
+   */
+  void onSuccess() {
+    while (true) {
+      int currentCount = tokenCount.get();
+      if (currentCount == maxTokens) {
+        return;
+      }
+      int incremented = currentCount + tokenRatio;
+      boolean updated = tokenCount.compareAndSet(currentCount, Math.min(incremented, maxTokens));
+      if (updated) {
+        return;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getTokenCount() {
+    return tokenCount.get();
+  }
+}
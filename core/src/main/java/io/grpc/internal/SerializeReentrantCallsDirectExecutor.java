@@ -52,7 +52,10 @@ class SerializeReentrantCallsDirectExecutor implements Executor {
       Logger.getLogger(SerializeReentrantCallsDirectExecutor.class.getName());
 
   private boolean executing;
-  // Lazily initialized if a reentrant call is detected.
+  // The first task queued by a reentrant call, which is usually the only one. It is always older
+  // than the tasks in taskQueue.
+  private Runnable queuedTask;
+  // Lazily initialized if a second reentrant call is detected.
   private ArrayDeque<Runnable> taskQueue;
 
   @Override
@@ -65,9 +68,7 @@ class SerializeReentrantCallsDirectExecutor implements Executor {
       } catch (Throwable t) {
         log.log(Level.SEVERE, "Exception while executing runnable " + task, t);
       } finally {
-        if (taskQueue != null) {
-          completeQueuedTasks();
-        }
+        completeQueuedTasks();
         executing = false;
       }
     } else {
@@ -75,9 +76,35 @@ class SerializeReentrantCallsDirectExecutor implements Executor {
     }
   }
 
+  /**
+   * Starts executing a task inline, for callers that want to avoid allocating a {@link Runnable}
+   * on the fast path. Returns {@code false} if this is a reentrant call, in which case the task
+   * must be passed to {@link #execute} instead, to be queued. Otherwise the caller must run the
+   * task, catching its exceptions like {@link #execute} does, and then call {@link #exitInline}.
+   */
+  boolean enterInline() {
+    if (executing) {
+      return false;
+    }
+    executing = true;
+    return true;
+  }
+
+  /**
+   * Completes an inline execution started by {@link #enterInline}, running the tasks that were
+   * queued meanwhile.
+   */
+  void exitInline() {
+    try {
+      completeQueuedTasks();
+    } finally {
+      executing = false;
+    }
+  }
+
   private void completeQueuedTasks() {
-    Runnable task = null;
-    while ((task = taskQueue.poll()) != null) {
+    Runnable task;
+    while ((task = pollQueuedTask()) != null) {
       try {
         task.run();
       } catch (Throwable t) {
@@ -87,7 +114,20 @@ class SerializeReentrantCallsDirectExecutor implements Executor {
     }
   }
 
+  private Runnable pollQueuedTask() {
+    Runnable task = queuedTask;
+    if (task != null) {
+      queuedTask = null;
+      return task;
+    }
+    return taskQueue == null ? null : taskQueue.poll();
+  }
+
   private void enqueue(Runnable r) {
+    if (queuedTask == null && (taskQueue == null || taskQueue.isEmpty())) {
+      queuedTask = r;
+      return;
+    }
     if (taskQueue == null) {
       taskQueue = new ArrayDeque<Runnable>(4);
     }
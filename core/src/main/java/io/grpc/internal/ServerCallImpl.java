@@ -38,7 +38,6 @@ import static io.grpc.internal.GrpcUtil.ACCEPT_ENCODING_SPLITTER;
 import static io.grpc.internal.GrpcUtil.MESSAGE_ACCEPT_ENCODING_KEY;
 import static io.grpc.internal.GrpcUtil.MESSAGE_ENCODING_KEY;
 
-import com.google.common.annotations.VisibleForTesting;
 import io.grpc.Attributes;
 import io.grpc.Codec;
 import io.grpc.Compressor;
@@ -56,7 +55,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 
-final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
+/**
+ * The call given to the application, which is also the listener of its stream once the
+ * application has started it, see {@link #newServerStreamListener}. This saves allocating a
+ * separate listener for each call.
+ */
+final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT>
+    implements ServerStreamListener {
   private final ServerStream stream;
   private final MethodDescriptor<ReqT, RespT> method;
   private final Context.CancellableContext context;
@@ -70,6 +75,9 @@ final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
   private boolean sendHeadersCalled;
   private boolean closeCalled;
   private Compressor compressor;
+  // Listener state, only accessed from the call executor.
+  private ServerCall.Listener<ReqT> listener;
+  private boolean messageReceived;
 
   ServerCallImpl(ServerStream stream, MethodDescriptor<ReqT, RespT> method,
       Metadata inboundHeaders, Context.CancellableContext context, StatsTraceContext statsTraceCtx,
@@ -187,8 +195,14 @@ final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
     return cancelled;
   }
 
+  /**
+   * Returns the listener of the stream, which delivers its events to {@code listener}. Can only be
+   * called once.
+   */
   ServerStreamListener newServerStreamListener(ServerCall.Listener<ReqT> listener) {
-    return new ServerStreamListenerImpl<ReqT>(this, listener, context, statsTraceCtx);
+    checkState(this.listener == null, "listener already set");
+    this.listener = checkNotNull(listener, "listener must not be null");
+    return this;
   }
 
   @Override
@@ -201,94 +215,75 @@ final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
     return method;
   }
 
-  /**
-   * All of these callbacks are assumed to called on an application thread, and the caller is
-   * responsible for handling thrown exceptions.
-   */
-  @VisibleForTesting
-  static final class ServerStreamListenerImpl<ReqT> implements ServerStreamListener {
-    private final ServerCallImpl<ReqT, ?> call;
-    private final ServerCall.Listener<ReqT> listener;
-    private final Context.CancellableContext context;
-    private final StatsTraceContext statsTraceCtx;
-    private boolean messageReceived;
+  // ServerStreamListener methods. All of these callbacks are assumed to be called on an
+  // application thread, and the caller is responsible for handling thrown exceptions.
 
-    public ServerStreamListenerImpl(
-        ServerCallImpl<ReqT, ?> call, ServerCall.Listener<ReqT> listener,
-        Context.CancellableContext context, StatsTraceContext statsTraceCtx) {
-      this.call = checkNotNull(call, "call");
-      this.listener = checkNotNull(listener, "listener must not be null");
-      this.context = checkNotNull(context, "context");
-      this.statsTraceCtx = checkNotNull(statsTraceCtx, "statsTraceCtx");
-    }
+  @SuppressWarnings("Finally") // The code avoids suppressing the exception thrown from try
+  @Override
+  public void messageRead(final InputStream message) {
+    Throwable t = null;
+    try {
+      if (cancelled) {
+        return;
+      }
+      // Special case for unary calls.
+      if (messageReceived && method.getType() == MethodType.UNARY) {
+        stream.close(Status.INTERNAL.withDescription(
+                "More than one request messages for unary call or server streaming call"),
+            new Metadata());
+        return;
+      }
+      messageReceived = true;
 
-    @SuppressWarnings("Finally") // The code avoids suppressing the exception thrown from try
-    @Override
-    public void messageRead(final InputStream message) {
-      Throwable t = null;
+      listener.onMessage(method.parseRequest(message));
+    } catch (Throwable e) {
+      t = e;
+    } finally {
       try {
-        if (call.cancelled) {
-          return;
-        }
-        // Special case for unary calls.
-        if (messageReceived && call.method.getType() == MethodType.UNARY) {
-          call.stream.close(Status.INTERNAL.withDescription(
-                  "More than one request messages for unary call or server streaming call"),
-              new Metadata());
-          return;
-        }
-        messageReceived = true;
-
-        listener.onMessage(call.method.parseRequest(message));
-      } catch (Throwable e) {
-        t = e;
+        message.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
       } finally {
-        try {
-          message.close();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        } finally {
-          if (t != null) {
-            // TODO(carl-mastrangelo): Maybe log e here.
-            MoreThrowables.throwIfUnchecked(t);
-            throw new RuntimeException(t);
-          }
+        if (t != null) {
+          // TODO(carl-mastrangelo): Maybe log e here.
+          MoreThrowables.throwIfUnchecked(t);
+          throw new RuntimeException(t);
         }
       }
     }
+  }
 
-    @Override
-    public void halfClosed() {
-      if (call.cancelled) {
-        return;
-      }
-
-      listener.onHalfClose();
+  @Override
+  public void halfClosed() {
+    if (cancelled) {
+      return;
     }
 
-    @Override
-    public void closed(Status status) {
-      try {
-        statsTraceCtx.callEnded(status);
-        if (status.isOk()) {
-          listener.onComplete();
-        } else {
-          call.cancelled = true;
-          listener.onCancel();
-        }
-      } finally {
-        // Cancel context after delivering RPC closure notification to allow the application to
-        // clean up and update any state based on whether onComplete or onCancel was called.
-        context.cancel(null);
+    listener.onHalfClose();
+  }
+
+  @Override
+  public void closed(Status status) {
+    try {
+      statsTraceCtx.callEnded(status);
+      if (status.isOk()) {
+        listener.onComplete();
+      } else {
+        cancelled = true;
+        listener.onCancel();
       }
+    } finally {
+      // Cancel context after delivering RPC closure notification to allow the application to
+      // clean up and update any state based on whether onComplete or onCancel was called.
+      context.cancel(null);
     }
+  }
 
-    @Override
-    public void onReady() {
-      if (call.cancelled) {
-        return;
-      }
-      listener.onReady();
+  @Override
+  public void onReady() {
+    if (cancelled) {
+      return;
     }
+    listener.onReady();
   }
 }
@@ -64,6 +64,9 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 /**
@@ -81,6 +84,7 @@ import javax.annotation.concurrent.GuardedBy;
  * server stops servicing new requests and waits for all connections to terminate.
  */
 public final class ServerImpl extends io.grpc.Server implements WithLogId {
+  private static final Logger log = Logger.getLogger(ServerImpl.class.getName());
   private static final ServerStreamListener NOOP_LISTENER = new NoopListener();
 
   private final LogId logId = LogId.allocate(getClass().getName());
@@ -408,45 +412,68 @@ public final class ServerImpl extends io.grpc.Server implements WithLogId {
       final JumpToApplicationThreadServerStreamListener jumpListener
           = new JumpToApplicationThreadServerStreamListener(wrappedExecutor, stream, context);
       stream.setListener(jumpListener);
+      if (wrappedExecutor instanceof SerializeReentrantCallsDirectExecutor) {
+        // The executor was just created, so this can't be reentrant. Run inline to avoid allocating
+        // a task, with the same context and exception handling as the ContextRunnable below.
+        SerializeReentrantCallsDirectExecutor directExecutor =
+            (SerializeReentrantCallsDirectExecutor) wrappedExecutor;
+        checkState(directExecutor.enterInline(), "executor already in use");
+        Context previous = context.attach();
+        try {
+          startCallInContext(stream, methodName, headers, context, jumpListener, statsTraceCtx);
+        } catch (Throwable t) {
+          log.log(Level.SEVERE, "Exception while starting call " + methodName, t);
+        } finally {
+          context.detach(previous);
+          directExecutor.exitInline();
+        }
+        return;
+      }
       // Run in wrappedExecutor so jumpListener.setListener() is called before any callbacks
       // are delivered, including any errors. Callbacks can still be triggered, but they will be
       // queued.
       wrappedExecutor.execute(new ContextRunnable(context) {
           @Override
           public void runInContext() {
-            ServerStreamListener listener = NOOP_LISTENER;
-            try {
-              ServerMethodDefinition<?, ?> method = registry.lookupMethod(methodName);
-              if (method == null) {
-                method = fallbackRegistry.lookupMethod(methodName, stream.getAuthority());
-              }
-              if (method == null) {
-                Status status = Status.UNIMPLEMENTED.withDescription(
-                    "Method not found: " + methodName);
-                stream.close(status, new Metadata());
-                // TODO(zhangkun83): this would allow a misbehaving client to blow up the server
-                // in-memory stats storage by sending large number of distinct unimplemented method
-                // names. (https://github.com/grpc/grpc-java/issues/2285)
-                statsTraceCtx.callEnded(status);
-                context.cancel(null);
-                return;
-              }
-              listener = startCall(stream, methodName, method, headers, context);
-            } catch (RuntimeException e) {
-              stream.close(Status.fromThrowable(e), new Metadata());
-              context.cancel(null);
-              throw e;
-            } catch (Error e) {
-              stream.close(Status.fromThrowable(e), new Metadata());
-              context.cancel(null);
-              throw e;
-            } finally {
-              jumpListener.setListener(listener);
-            }
+            startCallInContext(stream, methodName, headers, context, jumpListener, statsTraceCtx);
           }
         });
     }
 
+    private void startCallInContext(ServerStream stream, String methodName, Metadata headers,
+        Context.CancellableContext context,
+        JumpToApplicationThreadServerStreamListener jumpListener, StatsTraceContext statsTraceCtx) {
+      ServerStreamListener listener = NOOP_LISTENER;
+      try {
+        ServerMethodDefinition<?, ?> method = registry.lookupMethod(methodName);
+        if (method == null) {
+          method = fallbackRegistry.lookupMethod(methodName, stream.getAuthority());
+        }
+        if (method == null) {
+          Status status = Status.UNIMPLEMENTED.withDescription(
+              "Method not found: " + methodName);
+          stream.close(status, new Metadata());
+          // TODO(zhangkun83): this would allow a misbehaving client to blow up the server
+          // in-memory stats storage by sending large number of distinct unimplemented method
+          // names. (https://github.com/grpc/grpc-java/issues/2285)
+          statsTraceCtx.callEnded(status);
+          context.cancel(null);
+          return;
+        }
+        listener = startCall(stream, methodName, method, headers, context);
+      } catch (RuntimeException e) {
+        stream.close(Status.fromThrowable(e), new Metadata());
+        context.cancel(null);
+        throw e;
+      } catch (Error e) {
+        stream.close(Status.fromThrowable(e), new Metadata());
+        context.cancel(null);
+        throw e;
+      } finally {
+        jumpListener.setListener(listener);
+      }
+    }
+
     private Context.CancellableContext createContext(
         final ServerStream stream, Metadata headers) {
       Long timeoutNanos = headers.get(TIMEOUT_KEY);
@@ -523,16 +550,29 @@ public final class ServerImpl extends io.grpc.Server implements WithLogId {
    * exceptions.
    */
   @VisibleForTesting
-  static class JumpToApplicationThreadServerStreamListener implements ServerStreamListener {
+  static class JumpToApplicationThreadServerStreamListener
+      implements ServerStreamListener, Runnable {
+    private static final int MESSAGE_READ = 0;
+    private static final int HALF_CLOSED = 1;
+    private static final int CLOSED = 2;
+    private static final int ON_READY = 3;
+
     private final Executor callExecutor;
+    /** {@code callExecutor} if it can run callbacks inline, {@code null} otherwise. */
+    @Nullable
+    private final SerializeReentrantCallsDirectExecutor directExecutor;
     private final Context.CancellableContext context;
     private final ServerStream stream;
     // Only accessed from callExecutor.
     private ServerStreamListener listener;
+    // Set before this is scheduled to deliver closed(), which is called at most once.
+    private Status closedStatus;
 
     public JumpToApplicationThreadServerStreamListener(Executor executor,
         ServerStream stream, Context.CancellableContext context) {
       this.callExecutor = executor;
+      this.directExecutor = executor instanceof SerializeReentrantCallsDirectExecutor
+          ? (SerializeReentrantCallsDirectExecutor) executor : null;
       this.stream = stream;
       this.context = context;
     }
@@ -560,73 +600,103 @@ public final class ServerImpl extends io.grpc.Server implements WithLogId {
     }
 
     @Override
-    public void messageRead(final InputStream message) {
-      callExecutor.execute(new ContextRunnable(context) {
-        @Override
-        public void runInContext() {
-          try {
-            getListener().messageRead(message);
-          } catch (RuntimeException e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
-          } catch (Error e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
-          }
-        }
-      });
+    public void messageRead(InputStream message) {
+      dispatch(MESSAGE_READ, message);
     }
 
     @Override
     public void halfClosed() {
-      callExecutor.execute(new ContextRunnable(context) {
-        @Override
-        public void runInContext() {
-          try {
-            getListener().halfClosed();
-          } catch (RuntimeException e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
-          } catch (Error e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
-          }
-        }
-      });
+      dispatch(HALF_CLOSED, null);
     }
 
     @Override
-    public void closed(final Status status) {
-      callExecutor.execute(new ContextRunnable(context) {
-        @Override
-        public void runInContext() {
-          try {
-            getListener().closed(status);
-          } finally {
-            // Regardless of the status code we cancel the context so that listeners
-            // are aware that the call is done.
-            context.cancel(status.getCause());
-          }
-        }
-      });
+    public void closed(Status status) {
+      dispatch(CLOSED, status);
     }
 
     @Override
     public void onReady() {
+      dispatch(ON_READY, null);
+    }
+
+    /**
+     * Delivers the event in {@code callExecutor}. On the direct executor, non-reentrant events
+     * are delivered inline, without allocating a task for them.
+     */
+    private void dispatch(final int event, @Nullable final Object arg) {
+      if (directExecutor != null && directExecutor.enterInline()) {
+        Context previous = context.attach();
+        try {
+          deliver(event, arg);
+        } catch (Throwable t) {
+          // Like SerializeReentrantCallsDirectExecutor, don't propagate to the transport
+          log.log(Level.SEVERE, "Exception while delivering stream event " + event, t);
+        } finally {
+          context.detach(previous);
+          directExecutor.exitInline();
+        }
+        return;
+      }
+      if (event == CLOSED) {
+        // The listener doubles as the task delivering closed(), so it doesn't need allocating
+        closedStatus = (Status) arg;
+        callExecutor.execute(this);
+        return;
+      }
       callExecutor.execute(new ContextRunnable(context) {
-        @Override
-        public void runInContext() {
-          try {
-            getListener().onReady();
-          } catch (RuntimeException e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
-          } catch (Error e) {
-            internalClose(Status.fromThrowable(e), new Metadata());
-            throw e;
+          @Override
+          public void runInContext() {
+            deliver(event, arg);
           }
+        });
+    }
+
+    /**
+     * Delivers {@link #closed} in {@code callExecutor}.
+     */
+    @Override
+    public void run() {
+      Context previous = context.attach();
+      try {
+        deliver(CLOSED, closedStatus);
+      } finally {
+        context.detach(previous);
+      }
+    }
+
+    private void deliver(int event, @Nullable Object arg) {
+      if (event == CLOSED) {
+        Status status = (Status) arg;
+        try {
+          getListener().closed(status);
+        } finally {
+          // Regardless of the status code we cancel the context so that listeners
+          // are aware that the call is done.
+          context.cancel(status.getCause());
         }
-      });
+        return;
+      }
+      try {
+        switch (event) {
+          case MESSAGE_READ:
+            getListener().messageRead((InputStream) arg);
+            break;
+          case HALF_CLOSED:
+            getListener().halfClosed();
+            break;
+          case ON_READY:
+            getListener().onReady();
+            break;
+          default:
+            throw new AssertionError("Unknown event " + event);
+        }
+      } catch (RuntimeException e) {
+        internalClose(Status.fromThrowable(e), new Metadata());
+        throw e;
+      } catch (Error e) {
+        internalClose(Status.fromThrowable(e), new Metadata());
+        throw e;
+      }
     }
   }
 }
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import io.grpc.CallOptions;
+import io.grpc.Deadline;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A service config compiled from its JSON form.  The method configs are indexed by full method
+ * name and by service name, so that applying them to a call is a couple of hash lookups.
+ *
+ * <p>The JSON form is documented in the gRPC service config specification.  For example:
+ *
+ * <pre>
+ * {
+ *   "loadBalancingPolicy": "round_robin",
+ *   "methodConfig": [
+ *     {
+ *       "name": [ { "service": "foo.Bar", "method": "Baz" }, { "service": "foo.Qux" } ],
+ *       "timeout": "1.5s",
+ *       "waitForReady": true,
+ *       "maxRequestMessageBytes": 1024,
+ *       "maxResponseMessageBytes": 4194304,
+ *       "compression": "gzip",
+ *       "retryPolicy": {
+ *         "maxAttempts": 3,
+ *         "initialBackoff": "0.1s",
+ *         "maxBackoff": "1s",
+ *         "backoffMultiplier": 2,
+ *         "retryableStatusCodes": [ "UNAVAILABLE" ]
+ *       }
+ *     }
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>A method config with a {@code "hedgingPolicy"} ({@code maxAttempts}, {@code hedgingDelay}
+ * and {@code nonFatalStatusCodes}) is hedged instead.  {@code "compression"} is specific to this
+ * implementation.  The {@code "loadBalancingPolicy"} is left to
+ * {@link AutoConfiguredLoadBalancerFactory}.
+ */
+@Immutable
+final class ServiceConfig {
+  static final ServiceConfig EMPTY = new ServiceConfig(
+      Collections.<String, MethodInfo>emptyMap(), Collections.<String, MethodInfo>emptyMap());
+
+  private final Map<String, MethodInfo> serviceMethodMap;
+  private final Map<String, MethodInfo> serviceMap;
+
+  private ServiceConfig(
+      Map<String, MethodInfo> serviceMethodMap, Map<String, MethodInfo> serviceMap) {
+    this.serviceMethodMap = serviceMethodMap;
+    this.serviceMap = serviceMap;
+  }
+
+  /**
+   * Compiles the service config.
+   *
+   * @throws IllegalArgumentException if the service config is malformed
+   */
+  static ServiceConfig parse(Map<String, Object> serviceConfig) {
+    checkNotNull(serviceConfig, "serviceConfig");
+    Map<String, MethodInfo> serviceMethodMap = new HashMap<String, MethodInfo>();
+    Map<String, MethodInfo> serviceMap = new HashMap<String, MethodInfo>();
+    List<Map<String, Object>> methodConfigs = getObjectList(serviceConfig, "methodConfig");
+    if (methodConfigs != null) {
+      for (Map<String, Object> methodConfig : methodConfigs) {
+        MethodInfo info = MethodInfo.parse(methodConfig);
+        List<Map<String, Object>> names = getObjectList(methodConfig, "name");
+        if (names == null || names.isEmpty()) {
+          throw new IllegalArgumentException("methodConfig has no name: " + methodConfig);
+        }
+        for (Map<String, Object> name : names) {
+          String service = getString(name, "service");
+          if (service == null || service.isEmpty()) {
+            throw new IllegalArgumentException("name has no service: " + name);
+          }
+          String method = getString(name, "method");
+          boolean duplicate;
+          if (method == null || method.isEmpty()) {
+            duplicate = serviceMap.put(service, info) != null;
+          } else {
+            duplicate = serviceMethodMap.put(
+                MethodDescriptor.generateFullMethodName(service, method), info) != null;
+          }
+          if (duplicate) {
+            throw new IllegalArgumentException("Duplicate method config name: " + name);
+          }
+        }
+      }
+    }
+    return new ServiceConfig(Collections.unmodifiableMap(serviceMethodMap),
+        Collections.unmodifiableMap(serviceMap));
+  }
+
+  /**
+   * Returns the config of the given method, falling back to the config of its service.
+   */
+  @Nullable
+  MethodInfo getMethodInfo(MethodDescriptor<?, ?> method) {
+    MethodInfo info = serviceMethodMap.get(method.getFullMethodName());
+    if (info == null && !serviceMap.isEmpty()) {
+      info = serviceMap.get(MethodDescriptor.extractFullServiceName(method.getFullMethodName()));
+    }
+    return info;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("serviceMethodMap", serviceMethodMap)
+        .add("serviceMap", serviceMap)
+        .toString();
+  }
+
+  /**
+   * The compiled config of a method.  A field that is not set is {@code null}.
+   */
+  @Immutable
+  static final class MethodInfo {
+    @Nullable
+    final Long timeoutNanos;
+    @Nullable
+    final Boolean waitForReady;
+    @Nullable
+    final Integer maxInboundMessageSize;
+    @Nullable
+    final Integer maxOutboundMessageSize;
+    @Nullable
+    final String compressorName;
+    @Nullable
+    final RetryPolicy retryPolicy;
+    @Nullable
+    final HedgingPolicy hedgingPolicy;
+
+    MethodInfo(@Nullable Long timeoutNanos, @Nullable Boolean waitForReady,
+        @Nullable Integer maxInboundMessageSize, @Nullable Integer maxOutboundMessageSize,
+        @Nullable String compressorName, @Nullable RetryPolicy retryPolicy,
+        @Nullable HedgingPolicy hedgingPolicy) {
+      this.timeoutNanos = timeoutNanos;
+      this.waitForReady = waitForReady;
+      this.maxInboundMessageSize = maxInboundMessageSize;
+      this.maxOutboundMessageSize = maxOutboundMessageSize;
+      this.compressorName = compressorName;
+      this.retryPolicy = retryPolicy;
+      this.hedgingPolicy = hedgingPolicy;
+    }
+
+    static MethodInfo parse(Map<String, Object> methodConfig) {
+      Long timeoutNanos = getDurationNanos(methodConfig, "timeout");
+      Integer maxRequestMessageBytes = getInteger(methodConfig, "maxRequestMessageBytes");
+      Integer maxResponseMessageBytes = getInteger(methodConfig, "maxResponseMessageBytes");
+      if (timeoutNanos != null && timeoutNanos < 0) {
+        throw new IllegalArgumentException("timeout must not be negative: " + methodConfig);
+      }
+      if ((maxRequestMessageBytes != null && maxRequestMessageBytes < 0)
+          || (maxResponseMessageBytes != null && maxResponseMessageBytes < 0)) {
+        throw new IllegalArgumentException("message size must not be negative: " + methodConfig);
+      }
+      Map<String, Object> retryPolicy = getObject(methodConfig, "retryPolicy");
+      Map<String, Object> hedgingPolicy = getObject(methodConfig, "hedgingPolicy");
+      if (retryPolicy != null && hedgingPolicy != null) {
+        throw new IllegalArgumentException(
+            "retryPolicy and hedgingPolicy can't be both set: " + methodConfig);
+      }
+      return new MethodInfo(
+          timeoutNanos,
+          getBoolean(methodConfig, "waitForReady"),
+          maxResponseMessageBytes,
+          maxRequestMessageBytes,
+          getString(methodConfig, "compression"),
+          retryPolicy == null ? null : parseRetryPolicy(retryPolicy),
+          hedgingPolicy == null ? null : parseHedgingPolicy(hedgingPolicy));
+    }
+
+    /**
+     * Returns the call options updated with this config.  The options set by the application take
+     * precedence, except that the deadline and the message sizes are only ever reduced.  Since
+     * {@link CallOptions} can't tell an explicit wait-for-ready setting from the default, the
+     * {@code "waitForReady"} of the config, when set, overrides the application's.
+     */
+    CallOptions apply(CallOptions callOptions) {
+      if (timeoutNanos != null) {
+        Deadline deadline = Deadline.after(timeoutNanos, TimeUnit.NANOSECONDS);
+        Deadline existingDeadline = callOptions.getDeadline();
+        if (existingDeadline == null || deadline.isBefore(existingDeadline)) {
+          callOptions = callOptions.withDeadline(deadline);
+        }
+      }
+      if (waitForReady != null && waitForReady != callOptions.isWaitForReady()) {
+        callOptions = waitForReady
+            ? callOptions.withWaitForReady() : callOptions.withoutWaitForReady();
+      }
+      if (maxInboundMessageSize != null) {
+        Integer existing = callOptions.getMaxInboundMessageSize();
+        if (existing == null || maxInboundMessageSize < existing) {
+          callOptions = callOptions.withMaxInboundMessageSize(maxInboundMessageSize);
+        }
+      }
+      if (maxOutboundMessageSize != null) {
+        Integer existing = callOptions.getMaxOutboundMessageSize();
+        if (existing == null || maxOutboundMessageSize < existing) {
+          callOptions = callOptions.withMaxOutboundMessageSize(maxOutboundMessageSize);
+        }
+      }
+      if (compressorName != null && callOptions.getCompressor() == null) {
+        callOptions = callOptions.withCompression(compressorName);
+      }
+      if (retryPolicy != null && callOptions.getOption(RetryPolicy.KEY) == null) {
+        callOptions = callOptions.withOption(RetryPolicy.KEY, retryPolicy);
+      }
+      if (hedgingPolicy != null && callOptions.getOption(HedgingPolicy.KEY) == null) {
+        callOptions = callOptions.withOption(HedgingPolicy.KEY, hedgingPolicy);
+      }
+      return callOptions;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("timeoutNanos", timeoutNanos)
+          .add("waitForReady", waitForReady)
+          .add("maxInboundMessageSize", maxInboundMessageSize)
+          .add("maxOutboundMessageSize", maxOutboundMessageSize)
+          .add("compressorName", compressorName)
+          .add("retryPolicy", retryPolicy)
+          .add("hedgingPolicy", hedgingPolicy)
+          .toString();
+    }
+  }
+
+  private static RetryPolicy parseRetryPolicy(Map<String, Object> retryPolicy) {
+    return new RetryPolicy(
+        checkSet(getInteger(retryPolicy, "maxAttempts"), "maxAttempts"),
+        checkSet(getDurationNanos(retryPolicy, "initialBackoff"), "initialBackoff"),
+        checkSet(getDurationNanos(retryPolicy, "maxBackoff"), "maxBackoff"),
+        checkSet(getDouble(retryPolicy, "backoffMultiplier"), "backoffMultiplier"),
+        getStatusCodes(retryPolicy, "retryableStatusCodes"));
+  }
+
+  private static HedgingPolicy parseHedgingPolicy(Map<String, Object> hedgingPolicy) {
+    Long hedgingDelayNanos = getDurationNanos(hedgingPolicy, "hedgingDelay");
+    return new HedgingPolicy(
+        checkSet(getInteger(hedgingPolicy, "maxAttempts"), "maxAttempts"),
+        hedgingDelayNanos == null ? 0 : hedgingDelayNanos,
+        getStatusCodes(hedgingPolicy, "nonFatalStatusCodes"));
+  }
+
+  private static <T> T checkSet(@Nullable T value, String name) {
+    if (value == null) {
+      throw new IllegalArgumentException(name + " is required");
+    }
+    return value;
+  }
+
+  private static Set<Status.Code> getStatusCodes(Map<String, Object> obj, String key) {
+    Set<Status.Code> codes = EnumSet.noneOf(Status.Code.class);
+    List<?> names = getList(obj, key);
+    if (names != null) {
+      for (Object name : names) {
+        if (!(name instanceof String)) {
+          throw new IllegalArgumentException("Status code is not a string: " + name);
+        }
+        // Throws IllegalArgumentException if the name is unknown
+        codes.add(Status.Code.valueOf((String) name));
+      }
+    }
+    return codes;
+  }
+
+  @Nullable
+  private static Object get(Map<String, Object> obj, String key, Class<?> type) {
+    Object value = obj.get(key);
+    if (value != null && !type.isInstance(value)) {
+      throw new IllegalArgumentException(String.format(
+          "Expected %s to be a %s, but was %s", key, type.getSimpleName(), value));
+    }
+    return value;
+  }
+
+  @Nullable
+  private static String getString(Map<String, Object> obj, String key) {
+    return (String) get(obj, key, String.class);
+  }
+
+  @Nullable
+  private static Boolean getBoolean(Map<String, Object> obj, String key) {
+    return (Boolean) get(obj, key, Boolean.class);
+  }
+
+  @Nullable
+  private static Double getDouble(Map<String, Object> obj, String key) {
+    Number value = (Number) get(obj, key, Number.class);
+    return value == null ? null : value.doubleValue();
+  }
+
+  @Nullable
+  private static Integer getInteger(Map<String, Object> obj, String key) {
+    Number value = (Number) get(obj, key, Number.class);
+    if (value == null) {
+      return null;
+    }
+    // JSON numbers are usually parsed into doubles
+    int intValue = value.intValue();
+    if (intValue != value.doubleValue()) {
+      throw new IllegalArgumentException(
+          String.format("Expected %s to be an integer, but was %s", key, value));
+    }
+    return intValue;
+  }
+
+  @Nullable
+  private static List<?> getList(Map<String, Object> obj, String key) {
+    return (List<?>) get(obj, key, List.class);
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getObject(Map<String, Object> obj, String key) {
+    return (Map<String, Object>) get(obj, key, Map.class);
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> getObjectList(Map<String, Object> obj, String key) {
+    List<?> list = getList(obj, key);
+    if (list != null) {
+      for (Object element : list) {
+        if (!(element instanceof Map)) {
+          throw new IllegalArgumentException(
+              String.format("Expected %s to be a list of objects, but was %s", key, list));
+        }
+      }
+    }
+    return (List<Map<String, Object>>) list;
+  }
+
+  /**
+   * Parses a duration in the JSON form of {@code google.protobuf.Duration}, i.e., the number of
+   * seconds with up to 9 fractional digits followed by {@code "s"}, such as {@code "1.5s"}.
+   */
+  @Nullable
+  private static Long getDurationNanos(Map<String, Object> obj, String key) {
+    String value = getString(obj, key);
+    if (value == null) {
+      return null;
+    }
+    if (!value.endsWith("s")) {
+      throw new IllegalArgumentException(
+          String.format("Expected %s to be a duration like \"1.5s\", but was %s", key, value));
+    }
+    try {
+      // A malformed number throws NumberFormatException, which is an IllegalArgumentException
+      return new BigDecimal(value.substring(0, value.length() - 1))
+          .movePointRight(9).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Invalid duration for " + key + ": " + value, e);
+    }
+  }
+}
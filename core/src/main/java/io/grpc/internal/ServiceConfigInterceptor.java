@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Applies the per-method config of the latest service config to the {@link CallOptions} of every
+ * new call.
+ */
+final class ServiceConfigInterceptor implements ClientInterceptor {
+  private static final Logger logger = Logger.getLogger(ServiceConfigInterceptor.class.getName());
+
+  private volatile ServiceConfig serviceConfig = ServiceConfig.EMPTY;
+
+  /**
+   * Compiles and installs a new service config.  A malformed service config is logged and ignored,
+   * keeping the previous one.  A {@code null} service config clears the previous one.
+   *
+   * @return the service config in use afterwards
+   */
+  ServiceConfig handleUpdate(@Nullable Map<String, Object> rawServiceConfig) {
+    if (rawServiceConfig == null) {
+      serviceConfig = ServiceConfig.EMPTY;
+      return serviceConfig;
+    }
+    try {
+      serviceConfig = ServiceConfig.parse(rawServiceConfig);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Ignoring malformed service config " + rawServiceConfig, e);
+    }
+    return serviceConfig;
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+      MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+    ServiceConfig.MethodInfo info = serviceConfig.getMethodInfo(method);
+    if (info != null) {
+      callOptions = info.apply(callOptions);
+    }
+    return next.newCall(method, callOptions);
+  }
+}
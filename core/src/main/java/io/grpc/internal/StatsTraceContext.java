@@ -36,6 +36,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
 import com.google.instrumentation.stats.MeasurementDescriptor;
+import com.google.instrumentation.stats.MeasurementDescriptor.BasicUnit;
+import com.google.instrumentation.stats.MeasurementDescriptor.MeasurementUnit;
 import com.google.instrumentation.stats.MeasurementMap;
 import com.google.instrumentation.stats.RpcConstants;
 import com.google.instrumentation.stats.StatsContext;
@@ -47,8 +49,9 @@ import io.grpc.Status;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * The stats and tracing information for a call.
@@ -67,6 +70,46 @@ public final class StatsTraceContext {
 
   private static final double NANOS_PER_MILLI = 1000 * 1000;
 
+  private static final AtomicIntegerFieldUpdater<StatsTraceContext> ATTEMPTS_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(StatsTraceContext.class, "attempts");
+  private static final AtomicIntegerFieldUpdater<StatsTraceContext> CALL_ENDED_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(StatsTraceContext.class, "callEnded");
+
+  /** The {@link RpcConstants#RPC_STATUS} tag values, indexed by {@link Status.Code#value}. */
+  private static final TagValue[] STATUS_TAG_VALUES;
+
+  static {
+    Status.Code[] codes = Status.Code.values();
+    STATUS_TAG_VALUES = new TagValue[codes[codes.length - 1].value() + 1];
+    for (Status.Code code : codes) {
+      STATUS_TAG_VALUES[code.value()] = TagValue.create(code.toString());
+    }
+  }
+
+  /**
+   * The stats header of the last {@link StatsContextFactory} used, since creating a key for each
+   * call is costly and there is usually a single factory per process.
+   */
+  private static volatile StatsHeader lastStatsHeader;
+
+  /**
+   * Latency of a single attempt of a retried or hedged RPC, recorded when the attempt ends.
+   */
+  @VisibleForTesting
+  static final MeasurementDescriptor RPC_CLIENT_ATTEMPT_LATENCY = MeasurementDescriptor.create(
+      "/rpc/client/attempt_latency",
+      "Time between the start of an attempt of a retried or hedged RPC and its end",
+      MeasurementUnit.create(-3, Collections.singletonList(BasicUnit.SECONDS)));
+
+  /**
+   * Number of attempts made for a retried or hedged RPC, recorded when the call ends.
+   */
+  @VisibleForTesting
+  static final MeasurementDescriptor RPC_CLIENT_ATTEMPTS = MeasurementDescriptor.create(
+      "/rpc/client/attempts",
+      "Number of attempts made for a retried or hedged RPC",
+      MeasurementUnit.create(0, Collections.singletonList(BasicUnit.SCALAR)));
+
   private enum Side {
     CLIENT, SERVER
   }
@@ -80,7 +123,9 @@ public final class StatsTraceContext {
   private volatile long wireBytesReceived;
   private volatile long uncompressedBytesSent;
   private volatile long uncompressedBytesReceived;
-  private final AtomicBoolean callEnded = new AtomicBoolean(false);
+  // Updated through ATTEMPTS_UPDATER and CALL_ENDED_UPDATER, to avoid allocating atomics per call.
+  private volatile int attempts;
+  private volatile int callEnded;
 
   private StatsTraceContext(Side side, String fullMethodName, StatsContext parentCtx,
       Supplier<Stopwatch> stopwatchSupplier, Metadata.Key<StatsContext> statsHeader) {
@@ -103,7 +148,7 @@ public final class StatsTraceContext {
     return new StatsTraceContext(Side.CLIENT, methodName,
         // TODO(zhangkun83): use the StatsContext out of the current Context
         statsFactory.getDefault(),
-        stopwatchSupplier, createStatsHeader(statsFactory));
+        stopwatchSupplier, statsHeaderFor(statsFactory));
   }
 
   @VisibleForTesting
@@ -111,7 +156,7 @@ public final class StatsTraceContext {
       StatsContextFactory statsFactory, StatsContext parent,
       Supplier<Stopwatch> stopwatchSupplier) {
     return new StatsTraceContext(Side.CLIENT, methodName, parent, stopwatchSupplier,
-        createStatsHeader(statsFactory));
+        statsHeaderFor(statsFactory));
   }
 
   /**
@@ -123,7 +168,7 @@ public final class StatsTraceContext {
   public static StatsTraceContext newServerContext(String methodName,
       StatsContextFactory statsFactory, Metadata headers,
       Supplier<Stopwatch> stopwatchSupplier) {
-    Metadata.Key<StatsContext> statsHeader = createStatsHeader(statsFactory);
+    Metadata.Key<StatsContext> statsHeader = statsHeaderFor(statsFactory);
     StatsContext parentCtx = headers.get(statsHeader);
     if (parentCtx == null) {
       parentCtx = statsFactory.getDefault();
@@ -149,6 +194,15 @@ public final class StatsTraceContext {
     return statsCtx;
   }
 
+  private static Metadata.Key<StatsContext> statsHeaderFor(StatsContextFactory statsCtxFactory) {
+    StatsHeader statsHeader = lastStatsHeader;
+    if (statsHeader == null || statsHeader.factory != statsCtxFactory) {
+      statsHeader = new StatsHeader(statsCtxFactory, createStatsHeader(statsCtxFactory));
+      lastStatsHeader = statsHeader;
+    }
+    return statsHeader.key;
+  }
+
   @VisibleForTesting
   static Metadata.Key<StatsContext> createStatsHeader(final StatsContextFactory statsCtxFactory) {
     return Metadata.Key.of("grpc-census-bin", new Metadata.BinaryMarshaller<StatsContext>() {
@@ -220,6 +274,27 @@ public final class StatsTraceContext {
     }
   }
 
+  /**
+   * Returns the time elapsed since the start of the call.
+   */
+  long elapsedNanos() {
+    return stopwatch.elapsed(TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record a finished attempt of a retried or hedged call, which started at {@code
+   * attemptStartNanos} as returned by {@link #elapsedNanos}.
+   *
+   * <p>Can be called from any thread without synchronization.
+   */
+  void attemptEnded(Status status, long attemptStartNanos) {
+    Preconditions.checkState(side == Side.CLIENT, "Must be called on client-side");
+    ATTEMPTS_UPDATER.incrementAndGet(this);
+    long attemptNanos = stopwatch.elapsed(TimeUnit.NANOSECONDS) - attemptStartNanos;
+    statsCtx.with(RpcConstants.RPC_STATUS, STATUS_TAG_VALUES[status.getCode().value()])
+        .record(MeasurementMap.of(RPC_CLIENT_ATTEMPT_LATENCY, attemptNanos / NANOS_PER_MILLI));
+  }
+
   /**
    * Record a finished all and mark the current time as the end time.
    *
@@ -227,7 +302,7 @@ public final class StatsTraceContext {
    * is a no-op.
    */
   void callEnded(Status status) {
-    if (!callEnded.compareAndSet(false, true)) {
+    if (!CALL_ENDED_UPDATER.compareAndSet(this, 0, 1)) {
       return;
     }
     stopwatch.stop();
@@ -268,8 +343,22 @@ public final class StatsTraceContext {
             RpcConstants.RPC_CLIENT_SERVER_ELAPSED_TIME,
             (roundtripNanos - clientPendingNanos) / NANOS_PER_MILLI);  // in double
       }
+      int attemptCount = attempts;
+      if (attemptCount > 0) {
+        builder.put(RPC_CLIENT_ATTEMPTS, attemptCount);
+      }
     }
-    statsCtx.with(RpcConstants.RPC_STATUS, TagValue.create(status.getCode().toString()))
+    statsCtx.with(RpcConstants.RPC_STATUS, STATUS_TAG_VALUES[status.getCode().value()])
         .record(builder.build());
   }
+
+  private static final class StatsHeader {
+    final StatsContextFactory factory;
+    final Metadata.Key<StatsContext> key;
+
+    StatsHeader(StatsContextFactory factory, Metadata.Key<StatsContext> key) {
+      this.factory = factory;
+      this.key = key;
+    }
+  }
 }
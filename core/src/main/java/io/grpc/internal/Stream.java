@@ -61,6 +61,9 @@ public interface Stream {
    * <p>It is recommended that the caller consult {@link #isReady()} before calling this method to
    * avoid excessive buffering in the transport.
    *
+   * <p>The stream takes ownership of {@code message}, and closes it once it is done with it, even
+   * if the message could not be sent.
+   *
    * @param message stream containing the serialized message to be sent
    */
   void writeMessage(InputStream message);
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer.StreamTracker;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.concurrent.Executor;
+
+/**
+ * A client transport that notifies a {@link StreamTracker} of the streams it starts and closes.
+ */
+final class StreamTrackingClientTransport implements ClientTransport {
+  private final ClientTransport delegate;
+  private final StreamTracker streamTracker;
+
+  StreamTrackingClientTransport(ClientTransport delegate, StreamTracker streamTracker) {
+    this.delegate = checkNotNull(delegate, "delegate");
+    this.streamTracker = checkNotNull(streamTracker, "streamTracker");
+  }
+
+  @Override
+  public ClientStream newStream(MethodDescriptor<?, ?> method, Metadata headers,
+      CallOptions callOptions, StatsTraceContext statsTraceCtx) {
+    return new TrackingStream(delegate.newStream(method, headers, callOptions, statsTraceCtx));
+  }
+
+  @Override
+  public ClientStream newStream(MethodDescriptor<?, ?> method, Metadata headers) {
+    return new TrackingStream(delegate.newStream(method, headers));
+  }
+
+  @Override
+  public void ping(PingCallback callback, Executor executor) {
+    delegate.ping(callback, executor);
+  }
+
+  private final class TrackingStream extends ForwardingClientStream {
+    private final ClientStream stream;
+
+    TrackingStream(ClientStream stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    protected ClientStream delegate() {
+      return stream;
+    }
+
+    @Override
+    public void start(final ClientStreamListener listener) {
+      streamTracker.streamStarted();
+      super.start(new ForwardingClientStreamListener() {
+          @Override
+          protected ClientStreamListener delegate() {
+            return listener;
+          }
+
+          @Override
+          public void closed(Status status, Metadata trailers) {
+            streamTracker.streamClosed(status);
+            super.closed(status, trailers);
+          }
+        });
+    }
+  }
+}
@@ -31,6 +31,8 @@
 
 package io.grpc.internal;
 
+import java.nio.ByteBuffer;
+
 /**
  * An interface for a byte buffer that can only be written to.
  * {@link WritableBuffer}s are a generic way to transfer bytes to
@@ -65,6 +67,29 @@ public interface WritableBuffer {
    */
   int readableBytes();
 
+  /**
+   * Indicates whether or not {@link #getWritableByteBuffer} is supported.
+   */
+  boolean byteBufferSupported();
+
+  /**
+   * Gets a {@link ByteBuffer} view of the writable space of this buffer, from its position to its
+   * limit. Bytes put in it are only appended to this buffer by {@link #advanceWritePosition}, and
+   * the view must not be used once this buffer has been written to or released. This is an
+   * optional method, so callers should first check {@link #byteBufferSupported}.
+   *
+   * @throws UnsupportedOperationException the buffer does not support this method
+   */
+  ByteBuffer getWritableByteBuffer();
+
+  /**
+   * Appends the first {@code length} bytes put in the view returned by
+   * {@link #getWritableByteBuffer}.
+   *
+   * @throws IndexOutOfBoundsException if {@code length} is greater than {@link #writableBytes()}
+   */
+  void advanceWritePosition(int length);
+
   /**
    * Releases the buffer, indicating to the {@link WritableBufferAllocator} that
    * this buffer is no longer used and its resources can be reused.
@@ -31,12 +31,16 @@
 
 package io.grpc.util;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.grpc.ConnectivityState.IDLE;
 import static io.grpc.ConnectivityState.READY;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import io.grpc.Attributes;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
@@ -53,11 +57,13 @@ import io.grpc.Status;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
@@ -68,27 +74,63 @@ import javax.annotation.concurrent.GuardedBy;
  * addresses from the {@link NameResolver}.  The sub-lists received from the name resolver
  * are considered to be an {@link EquivalentAddressGroup} and each of these sub-lists is
  * what is then balanced across.
+ *
+ * <p>By default a connection is made to every resolved address.  A factory created with {@link
+ * #newSubsettingInstance} instead connects to a bounded, deterministic subset of them, which keeps
+ * the number of connections per client small when the name resolver returns very large backend
+ * sets.
  */
 @ExperimentalApi("https://github.com/grpc/grpc-java/issues/1771")
 public class RoundRobinLoadBalancerFactory extends LoadBalancer.Factory {
   private static final RoundRobinLoadBalancerFactory INSTANCE =
-      new RoundRobinLoadBalancerFactory();
+      new RoundRobinLoadBalancerFactory(null, 0);
+
+  @Nullable
+  private final String subsetClientId;
+  private final int subsetSize;
 
-  private RoundRobinLoadBalancerFactory() {
+  private RoundRobinLoadBalancerFactory(@Nullable String subsetClientId, int subsetSize) {
+    this.subsetClientId = subsetClientId;
+    this.subsetSize = subsetSize;
   }
 
   public static RoundRobinLoadBalancerFactory getInstance() {
     return INSTANCE;
   }
 
+  /**
+   * Creates a factory whose load balancers only connect to at most {@code subsetSize} of the
+   * resolved addresses.
+   *
+   * <p>The subset is chosen with rendezvous (highest random weight) hashing of {@code clientId}
+   * against each address, thus it is stable for a given client, and an address update only moves
+   * the addresses that were actually added or removed in or out of the subset.  As long as the
+   * client IDs across the fleet are distinct, each backend is picked by about the same number of
+   * clients, so load stays balanced.
+   *
+   * @param clientId an identifier of this client, e.g., the host name and the process ID
+   * @param subsetSize the maximum number of addresses to connect to, must be positive
+   */
+  public static RoundRobinLoadBalancerFactory newSubsettingInstance(
+      String clientId, int subsetSize) {
+    checkNotNull(clientId, "clientId");
+    checkArgument(subsetSize > 0, "subsetSize must be positive");
+    return new RoundRobinLoadBalancerFactory(clientId, subsetSize);
+  }
+
   @Override
   public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
-    return new RoundRobinLoadBalancer(helper);
+    if (subsetClientId == null) {
+      return new RoundRobinLoadBalancer(helper);
+    }
+    return new RoundRobinLoadBalancer(helper, new Subsetter(subsetClientId, subsetSize));
   }
 
   @VisibleForTesting
   static class RoundRobinLoadBalancer extends LoadBalancer {
     private final Helper helper;
+    @Nullable
+    private final Subsetter subsetter;
     private final Map<EquivalentAddressGroup, Subchannel> subchannels =
         new HashMap<EquivalentAddressGroup, Subchannel>();
 
@@ -97,7 +139,12 @@ public class RoundRobinLoadBalancerFactory extends LoadBalancer.Factory {
         Attributes.Key.of("state-info");
 
     RoundRobinLoadBalancer(Helper helper) {
+      this(helper, null);
+    }
+
+    RoundRobinLoadBalancer(Helper helper, @Nullable Subsetter subsetter) {
       this.helper = checkNotNull(helper, "helper");
+      this.subsetter = subsetter;
     }
 
     @Override
@@ -106,6 +153,9 @@ public class RoundRobinLoadBalancerFactory extends LoadBalancer.Factory {
       Set<EquivalentAddressGroup> currentAddrs = subchannels.keySet();
       Set<EquivalentAddressGroup> latestAddrs =
           resolvedServerInfoGroupToEquivalentAddressGroup(servers);
+      if (subsetter != null) {
+        latestAddrs = subsetter.select(latestAddrs);
+      }
       Set<EquivalentAddressGroup> addedAddrs = setsDifference(latestAddrs, currentAddrs);
       Set<EquivalentAddressGroup> removedAddrs = setsDifference(currentAddrs, latestAddrs);
 
@@ -231,6 +281,77 @@ public class RoundRobinLoadBalancerFactory extends LoadBalancer.Factory {
     }
   }
 
+  /**
+   * Picks a deterministic subset of addresses for a client using rendezvous hashing.  Every address
+   * gets a weight computed from the hash of the client ID and the address, and the addresses with
+   * the highest weights are selected.
+   */
+  @VisibleForTesting
+  static final class Subsetter {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final Comparator<WeightedAddress> WEIGHT_ORDER =
+        new Comparator<WeightedAddress>() {
+          @Override
+          public int compare(WeightedAddress a, WeightedAddress b) {
+            if (a.weight != b.weight) {
+              return a.weight < b.weight ? -1 : 1;
+            }
+            // Break ties on the string form so the result doesn't depend on iteration order.
+            return a.key.compareTo(b.key);
+          }
+        };
+
+    private final long clientHash;
+    private final int subsetSize;
+
+    Subsetter(String clientId, int subsetSize) {
+      this.clientHash = HASH_FUNCTION.hashString(clientId, Charsets.UTF_8).asLong();
+      this.subsetSize = subsetSize;
+    }
+
+    /**
+     * Returns the {@code subsetSize} addresses with the highest weights, or {@code addrs} itself if
+     * there aren't more addresses than that.
+     */
+    Set<EquivalentAddressGroup> select(Set<EquivalentAddressGroup> addrs) {
+      if (addrs.size() <= subsetSize) {
+        return addrs;
+      }
+      // A min-heap that holds the heaviest addresses seen so far.
+      PriorityQueue<WeightedAddress> heaviest =
+          new PriorityQueue<WeightedAddress>(subsetSize + 1, WEIGHT_ORDER);
+      for (EquivalentAddressGroup addr : addrs) {
+        String key = addr.toString();
+        long weight = HASH_FUNCTION.newHasher()
+            .putLong(clientHash)
+            .putString(key, Charsets.UTF_8)
+            .hash().asLong();
+        heaviest.add(new WeightedAddress(addr, key, weight));
+        if (heaviest.size() > subsetSize) {
+          heaviest.poll();
+        }
+      }
+      Set<EquivalentAddressGroup> subset = new HashSet<EquivalentAddressGroup>(subsetSize * 2);
+      for (WeightedAddress weighted : heaviest) {
+        subset.add(weighted.addr);
+      }
+      return subset;
+    }
+
+    private static final class WeightedAddress {
+      final EquivalentAddressGroup addr;
+      final String key;
+      final long weight;
+
+      WeightedAddress(EquivalentAddressGroup addr, String key, long weight) {
+        this.addr = addr;
+        this.key = key;
+        this.weight = weight;
+      }
+    }
+  }
+
   @VisibleForTesting
   static final class Picker extends SubchannelPicker {
     @Nullable
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.inprocess;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessMarshallers.MessageCopier;
+import io.grpc.internal.MessageFramer;
+import io.grpc.internal.StatsTraceContext;
+import io.grpc.internal.WritableBuffer;
+import io.grpc.internal.WritableBufferAllocator;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link InProcessMarshallers}.
+ */
+@RunWith(JUnit4.class)
+public class InProcessMarshallersTest {
+  private final CountingMarshaller delegate = new CountingMarshaller();
+  private final MessageCopier<StringBuilder> copier = new MessageCopier<StringBuilder>() {
+    @Override
+    public StringBuilder copy(StringBuilder message) {
+      return new StringBuilder(message);
+    }
+  };
+  private final Marshaller<StringBuilder> marshaller =
+      InProcessMarshallers.passByReference(delegate, copier);
+
+  @Test
+  public void parseShouldCopySentMessage() {
+    StringBuilder message = new StringBuilder("hello");
+
+    StringBuilder parsed = marshaller.parse(marshaller.stream(message));
+    assertNotSame(message, parsed);
+    assertEquals("hello", parsed.toString());
+    assertEquals(0, delegate.streamed);
+    assertEquals(0, delegate.parsed);
+  }
+
+  @Test
+  public void immutableMessagesAreNotCopied() {
+    Marshaller<StringBuilder> marshaller = InProcessMarshallers.passByReference(
+        delegate, InProcessMarshallers.<StringBuilder>immutableMessages());
+    StringBuilder message = new StringBuilder("hello");
+
+    assertSame(message, marshaller.parse(marshaller.stream(message)));
+  }
+
+  @Test
+  public void parseShouldUseDelegateForOtherMarshallers() {
+    Marshaller<StringBuilder> other =
+        InProcessMarshallers.passByReference(new CountingMarshaller(), copier);
+
+    StringBuilder parsed = marshaller.parse(other.stream(new StringBuilder("hello")));
+    assertEquals("hello", parsed.toString());
+    assertEquals(1, delegate.parsed);
+  }
+
+  @Test
+  public void streamShouldSerializeOnceRead() throws Exception {
+    InputStream stream = marshaller.stream(new StringBuilder("hello"));
+    assertEquals(5, stream.available());
+    assertEquals(1, delegate.streamed);
+    assertArrayEquals("hello".getBytes(UTF_8), ByteStreams.toByteArray(stream));
+  }
+
+  @Test
+  public void streamShouldKnowLengthOnceDelegateStreamsDo() throws Exception {
+    InputStream stream = marshaller.stream(new StringBuilder("hello"));
+    assertFalse(stream instanceof KnownLength);
+    ByteStreams.toByteArray(stream);
+
+    stream = marshaller.stream(new StringBuilder("hello"));
+    assertTrue(stream instanceof KnownLength);
+    assertEquals(5, stream.available());
+  }
+
+  @Test
+  public void drainToShouldSerialize() throws Exception {
+    InputStream stream = marshaller.stream(new StringBuilder("hello"));
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    assertEquals(5, ((Drainable) stream).drainTo(target));
+    assertArrayEquals("hello".getBytes(UTF_8), target.toByteArray());
+  }
+
+  @Test
+  public void unknownLengthDelegateShouldBeFramedAsUnknownLength() throws Exception {
+    delegate.unknownLength = true;
+    for (int i = 0; i < 2; i++) {
+      InputStream stream = marshaller.stream(new StringBuilder("hello"));
+      assertFalse(stream instanceof KnownLength);
+      assertArrayEquals(frame(delegate.stream(new StringBuilder("hello"))), frame(stream));
+    }
+  }
+
+  @Test
+  public void readStreamShouldBeParsed() throws Exception {
+    InputStream stream = marshaller.stream(new StringBuilder("hello"));
+    stream.available();
+
+    assertEquals("hello", marshaller.parse(stream).toString());
+    assertEquals(1, delegate.parsed);
+  }
+
+  @Test
+  public void inProcessCall() throws Exception {
+    final MethodDescriptor<StringBuilder, StringBuilder> method = MethodDescriptor.create(
+        MethodType.UNARY, "service/method", marshaller, marshaller);
+    final List<StringBuilder> received = new ArrayList<StringBuilder>();
+    ServerServiceDefinition service = ServerServiceDefinition.builder("service")
+        .addMethod(method, new ServerCallHandler<StringBuilder, StringBuilder>() {
+          @Override
+          public ServerCall.Listener<StringBuilder> startCall(
+              final ServerCall<StringBuilder, StringBuilder> call, Metadata headers) {
+            call.request(1);
+            return new ServerCall.Listener<StringBuilder>() {
+              @Override
+              public void onMessage(StringBuilder message) {
+                received.add(message);
+                call.sendHeaders(new Metadata());
+                call.sendMessage(message.append('!'));
+                call.close(Status.OK, new Metadata());
+              }
+            };
+          }
+        })
+        .build();
+    String name = "marshallers-" + System.nanoTime();
+    Server server = InProcessServerBuilder.forName(name).directExecutor().addService(service)
+        .build().start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    try {
+      final List<StringBuilder> responses = new ArrayList<StringBuilder>();
+      ClientCall<StringBuilder, StringBuilder> call = channel.newCall(method, CallOptions.DEFAULT);
+      call.start(new ClientCall.Listener<StringBuilder>() {
+        @Override
+        public void onMessage(StringBuilder message) {
+          responses.add(message);
+        }
+      }, new Metadata());
+      call.request(1);
+      StringBuilder request = new StringBuilder("hello");
+      call.sendMessage(request);
+      call.halfClose();
+
+      assertEquals(1, received.size());
+      assertNotSame(request, received.get(0));
+      // The server's changes to its copy are not seen by the client
+      assertEquals("hello", request.toString());
+      assertEquals(1, responses.size());
+      assertNotSame(received.get(0), responses.get(0));
+      assertEquals("hello!", responses.get(0).toString());
+      assertEquals(0, delegate.streamed);
+      assertEquals(0, delegate.parsed);
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
+  private static byte[] frame(InputStream message) {
+    final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    MessageFramer framer = new MessageFramer(new MessageFramer.Sink() {
+      @Override
+      public void deliverFrame(WritableBuffer frame, boolean endOfStream, boolean flush) {
+        if (frame != null) {
+          ByteArrayWritableBuffer buffer = (ByteArrayWritableBuffer) frame;
+          frames.write(buffer.data, 0, buffer.size);
+        }
+      }
+    }, new WritableBufferAllocator() {
+      @Override
+      public WritableBuffer allocate(int capacityHint) {
+        return new ByteArrayWritableBuffer(Math.max(capacityHint, 16));
+      }
+    }, StatsTraceContext.NOOP);
+    framer.writePayload(message);
+    framer.close();
+    return frames.toByteArray();
+  }
+
+  private static class ByteArrayWritableBuffer implements WritableBuffer {
+    final byte[] data;
+    int size;
+
+    ByteArrayWritableBuffer(int capacity) {
+      data = new byte[capacity];
+    }
+
+    @Override
+    public void write(byte[] src, int srcIndex, int length) {
+      System.arraycopy(src, srcIndex, data, size, length);
+      size += length;
+    }
+
+    @Override
+    public void write(byte b) {
+      data[size++] = b;
+    }
+
+    @Override
+    public int writableBytes() {
+      return data.length - size;
+    }
+
+    @Override
+    public int readableBytes() {
+      return size;
+    }
+
+    @Override
+    public boolean byteBufferSupported() {
+      return false;
+    }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void advanceWritePosition(int length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void release() {
+    }
+  }
+
+  private static class CountingMarshaller implements Marshaller<StringBuilder> {
+    int streamed;
+    int parsed;
+    boolean unknownLength;
+
+    @Override
+    public InputStream stream(StringBuilder value) {
+      streamed++;
+      InputStream stream = new ByteArrayInputStream(value.toString().getBytes(UTF_8));
+      return unknownLength ? new BufferedInputStream(stream) : stream;
+    }
+
+    @Override
+    public StringBuilder parse(InputStream stream) {
+      parsed++;
+      try {
+        return new StringBuilder(new String(ByteStreams.toByteArray(stream), UTF_8));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -33,6 +33,7 @@ package io.grpc.internal;
 
 import static io.grpc.internal.GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
@@ -43,6 +44,7 @@ import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.Status.Code;
 import io.grpc.internal.MessageFramerTest.ByteWritableBuffer;
+import java.io.ByteArrayInputStream;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -223,6 +225,21 @@ public class AbstractClientStream2Test {
     verify(mockListener).closed(any(Status.class), any(Metadata.class));
   }
 
+  @Test
+  public void writeMessageClosesMessage() {
+    AbstractClientStream2 stream = new BaseAbstractClientStream(allocator, statsTraceCtx);
+    stream.start(mockListener);
+    CloseTrackingInputStream message = new CloseTrackingInputStream();
+    stream.writeMessage(message);
+    assertTrue(message.closed);
+
+    // The framer is closed once the stream is half-closed, and the message is dropped.
+    stream.halfClose();
+    message = new CloseTrackingInputStream();
+    stream.writeMessage(message);
+    assertTrue(message.closed);
+  }
+
   /**
    * No-op base class for testing.
    */
@@ -289,4 +306,17 @@ public class AbstractClientStream2Test {
     @Override
     public void bytesRead(int processedBytes) {}
   }
+
+  private static class CloseTrackingInputStream extends ByteArrayInputStream {
+    boolean closed;
+
+    CloseTrackingInputStream() {
+      super(new byte[] {1, 2, 3});
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.PickFirstBalancerFactory;
+import io.grpc.ResolvedServerInfo;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.internal.AutoConfiguredLoadBalancerFactory.AutoConfiguredLoadBalancer;
+import io.grpc.util.RoundRobinLoadBalancerFactory;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link AutoConfiguredLoadBalancerFactory}.
+ */
+@RunWith(JUnit4.class)
+public class AutoConfiguredLoadBalancerFactoryTest {
+  private final Helper helper = mock(Helper.class);
+  private final Subchannel subchannel = mock(Subchannel.class);
+  private final List<ResolvedServerInfoGroup> servers = Collections.singletonList(
+      ResolvedServerInfoGroup.builder()
+          .add(new ResolvedServerInfo(new SocketAddress() {}, Attributes.EMPTY))
+          .build());
+  private AutoConfiguredLoadBalancer balancer;
+
+  @Before
+  public void setUp() {
+    when(helper.createSubchannel(any(EquivalentAddressGroup.class), any(Attributes.class)))
+        .thenAnswer(new Answer<Subchannel>() {
+          @Override
+          public Subchannel answer(InvocationOnMock invocation) {
+            when(subchannel.getAttributes()).thenReturn((Attributes) invocation.getArguments()[1]);
+            return subchannel;
+          }
+        });
+    balancer = (AutoConfiguredLoadBalancer)
+        AutoConfiguredLoadBalancerFactory.getInstance().newLoadBalancer(helper);
+  }
+
+  @Test
+  public void getFactory() {
+    assertSame(PickFirstBalancerFactory.getInstance(),
+        AutoConfiguredLoadBalancerFactory.getFactory("pick_first"));
+    assertSame(RoundRobinLoadBalancerFactory.getInstance(),
+        AutoConfiguredLoadBalancerFactory.getFactory("ROUND_ROBIN"));
+    assertNull(AutoConfiguredLoadBalancerFactory.getFactory("grpclb_unknown"));
+  }
+
+  @Test
+  public void defaultsToPickFirst() {
+    LoadBalancer initial = balancer.getDelegate();
+    balancer.handleResolvedAddresses(servers, Attributes.EMPTY);
+    assertSame(initial, balancer.getDelegate());
+    assertTrue(initial.getClass().getName().contains("PickFirst"));
+  }
+
+  @Test
+  public void switchesPolicyWithServiceConfig() {
+    balancer.handleResolvedAddresses(servers, Attributes.EMPTY);
+    LoadBalancer pickFirst = balancer.getDelegate();
+    verify(helper).createSubchannel(any(EquivalentAddressGroup.class), any(Attributes.class));
+
+    balancer.handleResolvedAddresses(servers, withPolicy("round_robin"));
+    LoadBalancer roundRobin = balancer.getDelegate();
+    assertNotSame(pickFirst, roundRobin);
+    assertTrue(roundRobin.getClass().getName().contains("RoundRobin"));
+    // The subchannel of the previous policy is shut down
+    verify(subchannel).shutdown();
+
+    // Same policy keeps the balancer
+    balancer.handleResolvedAddresses(servers, withPolicy("round_robin"));
+    assertSame(roundRobin, balancer.getDelegate());
+
+    // Unknown policies fall back to pick-first
+    balancer.handleResolvedAddresses(servers, withPolicy("no_such_policy"));
+    assertTrue(balancer.getDelegate().getClass().getName().contains("PickFirst"));
+  }
+
+  private static Attributes withPolicy(String policy) {
+    Map<String, Object> serviceConfig = new HashMap<String, Object>();
+    serviceConfig.put("loadBalancingPolicy", policy);
+    return Attributes.newBuilder()
+        .set(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG, serviceConfig)
+        .build();
+  }
+}
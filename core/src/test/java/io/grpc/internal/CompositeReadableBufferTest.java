@@ -33,6 +33,9 @@ package io.grpc.internal;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -171,6 +174,24 @@ public class CompositeReadableBufferTest {
     verify(mock2).close();
   }
 
+  @Test
+  public void getByteBufferShouldReturnFirstReadableBuffer() {
+    assertTrue(composite.byteBufferSupported());
+    assertEquals(ByteBuffer.wrap("he".getBytes(UTF_8)), composite.getByteBuffer());
+    composite.skipBytes(3);
+    assertEquals(ByteBuffer.wrap("l".getBytes(UTF_8)), composite.getByteBuffer());
+    assertEquals(EXPECTED_VALUE.length() - 3, composite.readableBytes());
+    composite.skipBytes(EXPECTED_VALUE.length() - 3);
+    assertNull(composite.getByteBuffer());
+  }
+
+  @Test
+  public void byteBufferNotSupportedIfAnyBufferDoesNotSupportIt() {
+    ReadableBuffer buffer = mock(ReadableBuffer.class);
+    composite.addBuffer(buffer);
+    assertFalse(composite.byteBufferSupported());
+  }
+
   private void splitAndAdd(String value) {
     int partLength = Math.max(1, value.length() / 4);
     for (int startIndex = 0, endIndex = 0; startIndex < value.length(); startIndex = endIndex) {
@@ -54,11 +54,13 @@ import io.grpc.IntegerMarshaller;
 import io.grpc.LoadBalancer.PickResult;
 import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
 import io.grpc.Status;
 import io.grpc.StringMarshaller;
+import java.util.ArrayList;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -228,6 +230,75 @@ public class DelayedClientTransportTest {
     verifyNoMoreInteractions(mockRealStream);
   }
 
+  @Test public void newStreamBeyondLimit_failNewCalls() {
+    DelayedClientTransport boundedTransport = new DelayedClientTransport(
+        fakeExecutor.getScheduledExecutorService(), new ChannelExecutor(), 2,
+        PendingCallOverflowPolicy.FAIL_NEW_CALLS);
+    boundedTransport.start(transportListener);
+    ClientStream stream1 = boundedTransport.newStream(method, new Metadata());
+    ClientStream stream2 = boundedTransport.newStream(method, new Metadata());
+    ClientStream stream3 = boundedTransport.newStream(method, new Metadata());
+    assertEquals(2, boundedTransport.getPendingStreamsCount());
+    assertTrue(stream3 instanceof FailingClientStream);
+    stream3.start(streamListener);
+    verify(streamListener).closed(statusCaptor.capture(), any(Metadata.class));
+    assertEquals(Status.Code.RESOURCE_EXHAUSTED, statusCaptor.getValue().getCode());
+
+    // Room is made by cancelling a pending stream
+    stream1.cancel(Status.CANCELLED);
+    ClientStream stream4 = boundedTransport.newStream(method, new Metadata());
+    assertFalse(stream4 instanceof FailingClientStream);
+    assertEquals(2, boundedTransport.getPendingStreamsCount());
+    stream2.cancel(Status.CANCELLED);
+    stream4.cancel(Status.CANCELLED);
+    verify(transportListener).transportInUse(true);
+    verify(transportListener).transportInUse(false);
+  }
+
+  @Test public void newStreamBeyondLimit_failOldestCalls() {
+    DelayedClientTransport boundedTransport = new DelayedClientTransport(
+        fakeExecutor.getScheduledExecutorService(), new ChannelExecutor(), 2,
+        PendingCallOverflowPolicy.FAIL_OLDEST_CALLS);
+    boundedTransport.start(transportListener);
+    ClientStream stream1 = boundedTransport.newStream(method, new Metadata());
+    stream1.start(streamListener);
+    ClientStream stream2 = boundedTransport.newStream(method, headers, callOptions, statsTraceCtx);
+    ClientStream stream3 = boundedTransport.newStream(method, headers, callOptions, statsTraceCtx);
+    assertFalse(stream3 instanceof FailingClientStream);
+    assertEquals(2, boundedTransport.getPendingStreamsCount());
+    verify(streamListener).closed(statusCaptor.capture(), any(Metadata.class));
+    assertEquals(Status.Code.RESOURCE_EXHAUSTED, statusCaptor.getValue().getCode());
+
+    // The shed stream is not handed to the real transport
+    boundedTransport.reprocess(mockPicker);
+    assertEquals(0, boundedTransport.getPendingStreamsCount());
+    assertEquals(2, fakeExecutor.runDueTasks());
+    verify(mockRealTransport, times(2)).newStream(method, headers, callOptions, statsTraceCtx);
+    assertSame(mockRealStream, ((DelayedStream) stream2).getRealStream());
+    assertSame(mockRealStream, ((DelayedStream) stream3).getRealStream());
+    assertSame(NoopClientStream.INSTANCE, ((DelayedStream) stream1).getRealStream());
+    verify(transportListener).transportInUse(true);
+    verify(transportListener).transportInUse(false);
+  }
+
+  @Test public void reprocessManyStreams() {
+    int numStreams = DelayedClientTransport.REPROCESS_BATCH_SIZE * 3 + 1;
+    ArrayList<ClientStream> streams = new ArrayList<ClientStream>();
+    for (int i = 0; i < numStreams; i++) {
+      streams.add(delayedTransport.newStream(method, headers, callOptions, statsTraceCtx));
+    }
+    assertEquals(numStreams, delayedTransport.getPendingStreamsCount());
+
+    delayedTransport.reprocess(mockPicker);
+    assertEquals(0, delayedTransport.getPendingStreamsCount());
+    assertEquals(numStreams, fakeExecutor.runDueTasks());
+    for (ClientStream stream : streams) {
+      assertSame(mockRealStream, ((DelayedStream) stream).getRealStream());
+    }
+    verify(transportListener).transportInUse(true);
+    verify(transportListener).transportInUse(false);
+  }
+
   @Test public void newStreamThenShutdownTransportThenAssignTransport() {
     ClientStream stream = delayedTransport.newStream(method, headers, callOptions, statsTraceCtx);
     stream.start(streamListener);
@@ -276,6 +276,22 @@ public class DelayedStreamTest {
     verify(listener).closed(same(status), any(Metadata.class));
   }
 
+  @Test
+  public void cancel_closesPendingMessages() throws Exception {
+    InputStream message = mock(InputStream.class);
+    stream.start(listener);
+    stream.writeMessage(message);
+    verify(message, never()).close();
+
+    stream.cancel(Status.CANCELLED);
+    verify(message).close();
+
+    // Messages written after the cancellation are closed too.
+    InputStream lateMessage = mock(InputStream.class);
+    stream.writeMessage(lateMessage);
+    verify(lateMessage).close();
+  }
+
   @Test
   public void cancelledThenStart() {
     stream.cancel(Status.CANCELLED);
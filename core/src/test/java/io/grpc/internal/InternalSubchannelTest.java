@@ -51,10 +51,13 @@ import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.Status;
 import io.grpc.internal.TestUtils.MockClientTransportInfo;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
@@ -78,6 +81,8 @@ public class InternalSubchannelTest {
       ConnectivityStateInfo.forTransientFailure(Status.UNAVAILABLE);
   private static final ConnectivityStateInfo RESOURCE_EXHAUSTED_STATE =
       ConnectivityStateInfo.forTransientFailure(Status.RESOURCE_EXHAUSTED);
+  private static final long CONNECTION_ATTEMPT_DELAY_NANOS =
+      InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS;
 
   // For scheduled executor
   private final FakeClock fakeClock = new FakeClock();
@@ -662,11 +667,133 @@ public class InternalSubchannelTest {
     assertEquals(3, runnableInvokes.get());
   }
 
+  @Test public void staggeredConnectionAttempts() {
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    SocketAddress addr3 = mock(SocketAddress.class);
+    createInternalSubchannelWithConnectionAttemptDelay(addr1, addr2, addr3);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    verify(mockTransportFactory).newClientTransport(addr1, AUTHORITY, USER_AGENT);
+    MockClientTransportInfo t1 = transports.poll();
+
+    // The next address is attempted while the first attempt is still in progress
+    fakeClock.forwardTime(CONNECTION_ATTEMPT_DELAY_NANOS - 1, TimeUnit.NANOSECONDS);
+    verify(mockTransportFactory, never()).newClientTransport(addr2, AUTHORITY, USER_AGENT);
+    fakeClock.forwardTime(1, TimeUnit.NANOSECONDS);
+    verify(mockTransportFactory).newClientTransport(addr2, AUTHORITY, USER_AGENT);
+    MockClientTransportInfo t2 = transports.poll();
+    assertEquals(ConnectivityState.CONNECTING, internalSubchannel.getState());
+    assertNoCallbackInvoke();
+
+    // The second attempt wins, and the first one is cancelled
+    t2.listener.transportReady();
+    assertExactCallbackInvokes("onStateChange:READY");
+    assertSame(t2.transport, internalSubchannel.obtainActiveTransport());
+    verify(t1.transport).shutdown();
+    verify(t2.transport, never()).shutdown();
+    // No more attempts
+    assertEquals(0, fakeClock.numPendingTasks());
+    verify(mockTransportFactory, never()).newClientTransport(addr3, AUTHORITY, USER_AGENT);
+
+    // The losing attempt shutting down doesn't affect the state
+    t1.listener.transportShutdown(Status.UNAVAILABLE);
+    t1.listener.transportTerminated();
+    assertEquals(ConnectivityState.READY, internalSubchannel.getState());
+    assertNoCallbackInvoke();
+  }
+
+  @Test public void staggeredConnectionAttempts_failureStartsNextAttemptImmediately() {
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    SocketAddress addr3 = mock(SocketAddress.class);
+    createInternalSubchannelWithConnectionAttemptDelay(addr1, addr2, addr3);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    transports.poll().listener.transportShutdown(Status.UNAVAILABLE);
+    verify(mockTransportFactory).newClientTransport(addr2, AUTHORITY, USER_AGENT);
+
+    // The delay for the third attempt starts over
+    fakeClock.forwardTime(CONNECTION_ATTEMPT_DELAY_NANOS - 1, TimeUnit.NANOSECONDS);
+    verify(mockTransportFactory, never()).newClientTransport(addr3, AUTHORITY, USER_AGENT);
+    fakeClock.forwardTime(1, TimeUnit.NANOSECONDS);
+    verify(mockTransportFactory).newClientTransport(addr3, AUTHORITY, USER_AGENT);
+    assertEquals(0, fakeClock.numPendingTasks());
+
+    internalSubchannel.shutdown();
+    assertExactCallbackInvokes("onStateChange:SHUTDOWN");
+    // Both pending attempts are shut down
+    verify(transports.poll().transport).shutdown();
+    verify(transports.poll().transport).shutdown();
+  }
+
+  @Test public void staggeredConnectionAttempts_backoffAfterAllAttemptsFail() {
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    createInternalSubchannelWithConnectionAttemptDelay(addr1, addr2);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    MockClientTransportInfo t1 = transports.poll();
+    fakeClock.forwardTime(CONNECTION_ATTEMPT_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    MockClientTransportInfo t2 = transports.poll();
+    assertEquals(0, fakeClock.numPendingTasks());
+
+    // The first attempt is still in progress
+    t2.listener.transportShutdown(Status.UNAVAILABLE);
+    assertEquals(ConnectivityState.CONNECTING, internalSubchannel.getState());
+    assertNoCallbackInvoke();
+    assertEquals(0, fakeClock.numPendingTasks());
+
+    t1.listener.transportShutdown(Status.UNAVAILABLE);
+    assertEquals(ConnectivityState.TRANSIENT_FAILURE, internalSubchannel.getState());
+    assertExactCallbackInvokes("onStateChange:" + UNAVAILABLE_STATE);
+    verify(mockBackoffPolicy1).nextBackoffMillis();
+
+    // The back-off period counts from the first attempt, which started longer ago than that
+    fakeClock.runDueTasks();
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    verify(mockTransportFactory, times(2)).newClientTransport(addr1, AUTHORITY, USER_AGENT);
+
+    internalSubchannel.shutdown();
+    assertExactCallbackInvokes("onStateChange:SHUTDOWN");
+  }
+
+  @Test public void interleaveAddressFamilies() throws Exception {
+    SocketAddress v4a = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 443);
+    SocketAddress v4b = new InetSocketAddress(InetAddress.getByName("10.0.0.2"), 443);
+    SocketAddress v6a = new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 443);
+    SocketAddress v6b = new InetSocketAddress(InetAddress.getByName("2001:db8::2"), 443);
+    SocketAddress v6c = new InetSocketAddress(InetAddress.getByName("2001:db8::3"), 443);
+    SocketAddress other = mock(SocketAddress.class);
+
+    assertEquals(Arrays.asList(v6a, v4a, v6b, v4b, v6c),
+        InternalSubchannel.interleaveAddressFamilies(Arrays.asList(v6a, v6b, v6c, v4a, v4b)));
+    assertEquals(Arrays.asList(v4a, v6a, v4b, v6b, v6c),
+        InternalSubchannel.interleaveAddressFamilies(Arrays.asList(v4a, v4b, v6a, v6b, v6c)));
+    assertEquals(Arrays.asList(other, v6a, v4a),
+        InternalSubchannel.interleaveAddressFamilies(Arrays.asList(other, v4a, v6a)));
+    assertEquals(Arrays.asList(v4a, v4b),
+        InternalSubchannel.interleaveAddressFamilies(Arrays.asList(v4a, v4b)));
+  }
+
   private void createInternalSubchannel(SocketAddress ... addrs) {
+    createInternalSubchannel(0, addrs);
+  }
+
+  private void createInternalSubchannel(
+      long connectionAttemptDelayNanos, SocketAddress ... addrs) {
     addressGroup = new EquivalentAddressGroup(Arrays.asList(addrs));
     internalSubchannel = new InternalSubchannel(addressGroup, AUTHORITY, USER_AGENT,
-        mockBackoffPolicyProvider, mockTransportFactory, fakeClock.getScheduledExecutorService(),
-        fakeClock.getStopwatchSupplier(), channelExecutor, mockInternalSubchannelCallback);
+        mockBackoffPolicyProvider, connectionAttemptDelayNanos, mockTransportFactory,
+        fakeClock.getScheduledExecutorService(), fakeClock.getStopwatchSupplier(),
+        channelExecutor, mockInternalSubchannelCallback);
+  }
+
+  private void createInternalSubchannelWithConnectionAttemptDelay(SocketAddress ... addrs) {
+    createInternalSubchannel(CONNECTION_ATTEMPT_DELAY_NANOS, addrs);
   }
 
   private void assertNoCallbackInvoke() {
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link JsonParser}.
+ */
+@RunWith(JUnit4.class)
+public class JsonParserTest {
+  @Test
+  public void scalars() throws IOException {
+    // JSON escapes, with the unicode one split so that it stays literal in this file
+    assertEquals("a\"b\\c/\né", JsonParser.parse(" \"a\\\"b\\\\c\\/\\n\\" + "u00e9\" "));
+    assertEquals(1.0, JsonParser.parse("1"));
+    assertEquals(-2.5e3, JsonParser.parse("-2.5E3"));
+    assertEquals(true, JsonParser.parse("true"));
+    assertEquals(false, JsonParser.parse("false"));
+    assertNull(JsonParser.parse("null"));
+  }
+
+  @Test
+  public void nested() throws IOException {
+    Object parsed = JsonParser.parse(
+        "{\"a\": [1, {\"b\": null}, []], \"c\": {}, \"d\": \"e\"}");
+    Map<String, Object> inner = Collections.singletonMap("b", null);
+    assertEquals(
+        ImmutableMap.of(
+            "a", Arrays.<Object>asList(1.0, inner, Collections.emptyList()),
+            "c", Collections.emptyMap(),
+            "d", "e"),
+        parsed);
+  }
+
+  @Test
+  public void malformed() {
+    assertMalformed("");
+    assertMalformed("{");
+    assertMalformed("{\"a\" 1}");
+    assertMalformed("{\"a\": 1,}");
+    assertMalformed("[1 2]");
+    assertMalformed("\"unterminated");
+    assertMalformed("\"bad \\x escape\"");
+    assertMalformed("tru");
+    assertMalformed("1 2");
+    assertMalformed("{\"a\": 1, \"a\": 2}");
+    assertMalformed("-");
+  }
+
+  private static void assertMalformed(String json) {
+    try {
+      JsonParser.parse(json);
+      fail("Should have failed to parse " + json);
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+}
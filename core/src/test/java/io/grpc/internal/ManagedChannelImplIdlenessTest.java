@@ -31,6 +31,8 @@
 
 package io.grpc.internal;
 
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -59,6 +61,7 @@ import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.Subchannel;
 import io.grpc.LoadBalancer.SubchannelPicker;
 import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
@@ -137,13 +140,7 @@ public class ManagedChannelImplIdlenessTest {
         .newNameResolver(any(URI.class), any(Attributes.class)))
         .thenReturn(mockNameResolver);
 
-    channel = new ManagedChannelImpl("fake://target", new FakeBackoffPolicyProvider(),
-        mockNameResolverFactory, Attributes.EMPTY, mockLoadBalancerFactory,
-        mockTransportFactory, DecompressorRegistry.getDefaultInstance(),
-        CompressorRegistry.getDefaultInstance(), timerServicePool, executorPool, oobExecutorPool,
-        timer.getStopwatchSupplier(), TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS), USER_AGENT,
-        Collections.<ClientInterceptor>emptyList(),
-        NoopStatsContextFactory.INSTANCE);
+    channel = createChannel(false);
     newTransports = TestUtils.captureTransports(mockTransportFactory);
 
     for (int i = 0; i < 2; i++) {
@@ -331,6 +328,53 @@ public class ManagedChannelImplIdlenessTest {
     verify(mockLoadBalancer).shutdown();
   }
 
+  @Test
+  public void getStateRequestsConnection() {
+    assertEquals(IDLE, channel.getState(false));
+    verify(mockLoadBalancerFactory, never()).newLoadBalancer(any(Helper.class));
+
+    assertEquals(IDLE, channel.getState(true));
+    verify(mockLoadBalancerFactory).newLoadBalancer(any(Helper.class));
+    verify(mockNameResolver).start(any(NameResolver.Listener.class));
+    assertEquals(CONNECTING, channel.getState(false));
+
+    // Goes back to idle mode, as no RPC is using the channel
+    timer.forwardTime(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    verify(mockLoadBalancer).shutdown();
+    assertEquals(IDLE, channel.getState(false));
+  }
+
+  @Test
+  public void connectEagerly() {
+    ManagedChannelImpl eagerChannel = createChannel(true);
+    ArgumentCaptor<Helper> helperCaptor = ArgumentCaptor.forClass(null);
+    verify(mockLoadBalancerFactory).newLoadBalancer(helperCaptor.capture());
+    verify(mockNameResolver).start(any(NameResolver.Listener.class));
+    assertEquals(CONNECTING, eagerChannel.getState(false));
+
+    // Subchannels connect without waiting for RPCs
+    Helper helper = helperCaptor.getValue();
+    SocketAddress address = new FakeSocketAddress("eager");
+    helper.createSubchannel(new EquivalentAddressGroup(address), Attributes.EMPTY);
+    verify(mockTransportFactory).newClientTransport(same(address), anyString(), anyString());
+
+    // Shutting down cancels the idle timer
+    eagerChannel.shutdown();
+  }
+
+  private ManagedChannelImpl createChannel(boolean connectEagerly) {
+    return new ManagedChannelImpl("fake://target", new FakeBackoffPolicyProvider(),
+        mockNameResolverFactory, Attributes.EMPTY, mockLoadBalancerFactory,
+        mockTransportFactory, DecompressorRegistry.getDefaultInstance(),
+        CompressorRegistry.getDefaultInstance(), timerServicePool, executorPool, oobExecutorPool,
+        timer.getStopwatchSupplier(), TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS),
+        connectEagerly, Integer.MAX_VALUE, PendingCallOverflowPolicy.FAIL_NEW_CALLS,
+        AbstractManagedChannelImplBuilder.DEFAULT_RETRY_BUFFER_SIZE_IN_BYTES,
+        AbstractManagedChannelImplBuilder.DEFAULT_PER_RPC_BUFFER_LIMIT_IN_BYTES, null, USER_AGENT,
+        Collections.<ClientInterceptor>emptyList(),
+        NoopStatsContextFactory.INSTANCE);
+  }
+
   private static class FakeBackoffPolicyProvider implements BackoffPolicy.Provider {
     @Override
     public BackoffPolicy get() {
@@ -32,7 +32,9 @@
 package io.grpc.internal;
 
 import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
 import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 import static junit.framework.TestCase.assertNotSame;
 import static org.junit.Assert.assertEquals;
@@ -68,6 +70,7 @@ import io.grpc.ClientInterceptor;
 import io.grpc.CompressorRegistry;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.IntegerMarshaller;
@@ -78,6 +81,7 @@ import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.Subchannel;
 import io.grpc.LoadBalancer.SubchannelPicker;
 import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder.PendingCallOverflowPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
@@ -94,12 +98,15 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.After;
 import org.junit.Before;
@@ -193,7 +200,10 @@ public class ManagedChannelImplTest {
         nameResolverFactory, NAME_RESOLVER_PARAMS, mockLoadBalancerFactory,
         mockTransportFactory, DecompressorRegistry.getDefaultInstance(),
         CompressorRegistry.getDefaultInstance(), timerServicePool, executorPool, oobExecutorPool,
-        timer.getStopwatchSupplier(),  ManagedChannelImpl.IDLE_TIMEOUT_MILLIS_DISABLE, userAgent,
+        timer.getStopwatchSupplier(),  ManagedChannelImpl.IDLE_TIMEOUT_MILLIS_DISABLE, false,
+        Integer.MAX_VALUE, PendingCallOverflowPolicy.FAIL_NEW_CALLS,
+        AbstractManagedChannelImplBuilder.DEFAULT_RETRY_BUFFER_SIZE_IN_BYTES,
+        AbstractManagedChannelImplBuilder.DEFAULT_PER_RPC_BUFFER_LIMIT_IN_BYTES, null, userAgent,
         interceptors, statsCtxFactory);
     // Force-exit the initial idle-mode
     channel.exitIdleMode();
@@ -435,6 +445,43 @@ public class ManagedChannelImplTest {
     assertEquals(1, atomic.get());
   }
 
+  @Test
+  public void serviceConfigAppliedToCallOptions() {
+    MethodDescriptor<String, Integer> configuredMethod =
+        method.toBuilder().setFullMethodName("foo.Bar/baz").build();
+    Map<String, Object> name = new HashMap<String, Object>();
+    name.put("service", "foo.Bar");
+    Map<String, Object> methodConfig = new HashMap<String, Object>();
+    methodConfig.put("name", Collections.singletonList(name));
+    methodConfig.put("waitForReady", true);
+    methodConfig.put("maxRequestMessageBytes", 10.0);
+    Map<String, Object> serviceConfig = new HashMap<String, Object>();
+    serviceConfig.put("methodConfig", Collections.singletonList(methodConfig));
+    FakeNameResolverFactory nameResolverFactory = new FakeNameResolverFactory(true);
+    nameResolverFactory.attributes = Attributes.newBuilder()
+        .set(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG, serviceConfig).build();
+    createChannel(nameResolverFactory, NO_INTERCEPTOR);
+    verify(mockLoadBalancer).handleResolvedAddresses(
+        nameResolverFactory.servers, nameResolverFactory.attributes);
+    when(mockPicker.pickSubchannel(any(PickSubchannelArgs.class)))
+        .thenReturn(PickResult.withNoResult());
+    helper.updatePicker(mockPicker);
+
+    ArgumentCaptor<PickSubchannelArgs> argsCaptor =
+        ArgumentCaptor.forClass(PickSubchannelArgs.class);
+    channel.newCall(configuredMethod, CallOptions.DEFAULT).start(mockCallListener, new Metadata());
+    verify(mockPicker, atLeast(1)).pickSubchannel(argsCaptor.capture());
+    CallOptions callOptions = argsCaptor.getValue().getCallOptions();
+    assertTrue(callOptions.isWaitForReady());
+    assertEquals(Integer.valueOf(10), callOptions.getMaxOutboundMessageSize());
+
+    // Methods that are not configured are left alone
+    argsCaptor = ArgumentCaptor.forClass(PickSubchannelArgs.class);
+    channel.newCall(method, CallOptions.DEFAULT).start(mockCallListener, new Metadata());
+    verify(mockPicker, atLeast(1)).pickSubchannel(argsCaptor.capture());
+    assertSame(CallOptions.DEFAULT, argsCaptor.getValue().getCallOptions());
+  }
+
   @Test
   public void callOptionsExecutor() {
     Metadata headers = new Metadata();
@@ -1109,6 +1156,87 @@ public class ManagedChannelImplTest {
     assertNull(testKey.get());
   }
 
+  @Test
+  public void channelStateFollowsSubchannels() {
+    createChannel(new FakeNameResolverFactory(true), NO_INTERCEPTOR);
+    // Waiting for the LoadBalancer to create subchannels
+    assertEquals(CONNECTING, channel.getState(false));
+    Runnable onStateChanged = mock(Runnable.class);
+    channel.notifyWhenStateChanged(CONNECTING, onStateChanged);
+
+    Subchannel subchannel = helper.createSubchannel(addressGroup, Attributes.EMPTY);
+    subchannel.requestConnection();
+    MockClientTransportInfo transportInfo = transports.poll();
+    assertEquals(CONNECTING, channel.getState(false));
+    executor.runDueTasks();
+    verify(onStateChanged, never()).run();
+
+    transportInfo.listener.transportReady();
+    assertEquals(READY, channel.getState(false));
+    // The callback is run in the channel executor
+    verify(onStateChanged, never()).run();
+    executor.runDueTasks();
+    verify(onStateChanged).run();
+
+    // The subchannel goes back to IDLE, and so does the channel
+    transportInfo.listener.transportShutdown(Status.UNAVAILABLE);
+    assertEquals(IDLE, channel.getState(false));
+    verify(mockTransportFactory).newClientTransport(
+        any(SocketAddress.class), any(String.class), any(String.class));
+    // Requesting a connection reconnects the subchannel
+    assertEquals(IDLE, channel.getState(true));
+    assertEquals(CONNECTING, channel.getState(false));
+    verify(mockTransportFactory, times(2)).newClientTransport(
+        any(SocketAddress.class), any(String.class), any(String.class));
+
+    channel.shutdown();
+    assertEquals(SHUTDOWN, channel.getState(false));
+    // A callback registered for another state is run right away
+    Runnable onShutdown = mock(Runnable.class);
+    channel.notifyWhenStateChanged(READY, onShutdown);
+    executor.runDueTasks();
+    verify(onShutdown).run();
+  }
+
+  @Test
+  public void nameResolutionErrorMakesChannelTransientFailure() {
+    createChannel(new FailingNameResolverFactory(Status.UNAVAILABLE), NO_INTERCEPTOR);
+    assertEquals(TRANSIENT_FAILURE, channel.getState(false));
+  }
+
+  @Test
+  public void warmUpWaitsForReadySubchannels() throws Exception {
+    createChannel(new FakeNameResolverFactory(true), NO_INTERCEPTOR);
+    Deadline expired = Deadline.after(0, TimeUnit.NANOSECONDS);
+    assertFalse(channel.warmUp(expired));
+
+    final Subchannel subchannel = helper.createSubchannel(addressGroup, Attributes.EMPTY);
+    subchannel.requestConnection();
+    final MockClientTransportInfo transportInfo = transports.poll();
+    final AtomicBoolean warmedUp = new AtomicBoolean();
+    Thread waiter = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            warmedUp.set(channel.warmUp(Deadline.after(1, TimeUnit.MINUTES)));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    waiter.start();
+    transportInfo.listener.transportReady();
+    waiter.join(TimeUnit.SECONDS.toMillis(10));
+    assertTrue(warmedUp.get());
+
+    assertTrue(channel.warmUp(expired));
+    // Only one subchannel
+    assertFalse(channel.warmUp(2, expired));
+
+    channel.shutdown();
+    assertFalse(channel.warmUp(Deadline.after(1, TimeUnit.MINUTES)));
+  }
+
   private static class FakeBackoffPolicyProvider implements BackoffPolicy.Provider {
     @Override
     public BackoffPolicy get() {
@@ -1125,6 +1253,7 @@ public class ManagedChannelImplTest {
     final List<ResolvedServerInfoGroup> servers;
     final boolean resolvedAtStart;
     final ArrayList<FakeNameResolver> resolvers = new ArrayList<FakeNameResolver>();
+    Attributes attributes = Attributes.EMPTY;
 
     FakeNameResolverFactory(boolean resolvedAtStart) {
       this.resolvedAtStart = resolvedAtStart;
@@ -1180,7 +1309,7 @@ public class ManagedChannelImplTest {
       }
 
       void resolved() {
-        listener.onUpdate(servers, Attributes.EMPTY);
+        listener.onUpdate(servers, attributes);
       }
 
       @Override public void shutdown() {
@@ -32,6 +32,7 @@
 package io.grpc.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -43,12 +44,16 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 
 import com.google.instrumentation.stats.RpcConstants;
 import io.grpc.Codec;
+import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.internal.testing.StatsTestUtils.FakeStatsContextFactory;
 import io.grpc.internal.testing.StatsTestUtils.MetricsRecord;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
@@ -164,6 +169,36 @@ public class MessageFramerTest {
     checkStats(8, 8);
   }
 
+  @Test
+  public void drainableWritesIntoLentByteBuffer() {
+    LendingDrainableInputStream message = new LendingDrainableInputStream(new byte[]{3, 14});
+    framer.writePayload(message);
+    framer.flush();
+
+    assertTrue(message.wroteToByteBuffer);
+    verify(sink).deliverFrame(toWriteBuffer(new byte[] {0, 0, 0, 0, 2, 3, 14}), false, true);
+    assertEquals(1, allocator.allocCount);
+    verifyNoMoreInteractions(sink);
+    checkStats(2, 2);
+  }
+
+  @Test
+  public void byteBufferNotLentWhenPayloadSplitBetweenSinks() {
+    allocator = new BytesWritableBufferAllocator(12, 12);
+    framer = new MessageFramer(sink, allocator, statsTraceCtx);
+    LendingDrainableInputStream message =
+        new LendingDrainableInputStream(new byte[]{3, 14, 1, 5, 9, 2, 6, 5});
+    framer.writePayload(message);
+    framer.flush();
+
+    assertFalse(message.wroteToByteBuffer);
+    verify(sink).deliverFrame(
+        toWriteBuffer(new byte[] {0, 0, 0, 0, 8, 3, 14, 1, 5, 9, 2, 6}), false, false);
+    verify(sink).deliverFrame(toWriteBuffer(new byte[] {5}), false, true);
+    verifyNoMoreInteractions(sink);
+    checkStats(8, 8);
+  }
+
   @Test
   public void frameHeaderSplitBetweenSinks() {
     allocator = new BytesWritableBufferAllocator(12, 12);
@@ -429,6 +464,21 @@ public class MessageFramerTest {
       return writeIdx;
     }
 
+    @Override
+    public boolean byteBufferSupported() {
+      return true;
+    }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer() {
+      return ByteBuffer.wrap(data, writeIdx, data.length - writeIdx);
+    }
+
+    @Override
+    public void advanceWritePosition(int length) {
+      writeIdx += length;
+    }
+
     @Override
     public void release() {
       data = null;
@@ -457,6 +507,33 @@ public class MessageFramerTest {
     }
   }
 
+  /**
+   * A known length message that writes itself into the framer's buffer when it is lent one.
+   */
+  private static class LendingDrainableInputStream extends ByteArrayInputStream
+      implements Drainable {
+    boolean wroteToByteBuffer;
+
+    LendingDrainableInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      int length = available();
+      ByteBuffer buffer = ((HasWritableByteBuffer) target).getWritableByteBuffer(length);
+      if (buffer != null) {
+        buffer.put(buf, pos, length);
+        ((HasWritableByteBuffer) target).commitWritableByteBuffer(length);
+        wroteToByteBuffer = true;
+      } else {
+        target.write(buf, pos, length);
+      }
+      pos += length;
+      return length;
+    }
+  }
+
   static class BytesWritableBufferAllocator implements WritableBufferAllocator {
     public int minSize;
     public int maxSize;
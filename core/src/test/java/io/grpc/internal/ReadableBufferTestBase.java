@@ -34,6 +34,8 @@ package io.grpc.internal;
 import static com.google.common.base.Charsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
@@ -131,6 +133,28 @@ public abstract class ReadableBufferTestBase {
     assertArrayEquals(new byte[] {'h', 'e'}, Arrays.copyOfRange(array, 0, 2));     
   }
 
+  @Test
+  public void getByteBufferDoesNotAffectReadPosition() {
+    ReadableBuffer buffer = buffer();
+    assumeTrue(buffer.byteBufferSupported());
+    buffer.skipBytes(2);
+    ByteBuffer byteBuffer = buffer.getByteBuffer();
+    assertEquals(msg.length() - 2, byteBuffer.remaining());
+    byte[] array = new byte[byteBuffer.remaining()];
+    byteBuffer.get(array);
+    assertArrayEquals(msg.substring(2).getBytes(UTF_8), array);
+    assertEquals(msg.length() - 2, buffer.readableBytes());
+    assertEquals('l', buffer.readUnsignedByte());
+  }
+
+  @Test
+  public void getByteBufferOfEmptyBufferShouldReturnNull() {
+    ReadableBuffer buffer = buffer();
+    assumeTrue(buffer.byteBufferSupported());
+    buffer.skipBytes(msg.length());
+    assertNull(buffer.getByteBuffer());
+  }
+
   protected abstract ReadableBuffer buffer();
 
   private static String repeatUntilLength(String toRepeat, int length) {
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.Detachable;
+import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for the {@link InputStream} returned by {@link ReadableBuffers#openStream}.
+ */
+@RunWith(JUnit4.class)
+public class ReadableBuffersTest {
+  private static final byte[] MSG = "hello world".getBytes(UTF_8);
+
+  @Test
+  public void openStream_closeShouldCloseOwnedBuffer() throws Exception {
+    CloseTrackingBuffer buffer = new CloseTrackingBuffer(MSG);
+    ReadableBuffers.openStream(buffer, false).close();
+    assertFalse(buffer.closed);
+
+    ReadableBuffers.openStream(buffer, true).close();
+    assertTrue(buffer.closed);
+  }
+
+  @Test
+  public void openStream_drainToOutputStream() throws Exception {
+    InputStream stream = ReadableBuffers.openStream(ReadableBuffers.wrap(MSG), true);
+    stream.read();
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+    assertEquals(MSG.length - 1, ((Drainable) stream).drainTo(target));
+    assertArrayEquals("ello world".getBytes(UTF_8), target.toByteArray());
+    assertEquals(0, stream.available());
+  }
+
+  @Test
+  public void openStream_drainToLentByteBuffer() throws Exception {
+    InputStream stream = ReadableBuffers.openStream(ReadableBuffers.wrap(MSG), true);
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocate(100));
+
+    assertEquals(MSG.length, ((Drainable) stream).drainTo(target));
+    assertEquals(MSG.length, target.committed);
+    assertEquals(0, target.size());
+    // Only the message was copied to the lent buffer
+    assertEquals(MSG.length, target.lent.position());
+    assertArrayEquals(MSG, Arrays.copyOf(target.lent.array(), MSG.length));
+    assertEquals(0, stream.available());
+  }
+
+  @Test
+  public void openStream_detach() throws Exception {
+    CloseTrackingBuffer buffer = new CloseTrackingBuffer(MSG);
+    InputStream stream = ReadableBuffers.openStream(buffer, true);
+    stream.read();
+
+    InputStream detached = ((Detachable) stream).detach();
+    assertEquals(0, stream.available());
+    assertEquals(-1, stream.read());
+    stream.close();
+    assertFalse(buffer.closed);
+
+    assertArrayEquals("ello world".getBytes(UTF_8), ByteStreams.toByteArray(detached));
+    detached.close();
+    assertTrue(buffer.closed);
+  }
+
+  private static class CloseTrackingBuffer extends ForwardingReadableBuffer {
+    boolean closed;
+
+    CloseTrackingBuffer(byte[] bytes) {
+      super(ReadableBuffers.wrap(bytes));
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static class LendingOutputStream extends ByteArrayOutputStream
+      implements HasWritableByteBuffer {
+    final ByteBuffer lent;
+    int committed;
+
+    LendingOutputStream(ByteBuffer lent) {
+      this.lent = lent;
+    }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer(int length) {
+      return lent.remaining() >= length ? lent : null;
+    }
+
+    @Override
+    public void commitWritableByteBuffer(int length) {
+      committed += length;
+    }
+  }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Status;
+import io.grpc.Status.Code;
+import io.grpc.internal.RetriableStream.ChannelBufferMeter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link RetriableStream}.
+ */
+@RunWith(JUnit4.class)
+public class RetriableStreamTest {
+  private static final long INITIAL_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(3);
+  private static final long HEDGING_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final RetryPolicy RETRY_POLICY = new RetryPolicy(
+      3, INITIAL_BACKOFF_NANOS, MAX_BACKOFF_NANOS, 2.0, ImmutableSet.of(Code.UNAVAILABLE));
+  private static final HedgingPolicy HEDGING_POLICY =
+      new HedgingPolicy(3, HEDGING_DELAY_NANOS, ImmutableSet.of(Code.UNAVAILABLE));
+  private static final Metadata.Key<String> TEST_KEY =
+      Metadata.Key.of("test", Metadata.ASCII_STRING_MARSHALLER);
+
+  private final MethodDescriptor<String, String> method =
+      MethodDescriptor.<String, String>newBuilder()
+      .setType(MethodType.BIDI_STREAMING)
+      .setFullMethodName("service/method")
+      .setRequestMarshaller(new StringMarshaller())
+      .setResponseMarshaller(new StringMarshaller())
+      .build();
+  private final FakeClock fakeClock = new FakeClock();
+  // Always uses half of the backoff.
+  private final Random random = new Random() {
+    @Override
+    public double nextDouble() {
+      return 0.5;
+    }
+  };
+  private final ChannelBufferMeter channelBufferUsed = new ChannelBufferMeter(1000);
+  private final List<ClientStream> substreams = new ArrayList<ClientStream>();
+  private final List<Metadata> substreamHeaders = new ArrayList<Metadata>();
+
+  @Mock private ClientStreamListener masterListener;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void retry_succeedsAfterRetryableFailure() {
+    Metadata headers = new Metadata();
+    headers.put(TEST_KEY, "value");
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null, headers);
+    stream.start(masterListener);
+    stream.sendMessage("msg1");
+    stream.request(1);
+    ClientStreamListener sublistener1 = verifyStarted(0);
+    assertNull(substreamHeaders.get(0).get(RetriableStream.GRPC_PREVIOUS_RPC_ATTEMPTS));
+    assertEquals("value", substreamHeaders.get(0).get(TEST_KEY));
+
+    sublistener1.closed(Status.UNAVAILABLE, new Metadata());
+    verify(masterListener, never()).closed(any(Status.class), any(Metadata.class));
+    assertEquals(1, substreams.size());
+
+    fakeClock.forwardTime(INITIAL_BACKOFF_NANOS / 2 - 1, TimeUnit.NANOSECONDS);
+    assertEquals(1, substreams.size());
+    fakeClock.forwardTime(1, TimeUnit.NANOSECONDS);
+    assertEquals(2, substreams.size());
+    assertEquals("1", substreamHeaders.get(1).get(RetriableStream.GRPC_PREVIOUS_RPC_ATTEMPTS));
+    assertEquals("value", substreamHeaders.get(1).get(TEST_KEY));
+    // The buffered operations are replayed in order.
+    InOrder inOrder = inOrder(substreams.get(1));
+    inOrder.verify(substreams.get(1)).start(any(ClientStreamListener.class));
+    inOrder.verify(substreams.get(1)).writeMessage(any(InputStream.class));
+    inOrder.verify(substreams.get(1)).request(1);
+    ClientStreamListener sublistener2 = verifyStarted(1);
+
+    // New operations go to the running attempt directly.
+    stream.halfClose();
+    verify(substreams.get(1)).halfClose();
+
+    Metadata responseHeaders = new Metadata();
+    sublistener2.headersRead(responseHeaders);
+    verify(masterListener).headersRead(same(responseHeaders));
+    assertEquals(0, channelBufferUsed.getBufferUsed());
+    Metadata trailers = new Metadata();
+    sublistener2.closed(Status.OK, trailers);
+    verify(masterListener).closed(same(Status.OK), same(trailers));
+    assertEquals(2, stream.getAttemptsStarted());
+  }
+
+  @Test
+  public void retry_nonRetryableStatusClosesImmediately() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener = verifyStarted(0);
+
+    Metadata trailers = new Metadata();
+    sublistener.closed(Status.INTERNAL, trailers);
+    verify(masterListener).closed(same(Status.INTERNAL), same(trailers));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void retry_backoffGrowsUpToMaxAttempts() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+
+    verifyStarted(0).closed(Status.UNAVAILABLE, new Metadata());
+    fakeClock.forwardTime(INITIAL_BACKOFF_NANOS / 2, TimeUnit.NANOSECONDS);
+    verifyStarted(1).closed(Status.UNAVAILABLE, new Metadata());
+    fakeClock.forwardTime(INITIAL_BACKOFF_NANOS - 1, TimeUnit.NANOSECONDS);
+    assertEquals(2, substreams.size());
+    fakeClock.forwardTime(1, TimeUnit.NANOSECONDS);
+    assertEquals(3, substreams.size());
+
+    // No more attempts allowed
+    Metadata trailers = new Metadata();
+    verifyStarted(2).closed(Status.UNAVAILABLE, trailers);
+    verify(masterListener).closed(same(Status.UNAVAILABLE), same(trailers));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void retry_pushbackOverridesBackoff() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+
+    Metadata trailers = new Metadata();
+    trailers.put(RetriableStream.GRPC_RETRY_PUSHBACK_MS, "5000");
+    verifyStarted(0).closed(Status.UNAVAILABLE, trailers);
+    fakeClock.forwardTime(5000 - 1, TimeUnit.MILLISECONDS);
+    assertEquals(1, substreams.size());
+    fakeClock.forwardTime(1, TimeUnit.MILLISECONDS);
+    assertEquals(2, substreams.size());
+  }
+
+  @Test
+  public void retry_negativePushbackStopsRetries() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+
+    Metadata trailers = new Metadata();
+    trailers.put(RetriableStream.GRPC_RETRY_PUSHBACK_MS, "-1");
+    verifyStarted(0).closed(Status.UNAVAILABLE, trailers);
+    verify(masterListener).closed(same(Status.UNAVAILABLE), same(trailers));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void retry_throttled() {
+    RetryThrottle throttle = new RetryThrottle(2, 0.1f);
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, throttle);
+    stream.start(masterListener);
+
+    // 1 token left is not above the threshold of 1
+    verifyStarted(0).closed(Status.UNAVAILABLE, new Metadata());
+    verify(masterListener).closed(same(Status.UNAVAILABLE), any(Metadata.class));
+    assertEquals(1000, throttle.getTokenCount());
+  }
+
+  @Test
+  public void retry_successReplenishesThrottle() {
+    RetryThrottle throttle = new RetryThrottle(10, 0.5f);
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, throttle);
+    stream.start(masterListener);
+
+    verifyStarted(0).closed(Status.UNAVAILABLE, new Metadata());
+    assertEquals(9000, throttle.getTokenCount());
+    fakeClock.forwardTime(INITIAL_BACKOFF_NANOS, TimeUnit.NANOSECONDS);
+    verifyStarted(1).closed(Status.OK, new Metadata());
+    assertEquals(9500, throttle.getTokenCount());
+  }
+
+  @Test
+  public void retry_perRpcBufferLimitExceededCommits() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 10, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener = verifyStarted(0);
+    stream.sendMessage("01234");
+    assertEquals(5, channelBufferUsed.getBufferUsed());
+
+    stream.sendMessage("56789a");
+    // Committed to the only attempt, whose buffer is released.
+    assertEquals(0, channelBufferUsed.getBufferUsed());
+    Metadata trailers = new Metadata();
+    sublistener.closed(Status.UNAVAILABLE, trailers);
+    verify(masterListener).closed(same(Status.UNAVAILABLE), same(trailers));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void retry_channelBufferLimitExceededCommits() {
+    channelBufferUsed.addAndCheckLimit(995);
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener = verifyStarted(0);
+    stream.sendMessage("0123456789");
+
+    Metadata trailers = new Metadata();
+    sublistener.closed(Status.UNAVAILABLE, trailers);
+    verify(masterListener).closed(same(Status.UNAVAILABLE), same(trailers));
+    assertEquals(995, channelBufferUsed.getBufferUsed());
+  }
+
+  @Test
+  public void retry_cancelDuringBackoff() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+    verifyStarted(0).closed(Status.UNAVAILABLE, new Metadata());
+    assertEquals(1, fakeClock.numPendingTasks());
+
+    stream.cancel(Status.CANCELLED);
+    verify(masterListener).closed(same(Status.CANCELLED), any(Metadata.class));
+    assertEquals(0, fakeClock.numPendingTasks());
+    assertEquals(1, substreams.size());
+  }
+
+  @Test
+  public void retry_cancelCommitsToRunningAttempt() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener = verifyStarted(0);
+
+    stream.cancel(Status.CANCELLED);
+    verify(substreams.get(0)).cancel(Status.CANCELLED);
+    sublistener.closed(Status.CANCELLED, new Metadata());
+    verify(masterListener).closed(same(Status.CANCELLED), any(Metadata.class));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void writeMessage_notSupported() {
+    RetriableStream<String> stream = newRetriableStream(RETRY_POLICY, null, 100, null);
+    stream.writeMessage(mock(InputStream.class));
+  }
+
+  @Test
+  public void hedging_startsNewAttemptsAfterDelay() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    stream.start(masterListener);
+    stream.sendMessage("msg");
+    verifyStarted(0);
+    assertEquals(1, substreams.size());
+
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    assertEquals(2, substreams.size());
+    ClientStreamListener sublistener2 = verifyStarted(1);
+    verify(substreams.get(1)).writeMessage(any(InputStream.class));
+    assertEquals("1", substreamHeaders.get(1).get(RetriableStream.GRPC_PREVIOUS_RPC_ATTEMPTS));
+
+    // Operations go to all the running attempts.
+    stream.halfClose();
+    verify(substreams.get(0)).halfClose();
+    verify(substreams.get(1)).halfClose();
+
+    // The first attempt to get a response wins, and the others are cancelled.
+    Metadata responseHeaders = new Metadata();
+    sublistener2.headersRead(responseHeaders);
+    verify(masterListener).headersRead(same(responseHeaders));
+    verify(substreams.get(0)).cancel(any(Status.class));
+    verify(substreams.get(1), never()).cancel(any(Status.class));
+    assertEquals(0, fakeClock.numPendingTasks());
+    assertEquals(0, channelBufferUsed.getBufferUsed());
+
+    stream.request(3);
+    verify(substreams.get(0), never()).request(3);
+    verify(substreams.get(1)).request(3);
+  }
+
+  @Test
+  public void hedging_stopsAtMaxAttempts() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    stream.start(masterListener);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    assertEquals(3, substreams.size());
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void hedging_nonFatalFailureWaitsForOtherAttempts() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener1 = verifyStarted(0);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    ClientStreamListener sublistener2 = verifyStarted(1);
+
+    sublistener1.closed(Status.UNAVAILABLE, new Metadata());
+    verify(masterListener, never()).closed(any(Status.class), any(Metadata.class));
+
+    // The last running attempt failed, thus the next one starts right away.
+    sublistener2.closed(Status.UNAVAILABLE, new Metadata());
+    verify(masterListener, never()).closed(any(Status.class), any(Metadata.class));
+    fakeClock.forwardTime(0, TimeUnit.NANOSECONDS);
+    assertEquals(3, substreams.size());
+
+    Metadata trailers = new Metadata();
+    verifyStarted(2).closed(Status.UNAVAILABLE, trailers);
+    verify(masterListener).closed(same(Status.UNAVAILABLE), same(trailers));
+  }
+
+  @Test
+  public void hedging_fatalFailureCommits() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener1 = verifyStarted(0);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    verifyStarted(1);
+
+    Metadata trailers = new Metadata();
+    sublistener1.closed(Status.INTERNAL, trailers);
+    verify(masterListener).closed(same(Status.INTERNAL), same(trailers));
+    verify(substreams.get(1)).cancel(any(Status.class));
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void hedging_losersDoNotForwardEvents() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    stream.start(masterListener);
+    ClientStreamListener sublistener1 = verifyStarted(0);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    ClientStreamListener sublistener2 = verifyStarted(1);
+
+    sublistener1.headersRead(new Metadata());
+    sublistener2.headersRead(new Metadata());
+    verify(masterListener).headersRead(any(Metadata.class));
+    InputStream message = mock(InputStream.class);
+    sublistener2.messageRead(message);
+    verify(masterListener, never()).messageRead(any(InputStream.class));
+    sublistener2.closed(Status.CANCELLED, new Metadata());
+    verify(masterListener, never()).closed(any(Status.class), any(Metadata.class));
+  }
+
+  @Test
+  public void isReady() {
+    RetriableStream<String> stream = newRetriableStream(null, HEDGING_POLICY, 100, null);
+    assertFalse(stream.isReady());
+    stream.start(masterListener);
+    fakeClock.forwardTime(HEDGING_DELAY_NANOS, TimeUnit.NANOSECONDS);
+    when(substreams.get(1).isReady()).thenReturn(true);
+    assertTrue(stream.isReady());
+
+    verifyStarted(0).headersRead(new Metadata());
+    assertFalse(stream.isReady());
+  }
+
+  private ClientStreamListener verifyStarted(int index) {
+    ArgumentCaptor<ClientStreamListener> captor =
+        ArgumentCaptor.forClass(ClientStreamListener.class);
+    verify(substreams.get(index)).start(captor.capture());
+    return captor.getValue();
+  }
+
+  private RetriableStream<String> newRetriableStream(@Nullable RetryPolicy retryPolicy,
+      @Nullable HedgingPolicy hedgingPolicy, long perRpcBufferLimit,
+      @Nullable RetryThrottle throttle) {
+    return newRetriableStream(retryPolicy, hedgingPolicy, perRpcBufferLimit, throttle,
+        new Metadata());
+  }
+
+  private RetriableStream<String> newRetriableStream(@Nullable RetryPolicy retryPolicy,
+      @Nullable HedgingPolicy hedgingPolicy, long perRpcBufferLimit,
+      @Nullable RetryThrottle throttle, Metadata headers) {
+    return new RetriableStream<String>(method, headers, retryPolicy, hedgingPolicy,
+        channelBufferUsed, perRpcBufferLimit, throttle, fakeClock.getScheduledExecutorService(),
+        StatsTraceContext.NOOP, random) {
+      @Override
+      ClientStream newSubstream(Metadata newHeaders) {
+        ClientStream substream = mock(ClientStream.class);
+        substreams.add(substream);
+        substreamHeaders.add(newHeaders);
+        return substream;
+      }
+    };
+  }
+
+  private static final class StringMarshaller implements MethodDescriptor.Marshaller<String> {
+    @Override
+    public InputStream stream(String value) {
+      // A KnownLength stream, so that the size of the message can be accounted for.
+      return ReadableBuffers.openStream(
+          ReadableBuffers.wrap(value.getBytes(Charsets.UTF_8)), true);
+    }
+
+    @Override
+    public String parse(InputStream stream) {
+      try {
+        return new String(IoUtils.toByteArray(stream), Charsets.UTF_8);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
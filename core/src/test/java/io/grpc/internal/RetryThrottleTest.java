@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link RetryThrottle}.
+ */
+@RunWith(JUnit4.class)
+public class RetryThrottleTest {
+  @Test
+  public void startsFull() {
+    RetryThrottle throttle = new RetryThrottle(10, 0.1f);
+    assertEquals(10000, throttle.getTokenCount());
+    assertTrue(throttle.isAboveThreshold());
+  }
+
+  @Test
+  public void failuresDrainBelowThreshold() {
+    RetryThrottle throttle = new RetryThrottle(10, 0.1f);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    }
+    // 5 tokens left is not above the threshold of 5
+    assertFalse(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    assertFalse(throttle.isAboveThreshold());
+    assertEquals(5000, throttle.getTokenCount());
+  }
+
+  @Test
+  public void tokenCountNeverNegative() {
+    RetryThrottle throttle = new RetryThrottle(2.5f, 0.1f);
+    assertTrue(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    assertFalse(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    assertFalse(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    assertFalse(throttle.onQualifiedFailureThenCheckIsAboveThreshold());
+    assertEquals(0, throttle.getTokenCount());
+  }
+
+  @Test
+  public void successesRefillUpToMax() {
+    RetryThrottle throttle = new RetryThrottle(10, 0.5f);
+    for (int i = 0; i < 5; i++) {
+      throttle.onQualifiedFailureThenCheckIsAboveThreshold();
+    }
+    assertFalse(throttle.isAboveThreshold());
+    throttle.onSuccess();
+    assertEquals(5500, throttle.getTokenCount());
+    assertTrue(throttle.isAboveThreshold());
+    for (int i = 0; i < 20; i++) {
+      throttle.onSuccess();
+    }
+    assertEquals(10000, throttle.getTokenCount());
+  }
+}
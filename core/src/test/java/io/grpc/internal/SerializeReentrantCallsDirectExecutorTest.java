@@ -33,6 +33,7 @@ package io.grpc.internal;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -84,6 +85,35 @@ public class SerializeReentrantCallsDirectExecutorTest {
     assertEquals(asList(1, 2, 3, 4), callOrder);
   }
 
+  @Test
+  public void tasksQueuedByQueuedTasksRunLast() {
+    final List<Integer> callOrder = new ArrayList<Integer>(4);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            callOrder.add(2);
+            executor.execute(new Runnable() {
+              @Override public void run() {
+                callOrder.add(4);
+              }
+            });
+          }
+        });
+        executor.execute(new Runnable() {
+          @Override public void run() {
+            callOrder.add(3);
+          }
+        });
+        callOrder.add(1);
+      }
+    });
+
+    assertEquals(asList(1, 2, 3, 4), callOrder);
+  }
+
   @Test
   public void exceptionShouldNotCancelQueuedTasks() {
     final AtomicBoolean executed1 = new AtomicBoolean();
@@ -113,6 +143,31 @@ public class SerializeReentrantCallsDirectExecutorTest {
     assertTrue(executed2.get());
   }
 
+  @Test
+  public void inlineExecutionShouldRunQueuedTasksOnExit() {
+    final List<Integer> callOrder = new ArrayList<Integer>(3);
+    assertTrue(executor.enterInline());
+    assertFalse(executor.enterInline());
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        callOrder.add(2);
+      }
+    });
+    callOrder.add(1);
+    executor.exitInline();
+    assertEquals(asList(1, 2), callOrder);
+
+    // No longer executing
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        callOrder.add(3);
+      }
+    });
+    assertEquals(asList(1, 2, 3), callOrder);
+  }
+
   @Test(expected = NullPointerException.class)
   public void executingNullShouldFail() {
     executor.execute(null);
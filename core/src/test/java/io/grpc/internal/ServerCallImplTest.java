@@ -35,6 +35,7 @@ import static com.google.common.base.Charsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -55,7 +56,6 @@ import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.MethodDescriptor.MethodType;
 import io.grpc.ServerCall;
 import io.grpc.Status;
-import io.grpc.internal.ServerCallImpl.ServerStreamListenerImpl;
 import io.grpc.internal.testing.StatsTestUtils;
 import io.grpc.internal.testing.StatsTestUtils.FakeStatsContextFactory;
 import java.io.ByteArrayInputStream;
@@ -196,11 +196,17 @@ public class ServerCallImplTest {
     verify(stream).setMessageCompression(true);
   }
 
+  @Test
+  public void newServerStreamListener_isTheCall() {
+    assertSame(call, call.newServerStreamListener(callListener));
+
+    thrown.expect(IllegalStateException.class);
+    call.newServerStreamListener(callListener);
+  }
+
   @Test
   public void streamListener_halfClosed() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
 
     streamListener.halfClosed();
 
@@ -209,9 +215,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_halfClosed_onlyOnce() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     streamListener.halfClosed();
     // canceling the call should short circuit future halfClosed() calls.
     streamListener.closed(Status.CANCELLED);
@@ -223,9 +227,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_closedOk() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
 
     streamListener.closed(Status.OK);
 
@@ -237,9 +239,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_closedCancelled() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
 
     streamListener.closed(Status.CANCELLED);
 
@@ -251,9 +251,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_onReady() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
 
     streamListener.onReady();
 
@@ -262,9 +260,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_onReady_onlyOnce() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     streamListener.onReady();
     // canceling the call should short circuit future halfClosed() calls.
     streamListener.closed(Status.CANCELLED);
@@ -276,9 +272,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_messageRead() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     streamListener.messageRead(method.streamRequest(1234L));
 
     verify(callListener).onMessage(1234L);
@@ -286,9 +280,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_messageRead_unaryFailsOnMultiple() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     streamListener.messageRead(method.streamRequest(1234L));
     streamListener.messageRead(method.streamRequest(1234L));
 
@@ -301,9 +293,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_messageRead_onlyOnce() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     streamListener.messageRead(method.streamRequest(1234L));
     // canceling the call should short circuit future halfClosed() calls.
     streamListener.closed(Status.CANCELLED);
@@ -315,9 +305,7 @@ public class ServerCallImplTest {
 
   @Test
   public void streamListener_unexpectedRuntimeException() {
-    ServerStreamListenerImpl<Long> streamListener =
-        new ServerCallImpl.ServerStreamListenerImpl<Long>(
-            call, callListener, context, statsTraceCtx);
+    ServerStreamListener streamListener = call.newServerStreamListener(callListener);
     doThrow(new RuntimeException("unexpected exception"))
         .when(callListener)
         .onMessage(any(Long.class));
@@ -84,6 +84,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executor;
@@ -1046,6 +1048,63 @@ public class ServerImplTest {
     }
   }
 
+  @Test
+  public void directExecutor_deliversInlineInContext() {
+    final Context.CancellableContext context = Context.ROOT.withCancellation();
+    JumpToApplicationThreadServerStreamListener listener
+        = new JumpToApplicationThreadServerStreamListener(
+            new SerializeReentrantCallsDirectExecutor(), stream, context);
+    final List<String> events = new ArrayList<String>();
+    listener.setListener(new RecordingStreamListener(events) {
+        @Override
+        public void halfClosed() {
+          assertTrue(context.isCurrent());
+          super.halfClosed();
+        }
+      });
+
+    listener.halfClosed();
+    assertEquals(Arrays.asList("halfClosed"), events);
+    assertFalse(context.isCurrent());
+
+    listener.closed(Status.OK);
+    assertEquals(Arrays.asList("halfClosed", "closed"), events);
+    assertTrue(context.isCancelled());
+  }
+
+  @Test
+  public void directExecutor_reentrantEventsAreQueued() {
+    final JumpToApplicationThreadServerStreamListener listener
+        = new JumpToApplicationThreadServerStreamListener(
+            new SerializeReentrantCallsDirectExecutor(), stream, Context.ROOT.withCancellation());
+    final List<String> events = new ArrayList<String>();
+    listener.setListener(new RecordingStreamListener(events) {
+        @Override
+        public void halfClosed() {
+          listener.closed(Status.CANCELLED);
+          super.halfClosed();
+        }
+      });
+
+    listener.halfClosed();
+    assertEquals(Arrays.asList("halfClosed", "closed"), events);
+  }
+
+  @Test
+  public void directExecutor_runtimeExceptionCancelsCallWithoutPropagating() {
+    JumpToApplicationThreadServerStreamListener listener
+        = new JumpToApplicationThreadServerStreamListener(
+            new SerializeReentrantCallsDirectExecutor(), stream, Context.ROOT.withCancellation());
+    ServerStreamListener mockListener = mock(ServerStreamListener.class);
+    listener.setListener(mockListener);
+
+    Throwable expectedT = new RuntimeException();
+    doThrow(expectedT).when(mockListener).onReady();
+    listener.onReady();
+    verify(stream).close(statusCaptor.capture(), any(Metadata.class));
+    assertSame(expectedT, statusCaptor.getValue().getCause());
+  }
+
   private void createAndStartServer(List<ServerTransportFilter> filters) throws IOException {
     createServer(filters);
     server.start();
@@ -1118,4 +1177,32 @@ public class ServerImplTest {
       throw new UnsupportedOperationException();
     }
   }
+
+  private static class RecordingStreamListener implements ServerStreamListener {
+    private final List<String> events;
+
+    RecordingStreamListener(List<String> events) {
+      this.events = events;
+    }
+
+    @Override
+    public void messageRead(InputStream message) {
+      events.add("messageRead");
+    }
+
+    @Override
+    public void halfClosed() {
+      events.add("halfClosed");
+    }
+
+    @Override
+    public void closed(Status status) {
+      events.add("closed");
+    }
+
+    @Override
+    public void onReady() {
+      events.add("onReady");
+    }
+  }
 }
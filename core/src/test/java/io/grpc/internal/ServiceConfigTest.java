@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableSet;
+import io.grpc.CallOptions;
+import io.grpc.Deadline;
+import io.grpc.IntegerMarshaller;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Status;
+import io.grpc.StringMarshaller;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ServiceConfig} and {@link ServiceConfigInterceptor}.
+ */
+@RunWith(JUnit4.class)
+public class ServiceConfigTest {
+  private final MethodDescriptor<String, Integer> bazMethod = newMethod("foo.Bar/baz");
+  private final MethodDescriptor<String, Integer> quxMethod = newMethod("foo.Bar/qux");
+  private final MethodDescriptor<String, Integer> otherMethod = newMethod("foo.Other/baz");
+
+  @Test
+  public void methodConfigOverridesServiceConfig() {
+    Map<String, Object> serviceWide = methodConfig(name("foo.Bar", null));
+    serviceWide.put("timeout", "1s");
+    Map<String, Object> perMethod = methodConfig(name("foo.Bar", "baz"));
+    perMethod.put("timeout", "0.5s");
+    ServiceConfig config = ServiceConfig.parse(serviceConfig(serviceWide, perMethod));
+
+    assertEquals(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(500)),
+        config.getMethodInfo(bazMethod).timeoutNanos);
+    assertEquals(Long.valueOf(TimeUnit.SECONDS.toNanos(1)),
+        config.getMethodInfo(quxMethod).timeoutNanos);
+    assertNull(config.getMethodInfo(otherMethod));
+  }
+
+  @Test
+  public void parseAllFields() {
+    Map<String, Object> methodConfig = methodConfig(name("foo.Bar", "baz"));
+    methodConfig.put("timeout", "1.000000001s");
+    methodConfig.put("waitForReady", false);
+    methodConfig.put("maxRequestMessageBytes", 100.0);
+    methodConfig.put("maxResponseMessageBytes", 200);
+    methodConfig.put("compression", "gzip");
+    Map<String, Object> retryPolicy = new HashMap<String, Object>();
+    retryPolicy.put("maxAttempts", 3.0);
+    retryPolicy.put("initialBackoff", "0.1s");
+    retryPolicy.put("maxBackoff", "10s");
+    retryPolicy.put("backoffMultiplier", 1.5);
+    retryPolicy.put("retryableStatusCodes", Arrays.asList("UNAVAILABLE", "ABORTED"));
+    methodConfig.put("retryPolicy", retryPolicy);
+    ServiceConfig config = ServiceConfig.parse(serviceConfig(methodConfig));
+    ServiceConfig.MethodInfo info = config.getMethodInfo(bazMethod);
+    assertEquals(Long.valueOf(1000000001L), info.timeoutNanos);
+    assertFalse(info.waitForReady);
+    assertEquals(Integer.valueOf(100), info.maxOutboundMessageSize);
+    assertEquals(Integer.valueOf(200), info.maxInboundMessageSize);
+    assertEquals("gzip", info.compressorName);
+    assertEquals(
+        new RetryPolicy(3, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(10), 1.5,
+            ImmutableSet.of(Status.Code.UNAVAILABLE, Status.Code.ABORTED)),
+        info.retryPolicy);
+    assertNull(info.hedgingPolicy);
+  }
+
+  @Test
+  public void parseHedgingPolicy() {
+    Map<String, Object> methodConfig = methodConfig(name("foo.Bar", "baz"));
+    Map<String, Object> hedgingPolicy = new HashMap<String, Object>();
+    hedgingPolicy.put("maxAttempts", 2.0);
+    hedgingPolicy.put("hedgingDelay", "0.05s");
+    hedgingPolicy.put("nonFatalStatusCodes", Collections.singletonList("UNAVAILABLE"));
+    methodConfig.put("hedgingPolicy", hedgingPolicy);
+
+    ServiceConfig.MethodInfo info =
+        ServiceConfig.parse(serviceConfig(methodConfig)).getMethodInfo(bazMethod);
+    assertEquals(
+        new HedgingPolicy(2, TimeUnit.MILLISECONDS.toNanos(50),
+            ImmutableSet.of(Status.Code.UNAVAILABLE)),
+        info.hedgingPolicy);
+  }
+
+  @Test
+  public void malformedConfigsRejected() {
+    Map<String, Object> badTimeout = methodConfig(name("foo.Bar", "baz"));
+    badTimeout.put("timeout", "1m");
+    assertMalformed(serviceConfig(badTimeout));
+
+    Map<String, Object> badType = methodConfig(name("foo.Bar", "baz"));
+    badType.put("waitForReady", "yes");
+    assertMalformed(serviceConfig(badType));
+
+    Map<String, Object> fractionalSize = methodConfig(name("foo.Bar", "baz"));
+    fractionalSize.put("maxRequestMessageBytes", 1.5);
+    assertMalformed(serviceConfig(fractionalSize));
+
+    assertMalformed(serviceConfig(new HashMap<String, Object>()));
+    assertMalformed(
+        serviceConfig(methodConfig(name("foo.Bar", "baz")), methodConfig(name("foo.Bar", "baz"))));
+
+    Map<String, Object> badCode = methodConfig(name("foo.Bar", "baz"));
+    Map<String, Object> hedgingPolicy = new HashMap<String, Object>();
+    hedgingPolicy.put("maxAttempts", 2.0);
+    hedgingPolicy.put("nonFatalStatusCodes", Collections.singletonList("NOT_A_CODE"));
+    badCode.put("hedgingPolicy", hedgingPolicy);
+    assertMalformed(serviceConfig(badCode));
+  }
+
+  @Test
+  public void applyOnlyNarrowsDeadlineAndSizes() {
+    Map<String, Object> methodConfig = methodConfig(name("foo.Bar", "baz"));
+    methodConfig.put("timeout", "10s");
+    methodConfig.put("maxRequestMessageBytes", 100);
+    methodConfig.put("waitForReady", true);
+    methodConfig.put("compression", "gzip");
+    ServiceConfig.MethodInfo info =
+        ServiceConfig.parse(serviceConfig(methodConfig)).getMethodInfo(bazMethod);
+
+    CallOptions applied = info.apply(CallOptions.DEFAULT);
+    assertTrue(applied.getDeadline().timeRemaining(TimeUnit.SECONDS) > 5);
+    assertEquals(Integer.valueOf(100), applied.getMaxOutboundMessageSize());
+    assertTrue(applied.isWaitForReady());
+    assertEquals("gzip", applied.getCompressor());
+
+    Deadline earlier = Deadline.after(1, TimeUnit.SECONDS);
+    CallOptions explicit = CallOptions.DEFAULT.withDeadline(earlier)
+        .withMaxOutboundMessageSize(50)
+        .withCompression("identity")
+        .withoutWaitForReady();
+    applied = info.apply(explicit);
+    assertSame(earlier, applied.getDeadline());
+    assertEquals(Integer.valueOf(50), applied.getMaxOutboundMessageSize());
+    assertEquals("identity", applied.getCompressor());
+    // Wait-for-ready can't be told apart from the default, so the config wins.
+    assertTrue(applied.isWaitForReady());
+  }
+
+  @Test
+  public void interceptorIgnoresMalformedUpdate() {
+    ServiceConfigInterceptor interceptor = new ServiceConfigInterceptor();
+    Map<String, Object> methodConfig = methodConfig(name("foo.Bar", "baz"));
+    methodConfig.put("waitForReady", true);
+    ServiceConfig config = interceptor.handleUpdate(serviceConfig(methodConfig));
+    assertTrue(config.getMethodInfo(bazMethod).waitForReady);
+
+    Map<String, Object> malformed = methodConfig(name("foo.Bar", "baz"));
+    malformed.put("waitForReady", 1);
+    assertSame(config, interceptor.handleUpdate(serviceConfig(malformed)));
+
+    assertSame(ServiceConfig.EMPTY, interceptor.handleUpdate(null));
+  }
+
+  private static void assertMalformed(Map<String, Object> serviceConfig) {
+    try {
+      ServiceConfig.parse(serviceConfig);
+      fail("Should have thrown for " + serviceConfig);
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  private static MethodDescriptor<String, Integer> newMethod(String fullMethodName) {
+    return MethodDescriptor.<String, Integer>newBuilder()
+        .setType(MethodType.UNARY)
+        .setFullMethodName(fullMethodName)
+        .setRequestMarshaller(new StringMarshaller())
+        .setResponseMarshaller(new IntegerMarshaller())
+        .build();
+  }
+
+  private static Map<String, Object> name(String service, String method) {
+    Map<String, Object> name = new HashMap<String, Object>();
+    name.put("service", service);
+    if (method != null) {
+      name.put("method", method);
+    }
+    return name;
+  }
+
+  private static Map<String, Object> methodConfig(Map<String, Object> name) {
+    Map<String, Object> methodConfig = new HashMap<String, Object>();
+    methodConfig.put("name", Collections.singletonList(name));
+    return methodConfig;
+  }
+
+  private static Map<String, Object> serviceConfig(Object... methodConfigs) {
+    Map<String, Object> serviceConfig = new HashMap<String, Object>();
+    serviceConfig.put("methodConfig", Arrays.asList(methodConfigs));
+    return serviceConfig;
+  }
+}
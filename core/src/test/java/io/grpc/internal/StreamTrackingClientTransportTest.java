@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.internal;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import io.grpc.CallOptions;
+import io.grpc.IntegerMarshaller;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.StreamTracker;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StringMarshaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link StreamTrackingClientTransport}.
+ */
+@RunWith(JUnit4.class)
+public class StreamTrackingClientTransportTest {
+  private final MethodDescriptor<String, Integer> method =
+      MethodDescriptor.<String, Integer>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNKNOWN)
+          .setFullMethodName("/service/method")
+          .setRequestMarshaller(new StringMarshaller())
+          .setResponseMarshaller(new IntegerMarshaller())
+          .build();
+  private final Metadata headers = new Metadata();
+
+  @Mock private SubchannelImpl mockSubchannel;
+  @Mock private ConnectionClientTransport mockTransport;
+  @Mock private ClientStream mockStream;
+  @Mock private ClientStreamListener mockListener;
+  @Mock private StreamTracker mockTracker;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(mockSubchannel.obtainActiveTransport()).thenReturn(mockTransport);
+    when(mockTransport.newStream(same(method), same(headers), same(CallOptions.DEFAULT),
+            any(StatsTraceContext.class)))
+        .thenReturn(mockStream);
+  }
+
+  @Test
+  public void untrackedPickUsesTransportDirectly() {
+    assertSame(mockTransport, GrpcUtil.getTransportFromPickResult(
+        PickResult.withSubchannel(mockSubchannel), false));
+    assertSame(mockTransport, GrpcUtil.getTransportFromPickResult(
+        PickResult.withSubchannel(mockSubchannel, null), false));
+  }
+
+  @Test
+  public void trackedPickReportsStartAndClose() {
+    ClientTransport transport = GrpcUtil.getTransportFromPickResult(
+        PickResult.withSubchannel(mockSubchannel, mockTracker), false);
+    ClientStream stream =
+        transport.newStream(method, headers, CallOptions.DEFAULT, StatsTraceContext.NOOP);
+    verifyZeroInteractions(mockTracker);
+
+    stream.start(mockListener);
+    ArgumentCaptor<ClientStreamListener> listenerCaptor =
+        ArgumentCaptor.forClass(ClientStreamListener.class);
+    verify(mockStream).start(listenerCaptor.capture());
+    InOrder inOrder = inOrder(mockTracker, mockListener);
+    inOrder.verify(mockTracker).streamStarted();
+
+    stream.request(3);
+    verify(mockStream).request(3);
+
+    Status status = Status.UNAVAILABLE.withDescription("go away");
+    Metadata trailers = new Metadata();
+    listenerCaptor.getValue().closed(status, trailers);
+    inOrder.verify(mockTracker).streamClosed(same(status));
+    inOrder.verify(mockListener).closed(same(status), same(trailers));
+  }
+}
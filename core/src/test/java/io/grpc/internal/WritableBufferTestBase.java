@@ -33,7 +33,9 @@ package io.grpc.internal;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
 
+import java.nio.ByteBuffer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -116,4 +118,26 @@ public abstract class WritableBufferTestBase {
 
     assertArrayEquals(b, writtenBytes());
   }
+
+  @Test
+  public void testWriteThroughByteBuffer() {
+    assumeTrue(buffer().byteBufferSupported());
+    byte[] b = new byte[10];
+    for (byte i = 0; i < b.length; i++) {
+      b[i] = i;
+    }
+    buffer().write(b, 0, 5);
+    int writable = buffer().writableBytes();
+
+    ByteBuffer byteBuffer = buffer().getWritableByteBuffer();
+    assertEquals(writable, byteBuffer.remaining());
+    byteBuffer.put(b, 5, 5);
+    // Nothing is appended until the write position is advanced
+    assertEquals(5, buffer().readableBytes());
+
+    buffer().advanceWritePosition(5);
+    assertEquals(10, buffer().readableBytes());
+    assertEquals(writable - 5, buffer().writableBytes());
+    assertArrayEquals(b, writtenBytes());
+  }
 }
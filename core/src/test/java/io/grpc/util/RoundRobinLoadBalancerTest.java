@@ -50,6 +50,7 @@ import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import io.grpc.Attributes;
 import io.grpc.ConnectivityState;
 import io.grpc.ConnectivityStateInfo;
@@ -63,11 +64,14 @@ import io.grpc.ResolvedServerInfoGroup;
 import io.grpc.Status;
 import io.grpc.util.RoundRobinLoadBalancerFactory.Picker;
 import io.grpc.util.RoundRobinLoadBalancerFactory.RoundRobinLoadBalancer;
+import io.grpc.util.RoundRobinLoadBalancerFactory.Subsetter;
 import java.net.SocketAddress;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
@@ -381,6 +385,88 @@ public class RoundRobinLoadBalancerTest {
     assertThat(pickers.hasNext()).isFalse();
   }
 
+  @Test
+  public void subsettingConnectsToBoundedSubset() throws Exception {
+    loadBalancer = (RoundRobinLoadBalancer) RoundRobinLoadBalancerFactory
+        .newSubsettingInstance("client", 2).newLoadBalancer(mockHelper);
+    loadBalancer.handleResolvedAddresses(Lists.newArrayList(servers.keySet()), Attributes.EMPTY);
+
+    verify(mockHelper, times(2)).createSubchannel(eagCaptor.capture(), any(Attributes.class));
+    assertThat(subchannels.keySet()).containsAllIn(eagCaptor.getAllValues());
+    assertThat(loadBalancer.getSubchannels()).hasSize(2);
+    for (EquivalentAddressGroup eag : eagCaptor.getAllValues()) {
+      verify(subchannels.get(eag)).requestConnection();
+    }
+  }
+
+  @Test
+  public void subsetIsDeterministic() {
+    Set<EquivalentAddressGroup> addrs = createAddrs(100);
+    Set<EquivalentAddressGroup> subset = new Subsetter("client", 10).select(addrs);
+
+    assertThat(subset).hasSize(10);
+    assertThat(addrs).containsAllIn(subset);
+    assertEquals(subset, new Subsetter("client", 10).select(new HashSet<EquivalentAddressGroup>(
+        Lists.reverse(Lists.newArrayList(addrs)))));
+  }
+
+  @Test
+  public void subsetNotSmallerThanAddresses() {
+    Set<EquivalentAddressGroup> addrs = createAddrs(5);
+    assertEquals(addrs, new Subsetter("client", 10).select(addrs));
+  }
+
+  @Test
+  public void subsetChurnIsMinimal() {
+    Set<EquivalentAddressGroup> addrs = createAddrs(100);
+    Subsetter subsetter = new Subsetter("client", 10);
+    Set<EquivalentAddressGroup> subset = subsetter.select(addrs);
+
+    // Removing an address outside of the subset doesn't change the subset
+    Set<EquivalentAddressGroup> updated = new HashSet<EquivalentAddressGroup>(addrs);
+    for (EquivalentAddressGroup addr : addrs) {
+      if (!subset.contains(addr)) {
+        updated.remove(addr);
+        break;
+      }
+    }
+    assertEquals(subset, subsetter.select(updated));
+
+    // Removing an address inside of the subset replaces only that address
+    EquivalentAddressGroup removed = subset.iterator().next();
+    updated.remove(removed);
+    Set<EquivalentAddressGroup> newSubset = subsetter.select(updated);
+    assertThat(newSubset).hasSize(10);
+    assertThat(newSubset).doesNotContain(removed);
+    assertEquals(9, Sets.intersection(subset, newSubset).size());
+  }
+
+  @Test
+  public void subsetsAreSpreadAcrossClients() {
+    Set<EquivalentAddressGroup> addrs = createAddrs(20);
+    Map<EquivalentAddressGroup, Integer> counts = Maps.newHashMap();
+    for (int i = 0; i < 1000; i++) {
+      for (EquivalentAddressGroup addr : new Subsetter("client" + i, 5).select(addrs)) {
+        Integer count = counts.get(addr);
+        counts.put(addr, count == null ? 1 : count + 1);
+      }
+    }
+    // Every address is expected to be picked by 1000 * 5 / 20 = 250 clients
+    assertEquals(20, counts.size());
+    for (int count : counts.values()) {
+      assertThat(count).isGreaterThan(175);
+      assertThat(count).isLessThan(325);
+    }
+  }
+
+  private static Set<EquivalentAddressGroup> createAddrs(int count) {
+    Set<EquivalentAddressGroup> addrs = new HashSet<EquivalentAddressGroup>();
+    for (int i = 0; i < count; i++) {
+      addrs.add(new EquivalentAddressGroup(new FakeSocketAddress("server" + i)));
+    }
+    return addrs;
+  }
+
   private static class FakeSocketAddress extends SocketAddress {
     final String name;
 
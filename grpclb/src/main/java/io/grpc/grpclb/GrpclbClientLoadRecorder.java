@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.grpclb;
+
+import io.grpc.LoadBalancer.StreamTracker;
+import io.grpc.Status;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records the client-side load of the RPCs balanced by GRPCLB, which is periodically reported to
+ * the LoadBalancer service as {@link ClientStats}.  The counters are reset when they are reported.
+ */
+@ThreadSafe
+final class GrpclbClientLoadRecorder extends StreamTracker {
+  private final AtomicLong totalRequests = new AtomicLong();
+  private final AtomicLong clientRpcErrors = new AtomicLong();
+  private final AtomicLong droppedRequests = new AtomicLong();
+
+  @Override
+  public void streamStarted() {
+    totalRequests.incrementAndGet();
+  }
+
+  @Override
+  public void streamClosed(Status status) {
+    if (!status.isOk()) {
+      clientRpcErrors.incrementAndGet();
+    }
+  }
+
+  /**
+   * Records a request that is dropped as instructed by the LoadBalancer.  It also counts toward
+   * the total requests.
+   */
+  void recordDroppedRequest() {
+    totalRequests.incrementAndGet();
+    droppedRequests.incrementAndGet();
+  }
+
+  /**
+   * Returns the load recorded since the last call of this method.
+   */
+  ClientStats generateLoadReport() {
+    return ClientStats.newBuilder()
+        .setTotalRequests(totalRequests.getAndSet(0))
+        .setClientRpcErrors(clientRpcErrors.getAndSet(0))
+        .setDroppedRequests(droppedRequests.getAndSet(0))
+        .build();
+  }
+}
@@ -33,6 +33,8 @@ package io.grpc.grpclb;
 
 import io.grpc.Attributes;
 import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.internal.GrpcAttributes;
 
 /**
  * Constants for the GRPCLB load-balancer.
@@ -56,10 +58,18 @@ public final class GrpclbConstants {
 
   /**
    * The naming authority of an LB server address.  It is an address-group-level attribute, present
-   * when the address group is a LoadBalancer.
+   * when the address group is a LoadBalancer.  Name resolvers outside of this module set it through
+   * {@link GrpcAttributes#ATTR_LB_ADDR_AUTHORITY}, which is the same key.
    */
   public static final Attributes.Key<String> ATTR_LB_ADDR_AUTHORITY =
-      Attributes.Key.of("io.grpc.grpclb.lbAddrAuthority");
+      GrpcAttributes.ATTR_LB_ADDR_AUTHORITY;
+
+  /**
+   * The header that carries the LB token of the server an RPC is sent to.  Servers use it to
+   * verify the RPC and to report load to the LoadBalancer.
+   */
+  public static final Metadata.Key<String> TOKEN_METADATA_KEY =
+      Metadata.Key.of("lb-token", Metadata.ASCII_STRING_MARSHALLER);
 
   private GrpclbConstants() { }
 }
@@ -40,15 +40,19 @@ import static io.grpc.ConnectivityState.SHUTDOWN;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.Duration;
 import io.grpc.Attributes;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.LoadBalancer;
 import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
 import io.grpc.ResolvedServerInfoGroup;
 import io.grpc.Status;
 import io.grpc.grpclb.GrpclbConstants.LbPolicy;
 import io.grpc.internal.LogId;
+import io.grpc.internal.ObjectPool;
+import io.grpc.internal.SerializingExecutor;
 import io.grpc.internal.WithLogId;
 import io.grpc.stub.StreamObserver;
 import java.net.InetAddress;
@@ -60,6 +64,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -88,12 +96,31 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
   private final Helper helper;
   private final Factory pickFirstBalancerFactory;
   private final Factory roundRobinBalancerFactory;
+  private final ObjectPool<ScheduledExecutorService> timerServicePool;
+  private ScheduledExecutorService timerService;
+  // Records the load of the RPCs picked by GRPCLB, which is reported on whichever LB stream is
+  // current when the report is due
+  private final GrpclbClientLoadRecorder loadRecorder = new GrpclbClientLoadRecorder();
+  @Nullable
+  private final ServerListCache serverListCache;
+  private final ObjectPool<? extends Executor> cacheExecutorPool;
+  // The pooled executor that serverListCache is read and written on, null if there is no cache or
+  // the balancer has been shut down
+  @Nullable
+  private Executor cacheExecutor;
+  // Runs the file I/O of serverListCache in order, off the Channel Executor
+  @Nullable
+  private Executor serializingCacheExecutor;
 
   private static final Attributes.Key<AtomicReference<ConnectivityStateInfo>> STATE_INFO =
         Attributes.Key.of("io.grpc.grpclb.GrpclbLoadBalancer.stateInfo");
   @VisibleForTesting
   static final PickResult THROTTLED_RESULT =
       PickResult.withError(Status.UNAVAILABLE.withDescription("Throttled by LB"));
+  // How long to wait for the first server list from the LoadBalancer, before using the backend
+  // addresses from the NameResolver instead
+  @VisibleForTesting
+  static final long FALLBACK_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
 
   // All mutable states in this class are mutated ONLY from Channel Executor
 
@@ -124,17 +151,35 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
   @Nullable
   private StreamObserver<LoadBalanceRequest> lbRequestWriter;
   private Map<EquivalentAddressGroup, Subchannel> subchannels = Collections.emptyMap();
-  // A null element indicate a simulated error for throttling purpose
-  private List<EquivalentAddressGroup> roundRobinList = Collections.emptyList();
+  private List<BackendEntry> roundRobinList = Collections.emptyList();
+  // The backend addresses from the NameResolver, used when the LoadBalancer can't be reached
+  private List<EquivalentAddressGroup> fallbackBackendList = Collections.emptyList();
+  // Whether a server list has been received from the LoadBalancer since switching to GRPCLB
+  private boolean receivedServerListFromLb;
+  // Whether roundRobinList comes from fallbackBackendList
+  private boolean usingFallbackBackends;
+  @Nullable
+  private ScheduledFuture<?> fallbackTimer;
+  @Nullable
+  private ScheduledFuture<?> serverListExpirationTimer;
 
   GrpclbLoadBalancer(Helper helper, Factory pickFirstBalancerFactory,
-      Factory roundRobinBalancerFactory) {
+      Factory roundRobinBalancerFactory, ObjectPool<ScheduledExecutorService> timerServicePool,
+      ObjectPool<? extends Executor> cacheExecutorPool, @Nullable ServerListCache serverListCache) {
     this.helper = checkNotNull(helper, "helper");
     this.serviceName = checkNotNull(helper.getAuthority(), "helper returns null authority");
     this.pickFirstBalancerFactory =
         checkNotNull(pickFirstBalancerFactory, "pickFirstBalancerFactory");
     this.roundRobinBalancerFactory =
         checkNotNull(roundRobinBalancerFactory, "roundRobinBalancerFactory");
+    this.timerServicePool = checkNotNull(timerServicePool, "timerServicePool");
+    this.timerService = checkNotNull(timerServicePool.getObject(), "timerService");
+    this.cacheExecutorPool = checkNotNull(cacheExecutorPool, "cacheExecutorPool");
+    this.serverListCache = serverListCache;
+    if (serverListCache != null) {
+      this.cacheExecutor = checkNotNull(cacheExecutorPool.getObject(), "cacheExecutor");
+      this.serializingCacheExecutor = new SerializingExecutor(cacheExecutor);
+    }
   }
 
   @Override
@@ -196,8 +241,11 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
     if (newLbPolicy != lbPolicy) {
       shutdownDelegate();
       shutdownLbComm();
+      cancelGrpclbTimers();
       lbAddressGroups = null;
       currentLbIndex = 0;
+      receivedServerListFromLb = false;
+      usingFallbackBackends = false;
       switch (newLbPolicy) {
         case PICK_FIRST:
           delegate = checkNotNull(pickFirstBalancerFactory.newLoadBalancer(helper),
@@ -207,6 +255,10 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
           delegate = checkNotNull(roundRobinBalancerFactory.newLoadBalancer(helper),
               "roundRobinBalancerFactory.newLoadBalancer()");
           break;
+        case GRPCLB:
+          loadCachedServerList();
+          fallbackTimer = schedule(new FallbackTask(), FALLBACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          break;
         default:
           // Do nohting
       }
@@ -221,6 +273,15 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
         delegate.handleResolvedAddresses(newBackendServerInfoGroups, attributes);
         break;
       case GRPCLB:
+        List<EquivalentAddressGroup> newFallbackBackendList =
+            new ArrayList<EquivalentAddressGroup>();
+        for (ResolvedServerInfoGroup serverInfoGroup : newBackendServerInfoGroups) {
+          newFallbackBackendList.add(serverInfoGroup.toEquivalentAddressGroup());
+        }
+        fallbackBackendList = newFallbackBackendList;
+        if (usingFallbackBackends) {
+          useFallbackBackends();
+        }
         if (newLbAddressGroups.isEmpty()) {
           shutdownLbComm();
           lbAddressGroups = null;
@@ -259,11 +320,200 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
       lbRequestWriter = null;
     }
     if (lbResponseObserver != null) {
-      lbResponseObserver.dismissed = true;
+      lbResponseObserver.dismiss();
       lbResponseObserver = null;
     }
   }
 
+  private void cancelGrpclbTimers() {
+    if (fallbackTimer != null) {
+      fallbackTimer.cancel(false);
+      fallbackTimer = null;
+    }
+    if (serverListExpirationTimer != null) {
+      serverListExpirationTimer.cancel(false);
+      serverListExpirationTimer = null;
+    }
+  }
+
+  /**
+   * Schedules a task to be run from the Channel Executor.  The task should check whether it is
+   * still relevant, since it may have been queued before the timer was cancelled.
+   */
+  private ScheduledFuture<?> schedule(final Runnable task, long delay, TimeUnit unit) {
+    return timerService.schedule(new Runnable() {
+        @Override
+        public void run() {
+          helper.runSerialized(task);
+        }
+      }, delay, unit);
+  }
+
+  private class FallbackTask implements Runnable {
+    @Override
+    public void run() {
+      if (fallbackTimer == null) {
+        return;
+      }
+      fallbackTimer = null;
+      if (receivedServerListFromLb) {
+        return;
+      }
+      // A server list from the cache is good enough as long as its servers are reachable
+      for (Subchannel subchannel : subchannels.values()) {
+        if (subchannel.getAttributes().get(STATE_INFO).get().getState() == READY) {
+          return;
+        }
+      }
+      logger.log(Level.FINE, "[{0}] No server list from the LoadBalancer after {1}ms",
+          new Object[] {logId, FALLBACK_TIMEOUT_MS});
+      useFallbackBackends();
+    }
+  }
+
+  private class ServerListExpirationTask implements Runnable {
+    @Override
+    public void run() {
+      if (serverListExpirationTimer == null) {
+        return;
+      }
+      serverListExpirationTimer = null;
+      logger.log(Level.FINE, "[{0}] The server list from the LoadBalancer has expired", logId);
+      // Without backends from the NameResolver, a stale list is still better than no list
+      useFallbackBackends();
+    }
+  }
+
+  /**
+   * Uses the backend addresses from the NameResolver until the LoadBalancer sends a server list.
+   * Does nothing if the NameResolver didn't return any backend address.
+   */
+  private void useFallbackBackends() {
+    if (fallbackBackendList.isEmpty()) {
+      return;
+    }
+    logger.log(Level.FINE, "[{0}] Using fallback backends: {1}",
+        new Object[] {logId, fallbackBackendList});
+    usingFallbackBackends = true;
+    List<BackendEntry> newRoundRobinList = new ArrayList<BackendEntry>();
+    for (EquivalentAddressGroup eag : fallbackBackendList) {
+      newRoundRobinList.add(new BackendEntry(eag, null));
+    }
+    useRoundRobinList(newRoundRobinList);
+  }
+
+  /**
+   * Reads the server list saved by a previous balancer for the same service off the Channel
+   * Executor, and uses it if nothing better has come up by the time it has been read.
+   */
+  private void loadCachedServerList() {
+    if (serverListCache == null) {
+      return;
+    }
+    serializingCacheExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          final ServerList serverList = serverListCache.load();
+          if (serverList == null) {
+            return;
+          }
+          helper.runSerialized(new Runnable() {
+              @Override
+              public void run() {
+                useCachedServerList(serverList);
+              }
+            });
+        }
+      });
+  }
+
+  private void useCachedServerList(ServerList serverList) {
+    if (cacheExecutor == null || lbPolicy != LbPolicy.GRPCLB || receivedServerListFromLb
+        || usingFallbackBackends) {
+      return;
+    }
+    logger.log(Level.FINE, "[{0}] Using cached server list: {1}",
+        new Object[] {logId, serverList});
+    useRoundRobinList(toRoundRobinList(serverList));
+  }
+
+  /**
+   * Writes {@code serverList} to the cache off the Channel Executor.
+   */
+  private void saveServerList(final ServerList serverList) {
+    if (serverListCache == null) {
+      return;
+    }
+    serializingCacheExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          serverListCache.save(serverList);
+        }
+      });
+  }
+
+  /**
+   * Converts a server list from the LoadBalancer to backend entries.
+   */
+  private List<BackendEntry> toRoundRobinList(ServerList serverList) {
+    List<BackendEntry> newRoundRobinList = new ArrayList<BackendEntry>();
+    for (Server server : serverList.getServersList()) {
+      if (server.getDropRequest()) {
+        newRoundRobinList.add(BackendEntry.DROP);
+      } else {
+        InetSocketAddress address;
+        try {
+          address = new InetSocketAddress(
+              InetAddress.getByAddress(server.getIpAddress().toByteArray()), server.getPort());
+        } catch (UnknownHostException e) {
+          handleGrpclbError(Status.UNAVAILABLE.withCause(e));
+          continue;
+        }
+        String token = server.getLoadBalanceToken();
+        newRoundRobinList.add(
+            new BackendEntry(new EquivalentAddressGroup(address), token.isEmpty() ? null : token));
+      }
+    }
+    return newRoundRobinList;
+  }
+
+  /**
+   * Makes {@code newRoundRobinList} the current list.  Creates the Subchannels for the new
+   * addresses, and closes the Subchannels whose addresses have been delisted.
+   */
+  private void useRoundRobinList(List<BackendEntry> newRoundRobinList) {
+    HashMap<EquivalentAddressGroup, Subchannel> newSubchannelMap =
+        new HashMap<EquivalentAddressGroup, Subchannel>();
+    for (BackendEntry backend : newRoundRobinList) {
+      EquivalentAddressGroup eag = backend.eag;
+      if (eag == null || newSubchannelMap.containsKey(eag)) {
+        continue;
+      }
+      Subchannel subchannel = subchannels.get(eag);
+      if (subchannel == null) {
+        Attributes subchannelAttrs = Attributes.newBuilder()
+            .set(STATE_INFO,
+                new AtomicReference<ConnectivityStateInfo>(
+                    ConnectivityStateInfo.forNonError(IDLE)))
+            .build();
+        subchannel = helper.createSubchannel(eag, subchannelAttrs);
+        subchannel.requestConnection();
+      }
+      newSubchannelMap.put(eag, subchannel);
+    }
+    // Close Subchannels whose addresses have been delisted
+    for (Entry<EquivalentAddressGroup, Subchannel> entry : subchannels.entrySet()) {
+      EquivalentAddressGroup eag = entry.getKey();
+      if (!newSubchannelMap.containsKey(eag)) {
+        entry.getValue().shutdown();
+      }
+    }
+
+    subchannels = newSubchannelMap;
+    roundRobinList = newRoundRobinList;
+    helper.updatePicker(makePicker());
+  }
+
   private void startLbComm() {
     checkState(lbCommChannel == null, "previous lbCommChannel has not been closed yet");
     checkState(lbRequestWriter == null, "previous lbRequestWriter has not been cleared yet");
@@ -292,10 +542,18 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
   public void shutdown() {
     shutdownDelegate();
     shutdownLbComm();
+    cancelGrpclbTimers();
     for (Subchannel subchannel : subchannels.values()) {
       subchannel.shutdown();
     }
     subchannels = Collections.emptyMap();
+    if (timerService != null) {
+      timerService = timerServicePool.returnObject(timerService);
+    }
+    if (cacheExecutor != null) {
+      // Writes that are already queued still complete
+      cacheExecutor = cacheExecutorPool.returnObject(cacheExecutor);
+    }
   }
 
   private void handleGrpclbError(Status status) {
@@ -317,6 +575,18 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
 
   private class LbResponseObserver implements StreamObserver<LoadBalanceResponse> {
     boolean dismissed;
+    boolean initialResponseReceived;
+    long loadReportIntervalNanos;
+    @Nullable
+    ScheduledFuture<?> loadReportTimer;
+
+    void dismiss() {
+      dismissed = true;
+      if (loadReportTimer != null) {
+        loadReportTimer.cancel(false);
+        loadReportTimer = null;
+      }
+    }
 
     @Override public void onNext(final LoadBalanceResponse response) {
       helper.runSerialized(new Runnable() {
@@ -332,55 +602,64 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
         return;
       }
       logger.log(Level.FINE, "[{0}] Got an LB response: {1}", new Object[] {logId, response});
-      // TODO(zhangkun83): make use of initialResponse
-      // InitialLoadBalanceResponse initialResponse = response.getInitialResponse();
+      if (response.getLoadBalanceResponseTypeCase()
+          == LoadBalanceResponse.LoadBalanceResponseTypeCase.INITIAL_RESPONSE) {
+        handleInitialResponse(response.getInitialResponse());
+        return;
+      }
       ServerList serverList = response.getServerList();
-      HashMap<EquivalentAddressGroup, Subchannel> newSubchannelMap =
-          new HashMap<EquivalentAddressGroup, Subchannel>();
-      List<EquivalentAddressGroup> newRoundRobinList = new ArrayList<EquivalentAddressGroup>();
-      // TODO(zhangkun83): honor expiration_interval
-      // Construct the new collections. Create new Subchannels when necessary.
-      for (Server server : serverList.getServersList()) {
-        if (server.getDropRequest()) {
-          newRoundRobinList.add(null);
-        } else {
-          InetSocketAddress address;
-          try {
-            address = new InetSocketAddress(
-                InetAddress.getByAddress(server.getIpAddress().toByteArray()), server.getPort());
-          } catch (UnknownHostException e) {
-            handleGrpclbError(Status.UNAVAILABLE.withCause(e));
-            continue;
-          }
-          EquivalentAddressGroup eag = new EquivalentAddressGroup(address);
-          // TODO(zhangkun83): save the LB token and insert it to the application RPCs' headers.
-          if (!newSubchannelMap.containsKey(eag)) {
-            Subchannel subchannel = subchannels.get(eag);
-            if (subchannel == null) {
-              Attributes subchannelAttrs = Attributes.newBuilder()
-                  .set(STATE_INFO,
-                      new AtomicReference<ConnectivityStateInfo>(
-                          ConnectivityStateInfo.forNonError(IDLE)))
-                  .build();
-              subchannel = helper.createSubchannel(eag, subchannelAttrs);
-              subchannel.requestConnection();
-            }
-            newSubchannelMap.put(eag, subchannel);
-          }
-          newRoundRobinList.add(eag);
-        }
+      receivedServerListFromLb = true;
+      usingFallbackBackends = false;
+      cancelGrpclbTimers();
+      useRoundRobinList(toRoundRobinList(serverList));
+      Duration expiration = serverList.getExpirationInterval();
+      long expirationNanos =
+          TimeUnit.SECONDS.toNanos(expiration.getSeconds()) + expiration.getNanos();
+      if (expirationNanos > 0) {
+        serverListExpirationTimer =
+            schedule(new ServerListExpirationTask(), expirationNanos, TimeUnit.NANOSECONDS);
       }
-      // Close Subchannels whose addresses have been delisted
-      for (Entry<EquivalentAddressGroup, Subchannel> entry : subchannels.entrySet()) {
-        EquivalentAddressGroup eag = entry.getKey();
-        if (!newSubchannelMap.containsKey(eag)) {
-          entry.getValue().shutdown();
-        }
+      saveServerList(serverList);
+    }
+
+    private void handleInitialResponse(InitialLoadBalanceResponse initialResponse) {
+      if (initialResponseReceived) {
+        logger.log(Level.WARNING, "[{0}] Ignoring a repeated initial LB response", logId);
+        return;
       }
+      initialResponseReceived = true;
+      // TODO(zhangkun83): make use of load_balancer_delegate
+      Duration interval = initialResponse.getClientStatsReportInterval();
+      loadReportIntervalNanos =
+          TimeUnit.SECONDS.toNanos(interval.getSeconds()) + interval.getNanos();
+      if (loadReportIntervalNanos > 0) {
+        scheduleNextLoadReport();
+      }
+    }
+
+    private void scheduleNextLoadReport() {
+      loadReportTimer = timerService.schedule(new Runnable() {
+          @Override
+          public void run() {
+            helper.runSerialized(new Runnable() {
+                @Override
+                public void run() {
+                  sendLoadReport();
+                }
+              });
+          }
+        }, loadReportIntervalNanos, TimeUnit.NANOSECONDS);
+    }
 
-      subchannels = newSubchannelMap;
-      roundRobinList = newRoundRobinList;
-      helper.updatePicker(makePicker());
+    private void sendLoadReport() {
+      if (dismissed) {
+        return;
+      }
+      LoadBalanceRequest request = LoadBalanceRequest.newBuilder()
+          .setClientStats(loadRecorder.generateLoadReport())
+          .build();
+      lbRequestWriter.onNext(request);
+      scheduleNextLoadReport();
     }
 
     @Override public void onError(final Throwable error) {
@@ -408,6 +687,7 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
         return;
       }
       lbRequestWriter = null;
+      dismiss();
       handleGrpclbError(status);
       shutdownLbComm();
       currentLbIndex = (currentLbIndex + 1) % lbAddressGroups.size();
@@ -419,18 +699,18 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
    * Make a picker out of the current roundRobinList and the states of subchannels.
    */
   private SubchannelPicker makePicker() {
-    List<PickResult> resultList = new ArrayList<PickResult>();
+    List<RoundRobinEntry> resultList = new ArrayList<RoundRobinEntry>();
     Status error = null;
-    for (EquivalentAddressGroup eag : roundRobinList) {
-      if (eag == null) {
-        resultList.add(THROTTLED_RESULT);
+    for (BackendEntry backend : roundRobinList) {
+      if (backend == BackendEntry.DROP) {
+        resultList.add(new RoundRobinEntry(loadRecorder));
       } else {
-        Subchannel subchannel = subchannels.get(eag);
-        checkNotNull(subchannel, "Subchannel for %s not found", eag);
+        Subchannel subchannel = subchannels.get(backend.eag);
+        checkNotNull(subchannel, "Subchannel for %s not found", backend.eag);
         Attributes attrs = subchannel.getAttributes();
         ConnectivityStateInfo stateInfo = attrs.get(STATE_INFO).get();
         if (stateInfo.getState() == READY) {
-          resultList.add(PickResult.withSubchannel(subchannel));
+          resultList.add(new RoundRobinEntry(subchannel, loadRecorder, backend.token));
         } else if (stateInfo.getState() == TRANSIENT_FAILURE) {
           error = stateInfo.getStatus();
         }
@@ -475,26 +755,89 @@ class GrpclbLoadBalancer extends LoadBalancer implements WithLogId {
     }
   }
 
+  /**
+   * A server from the LB response.
+   */
+  private static final class BackendEntry {
+    // Simulates an error for throttling purpose
+    static final BackendEntry DROP = new BackendEntry(null, null);
+
+    @Nullable
+    final EquivalentAddressGroup eag;
+    @Nullable
+    final String token;
+
+    BackendEntry(@Nullable EquivalentAddressGroup eag, @Nullable String token) {
+      this.eag = eag;
+      this.token = token;
+    }
+  }
+
+  /**
+   * An entry of {@link RoundRobinPicker}.  Either drops the RPC, or sends it to a Subchannel with
+   * the LB token of the server.
+   */
+  @VisibleForTesting
+  static final class RoundRobinEntry {
+    final PickResult result;
+    @Nullable
+    final String token;
+    private final GrpclbClientLoadRecorder loadRecorder;
+
+    /**
+     * Creates an entry that drops the RPC.
+     */
+    RoundRobinEntry(GrpclbClientLoadRecorder loadRecorder) {
+      this.result = THROTTLED_RESULT;
+      this.token = null;
+      this.loadRecorder = checkNotNull(loadRecorder, "loadRecorder");
+    }
+
+    /**
+     * Creates an entry that sends the RPC to {@code subchannel}.
+     */
+    RoundRobinEntry(Subchannel subchannel, GrpclbClientLoadRecorder loadRecorder,
+        @Nullable String token) {
+      this.result = PickResult.withSubchannel(subchannel, loadRecorder);
+      this.token = token;
+      this.loadRecorder = checkNotNull(loadRecorder, "loadRecorder");
+    }
+
+    PickResult picked(Metadata headers) {
+      if (result == THROTTLED_RESULT) {
+        loadRecorder.recordDroppedRequest();
+        return result;
+      }
+      // The RPC may have been picked for a different server before
+      headers.discardAll(GrpclbConstants.TOKEN_METADATA_KEY);
+      if (token != null) {
+        headers.put(GrpclbConstants.TOKEN_METADATA_KEY, token);
+      }
+      return result;
+    }
+  }
+
   @VisibleForTesting
   static final class RoundRobinPicker extends SubchannelPicker {
-    final List<PickResult> list;
+    final List<RoundRobinEntry> list;
     int index;
 
-    RoundRobinPicker(List<PickResult> resultList) {
+    RoundRobinPicker(List<RoundRobinEntry> resultList) {
       checkArgument(!resultList.isEmpty(), "resultList is empty");
       list = resultList;
     }
 
     @Override
     public PickResult pickSubchannel(PickSubchannelArgs args) {
+      RoundRobinEntry entry;
       synchronized (list) {
-        PickResult result = list.get(index);
+        entry = list.get(index);
         index++;
         if (index == list.size()) {
           index = 0;
         }
-        return result;
       }
+      return entry.picked(args.getHeaders());
     }
   }
 }
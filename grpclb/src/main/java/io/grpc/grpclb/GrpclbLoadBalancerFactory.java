@@ -31,10 +31,16 @@
 
 package io.grpc.grpclb;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import io.grpc.ExperimentalApi;
 import io.grpc.LoadBalancer;
 import io.grpc.PickFirstBalancerFactory;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourcePool;
 import io.grpc.util.RoundRobinLoadBalancerFactory;
+import java.io.File;
+import javax.annotation.Nullable;
 
 /**
  * A factory for {@link LoadBalancer}s that uses the GRPCLB protocol.
@@ -45,19 +51,41 @@ import io.grpc.util.RoundRobinLoadBalancerFactory;
 @ExperimentalApi("https://github.com/grpc/grpc-java/issues/1782")
 public class GrpclbLoadBalancerFactory extends LoadBalancer.Factory {
 
-  private static final GrpclbLoadBalancerFactory instance = new GrpclbLoadBalancerFactory();
+  private static final GrpclbLoadBalancerFactory instance = new GrpclbLoadBalancerFactory(null);
+
+  @Nullable
+  private final File serverListCacheDir;
 
-  private GrpclbLoadBalancerFactory() {
+  private GrpclbLoadBalancerFactory(@Nullable File serverListCacheDir) {
+    this.serverListCacheDir = serverListCacheDir;
   }
 
   public static GrpclbLoadBalancerFactory getInstance() {
     return instance;
   }
 
+  /**
+   * Returns a factory whose balancers save the last server list they have received from the
+   * LoadBalancer in a file under {@code directory}, one file per service.  When a balancer for the
+   * same service is created later, e.g., after the client restarts, it routes RPCs to the saved
+   * servers while it connects to the LoadBalancer.
+   *
+   * @param directory an existing, writable directory
+   */
+  public static GrpclbLoadBalancerFactory withServerListCacheDir(File directory) {
+    return new GrpclbLoadBalancerFactory(checkNotNull(directory, "directory"));
+  }
+
   @Override
   public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+    ServerListCache serverListCache = null;
+    if (serverListCacheDir != null) {
+      serverListCache = new ServerListCache(serverListCacheDir, helper.getAuthority());
+    }
     return new GrpclbLoadBalancer(
         helper, PickFirstBalancerFactory.getInstance(),
-        RoundRobinLoadBalancerFactory.getInstance());
+        RoundRobinLoadBalancerFactory.getInstance(),
+        SharedResourcePool.forResource(GrpcUtil.TIMER_SERVICE),
+        SharedResourcePool.forResource(GrpcUtil.SHARED_CHANNEL_EXECUTOR), serverListCache);
   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.grpclb;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the last server list received from the LoadBalancer for a service in a local file, so that
+ * a restarted client can route RPCs before it has reached the LoadBalancer again.
+ *
+ * <p>Failing to read or write the file is logged and otherwise ignored, as the cache is only an
+ * optimization.
+ */
+final class ServerListCache {
+  private static final Logger logger = Logger.getLogger(ServerListCache.class.getName());
+
+  private final File file;
+  private final File tmpFile;
+
+  ServerListCache(File directory, String serviceName) {
+    checkNotNull(directory, "directory");
+    String fileName;
+    try {
+      fileName = URLEncoder.encode(checkNotNull(serviceName, "serviceName"), "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+    this.file = new File(directory, fileName + ".serverlist");
+    this.tmpFile = new File(directory, fileName + ".serverlist.tmp");
+  }
+
+  /**
+   * Returns the saved server list, or {@code null} if there isn't a readable one.
+   */
+  @Nullable
+  ServerList load() {
+    if (!file.exists()) {
+      return null;
+    }
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      return ServerList.parseFrom(in);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read cached server list from " + file, e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  /**
+   * Replaces the saved server list.  The list is written to a temporary file first, so that a
+   * crash never leaves a partially written list behind.
+   */
+  void save(ServerList serverList) {
+    FileOutputStream out = null;
+    try {
+      out = new FileOutputStream(tmpFile);
+      serverList.writeTo(out);
+      out.close();
+      out = null;
+      // renameTo() doesn't replace an existing file on all platforms
+      if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+        throw new IOException("Failed to rename " + tmpFile + " to " + file);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to save server list to " + file, e);
+    } finally {
+      closeQuietly(out);
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Failed to close " + closeable, e);
+    }
+  }
+}
@@ -45,6 +45,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
@@ -58,6 +59,7 @@ import static org.mockito.Mockito.when;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Duration;
 import io.grpc.Attributes;
 import io.grpc.CallOptions;
 import io.grpc.ConnectivityStateInfo;
@@ -69,6 +71,7 @@ import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.Subchannel;
 import io.grpc.LoadBalancer.SubchannelPicker;
 import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.ResolvedServerInfo;
@@ -77,9 +80,12 @@ import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import io.grpc.grpclb.GrpclbConstants.LbPolicy;
 import io.grpc.grpclb.GrpclbLoadBalancer.ErrorPicker;
+import io.grpc.grpclb.GrpclbLoadBalancer.RoundRobinEntry;
 import io.grpc.grpclb.GrpclbLoadBalancer.RoundRobinPicker;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.internal.FakeClock;
+import io.grpc.internal.ObjectPool;
 import io.grpc.internal.SerializingExecutor;
 import io.grpc.stub.ClientCalls;
 import io.grpc.stub.StreamObserver;
@@ -92,9 +98,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
@@ -157,8 +168,17 @@ public class GrpclbLoadBalancerTest {
   private ArgumentCaptor<SubchannelPicker> pickerCaptor;
   private final SerializingExecutor channelExecutor =
       new SerializingExecutor(MoreExecutors.directExecutor());
-  @Mock // This LoadBalancer doesn't use any of the arg fields, as verified in tearDown().
+  @Mock // The pickers only use the headers, as verified in tearDown().
   private PickSubchannelArgs mockArgs;
+  private final Metadata headers = new Metadata();
+  private final FakeClock fakeClock = new FakeClock();
+  @Mock
+  private ObjectPool<ScheduledExecutorService> timerServicePool;
+  private final FakeClock cacheExecutor = new FakeClock();
+  @Mock
+  private ObjectPool<Executor> cacheExecutorPool;
+  @Rule
+  public final TemporaryFolder tmpFolder = new TemporaryFolder();
   @Mock
   private LoadBalancer.Factory pickFirstBalancerFactory;
   @Mock
@@ -173,6 +193,9 @@ public class GrpclbLoadBalancerTest {
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
+    when(mockArgs.getHeaders()).thenReturn(headers);
+    when(timerServicePool.getObject()).thenReturn(fakeClock.getScheduledExecutorService());
+    when(cacheExecutorPool.getObject()).thenReturn(cacheExecutor.getScheduledExecutorService());
     when(pickFirstBalancerFactory.newLoadBalancer(any(Helper.class)))
         .thenReturn(pickFirstBalancer);
     when(roundRobinBalancerFactory.newLoadBalancer(any(Helper.class)))
@@ -241,12 +264,14 @@ public class GrpclbLoadBalancerTest {
         }
       }).when(helper).runSerialized(any(Runnable.class));
     when(helper.getAuthority()).thenReturn(SERVICE_AUTHORITY);
-    balancer = new GrpclbLoadBalancer(helper, pickFirstBalancerFactory, roundRobinBalancerFactory);
+    balancer = new GrpclbLoadBalancer(helper, pickFirstBalancerFactory, roundRobinBalancerFactory,
+        timerServicePool, cacheExecutorPool, null);
   }
 
   @After
   public void tearDown() {
-    verifyNoMoreInteractions(mockArgs);
+    verify(mockArgs, never()).getCallOptions();
+    verify(mockArgs, never()).getMethodDescriptor();
     try {
       if (balancer != null) {
         channelExecutor.execute(new Runnable() {
@@ -264,6 +289,9 @@ public class GrpclbLoadBalancerTest {
       for (Subchannel subchannel: subchannelTracker) {
         verify(subchannel).shutdown();
       }
+      verify(timerServicePool).returnObject(fakeClock.getScheduledExecutorService());
+      assertEquals(0, cacheExecutor.numPendingTasks());
+      assertEquals(0, fakeClock.numPendingTasks());
     } finally {
       if (fakeLbServer != null) {
         fakeLbServer.shutdownNow();
@@ -280,13 +308,51 @@ public class GrpclbLoadBalancerTest {
 
   @Test
   public void roundRobinPicker() {
-    PickResult pr1 = PickResult.withError(Status.UNAVAILABLE.withDescription("Just error"));
-    PickResult pr2 = PickResult.withSubchannel(mockSubchannel);
-    List<PickResult> list = Arrays.asList(pr1, pr2);
+    GrpclbClientLoadRecorder loadRecorder = new GrpclbClientLoadRecorder();
+    RoundRobinEntry r1 = new RoundRobinEntry(loadRecorder);
+    RoundRobinEntry r2 = new RoundRobinEntry(mockSubchannel, loadRecorder, "LBTOKEN0001");
+    RoundRobinEntry r3 = new RoundRobinEntry(mockSubchannel, loadRecorder, null);
+    List<RoundRobinEntry> list = Arrays.asList(r1, r2, r3);
     RoundRobinPicker picker = new RoundRobinPicker(list);
-    assertSame(pr1, picker.pickSubchannel(mockArgs));
-    assertSame(pr2, picker.pickSubchannel(mockArgs));
-    assertSame(pr1, picker.pickSubchannel(mockArgs));
+    assertSame(r1.result, picker.pickSubchannel(mockArgs));
+    assertFalse(headers.containsKey(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    assertSame(r2.result, picker.pickSubchannel(mockArgs));
+    assertSame(mockSubchannel, r2.result.getSubchannel());
+    assertSame(loadRecorder, r2.result.getStreamTracker());
+    assertEquals("LBTOKEN0001", headers.get(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    // The token of the previous pick is removed
+    assertSame(r3.result, picker.pickSubchannel(mockArgs));
+    assertFalse(headers.containsKey(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    assertSame(r1.result, picker.pickSubchannel(mockArgs));
+    ClientStats stats = loadRecorder.generateLoadReport();
+    assertEquals(2, stats.getTotalRequests());
+    assertEquals(2, stats.getDroppedRequests());
+    assertEquals(0, stats.getClientRpcErrors());
+  }
+
+  @Test
+  public void loadRecorder() {
+    GrpclbClientLoadRecorder loadRecorder = new GrpclbClientLoadRecorder();
+    loadRecorder.streamStarted();
+    loadRecorder.streamStarted();
+    loadRecorder.streamStarted();
+    loadRecorder.recordDroppedRequest();
+    loadRecorder.streamClosed(Status.OK);
+    loadRecorder.streamClosed(Status.UNAVAILABLE);
+    ClientStats stats = loadRecorder.generateLoadReport();
+    assertEquals(4, stats.getTotalRequests());
+    assertEquals(1, stats.getClientRpcErrors());
+    assertEquals(1, stats.getDroppedRequests());
+
+    // Counters are reset after being reported
+    loadRecorder.streamClosed(Status.CANCELLED);
+    stats = loadRecorder.generateLoadReport();
+    assertEquals(0, stats.getTotalRequests());
+    assertEquals(1, stats.getClientRpcErrors());
+    assertEquals(0, stats.getDroppedRequests());
   }
 
   @Test
@@ -652,6 +718,236 @@ public class GrpclbLoadBalancerTest {
     verify(lbRequestObservers.peek(), never()).onError(any(Throwable.class));
   }
 
+  @Test
+  public void grpclbLoadReportingAndTokens() {
+    List<ResolvedServerInfoGroup> grpclbResolutionList = createResolvedServerInfoGroupList(true);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(grpclbResolutionList, grpclbResolutionAttrs);
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+    assertEquals(1, lbRequestObservers.size());
+    StreamObserver<LoadBalanceRequest> lbRequestObserver = lbRequestObservers.poll();
+    InOrder inOrder = inOrder(lbRequestObserver);
+    inOrder.verify(lbRequestObserver).onNext(
+        eq(LoadBalanceRequest.newBuilder().setInitialRequest(
+                InitialLoadBalanceRequest.newBuilder().setName(SERVICE_AUTHORITY).build())
+            .build()));
+
+    // Simulate receiving LB response
+    long loadReportIntervalMillis = 1983;
+    lbResponseObserver.onNext(buildInitialResponse(loadReportIntervalMillis));
+    List<InetSocketAddress> backends = Arrays.asList(
+        new InetSocketAddress("127.0.0.1", 2000),
+        null,  // drop
+        new InetSocketAddress("127.0.0.1", 2010));
+    lbResponseObserver.onNext(buildLbResponse(backends, "token"));
+    assertEquals(2, mockSubchannels.size());
+    Subchannel subchannel1 = mockSubchannels.poll();
+    Subchannel subchannel2 = mockSubchannels.poll();
+    deliverSubchannelState(subchannel1, ConnectivityStateInfo.forNonError(READY));
+    deliverSubchannelState(subchannel2, ConnectivityStateInfo.forNonError(READY));
+    verify(helper, atLeast(1)).updatePicker(pickerCaptor.capture());
+    RoundRobinPicker picker = (RoundRobinPicker) pickerCaptor.getValue();
+    assertRoundRobinList(picker, subchannel1, null, subchannel2);
+
+    // The LB tokens are attached to the headers
+    PickResult pick1 = picker.pickSubchannel(mockArgs);
+    assertSame(subchannel1, pick1.getSubchannel());
+    assertEquals("token0000", headers.get(GrpclbConstants.TOKEN_METADATA_KEY));
+    PickResult pick2 = picker.pickSubchannel(mockArgs);
+    assertSame(GrpclbLoadBalancer.THROTTLED_RESULT, pick2);
+    PickResult pick3 = picker.pickSubchannel(mockArgs);
+    assertSame(subchannel2, pick3.getSubchannel());
+    assertEquals("token0002", headers.get(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    // Simulate the streams of the picked RPCs
+    pick1.getStreamTracker().streamStarted();
+    pick3.getStreamTracker().streamStarted();
+    pick1.getStreamTracker().streamClosed(Status.OK);
+    pick3.getStreamTracker().streamClosed(Status.DEADLINE_EXCEEDED);
+
+    // The load is reported at the interval from the initial response
+    fakeClock.forwardTime(loadReportIntervalMillis - 1, TimeUnit.MILLISECONDS);
+    inOrder.verifyNoMoreInteractions();
+    fakeClock.forwardTime(1, TimeUnit.MILLISECONDS);
+    inOrder.verify(lbRequestObserver).onNext(
+        eq(LoadBalanceRequest.newBuilder().setClientStats(
+                ClientStats.newBuilder()
+                    .setTotalRequests(3)
+                    .setClientRpcErrors(1)
+                    .setDroppedRequests(1)
+                    .build())
+            .build()));
+
+    // The counters have been reset
+    fakeClock.forwardTime(loadReportIntervalMillis, TimeUnit.MILLISECONDS);
+    inOrder.verify(lbRequestObserver).onNext(
+        eq(LoadBalanceRequest.newBuilder().setClientStats(ClientStats.getDefaultInstance())
+            .build()));
+    assertEquals(1, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void grpclbNoLoadReportingWithoutInterval() {
+    List<ResolvedServerInfoGroup> grpclbResolutionList = createResolvedServerInfoGroupList(true);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(grpclbResolutionList, grpclbResolutionAttrs);
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+    lbResponseObserver.onNext(buildInitialResponse());
+    // Only the fallback timer
+    assertEquals(1, fakeClock.numPendingTasks());
+    fakeClock.forwardTime(GrpclbLoadBalancer.FALLBACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertEquals(0, fakeClock.numPendingTasks());
+    verify(lbRequestObservers.peek()).onNext(any(LoadBalanceRequest.class));
+  }
+
+  @Test
+  public void grpclbFallbackToResolvedBackends() {
+    // One LB address and two backend addresses
+    List<ResolvedServerInfoGroup> resolutionList =
+        createResolvedServerInfoGroupList(true, false, false);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(resolutionList, grpclbResolutionAttrs);
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+    lbResponseObserver.onNext(buildInitialResponse());
+    verify(helper, never()).createSubchannel(any(EquivalentAddressGroup.class),
+        any(Attributes.class));
+
+    // No server list from the LoadBalancer in time
+    fakeClock.forwardTime(GrpclbLoadBalancer.FALLBACK_TIMEOUT_MS - 1, TimeUnit.MILLISECONDS);
+    verify(helper, never()).createSubchannel(any(EquivalentAddressGroup.class),
+        any(Attributes.class));
+    fakeClock.forwardTime(1, TimeUnit.MILLISECONDS);
+    assertEquals(2, mockSubchannels.size());
+    Subchannel fallbackSubchannel1 = mockSubchannels.poll();
+    Subchannel fallbackSubchannel2 = mockSubchannels.poll();
+    assertEquals(resolutionList.get(1).toEquivalentAddressGroup(),
+        fallbackSubchannel1.getAddresses());
+    assertEquals(resolutionList.get(2).toEquivalentAddressGroup(),
+        fallbackSubchannel2.getAddresses());
+    deliverSubchannelState(fallbackSubchannel2, ConnectivityStateInfo.forNonError(READY));
+    verify(helper, atLeast(1)).updatePicker(pickerCaptor.capture());
+    RoundRobinPicker picker = (RoundRobinPicker) pickerCaptor.getValue();
+    assertRoundRobinList(picker, fallbackSubchannel2);
+    // Fallback backends don't have LB tokens
+    picker.pickSubchannel(mockArgs);
+    assertFalse(headers.containsKey(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    // The server list from the LoadBalancer replaces the fallback backends
+    List<InetSocketAddress> backends = Arrays.asList(new InetSocketAddress("127.0.0.1", 2000));
+    lbResponseObserver.onNext(buildLbResponse(backends));
+    verify(fallbackSubchannel1).shutdown();
+    verify(fallbackSubchannel2).shutdown();
+    assertEquals(1, mockSubchannels.size());
+    assertEquals(new EquivalentAddressGroup(backends.get(0)),
+        mockSubchannels.poll().getAddresses());
+    assertEquals(0, fakeClock.numPendingTasks());
+  }
+
+  @Test
+  public void grpclbServerListExpires() {
+    List<ResolvedServerInfoGroup> resolutionList = createResolvedServerInfoGroupList(true, false);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(resolutionList, grpclbResolutionAttrs);
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+
+    List<InetSocketAddress> backends = Arrays.asList(new InetSocketAddress("127.0.0.1", 2000));
+    LoadBalanceResponse response = buildLbResponse(backends);
+    response = response.toBuilder().setServerList(response.getServerList().toBuilder()
+            .setExpirationInterval(Duration.newBuilder().setSeconds(30).build()))
+        .build();
+    lbResponseObserver.onNext(response);
+    assertEquals(1, mockSubchannels.size());
+    Subchannel subchannel = mockSubchannels.poll();
+    // The fallback timer has been cancelled, the expiration timer is pending
+    assertEquals(1, fakeClock.numPendingTasks());
+
+    fakeClock.forwardTime(30, TimeUnit.SECONDS);
+    verify(subchannel).shutdown();
+    assertEquals(1, mockSubchannels.size());
+    assertEquals(resolutionList.get(1).toEquivalentAddressGroup(),
+        mockSubchannels.poll().getAddresses());
+
+    // A new server list ends the fallback
+    lbResponseObserver.onNext(buildLbResponse(backends));
+    assertEquals(1, mockSubchannels.size());
+    assertEquals(subchannel.getAddresses(), mockSubchannels.poll().getAddresses());
+  }
+
+  @Test
+  public void grpclbServerListCache() throws Exception {
+    ServerListCache cache = new ServerListCache(tmpFolder.getRoot(), SERVICE_AUTHORITY);
+    assertNull(cache.load());
+    List<InetSocketAddress> cachedBackends =
+        Arrays.asList(new InetSocketAddress("127.0.0.1", 2000));
+    cache.save(buildLbResponse(cachedBackends, "token").getServerList());
+    balancer = new GrpclbLoadBalancer(helper, pickFirstBalancerFactory, roundRobinBalancerFactory,
+        timerServicePool, cacheExecutorPool, cache);
+
+    // The cached servers are used before the LoadBalancer is reached, once they have been read on
+    // the cache executor
+    List<ResolvedServerInfoGroup> grpclbResolutionList = createResolvedServerInfoGroupList(true);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(grpclbResolutionList, grpclbResolutionAttrs);
+    assertEquals(0, mockSubchannels.size());
+    assertEquals(1, cacheExecutor.runDueTasks());
+    assertEquals(1, mockSubchannels.size());
+    Subchannel cachedSubchannel = mockSubchannels.poll();
+    assertEquals(new EquivalentAddressGroup(cachedBackends.get(0)),
+        cachedSubchannel.getAddresses());
+    deliverSubchannelState(cachedSubchannel, ConnectivityStateInfo.forNonError(READY));
+    verify(helper, atLeast(1)).updatePicker(pickerCaptor.capture());
+    RoundRobinPicker picker = (RoundRobinPicker) pickerCaptor.getValue();
+    assertSame(cachedSubchannel, picker.pickSubchannel(mockArgs).getSubchannel());
+    assertEquals("token0000", headers.get(GrpclbConstants.TOKEN_METADATA_KEY));
+
+    // The server list from the LoadBalancer replaces the cached one
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+    List<InetSocketAddress> backends = Arrays.asList(new InetSocketAddress("127.0.0.1", 2010));
+    lbResponseObserver.onNext(buildLbResponse(backends));
+    verify(cachedSubchannel).shutdown();
+    assertEquals(buildLbResponse(cachedBackends, "token").getServerList(), cache.load());
+    assertEquals(1, cacheExecutor.runDueTasks());
+    assertEquals(buildLbResponse(backends).getServerList(), cache.load());
+  }
+
+  @Test
+  public void grpclbServerListCache_ignoredIfReadAfterLbResponse() throws Exception {
+    ServerListCache cache = new ServerListCache(tmpFolder.getRoot(), SERVICE_AUTHORITY);
+    List<InetSocketAddress> cachedBackends =
+        Arrays.asList(new InetSocketAddress("127.0.0.1", 2000));
+    cache.save(buildLbResponse(cachedBackends).getServerList());
+    balancer = new GrpclbLoadBalancer(helper, pickFirstBalancerFactory, roundRobinBalancerFactory,
+        timerServicePool, cacheExecutorPool, cache);
+
+    List<ResolvedServerInfoGroup> grpclbResolutionList = createResolvedServerInfoGroupList(true);
+    Attributes grpclbResolutionAttrs = Attributes.newBuilder()
+        .set(GrpclbConstants.ATTR_LB_POLICY, LbPolicy.GRPCLB).build();
+    deliverResolvedAddresses(grpclbResolutionList, grpclbResolutionAttrs);
+    verify(mockLbService).balanceLoad(lbResponseObserverCaptor.capture());
+    StreamObserver<LoadBalanceResponse> lbResponseObserver = lbResponseObserverCaptor.getValue();
+    List<InetSocketAddress> backends = Arrays.asList(new InetSocketAddress("127.0.0.1", 2010));
+    lbResponseObserver.onNext(buildLbResponse(backends));
+    assertEquals(1, mockSubchannels.size());
+    assertEquals(new EquivalentAddressGroup(backends.get(0)),
+        mockSubchannels.poll().getAddresses());
+
+    // The stale cached list doesn't replace the one from the LoadBalancer, which is saved after it
+    // has been read
+    cacheExecutor.runDueTasks();
+    assertEquals(0, mockSubchannels.size());
+    assertEquals(buildLbResponse(backends).getServerList(), cache.load());
+  }
+
   @Test
   public void grpclbBalanerCommErrors() {
     InOrder inOrder = inOrder(helper, mockLbService);
@@ -797,13 +1093,36 @@ public class GrpclbLoadBalancerTest {
         .build();
   }
 
+  private static LoadBalanceResponse buildInitialResponse(long loadReportIntervalMillis) {
+    return LoadBalanceResponse.newBuilder().setInitialResponse(
+        InitialLoadBalanceResponse.newBuilder()
+            .setClientStatsReportInterval(Duration.newBuilder()
+                .setSeconds(loadReportIntervalMillis / 1000)
+                .setNanos((int) TimeUnit.MILLISECONDS.toNanos(loadReportIntervalMillis % 1000))
+                .build())
+            .build())
+        .build();
+  }
+
   private static LoadBalanceResponse buildLbResponse(List<InetSocketAddress> addrs) {
+    return buildLbResponse(addrs, "");
+  }
+
+  /**
+   * Builds an LB response, where the token of each server is {@code tokenPrefix} followed by its
+   * index, if {@code tokenPrefix} is not empty.
+   */
+  private static LoadBalanceResponse buildLbResponse(
+      List<InetSocketAddress> addrs, String tokenPrefix) {
     ServerList.Builder serverListBuilder = ServerList.newBuilder();
-    for (InetSocketAddress addr : addrs) {
+    for (int i = 0; i < addrs.size(); i++) {
+      InetSocketAddress addr = addrs.get(i);
       if (addr != null) {
+        String token = tokenPrefix.isEmpty() ? "" : String.format("%s%04d", tokenPrefix, i);
         serverListBuilder.addServers(Server.newBuilder()
             .setIpAddress(ByteString.copyFrom(addr.getAddress().getAddress()))
             .setPort(addr.getPort())
+            .setLoadBalanceToken(token)
             .build());
       } else {
         serverListBuilder.addServers(Server.newBuilder().setDropRequest(true).build());
@@ -820,10 +1139,10 @@ public class GrpclbLoadBalancerTest {
       Subchannel subchannel = subchannels[i];
       if (subchannel == null) {
         assertSame("list[" + i + "] should be drop",
-            GrpclbLoadBalancer.THROTTLED_RESULT, picker.list.get(i));
+            GrpclbLoadBalancer.THROTTLED_RESULT, picker.list.get(i).result);
       } else {
         assertEquals("list[" + i + "] should be Subchannel",
-            subchannel, picker.list.get(i).getSubchannel());
+            subchannel, picker.list.get(i).result.getSubchannel());
       }
     }
   }
@@ -0,0 +1,55 @@
+package io.grpc.monitoring.streamz;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bound on the number of cells of a {@link StoredMetric}, see
+ * {@link StoredMetric#setCellLimit(int, long, TimeUnit)}.
+ *
+ * <p>Times are kept in milliseconds, so that cells updated many times per millisecond only record
+ * their use once.
+ */
+final class CellLimit {
+  /**
+   * The value of String fields in overflow cells.
+   */
+  static final String OVERFLOW_STRING = "__overflow__";
+
+  /**
+   * The value of Integer fields in overflow cells.
+   */
+  static final int OVERFLOW_INTEGER = Integer.MIN_VALUE;
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  final int maxCells;
+  /** The time after which an unused cell can be evicted, or -1 if cells are never evicted. */
+  final long idleMillis;
+  private final Ticker ticker;
+
+  /**
+   * A lower bound on when the least recently used cell can be evicted, which saves looking for it
+   * again, and taking the lock of this limit, while all cells are busy. Written under the lock.
+   */
+  volatile long nextEvictionMillis;
+
+  CellLimit(int maxCells, long idleMillis, Ticker ticker) {
+    Preconditions.checkArgument(maxCells > 0, "maxCells must be positive");
+    this.maxCells = maxCells;
+    this.idleMillis = idleMillis;
+    this.ticker = Preconditions.checkNotNull(ticker);
+  }
+
+  long nowMillis() {
+    return ticker.read() / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Returns whether a cell may have been idle long enough at {@code nowMillis} to be evicted.
+   */
+  boolean mayEvict(long nowMillis) {
+    return idleMillis >= 0 && nowMillis >= nextEvictionMillis;
+  }
+}
@@ -17,6 +17,15 @@ public class Counter0 extends StoredMetric<Long, Counter0> {
     Counter0(String name, ValueTypeTraits<Long> traits, Metadata metadata) {
         super(name, traits, metadata, ImmutableList.<Field<?>>of());
         Preconditions.checkState(getNumFields() == 0);
+        setAccumulateOnly();
+    }
+
+    /**
+     * Returns a handle on the cell of this counter, which can be incremented without looking it
+     * up again.
+     */
+    public CounterCell cell() {
+        return new CounterCell(this, FieldTuple.NO_FIELDS);
     }
 
     /**
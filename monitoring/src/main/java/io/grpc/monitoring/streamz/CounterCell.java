@@ -0,0 +1,62 @@
+package io.grpc.monitoring.streamz;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A handle on the cell of a counter for given field values, obtained with the {@code cell()}
+ * methods of counters. Incrementing it skips looking up the cell by its fields, so it is the
+ * cheapest way to update a counter with fields from a hot path:
+ *
+ * <pre>
+ * private static final Counter2&lt;String, Integer> requests = ...;
+ * private final CounterCell okRequests = requests.cell("/Service/Method", 0);
+ * ...
+ * okRequests.increment();
+ * </pre>
+ *
+ * <p>A handle stays valid when its cell is {@link StoredMetric#clear cleared}: it then updates
+ * the new cell for the same fields.
+ */
+@ThreadSafe
+public final class CounterCell {
+  private final StoredMetric<Long, ?> counter;
+  private final FieldTuple fieldTuple;
+  private volatile StoredCell<Long> cell;
+
+  CounterCell(StoredMetric<Long, ?> counter, FieldTuple fieldTuple) {
+    this.counter = counter;
+    this.fieldTuple = fieldTuple;
+    this.cell = counter.getOrCreateCell(fieldTuple);
+  }
+
+  /**
+   * @see StoredCell#increment()
+   */
+  public void increment() {
+    cell().incrementBy(1L);
+  }
+
+  /**
+   * @see StoredCell#incrementBy(Number)
+   */
+  public void incrementBy(long value) {
+    cell().incrementBy(value);
+  }
+
+  /**
+   * @see StoredCell#getValue()
+   */
+  public Long get() {
+    return cell().getValue();
+  }
+
+  private StoredCell<Long> cell() {
+    StoredCell<Long> current = cell;
+    if (current.isRemoved()) {
+      current = counter.getOrCreateCell(fieldTuple);
+      cell = current;
+      return current;
+    }
+    return counter.touch(current);
+  }
+}
@@ -267,6 +267,42 @@ public final class Distribution {
     }
   }
 
+  /**
+   * Adds all the samples of {@code other}, which must have the same bucketer, to this
+   * distribution. Bucket counts and exemplars are the same as if the samples had been added here;
+   * the mean and sum of squared deviation are combined with the parallel variance formula, so
+   * may only differ by rounding.
+   */
+  void merge(Distribution other) {
+    Preconditions.checkArgument(bucketer.equals(other.bucketer),
+        "Cannot merge distributions with different bucketers");
+    if (other.count == 0) {
+      return;
+    }
+    long newCount = count + other.count;
+    double dev = other.mean - mean;
+    mean += dev * (((double) other.count) / ((double) newCount));
+    sumOfSquaredDeviation += other.sumOfSquaredDeviation
+        + dev * dev * (((double) count) * other.count / newCount);
+    count = newCount;
+
+    underflow += other.underflow;
+    overflow += other.overflow;
+    if (other.buckets.length > buckets.length) {
+      buckets = Arrays.copyOf(buckets, other.buckets.length);
+    }
+    for (int i = 0; i < other.buckets.length; i++) {
+      buckets[i] += other.buckets[i];
+    }
+    if (other.exemplars != null) {
+      for (int i = 0; i < other.exemplars.length; i++) {
+        if (other.exemplars[i] != null) {
+          addExemplarToBucket(i, other.exemplars[i]);
+        }
+      }
+    }
+  }
+
   //// Accessors
 
   /** Returns the bucketing function used by this distribution. */
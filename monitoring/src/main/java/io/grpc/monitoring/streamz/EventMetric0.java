@@ -18,6 +18,7 @@ public class EventMetric0 extends EventMetricBase<EventMetric0> {
         this.metric = new Metric0<Distribution>(
                 name, ValueTypeTraits.getTraits(Distribution.class), metadata.setCumulative());
         metric.setDefaultValue(new Distribution(bucketer));
+        metric.setAccumulateOnly();
     }
 
     /**
@@ -42,6 +42,22 @@ abstract class EventMetricBase<M extends EventMetricBase<M>> {
     return downcastThis();
   }
 
+  /**
+   * @see StoredMetric#setCellLimit(int)
+   */
+  public M setCellLimit(int maxCells) {
+    getUnderlyingMetric().setCellLimit(maxCells);
+    return downcastThis();
+  }
+
+  /**
+   * @see StoredMetric#setCellLimit(int, long, TimeUnit)
+   */
+  public M setCellLimit(int maxCells, long idleTime, TimeUnit unit) {
+    getUnderlyingMetric().setCellLimit(maxCells, idleTime, unit);
+    return downcastThis();
+  }
+
   @Override
   public String toString() {
     return "EventMetric(" + getName() + ")";
@@ -1,8 +1,10 @@
 package io.grpc.monitoring.streamz;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.UnmodifiableIterator;
 import java.util.Arrays;
+import javax.annotation.Nullable;
 
 /**
  * FieldTuple: a trivial immutable list of field values. Can be used as a field
@@ -51,4 +53,19 @@ class FieldTuple implements Iterable<Object> {
   public Object get(int i) {
     return fieldValues[i];
   }
+
+  /**
+   * Returns whether the {@code i}th field value equals {@code value}.
+   */
+  boolean matches(int i, @Nullable Object value) {
+    return Objects.equal(fieldValues[i], value);
+  }
+
+  /**
+   * Adds the next field value to a hash, starting from 1. Hashing all field values this way gives
+   * the {@link #hashCode} of their tuple, without having to create it.
+   */
+  static int hash(int hash, @Nullable Object value) {
+    return 31 * hash + (value == null ? 0 : value.hashCode());
+  }
 }
\ No newline at end of file
@@ -306,7 +306,7 @@ public abstract class GenericMetric<V, M extends GenericMetric<V, M>> {
     }
 
     @SuppressWarnings("unchecked")
-    private M downcastThis() {
+    final M downcastThis() {
         return (M) this;
     }
 
@@ -45,7 +45,7 @@ final class MetricRegistry {
     void fireTriggerIfNeeded(GenericMetric<?, ?> metric) {
       if (metric instanceof CallbackMetric<?, ?>) {
         CallbackScope scope = ((CallbackMetric<?, ?>) metric).getScope();
-        if (scope != null && activeScopes.contains(scope)) {
+        if (scope != null && activeScopes.add(scope)) {
           scope.lockAndRunTriggers();
           // TODO(nsakharo): Perhaps we should monitor lockAndRunTriggers() calls and log error
           // whenever TriggerEnvironment has not been destroyed (freeing locks in the process) for
@@ -0,0 +1,247 @@
+package io.grpc.monitoring.streamz;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.Writer;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Renders the metrics of a {@link MetricFactory} in the Prometheus text exposition format
+ * (version 0.0.4).
+ *
+ * <p>Numeric and boolean metrics are exported as counters if they are
+ * {@link Metadata#setCumulative cumulative}, and as gauges otherwise. {@link Distribution}
+ * metrics are exported as histograms, whose {@code le} labels are the {@link Bucketer} bounds.
+ * Metrics of other types, and metrics {@link Metadata#setForEyesOnly for eyes only}, are not
+ * exported.
+ *
+ * <p>Metric names and field names are turned into Prometheus names by replacing the characters
+ * Prometheus doesn't allow with underscores, e.g. {@code grpc.io/server/requests} becomes
+ * {@code grpc_io_server_requests}.
+ *
+ * @see PrometheusHttpServer
+ */
+@ThreadSafe
+public final class PrometheusExporter {
+  /**
+   * The content type of the rendered metrics.
+   */
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final ImmutableList<String> ALL_METRICS = ImmutableList.of("");
+
+  private final MetricFactory factory;
+
+  public PrometheusExporter(MetricFactory factory) {
+    this.factory = Preconditions.checkNotNull(factory);
+  }
+
+  /**
+   * Writes all metrics to {@code writer}, one metric at a time. Callback metrics are evaluated
+   * once for the whole scrape.
+   */
+  public void writeTo(Writer writer) throws IOException {
+    MetricWriter metricWriter = new MetricWriter(writer);
+    factory.applyToMetrics(ALL_METRICS, metricWriter);
+    if (metricWriter.exception != null) {
+      throw metricWriter.exception;
+    }
+  }
+
+  /**
+   * Writes each metric it is applied to, and stops at the first {@link IOException}.
+   */
+  private static final class MetricWriter implements Receiver<GenericMetric<Object, ?>> {
+    private final Writer writer;
+    IOException exception;
+
+    MetricWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void accept(GenericMetric<Object, ?> metric) {
+      if (exception != null || metric.getMetadata().isForEyesOnly()) {
+        return;
+      }
+      Class<?> valueType = metric.getValueType();
+      String type;
+      if (valueType == Distribution.class) {
+        type = "histogram";
+      } else if (Number.class.isAssignableFrom(valueType) || valueType == Boolean.class) {
+        type = metric.getMetadata().isCumulative() ? "counter" : "gauge";
+      } else {
+        return;
+      }
+      try {
+        writeMetric(metric, type);
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+
+    private void writeMetric(GenericMetric<Object, ?> metric, String type) throws IOException {
+      final String name = toPrometheusName(metric.getName());
+      final String[] labelNames = new String[metric.getNumFields()];
+      for (int i = 0; i < labelNames.length; i++) {
+        labelNames[i] = toPrometheusName(metric.getField(i).getName());
+      }
+      String description = metric.getMetadata().getAnnotations().get(Metadata.DESCRIPTION);
+      if (description != null) {
+        writer.write("# HELP ");
+        writer.write(name);
+        writer.write(' ');
+        writeEscaped(description, false);
+        writer.write('\n');
+      }
+      writer.write("# TYPE ");
+      writer.write(name);
+      writer.write(' ');
+      writer.write(type);
+      writer.write('\n');
+      metric.applyToEachCell(new Receiver<GenericCell<Object>>() {
+        @Override
+        public void accept(GenericCell<Object> cell) {
+          if (exception != null) {
+            return;
+          }
+          try {
+            writeCell(name, labelNames, cell);
+          } catch (IOException e) {
+            exception = e;
+          }
+        }
+      });
+    }
+
+    private void writeCell(String name, String[] labelNames, GenericCell<Object> cell)
+        throws IOException {
+      Object value = cell.getValue();
+      if (value == null) {
+        return;
+      }
+      if (value instanceof Distribution) {
+        writeDistribution(name, labelNames, cell, (Distribution) value);
+        return;
+      }
+      writeSample(name, labelNames, cell, null, null);
+      if (value instanceof Boolean) {
+        writer.write((Boolean) value ? "1" : "0");
+      } else if (value instanceof Long || value instanceof Integer) {
+        writer.write(value.toString());
+      } else {
+        writeDouble(((Number) value).doubleValue());
+      }
+      writer.write('\n');
+    }
+
+    private void writeDistribution(String name, String[] labelNames, GenericCell<Object> cell,
+        Distribution distribution) throws IOException {
+      String bucketName = name + "_bucket";
+      Bucketer bucketer = distribution.getBucketer();
+      // Bucketer buckets exclude their upper bound, Prometheus ones include it: values equal to a
+      // bound are counted in the following bucket.
+      long cumulativeCount = distribution.getUnderflowCount();
+      writeSample(bucketName, labelNames, cell, "le", bucketer.getBucketMinimum(0));
+      writer.write(Long.toString(cumulativeCount));
+      writer.write('\n');
+      for (int i = 0; i < distribution.getBucketCount(); i++) {
+        cumulativeCount += distribution.getBucketHeight(i);
+        writeSample(bucketName, labelNames, cell, "le", bucketer.getBucketMaximum(i));
+        writer.write(Long.toString(cumulativeCount));
+        writer.write('\n');
+      }
+      writeSample(bucketName, labelNames, cell, "le", Double.POSITIVE_INFINITY);
+      writer.write(Long.toString(distribution.getCount()));
+      writer.write('\n');
+      writeSample(name + "_sum", labelNames, cell, null, null);
+      writeDouble(distribution.getSum());
+      writer.write('\n');
+      writeSample(name + "_count", labelNames, cell, null, null);
+      writer.write(Long.toString(distribution.getCount()));
+      writer.write('\n');
+    }
+
+    /**
+     * Writes the name and labels of a sample, up to its value.
+     */
+    private void writeSample(String name, String[] labelNames, GenericCell<Object> cell,
+        String extraLabel, Double extraValue) throws IOException {
+      writer.write(name);
+      if (labelNames.length > 0 || extraLabel != null) {
+        writer.write('{');
+        for (int i = 0; i < labelNames.length; i++) {
+          if (i > 0) {
+            writer.write(',');
+          }
+          writer.write(labelNames[i]);
+          writer.write("=\"");
+          writeEscaped(String.valueOf(cell.getField(i)), true);
+          writer.write('"');
+        }
+        if (extraLabel != null) {
+          if (labelNames.length > 0) {
+            writer.write(',');
+          }
+          writer.write(extraLabel);
+          writer.write("=\"");
+          writeDouble(extraValue);
+          writer.write('"');
+        }
+        writer.write('}');
+      }
+      writer.write(' ');
+    }
+
+    private void writeDouble(double value) throws IOException {
+      if (value == Double.POSITIVE_INFINITY) {
+        writer.write("+Inf");
+      } else if (value == Double.NEGATIVE_INFINITY) {
+        writer.write("-Inf");
+      } else if (Double.isNaN(value)) {
+        writer.write("NaN");
+      } else {
+        writer.write(Double.toString(value));
+      }
+    }
+
+    /**
+     * Escapes backslashes and line feeds, and also double quotes in label values.
+     */
+    private void writeEscaped(String s, boolean quoted) throws IOException {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        if (c == '\\') {
+          writer.write("\\\\");
+        } else if (c == '\n') {
+          writer.write("\\n");
+        } else if (c == '"' && quoted) {
+          writer.write("\\\"");
+        } else {
+          writer.write(c);
+        }
+      }
+    }
+  }
+
+  /**
+   * Turns a streamz metric or field name into a valid Prometheus metric or label name.
+   */
+  static String toPrometheusName(String name) {
+    StringBuilder result = new StringBuilder(name.length() + 1);
+    // Field names, and some metric names, start with a slash.
+    int start = name.startsWith("/") ? 1 : 0;
+    for (int i = start; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+          || (c >= '0' && c <= '9' && i > start);
+      if (!valid && c >= '0' && c <= '9') {
+        result.append('_');
+        valid = true;
+      }
+      result.append(valid ? c : '_');
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,90 @@
+package io.grpc.monitoring.streamz;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A lightweight HTTP endpoint for Prometheus to scrape, serving the metrics rendered by a
+ * {@link PrometheusExporter} at {@code /metrics}. The response is streamed as it is rendered.
+ *
+ * <p>Example usage:
+ * <pre>
+ *   PrometheusHttpServer server = PrometheusHttpServer.start(
+ *       new InetSocketAddress(9090), new PrometheusExporter(MetricFactory.getDefault()));
+ *   ...
+ *   server.stop();
+ * </pre>
+ */
+public final class PrometheusHttpServer {
+  private static final Logger logger = Logger.getLogger(PrometheusHttpServer.class.getName());
+
+  /**
+   * The path the metrics are served at.
+   */
+  public static final String PATH = "/metrics";
+
+  private final HttpServer server;
+
+  private PrometheusHttpServer(HttpServer server) {
+    this.server = server;
+  }
+
+  /**
+   * Starts serving the metrics of {@code exporter} on {@code address}. Scrapes are handled one
+   * at a time, by a thread of the server.
+   */
+  public static PrometheusHttpServer start(InetSocketAddress address,
+      final PrometheusExporter exporter) throws IOException {
+    Preconditions.checkNotNull(exporter);
+    HttpServer server = HttpServer.create(address, 0);
+    server.createContext(PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+          }
+          exchange.getResponseHeaders().set("Content-Type", PrometheusExporter.CONTENT_TYPE);
+          // A length of 0 sends the response in chunks, as it is written.
+          exchange.sendResponseHeaders(200, 0);
+          Writer writer = new BufferedWriter(
+              new OutputStreamWriter(exchange.getResponseBody(), Charsets.UTF_8));
+          exporter.writeTo(writer);
+          writer.flush();
+        } catch (IOException e) {
+          logger.log(Level.FINE, "Failed to send metrics", e);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+    return new PrometheusHttpServer(server);
+  }
+
+  /**
+   * Returns the address the server listens on.
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /**
+   * Stops the server, without waiting for ongoing scrapes.
+   */
+  public void stop() {
+    server.stop(0);
+  }
+}
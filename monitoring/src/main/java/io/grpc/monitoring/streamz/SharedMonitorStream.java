@@ -0,0 +1,433 @@
+package io.grpc.monitoring.streamz;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.grpc.monitoring.streamz.GenericCell.CellKey;
+import io.grpc.monitoring.streamz.proto.MetricDefinition;
+import io.grpc.monitoring.streamz.proto.MonitorEvent;
+import io.grpc.monitoring.streamz.proto.MonitorRequest;
+import io.grpc.monitoring.streamz.proto.MonitorResponse;
+import io.grpc.monitoring.streamz.proto.StreamDefinition;
+import io.grpc.monitoring.streamz.proto.StreamQuery;
+import io.grpc.monitoring.streamz.proto.StreamValue;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Periodically collects the streams matching one {@link MonitorRequest} and pushes them to every
+ * {@link Watcher} of that request, so that the cost of scraping doesn't grow with the number of
+ * watchers.
+ *
+ * <p>Each collection pass encodes every matching cell into a single reused
+ * {@link StreamValue.Builder}, and only keeps the value if it differs from the previous pass. A
+ * watcher is then sent the streams that changed since the last event it was sent, with stream
+ * and metric indices of its own, as required by the protocol.
+ */
+final class SharedMonitorStream {
+  private static final Logger LOG = Logger.getLogger(SharedMonitorStream.class.getName());
+
+  private final MetricFactory factory;
+  private final MonitorRequest request;
+  private final List<String> patterns = Lists.newArrayList();
+  private final ScheduledExecutorService scheduler;
+  private final long periodMillis;
+  private final List<Watcher> watchers = new CopyOnWriteArrayList<Watcher>();
+
+  @GuardedBy("this")
+  private final Map<CellKey<?>, Sample> samples = Maps.newHashMap();
+  /** The samples whose value changed in the last pass. */
+  @GuardedBy("this")
+  private final List<Sample> changed = Lists.newArrayList();
+  /** The streams that disappeared in the last pass. */
+  @GuardedBy("this")
+  private final List<CellKey<?>> removed = Lists.newArrayList();
+  /** The metrics whose last stream disappeared in the last pass. */
+  @GuardedBy("this")
+  private final List<GenericMetric<?, ?>> removedMetrics = Lists.newArrayList();
+  @GuardedBy("this")
+  private final Map<GenericMetric<?, ?>, MetricDefinition> metricDefinitions = Maps.newHashMap();
+  @GuardedBy("this")
+  private final StreamValue.Builder scratch = StreamValue.newBuilder();
+  /** The number of collection passes run so far. */
+  @GuardedBy("this")
+  private long pass;
+  @GuardedBy("this")
+  private long timestampMicros;
+
+  private final Receiver<GenericMetric<Object, ?>> metricCollector =
+      new Receiver<GenericMetric<Object, ?>>() {
+        @Override
+        public void accept(GenericMetric<Object, ?> metric) {
+          if (metric.getMetadata().isForEyesOnly()) {
+            return;
+          }
+          try {
+            metric.applyToEachCell(cellCollector);
+          } catch (Exception e) {
+            LOG.log(Level.SEVERE,
+                "Exception thrown during collection loop while applying to metric '"
+                    + metric.getName() + "'.", e);
+          }
+        }
+      };
+
+  private final Receiver<GenericCell<Object>> cellCollector = new Receiver<GenericCell<Object>>() {
+    @Override
+    public void accept(GenericCell<Object> cell) {
+      collect(cell);
+    }
+  };
+
+  private final Runnable tick = new Runnable() {
+    @Override
+    public void run() {
+      runPass();
+    }
+  };
+
+  private volatile ScheduledFuture<?> nextTick;
+  private volatile boolean stopped;
+
+  /**
+   * Creates a stream for the watchers of {@code request}, collected every {@code periodMillis}.
+   */
+  SharedMonitorStream(MetricFactory factory, MonitorRequest request,
+      ScheduledExecutorService scheduler, long periodMillis) {
+    Preconditions.checkArgument(periodMillis > 0, "periodMillis must be positive");
+    this.factory = factory;
+    this.request = request;
+    this.scheduler = scheduler;
+    this.periodMillis = periodMillis;
+    for (StreamQuery query : request.getQueryList()) {
+      if (!query.getPattern().isEmpty()) {
+        patterns.add(query.getPattern());
+      }
+    }
+  }
+
+  /**
+   * Schedules the first collection pass right away, and the following ones every period until
+   * {@link #stop stopped}.
+   */
+  void start() {
+    nextTick = scheduler.schedule(tick, 0, TimeUnit.MILLISECONDS);
+  }
+
+  void stop() {
+    stopped = true;
+    ScheduledFuture<?> future = nextTick;
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Adds a watcher, which is sent its first event as soon as a collection pass is available.
+   */
+  void addWatcher(final Watcher watcher) {
+    watchers.add(watcher);
+    scheduler.execute(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (SharedMonitorStream.this) {
+          if (pass > 0) {
+            watcher.push(SharedMonitorStream.this);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Removes a watcher, and returns whether there are no watchers left.
+   */
+  boolean removeWatcher(Watcher watcher) {
+    watchers.remove(watcher);
+    return watchers.isEmpty();
+  }
+
+  private void runPass() {
+    if (stopped) {
+      return;
+    }
+    try {
+      synchronized (this) {
+        collect();
+        for (Watcher watcher : watchers) {
+          watcher.push(this);
+        }
+      }
+    } finally {
+      if (!stopped) {
+        nextTick = scheduler.schedule(tick, periodMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void collect() {
+    pass++;
+    changed.clear();
+    removed.clear();
+    removedMetrics.clear();
+    factory.applyToMetrics(patterns, metricCollector);
+    timestampMicros = Utils.getCurrentTimeMicros();
+    // Forget the streams that no longer exist, and watchers will forget them on their next event.
+    for (Iterator<Sample> it = samples.values().iterator(); it.hasNext(); ) {
+      Sample sample = it.next();
+      if (sample.seenPass != pass) {
+        it.remove();
+        removed.add(sample.key);
+      }
+    }
+    if (!removed.isEmpty()) {
+      Set<GenericMetric<?, ?>> liveMetrics = Sets.newHashSet();
+      for (Sample sample : samples.values()) {
+        liveMetrics.add(sample.metric);
+      }
+      for (Iterator<GenericMetric<?, ?>> it = metricDefinitions.keySet().iterator();
+          it.hasNext(); ) {
+        GenericMetric<?, ?> metric = it.next();
+        if (!liveMetrics.contains(metric)) {
+          it.remove();
+          removedMetrics.add(metric);
+        }
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void collect(GenericCell<Object> cell) {
+    scratch.clear();
+    cell.toStreamValue(scratch, request.getTimestamps());
+    CellKey<?> key = cell.getCellKey();
+    long resetTimestamp = cell.getResetTimestampMicros();
+    Sample sample = samples.get(key);
+    if (sample == null || sample.resetTimestamp != resetTimestamp) {
+      // A new stream, or one that was reset: watchers get a new definition for it.
+      sample = new Sample(cell, resetTimestamp, getMetricDefinition(cell.getOwner()));
+      samples.put(key, sample);
+    } else if (sameValue(sample.value, scratch)) {
+      sample.seenPass = pass;
+      return;
+    }
+    sample.value = scratch.build();
+    sample.changedPass = pass;
+    sample.seenPass = pass;
+    changed.add(sample);
+  }
+
+  @GuardedBy("this")
+  private MetricDefinition getMetricDefinition(GenericMetric<?, ?> metric) {
+    MetricDefinition definition = metricDefinitions.get(metric);
+    if (definition == null) {
+      definition = metric.getMetricDefinition(request.getIncludeDeclarationMetadata());
+      metricDefinitions.put(metric, definition);
+    }
+    return definition;
+  }
+
+  /**
+   * Compares the timestamp and value of a stream, without building {@code current}.
+   */
+  private static boolean sameValue(StreamValue previous, StreamValue.Builder current) {
+    if (previous.getTimestamp() != current.getTimestamp()
+        || previous.getValueCase() != current.getValueCase()) {
+      return false;
+    }
+    switch (current.getValueCase()) {
+      case BOOL_VALUE:
+        return previous.getBoolValue() == current.getBoolValue();
+      case INT64_VALUE:
+        return previous.getInt64Value() == current.getInt64Value();
+      case DOUBLE_VALUE:
+        return Double.doubleToLongBits(previous.getDoubleValue())
+            == Double.doubleToLongBits(current.getDoubleValue());
+      case STRING_VALUE:
+        return previous.getStringValue().equals(current.getStringValue());
+      case MESSAGE_VALUE:
+        return previous.getMessageValue().equals(current.getMessageValue());
+      case DISTRIBUTION_VALUE:
+        return previous.getDistributionValue().equals(current.getDistributionValue());
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * The last collected value of a stream.
+   */
+  private static final class Sample {
+    final CellKey<?> key;
+    final GenericMetric<?, ?> metric;
+    final MetricDefinition metricDefinition;
+    final long resetTimestamp;
+    /** The definition of the stream, without its metric index. */
+    final StreamDefinition definition;
+    /** The value of the stream, without its stream index. */
+    StreamValue value;
+    long changedPass;
+    long seenPass;
+
+    Sample(GenericCell<?> cell, long resetTimestamp, MetricDefinition metricDefinition) {
+      this.key = cell.getCellKey();
+      this.metric = cell.getOwner();
+      this.metricDefinition = metricDefinition;
+      this.resetTimestamp = resetTimestamp;
+      StreamDefinition.Builder definition = StreamDefinition.newBuilder();
+      for (int ii = 0; ii < metric.getNumFields(); ii++) {
+        Object fieldValue = cell.getField(ii);
+        Class<?> fieldType = metric.getField(ii).getNativeType();
+        if (fieldType == String.class) {
+          definition.addStringFieldValues(fieldValue.toString());
+        } else if (fieldType == Integer.class) {
+          definition.addIntFieldValues((Integer) fieldValue);
+        } else if (fieldType == Boolean.class) {
+          definition.addBoolFieldValues((Boolean) fieldValue);
+        } else {
+          throw new IllegalStateException("Unexpected field type: " + fieldType);
+        }
+      }
+      definition.setResetTimestamp(resetTimestamp);
+      this.definition = definition.build();
+    }
+  }
+
+  /**
+   * One subscriber to a {@link SharedMonitorStream}, which is sent up to {@code numEvents}
+   * events. Stream and metric indices are assigned per watcher, the same way as
+   * {@link MonitorStreamsContext} does for a single call.
+   */
+  static final class Watcher {
+    private final StreamObserver<MonitorResponse> responseObserver;
+    private final Runnable onDone;
+    @GuardedBy("this")
+    private final Map<CellKey<?>, StreamIndexResetTimestamp> streamIndices = Maps.newHashMap();
+    @GuardedBy("this")
+    private final Map<GenericMetric<?, ?>, Integer> metricIndices = Maps.newHashMap();
+    @GuardedBy("this")
+    private int nextStreamIndex;
+    @GuardedBy("this")
+    private int nextMetricIndex;
+    @GuardedBy("this")
+    private int remainingEvents;
+    /** The pass of the last event sent, or 0 if none was sent yet. */
+    @GuardedBy("this")
+    private long lastPass;
+    @GuardedBy("this")
+    private boolean done;
+
+    /**
+     * Creates a watcher sending events to {@code responseObserver}, which runs {@code onDone} once
+     * it sent the last one.
+     */
+    Watcher(StreamObserver<MonitorResponse> responseObserver, int numEvents, Runnable onDone) {
+      Preconditions.checkArgument(numEvents > 0, "numEvents must be positive");
+      this.responseObserver = responseObserver;
+      this.remainingEvents = numEvents;
+      this.onDone = onDone;
+    }
+
+    /**
+     * Stops sending events, e.g. once the call is cancelled. Returns whether the watcher was still
+     * sending events, in which case nothing else will be sent on the call by this watcher.
+     */
+    synchronized boolean cancel() {
+      boolean wasActive = !done;
+      done = true;
+      return wasActive;
+    }
+
+    /**
+     * Sends the streams that changed since the last event sent. If the call isn't ready for more
+     * messages, nothing is sent and the changes accumulate until the next pass.
+     */
+    void push(SharedMonitorStream stream) {
+      boolean finished;
+      synchronized (this) {
+        if (done || lastPass == stream.pass) {
+          return;
+        }
+        if (responseObserver instanceof CallStreamObserver
+            && !((CallStreamObserver<?>) responseObserver).isReady()) {
+          return;
+        }
+        MonitorEvent event = buildEvent(stream);
+        responseObserver.onNext(MonitorResponse.newBuilder().setMonitorEvent(event).build());
+        finished = --remainingEvents == 0;
+        if (finished) {
+          done = true;
+          responseObserver.onCompleted();
+        }
+      }
+      if (finished) {
+        onDone.run();
+      }
+    }
+
+    @GuardedBy("this")
+    private MonitorEvent buildEvent(SharedMonitorStream stream) {
+      MonitorEvent.Builder event = MonitorEvent.newBuilder()
+          .setTimestampMicros(stream.timestampMicros);
+      if (lastPass == 0) {
+        event.setRootId(stream.factory.getId());
+      }
+      if (lastPass == stream.pass - 1) {
+        for (CellKey<?> key : stream.removed) {
+          streamIndices.remove(key);
+        }
+        for (GenericMetric<?, ?> metric : stream.removedMetrics) {
+          metricIndices.remove(metric);
+        }
+        for (Sample sample : stream.changed) {
+          addValue(event, sample);
+        }
+      } else {
+        // The first event, or events were skipped while the call wasn't ready.
+        streamIndices.keySet().retainAll(stream.samples.keySet());
+        metricIndices.keySet().retainAll(stream.metricDefinitions.keySet());
+        for (Sample sample : stream.samples.values()) {
+          if (sample.changedPass > lastPass) {
+            addValue(event, sample);
+          }
+        }
+      }
+      lastPass = stream.pass;
+      return event.build();
+    }
+
+    @GuardedBy("this")
+    private void addValue(MonitorEvent.Builder event, Sample sample) {
+      StreamValue.Builder value = sample.value.toBuilder();
+      StreamIndexResetTimestamp index = streamIndices.get(sample.key);
+      if (index == null || index.getResetTimestamp() != sample.resetTimestamp) {
+        index = new StreamIndexResetTimestamp(nextStreamIndex++, sample.resetTimestamp);
+        streamIndices.put(sample.key, index);
+        StreamDefinition.Builder definition = sample.definition.toBuilder();
+        Integer metricIndex = metricIndices.get(sample.metric);
+        if (metricIndex == null) {
+          metricIndex = nextMetricIndex++;
+          metricIndices.put(sample.metric, metricIndex);
+          definition.setMetricDefinition(sample.metricDefinition);
+        }
+        definition.setMetricIndex(metricIndex);
+        value.setStreamDefinition(definition);
+      }
+      value.setStreamIndex(index.getStreamIndex());
+      event.addValue(value);
+    }
+  }
+}
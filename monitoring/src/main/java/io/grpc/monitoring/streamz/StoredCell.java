@@ -3,10 +3,14 @@ package io.grpc.monitoring.streamz;
 import com.google.common.base.Preconditions;
 import io.grpc.monitoring.streamz.proto.StreamValue;
 import io.grpc.monitoring.streamz.proto.Types.EncodedValueType;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
@@ -18,6 +22,42 @@ import javax.annotation.concurrent.ThreadSafe;
  */
 @ThreadSafe
 abstract class StoredCell<V> extends GenericCell<V> {
+  /** Number of available CPU cores. */
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Maximal number of stripes or shards of a cell: the number of cores, rounded up to a power of
+   * two.
+   */
+  private static final int MAX_STRIPES = Math.max(2, Integer.highestOneBit(NCPU - 1) << 1);
+
+  private static final Random hashSeeds = new Random();
+
+  /**
+   * Per-thread hash picking the stripe or shard a thread updates. It is changed each time the
+   * thread collides with another one, to spread colliding threads over different stripes.
+   */
+  private static final ThreadLocal<int[]> threadHash = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      int hash = hashSeeds.nextInt();
+      return new int[] {hash == 0 ? 1 : hash};
+    }
+  };
+
+  /**
+   * Changes the current thread's hash after a collision, and returns the new one.
+   */
+  private static int rehash(int[] hash) {
+    int h = hash[0];
+    // Xorshift
+    h ^= h << 13;
+    h ^= h >>> 17;
+    h ^= h << 5;
+    hash[0] = h;
+    return h;
+  }
+
   private final CellKey<GenericMetric<V, ?>> key;
   protected final ValueTypeTraits<V> valueTypeTraits;
 
@@ -34,6 +74,15 @@ abstract class StoredCell<V> extends GenericCell<V> {
    */
   private final long resetTimestampMicros;
 
+  /** Whether the cell has been removed from its metric, so must no longer be updated. */
+  private volatile boolean removed;
+
+  /**
+   * When the cell was last looked up, in {@link CellLimit#nowMillis} time. Only kept for metrics
+   * with a {@link StoredMetric#setCellLimit cell limit}.
+   */
+  private volatile long lastUsedMillis;
+
   /**
    * Constructs a cell.
    * @param owner  the owning Metric.
@@ -71,6 +120,37 @@ abstract class StoredCell<V> extends GenericCell<V> {
     return key.tuple.get(i);
   }
 
+  final FieldTuple getFieldTuple() {
+    return key.tuple;
+  }
+
+  /**
+   * Records that the cell has been removed from its metric, so that those holding on to it know
+   * to look up the metric's new cell for its fields.
+   */
+  final void markRemoved() {
+    removed = true;
+  }
+
+  final boolean isRemoved() {
+    return removed;
+  }
+
+  final long getLastUsedMillis() {
+    return lastUsedMillis;
+  }
+
+  /**
+   * Records that the cell was used at {@code nowMillis}. Concurrent updates may record a slightly
+   * earlier time, which doesn't matter when looking for idle cells.
+   */
+  final void touch(long nowMillis) {
+    // Skip the write, and the cache line invalidation, when the time hasn't changed.
+    if (lastUsedMillis != nowMillis) {
+      lastUsedMillis = nowMillis;
+    }
+  }
+
   @Override
   final void toStreamValue(StreamValue.Builder streamValue, boolean includeTimestamp) {
     if (hasValue()) {
@@ -119,6 +199,14 @@ abstract class StoredCell<V> extends GenericCell<V> {
    */
   abstract void incrementBy(Number step);
 
+  /**
+   * Same as {@link #incrementBy(Number)}, without boxing {@code step} for cells that can add it
+   * directly.
+   */
+  void incrementBy(long step) {
+    incrementBy(Long.valueOf(step));
+  }
+
   /**
    * Invokes {@code changer.change(v)} in the thread-safe manner.
    * {@code v} is the Cell's value, and the changer should return the
@@ -150,7 +238,13 @@ abstract class StoredCell<V> extends GenericCell<V> {
       GenericMetric<V, ? extends GenericMetric<V, ?>> owner,
       FieldTuple fieldTuple,
       V value) {
-    if (owner.getValueTypeTraits().isConvertableToLong()) {
+    boolean accumulateOnly =
+        owner instanceof StoredMetric && ((StoredMetric<?, ?>) owner).isAccumulateOnly();
+    if (accumulateOnly && owner.getValueType() == Long.class) {
+      return new StripedLongCell<V>(owner, fieldTuple, value);
+    } else if (accumulateOnly && owner.getValueType() == Distribution.class) {
+      return new ShardedDistributionCell<V>(owner, fieldTuple, value);
+    } else if (owner.getValueTypeTraits().isConvertableToLong()) {
       return new AtomicLongCell<V>(owner, fieldTuple, value);
     } else if (owner.getValueType() == Distribution.class){
       return new DistributionCell<V>(owner, fieldTuple, value);
@@ -209,6 +303,159 @@ abstract class StoredCell<V> extends GenericCell<V> {
   }
 
 
+  /**
+   * Cell for long values that are mostly incremented, such as those of counters.
+   *
+   * <p>A single {@link AtomicLong} makes all threads incrementing a hot cell contend on one cache
+   * line. Instead, increments go to {@link #base} until a CAS on it fails, and from then on to
+   * {@link #stripes}, one of which is picked per thread. The stripes grow (up to one per CPU core)
+   * whenever threads keep colliding, and are summed when reading. This is the scheme of Java 8's
+   * {@code LongAdder}, which can't be used here as Java 6 is supported.
+   *
+   * <p>Reads are not atomic with respect to concurrent increments: like those of a
+   * {@code LongAdder}, they may or may not include increments that happen while summing.
+   */
+  private static final class StripedLongCell<V> extends StoredCell<V> {
+
+    /** The value when there is no contention, and part of the sum otherwise. */
+    private final AtomicLong base;
+
+    /** Created on first contention. Its length is a power of two. Guarded by this for writes. */
+    @Nullable
+    private volatile Stripe[] stripes;
+
+    private StripedLongCell(
+        GenericMetric<V, ? extends GenericMetric<V, ?>> owner,
+        FieldTuple fieldTuple,
+        V value) {
+      super(owner, fieldTuple);
+      base = new AtomicLong();
+      owner.getValueTypeTraits().set(base, value);
+    }
+
+    @Override
+    V getValue() {
+      return valueTypeTraits.fromLong(sum());
+    }
+
+    @Override
+    void updateValue(V newValue) {
+      Preconditions.checkNotNull(newValue,
+          "You may not set a cell value to null. Remove the cell instead.");
+      // Setting is rare for incremented cells, so it applies the difference from the current sum
+      // rather than resetting the stripes, which would lose concurrent increments.
+      synchronized (this) {
+        add(valueTypeTraits.toLong(newValue) - sum());
+      }
+    }
+
+    @Override
+    void incrementBy(Number step) {
+      add(step.longValue());
+    }
+
+    @Override
+    void incrementBy(long step) {
+      add(step);
+    }
+
+    @Override
+    void changeUnderLock(CellValueChanger<V> changer) {
+      synchronized (this) {
+        long current = sum();
+        long changed = valueTypeTraits.toLong(Preconditions.checkNotNull(
+            changer.change(valueTypeTraits.fromLong(current)),
+            "Cannot change value to null."));
+        add(changed - current);
+      }
+    }
+
+    private long sum() {
+      long sum = base.get();
+      Stripe[] current = stripes;
+      if (current != null) {
+        for (Stripe stripe : current) {
+          sum += stripe.get();
+        }
+      }
+      return sum;
+    }
+
+    private void add(long step) {
+      Stripe[] current = stripes;
+      if (current == null) {
+        long value = base.get();
+        if (base.compareAndSet(value, value + step)) {
+          return;
+        }
+      } else {
+        Stripe stripe = current[threadHash.get()[0] & (current.length - 1)];
+        long value = stripe.get();
+        if (stripe.compareAndSet(value, value + step)) {
+          return;
+        }
+      }
+      addContended(step);
+    }
+
+    /**
+     * Adds {@code step} after a failed CAS, which means another thread is incrementing the same
+     * stripe (or base). This moves the current thread to another stripe, adding stripes if there
+     * can be more.
+     */
+    private void addContended(long step) {
+      int h = rehash(threadHash.get());
+      Stripe[] current = stripes;
+      if (current == null || current.length < MAX_STRIPES) {
+        current = growStripes(current);
+      }
+      current[h & (current.length - 1)].addAndGet(step);
+    }
+
+    /**
+     * Doubles the number of stripes, unless another thread has already replaced {@code old}.
+     *
+     * @return the new stripes.
+     */
+    private Stripe[] growStripes(@Nullable Stripe[] old) {
+      synchronized (this) {
+        Stripe[] current = stripes;
+        if (current != old) {
+          return current;
+        }
+        int oldLength = old == null ? 0 : old.length;
+        Stripe[] grown = new Stripe[oldLength == 0 ? 2 : oldLength * 2];
+        if (old != null) {
+          // The same stripes are kept, so increments racing with the growth aren't lost.
+          System.arraycopy(old, 0, grown, 0, oldLength);
+        }
+        for (int i = oldLength; i < grown.length; i++) {
+          grown[i] = new Stripe();
+        }
+        stripes = grown;
+        return grown;
+      }
+    }
+
+    /**
+     * A counter padded to its own cache line, so that threads incrementing different stripes don't
+     * contend.
+     */
+    @SuppressWarnings("unused")
+    private static final class Stripe extends AtomicLong {
+      private static final long serialVersionUID = 1L;
+
+      private long p1;
+      private long p2;
+      private long p3;
+      private long p4;
+      private long p5;
+      private long p6;
+      private long p7;
+    }
+  }
+
+
   /**
    * Cell for use with non-numeric, non-Distribution types.
    */
@@ -271,14 +518,154 @@ abstract class StoredCell<V> extends GenericCell<V> {
   }
 
 
+  /**
+   * Cell for distributions that are only recorded into, such as those of event metrics.
+   *
+   * <p>Values are recorded into one of several {@link Shard shards}, picked per thread, each with
+   * its own lock. A thread that finds its shard locked moves to another one, adding shards (up to
+   * one per CPU core) if there can be more, so threads recording into a hot cell mostly don't wait
+   * for each other. Reads merge the shards with {@link Distribution#merge}, which keeps bucket
+   * counts exact.
+   *
+   * <p>Since a changer only sees the shard it is applied to, changers must only add samples to
+   * the distribution they are given.
+   */
+  private static final class ShardedDistributionCell<V> extends StoredCell<V> {
+
+    /**
+     * Its length is a power of two. Written under the lock of this cell, along with the shards'
+     * distributions being replaced.
+     */
+    private volatile Shard[] shards;
+
+    private ShardedDistributionCell(
+        GenericMetric<V, ? extends GenericMetric<V, ?>> owner,
+        FieldTuple fieldTuple,
+        V value) {
+      super(owner, fieldTuple);
+      Preconditions.checkArgument(value instanceof Distribution);
+      shards = new Shard[] {new Shard(((Distribution) value).copy())};
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    V getValue() {
+      synchronized (this) {
+        Shard[] current = shards;
+        Distribution merged = null;
+        for (Shard shard : current) {
+          shard.lock();
+          try {
+            if (merged == null) {
+              merged = shard.distribution.copy();
+            } else {
+              merged.merge(shard.distribution);
+            }
+          } finally {
+            shard.unlock();
+          }
+        }
+        return (V) merged;
+      }
+    }
+
+    @Override
+    void updateValue(V newValue) {
+      Preconditions.checkNotNull(newValue,
+          "You may not set a cell value to null. Remove the cell instead.");
+      Distribution value = ((Distribution) newValue).copy();
+      synchronized (this) {
+        Shard[] current = shards;
+        for (Shard shard : current) {
+          shard.lock();
+        }
+        try {
+          current[0].distribution = value;
+          for (int i = 1; i < current.length; i++) {
+            current[i].distribution = new Distribution(value.getBucketer());
+          }
+        } finally {
+          for (Shard shard : current) {
+            shard.unlock();
+          }
+        }
+      }
+    }
+
+    @Override
+    void incrementBy(Number step) {
+      throw new UnsupportedOperationException("incrementBy() not supported for Distribution");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void changeUnderLock(CellValueChanger<V> changer) {
+      CellValueChanger<Distribution> distributionChanger = (CellValueChanger<Distribution>) changer;
+      Shard[] current = shards;
+      int[] hash = threadHash.get();
+      Shard shard = current[hash[0] & (current.length - 1)];
+      if (!shard.tryLock()) {
+        // Another thread is recording into the same shard. Move this thread to another one, which
+        // it waits for if need be rather than trying again, as there may be more threads than
+        // shards.
+        int h = rehash(hash);
+        if (current.length < MAX_STRIPES) {
+          current = growShards(current);
+        }
+        shard = current[h & (current.length - 1)];
+        shard.lock();
+      }
+      try {
+        if (distributionChanger.change(shard.distribution) != shard.distribution) {
+          throw new IllegalStateException(
+              "Distribution instance must be mutated in-place for the cell " + this);
+        }
+      } finally {
+        shard.unlock();
+      }
+    }
+
+    /**
+     * Doubles the number of shards, unless another thread has already replaced {@code old}.
+     *
+     * @return the new shards.
+     */
+    private Shard[] growShards(Shard[] old) {
+      synchronized (this) {
+        Shard[] current = shards;
+        if (current != old) {
+          return current;
+        }
+        Shard[] grown = Arrays.copyOf(old, old.length * 2);
+        Bucketer bucketer = old[0].distribution.getBucketer();
+        for (int i = old.length; i < grown.length; i++) {
+          grown[i] = new Shard(new Distribution(bucketer));
+        }
+        shards = grown;
+        return grown;
+      }
+    }
+
+    /**
+     * A part of the cell's distribution, guarded by the shard's lock.
+     */
+    private static final class Shard extends ReentrantLock {
+      private static final long serialVersionUID = 1L;
+
+      Distribution distribution;
+
+      Shard(Distribution distribution) {
+        this.distribution = distribution;
+      }
+    }
+  }
+
+
   /**
    * Mostly synchronized-free cell for distribution values.
    */
   private static final class DistributionCell<V> extends StoredCell<V> {
 
-    /** Number of available CPU cores */
-    private static final int NCPU = Runtime.getRuntime().availableProcessors();
-
     /**
      * The current value of this cell.
      * Copying of values is handled by {@link ValueTypeTraits} class.
@@ -1,11 +1,18 @@
 package io.grpc.monitoring.streamz;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Base class for metrics where Streamz stores the value of each cell.
@@ -22,14 +29,114 @@ import javax.annotation.Nullable;
  * @author avrukin@google.com (Adopted / Moved to gRPC & Open Source)
  */
 class StoredMetric<V, M extends StoredMetric<V, M>> extends GenericMetric<V, M> {
+  private static final int INITIAL_INDEX_LENGTH = 4;
+  private static final int MAX_CACHED_OVERFLOW_TUPLES = 256;
+
   private final ConcurrentMap<FieldTuple, StoredCell<V>> map =
       new ConcurrentHashMap<FieldTuple, StoredCell<V>>();
+  // Volatile as cells are created by recording threads, without synchronization.
+  private volatile boolean accumulateOnly;
+
+  /**
+   * Open-addressed index of the cells in {@link #map} by the hash of their fields, which lets the
+   * generated MetricN and CounterN classes find a cell from its field values without allocating a
+   * tuple for them. Its length is a power of two, and it is kept at most half full. Readers probe
+   * it without locking, while it is changed under {@link #indexLock}. It may hold cells that have
+   * been removed, and a reader may miss a cell that is being moved to fill the slot of a removed
+   * one, in which case it looks the cell up in {@link #map}.
+   */
+  private volatile AtomicReferenceArray<StoredCell<V>> cellIndex =
+      new AtomicReferenceArray<StoredCell<V>>(INITIAL_INDEX_LENGTH);
+  private final Object indexLock = new Object();
+  @GuardedBy("indexLock")
+  private int indexedCellCount;
+  @Nullable
+  private volatile CellLimit cellLimit;
+  /**
+   * The number of values of each field that overflow cells keep, or 0 for fields that they
+   * replace, if there are few enough combinations of them to cache their tuples.
+   */
+  @Nullable
+  private int[] overflowRadixes;
+  /**
+   * The overflow tuples by the combination of the values of the fields they keep.
+   */
+  @Nullable
+  private AtomicReferenceArray<FieldTuple> overflowTuples;
 
   StoredMetric(String name, ValueTypeTraits<V> traits, Metadata metadata,
       ImmutableList<? extends Field<?>> fields) {
     super(name, traits, metadata, fields);
   }
 
+  /**
+   * Declares that the cells of this metric are only ever added to through the public API of the
+   * class owning it, as those of counters and event metrics. They are then stored in cells that
+   * scale better under contention, at the cost of slower reads and sets. The changers passed to
+   * {@link #changeUnderLock} must then only add samples to distributions, rather than look at
+   * their whole value. Must be called before any cell is created.
+   */
+  final void setAccumulateOnly() {
+    Preconditions.checkState(map.isEmpty(), "Must be called before creating cells");
+    accumulateOnly = true;
+  }
+
+  final boolean isAccumulateOnly() {
+    return accumulateOnly;
+  }
+
+  /**
+   * Limits this metric to {@code maxCells} cells, so that fields taking their values from requests
+   * can't make it grow without bound. Once the limit is reached, updates for new field values go
+   * to an overflow cell instead, whose String fields are {@value CellLimit#OVERFLOW_STRING} and
+   * Integer fields are {@link Integer#MIN_VALUE}, while Boolean and enum fields keep their values.
+   * Each such update, rather than each new field value, is counted by the
+   * {@code grpc.io/streamz/java/rejected_updates} metric. Must be called before any cell is created.
+   *
+   * @return this
+   */
+  public final M setCellLimit(int maxCells) {
+    return setCellLimit(new CellLimit(maxCells, -1, Ticker.systemTicker()));
+  }
+
+  /**
+   * Like {@link #setCellLimit(int)}, but once the limit is reached the cells that haven't been used
+   * for {@code idleTime} are removed to make room for new field values. Like
+   * {@link #clear cleared} cells, removed cells lose their value, and start again from the default
+   * value with a new reset timestamp if their field values come back.
+   *
+   * @return this
+   */
+  public final M setCellLimit(int maxCells, long idleTime, TimeUnit unit) {
+    Preconditions.checkArgument(idleTime >= 0, "idleTime must not be negative");
+    return setCellLimit(new CellLimit(maxCells, unit.toMillis(idleTime), Ticker.systemTicker()));
+  }
+
+  @VisibleForTesting
+  final M setCellLimit(CellLimit limit) {
+    Preconditions.checkState(map.isEmpty(), "The cell limit must be set before creating cells");
+    int[] radixes = new int[getNumFields()];
+    int combinations = 1;
+    for (int i = 0; i < radixes.length; i++) {
+      Class<?> type = getField(i).getType();
+      if (type == Boolean.class) {
+        radixes[i] = 2;
+      } else if (type.isEnum()) {
+        radixes[i] = type.getEnumConstants().length;
+      }
+      if (radixes[i] > 0) {
+        combinations = (int) Math.min((long) combinations * radixes[i], Integer.MAX_VALUE);
+      }
+    }
+    if (combinations <= MAX_CACHED_OVERFLOW_TUPLES) {
+      overflowRadixes = radixes;
+      overflowTuples = new AtomicReferenceArray<FieldTuple>(combinations);
+    }
+    // Publishes the overflow tuple cache.
+    cellLimit = limit;
+    return downcastThis();
+  }
+
   @Override
   void applyToEachCell(Receiver<GenericCell<V>> callback) {
     for (StoredCell<V> cell : map.values()) {  // no locking, weakly-consistent iterator.
@@ -50,20 +157,236 @@ class StoredMetric<V, M extends StoredMetric<V, M>> extends GenericMetric<V, M>
   StoredCell<V> createCell(FieldTuple fieldTuple, V initialValue) {
     // We assume that CHM.get() has returned null and this is the reason why this method is called.
     verifyFieldTuple(fieldTuple);
+    CellLimit limit = cellLimit;
+    if (limit == null) {
+      return addCell(fieldTuple, initialValue);
+    }
+    long nowMillis = limit.nowMillis();
+    StoredCell<V> cell = null;
+    // While the metric is full and no cell can be evicted yet, new field values go straight to
+    // their overflow cell, without taking the lock.
+    if (map.size() < limit.maxCells || limit.mayEvict(nowMillis)) {
+      synchronized (limit) {
+        cell = map.get(fieldTuple);
+        if (cell == null
+            && (map.size() < limit.maxCells || evictIdleCells(limit, nowMillis))) {
+          cell = addCell(fieldTuple, initialValue);
+        }
+      }
+    }
+    if (cell == null) {
+      FieldTuple overflowTuple = getOverflowTuple(fieldTuple);
+      cell = map.get(overflowTuple);
+      if (cell == null) {
+        // Overflow cells may go over the limit, but there are few of them.
+        cell = addCell(overflowTuple, initialValue);
+      }
+      StreamzMetrics.rejectedUpdatesCounter.increment(getName());
+    }
+    cell.touch(nowMillis);
+    return cell;
+  }
+
+  private StoredCell<V> addCell(FieldTuple fieldTuple, V initialValue) {
     StoredCell<V> newCell = StoredCell.newStoredCell(this, fieldTuple, initialValue);
     StoredCell<V> oldCell = map.putIfAbsent(fieldTuple, newCell);
     // If another thread inserted a value between get() and putIfAbsent(), use it.
-    return oldCell != null ? oldCell : newCell;
+    if (oldCell != null) {
+      return oldCell;
+    }
+    synchronized (indexLock) {
+      AtomicReferenceArray<StoredCell<V>> index = cellIndex;
+      if (2 * (indexedCellCount + 1) > index.length()) {
+        rebuildIndex();
+      } else if (addToIndex(index, newCell)) {
+        indexedCellCount++;
+      }
+    }
+    return newCell;
+  }
+
+  /**
+   * Removes all cells that have been idle for long enough, in a single pass over the cells, and
+   * records when the next one may become idle.
+   *
+   * @return whether a cell was removed.
+   */
+  @GuardedBy("limit")
+  private boolean evictIdleCells(CellLimit limit, long nowMillis) {
+    if (!limit.mayEvict(nowMillis)) {
+      return false;
+    }
+    long idleSinceMillis = nowMillis - limit.idleMillis;
+    long leastRecentlyUsedMillis = nowMillis;
+    boolean evicted = false;
+    for (StoredCell<V> cell : map.values()) {
+      long lastUsedMillis = cell.getLastUsedMillis();
+      if (lastUsedMillis <= idleSinceMillis) {
+        evicted |= removeCell(cell);
+      } else if (lastUsedMillis < leastRecentlyUsedMillis) {
+        leastRecentlyUsedMillis = lastUsedMillis;
+      }
+    }
+    limit.nextEvictionMillis = leastRecentlyUsedMillis + limit.idleMillis;
+    if (evicted) {
+      invalidateNewCellResetTimestamp();
+    }
+    return evicted;
+  }
+
+  /**
+   * Returns the fields of the overflow cell standing for the cell of {@code fieldTuple}.
+   */
+  private FieldTuple getOverflowTuple(FieldTuple fieldTuple) {
+    int[] radixes = overflowRadixes;
+    AtomicReferenceArray<FieldTuple> tuples = overflowTuples;
+    int combination = 0;
+    if (tuples != null) {
+      for (int i = 0; i < radixes.length; i++) {
+        Object value = fieldTuple.get(i);
+        if (value instanceof Boolean) {
+          combination = combination * radixes[i] + ((Boolean) value ? 1 : 0);
+        } else if (value instanceof Enum) {
+          combination = combination * radixes[i] + ((Enum<?>) value).ordinal();
+        }
+      }
+      FieldTuple cached = tuples.get(combination);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    Object[] fields = new Object[getNumFields()];
+    for (int i = 0; i < fields.length; i++) {
+      Class<?> type = getField(i).getType();
+      if (type == String.class) {
+        fields[i] = CellLimit.OVERFLOW_STRING;
+      } else if (type == Integer.class) {
+        fields[i] = CellLimit.OVERFLOW_INTEGER;
+      } else {
+        fields[i] = fieldTuple.get(i);
+      }
+    }
+    FieldTuple overflowTuple = new FieldTuple(fields);
+    if (tuples != null) {
+      // Racing threads may both cache an equal tuple, either will do.
+      tuples.set(combination, overflowTuple);
+    }
+    return overflowTuple;
+  }
+
+  /**
+   * Records that {@code cell} was looked up, if this metric has a cell limit which may evict it
+   * when idle.
+   */
+  final StoredCell<V> touch(StoredCell<V> cell) {
+    CellLimit limit = cellLimit;
+    if (limit != null && limit.idleMillis >= 0) {
+      cell.touch(limit.nowMillis());
+    }
+    return cell;
+  }
+
+  /**
+   * Returns the index of cells, see {@link #cellIndex}. The cell of given field values is in the
+   * first non-null slot from {@link #indexSlot} (wrapping around) whose cell has the same fields
+   * and isn't {@link StoredCell#isRemoved removed}, if any.
+   */
+  final AtomicReferenceArray<StoredCell<V>> getCellIndex() {
+    return cellIndex;
+  }
+
+  /**
+   * Returns the first slot to probe in a cell index of length {@code length} for the cell whose
+   * fields hash to {@code hash}.
+   */
+  static int indexSlot(int hash, int length) {
+    // Tuple hashes of small integers or short strings differ mostly in their low bits.
+    return (hash ^ (hash >>> 16)) & (length - 1);
+  }
+
+  /**
+   * Replaces the index with one holding the cells currently in the map, and room to add as many.
+   */
+  @GuardedBy("indexLock")
+  private void rebuildIndex() {
+    int length = INITIAL_INDEX_LENGTH;
+    while (length < 4 * (map.size() + 1)) {
+      length *= 2;
+    }
+    AtomicReferenceArray<StoredCell<V>> index = new AtomicReferenceArray<StoredCell<V>>(length);
+    int count = 0;
+    for (StoredCell<V> cell : map.values()) {
+      // Cells being added concurrently may show up here before they are added to the index.
+      if (addToIndex(index, cell)) {
+        count++;
+      }
+    }
+    indexedCellCount = count;
+    cellIndex = index;
+  }
+
+  /**
+   * Removes a cell from the index, moving the cells after it in its probe sequence back to keep
+   * them reachable. Cells are written to their new slot before their old one is cleared, so
+   * readers only ever miss a cell by finding an empty slot before it.
+   */
+  @GuardedBy("indexLock")
+  private void removeFromIndex(StoredCell<V> cell) {
+    AtomicReferenceArray<StoredCell<V>> index = cellIndex;
+    int mask = index.length() - 1;
+    int hole = indexSlot(cell.getFieldTuple().hashCode(), index.length());
+    while (index.get(hole) != cell) {
+      if (index.get(hole) == null) {
+        // Not indexed yet, see rebuildIndex().
+        return;
+      }
+      hole = (hole + 1) & mask;
+    }
+    for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+      StoredCell<V> moved = index.get(i);
+      if (moved == null) {
+        break;
+      }
+      int slot = indexSlot(moved.getFieldTuple().hashCode(), index.length());
+      // The cell can fill the hole if its probe sequence goes through the hole before reaching i.
+      if (((i - slot) & mask) >= ((i - hole) & mask)) {
+        index.set(hole, moved);
+        hole = i;
+      }
+    }
+    index.set(hole, null);
+    indexedCellCount--;
+  }
+
+  /**
+   * Adds a cell to an index that has room for it, unless it is there already.
+   *
+   * @return whether the cell was added.
+   */
+  @GuardedBy("indexLock")
+  private static <V> boolean addToIndex(AtomicReferenceArray<StoredCell<V>> index,
+      StoredCell<V> cell) {
+    int mask = index.length() - 1;
+    for (int i = indexSlot(cell.getFieldTuple().hashCode(), index.length()); ; i = (i + 1) & mask) {
+      StoredCell<V> indexed = index.get(i);
+      if (indexed == cell) {
+        return false;
+      }
+      if (indexed == null) {
+        index.set(i, cell);
+        return true;
+      }
+    }
   }
 
   StoredCell<V> getOrCreateCell(FieldTuple fieldTuple) {
     StoredCell<V> cell = map.get(fieldTuple);
-    return cell != null ? cell : createCell(fieldTuple, getDefaultValue());
+    return cell != null ? touch(cell) : createCell(fieldTuple, getDefaultValue());
   }
 
   StoredCell<V> getOrCreateCell(FieldTuple fieldTuple, V initialValue) {
     StoredCell<V> cell = map.get(fieldTuple);
-    return cell != null ? cell : createCell(fieldTuple, initialValue);
+    return cell != null ? touch(cell) : createCell(fieldTuple, initialValue);
   }
 
   /**
@@ -71,12 +394,38 @@ class StoredMetric<V, M extends StoredMetric<V, M>> extends GenericMetric<V, M>
    */
   public void clear() {
     invalidateNewCellResetTimestamp();
-    map.clear();
+    for (Map.Entry<FieldTuple, StoredCell<V>> entry : map.entrySet()) {
+      if (map.remove(entry.getKey(), entry.getValue())) {
+        entry.getValue().markRemoved();
+      }
+    }
+    synchronized (indexLock) {
+      rebuildIndex();
+    }
   }
 
   void clear(FieldTuple fieldTuple) {
     invalidateNewCellResetTimestamp();
-    map.remove(fieldTuple);
+    StoredCell<V> cell = map.get(fieldTuple);
+    if (cell != null) {
+      removeCell(cell);
+    }
+  }
+
+  /**
+   * Removes {@code cell} from the metric, unless it has been removed already.
+   *
+   * @return whether the cell was removed.
+   */
+  private boolean removeCell(StoredCell<V> cell) {
+    if (!map.remove(cell.getFieldTuple(), cell)) {
+      return false;
+    }
+    cell.markRemoved();
+    synchronized (indexLock) {
+      removeFromIndex(cell);
+    }
+    return true;
   }
 
   /**
@@ -126,6 +475,10 @@ class StoredMetric<V, M extends StoredMetric<V, M>> extends GenericMetric<V, M>
     getOrCreateCell(tuple).incrementBy(value);
   }
 
+  void incrementBy(FieldTuple tuple, long value) {
+    getOrCreateCell(tuple).incrementBy(value);
+  }
+
   /**
    * See the note on {@link Metric1#createCellKey(Object)}. This method
    * is public for a gRPC streamz performance optimization.
@@ -0,0 +1,240 @@
+package io.grpc.monitoring.streamz;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import io.grpc.Status;
+import io.grpc.monitoring.streamz.proto.GetRootListRequest;
+import io.grpc.monitoring.streamz.proto.GetRootListResponse;
+import io.grpc.monitoring.streamz.proto.MonitorRequest;
+import io.grpc.monitoring.streamz.proto.MonitorResponse;
+import io.grpc.monitoring.streamz.proto.RootDescriptor;
+import io.grpc.monitoring.streamz.proto.StreamzGrpc;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * The Streamz gRPC service, exporting the metrics of the {@link Root}s of this process.
+ *
+ * <p>{@code MonitorStream} calls asking for more than one event share a
+ * {@link SharedMonitorStream} per distinct request and poll period: the metrics are collected once
+ * per period however many calls are watching them, and each call is only sent the streams that
+ * changed since its previous event.
+ *
+ * <p>{@code WatchRoot} is not implemented, as its response doesn't carry any information yet.
+ */
+public final class StreamzImpl extends StreamzGrpc.StreamzImplBase {
+  /**
+   * The minimum poll period honored for {@code MonitorStream} calls, which can be overridden with
+   * the {@code streamz.minPollPeriodMs} system property.
+   */
+  private static final long DEFAULT_MIN_POLL_PERIOD_MILLIS = 1000;
+
+  private final MetricFactory defaultFactory;
+  private final ScheduledExecutorService scheduler;
+  private final long minPollPeriodMillis;
+
+  @GuardedBy("this")
+  private final Map<MonitorRequest, SharedMonitorStream> sharedStreams = Maps.newHashMap();
+
+  /**
+   * Creates the service, which collects metrics for {@code MonitorStream} calls on
+   * {@code scheduler}.
+   */
+  public StreamzImpl(ScheduledExecutorService scheduler) {
+    this(MetricFactory.getDefault(), scheduler,
+        Long.getLong("streamz.minPollPeriodMs", DEFAULT_MIN_POLL_PERIOD_MILLIS));
+  }
+
+  @VisibleForTesting
+  StreamzImpl(MetricFactory defaultFactory, ScheduledExecutorService scheduler,
+      long minPollPeriodMillis) {
+    Preconditions.checkArgument(minPollPeriodMillis > 0, "minPollPeriodMillis must be positive");
+    this.defaultFactory = Preconditions.checkNotNull(defaultFactory);
+    this.scheduler = Preconditions.checkNotNull(scheduler);
+    this.minPollPeriodMillis = minPollPeriodMillis;
+  }
+
+  @Override
+  public void getStream(MonitorRequest request, StreamObserver<MonitorResponse> responseObserver) {
+    MetricFactory factory = getFactory(request.getRoot());
+    if (factory == null) {
+      responseObserver.onError(unknownRoot(request.getRoot()));
+      return;
+    }
+    responseObserver.onNext(collectSingleResponse(factory, request));
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getRootList(GetRootListRequest request,
+      StreamObserver<GetRootListResponse> responseObserver) {
+    GetRootListResponse.Builder response = GetRootListResponse.newBuilder()
+        .addRoot(getDefaultRootDescriptor());
+    for (Root root : Root.getCustomRoots()) {
+      response.addRoot(root.getRootDescriptor());
+    }
+    responseObserver.onNext(response.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public StreamObserver<MonitorRequest> monitorStream(
+      StreamObserver<MonitorResponse> responseObserver) {
+    return new MonitorCall(responseObserver);
+  }
+
+  @VisibleForTesting
+  synchronized int getSharedStreamCount() {
+    return sharedStreams.size();
+  }
+
+  @Nullable
+  private MetricFactory getFactory(String rootName) {
+    if (rootName.isEmpty()) {
+      return defaultFactory;
+    }
+    Root root = Root.find(rootName);
+    return root == null ? null : root.getMetricFactory();
+  }
+
+  private static RuntimeException unknownRoot(String rootName) {
+    return Status.NOT_FOUND.withDescription("Unknown root: " + rootName).asRuntimeException();
+  }
+
+  private static MonitorResponse collectSingleResponse(
+      MetricFactory factory, MonitorRequest request) {
+    return MonitorResponse.newBuilder()
+        .setMonitorEvent(MonitorStreamsContext.collectSingleRequest(factory, request))
+        .build();
+  }
+
+  private static RootDescriptor getDefaultRootDescriptor() {
+    try {
+      return Root.getDefault().getRootDescriptor();
+    } catch (IllegalArgumentException e) {
+      // The default root can't be described until its labels are configured.
+      return RootDescriptor.getDefaultInstance();
+    }
+  }
+
+  /**
+   * Returns the key under which calls share a stream: the request without the fields that only
+   * matter to a single call.
+   */
+  private static MonitorRequest getSharedStreamKey(MonitorRequest request, long periodMillis) {
+    return request.toBuilder()
+        .setNumEvents(0)
+        .setPollPeriodMs((int) periodMillis)
+        .build();
+  }
+
+  private synchronized void watch(MetricFactory factory, MonitorRequest key, long periodMillis,
+      SharedMonitorStream.Watcher watcher) {
+    SharedMonitorStream stream = sharedStreams.get(key);
+    if (stream == null) {
+      stream = new SharedMonitorStream(factory, key, scheduler, periodMillis);
+      sharedStreams.put(key, stream);
+      stream.addWatcher(watcher);
+      stream.start();
+    } else {
+      stream.addWatcher(watcher);
+    }
+  }
+
+  private synchronized void unwatch(MonitorRequest key, SharedMonitorStream.Watcher watcher) {
+    SharedMonitorStream stream = sharedStreams.get(key);
+    if (stream != null && stream.removeWatcher(watcher)) {
+      sharedStreams.remove(key);
+      stream.stop();
+    }
+  }
+
+  /**
+   * A {@code MonitorStream} call, which takes a single {@link MonitorRequest}.
+   */
+  private final class MonitorCall implements StreamObserver<MonitorRequest> {
+    private final StreamObserver<MonitorResponse> responseObserver;
+    @GuardedBy("this")
+    private boolean started;
+    @GuardedBy("this")
+    private MonitorRequest key;
+    @GuardedBy("this")
+    private SharedMonitorStream.Watcher watcher;
+
+    MonitorCall(StreamObserver<MonitorResponse> responseObserver) {
+      this.responseObserver = responseObserver;
+      if (responseObserver instanceof ServerCallStreamObserver) {
+        ((ServerCallStreamObserver<MonitorResponse>) responseObserver).setOnCancelHandler(
+            new Runnable() {
+              @Override
+              public void run() {
+                stopWatching();
+              }
+            });
+      }
+    }
+
+    @Override
+    public synchronized void onNext(MonitorRequest request) {
+      if (started) {
+        if (stopWatching()) {
+          responseObserver.onError(Status.FAILED_PRECONDITION
+              .withDescription("Only one MonitorRequest is allowed per call")
+              .asRuntimeException());
+        }
+        return;
+      }
+      started = true;
+      MetricFactory factory = getFactory(request.getRoot());
+      if (factory == null) {
+        responseObserver.onError(unknownRoot(request.getRoot()));
+        return;
+      }
+      if (request.getNumEvents() <= 1) {
+        responseObserver.onNext(collectSingleResponse(factory, request));
+        responseObserver.onCompleted();
+        return;
+      }
+      long periodMillis = Math.max(request.getPollPeriodMs(), minPollPeriodMillis);
+      key = getSharedStreamKey(request, periodMillis);
+      watcher = new SharedMonitorStream.Watcher(
+          responseObserver, request.getNumEvents(), new Runnable() {
+            @Override
+            public void run() {
+              onWatcherDone();
+            }
+          });
+      watch(factory, key, periodMillis, watcher);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      stopWatching();
+    }
+
+    @Override
+    public void onCompleted() {
+      // Keep sending events until the requested number was sent.
+    }
+
+    synchronized void onWatcherDone() {
+      unwatch(key, watcher);
+    }
+
+    /**
+     * Stops the watcher of this call, and returns whether it was still sending events.
+     */
+    synchronized boolean stopWatching() {
+      if (watcher == null || !watcher.cancel()) {
+        return false;
+      }
+      unwatch(key, watcher);
+      return true;
+    }
+  }
+}
@@ -35,6 +35,18 @@ class StreamzMetrics {
                                 }
                             });
 
+    /**
+     * Number of updates of metrics with a cell limit that went to an overflow cell, because
+     * the limit was reached. See {@link StoredMetric#setCellLimit(int)}.
+     */
+    static final Counter1<String> rejectedUpdatesCounter =
+            MetricFactory.getDefault()
+                    .newCounter(
+                            "grpc.io/streamz/java/rejected_updates",
+                            new Metadata("Number of updates that went to the overflow cell "
+                                    + "because the cell limit of their metric was reached"),
+                            Field.ofString("/metric"));
+
     private static final class Counter {
         long count = 0L;
         void add(long n) {
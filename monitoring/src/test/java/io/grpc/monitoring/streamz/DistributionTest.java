@@ -137,6 +137,57 @@ public class DistributionTest extends TestCase {
     assertEquals(101.0, d2.getSum());
   }
 
+  public void testMerge() throws Exception {
+    Distribution all = new Distribution(Bucketer.DEFAULT);
+    Distribution d1 = new Distribution(Bucketer.DEFAULT);
+    Distribution d2 = new Distribution(Bucketer.DEFAULT);
+    Random random = new Random(1);
+    for (int ii = 0; ii < 1000; ++ii) {
+      double value = random.nextGaussian() * 100;
+      all.add(value);
+      (ii % 3 == 0 ? d1 : d2).add(value);
+    }
+    DistributionProto.Exemplar older = DistributionProto.Exemplar.newBuilder()
+        .setValue(427)
+        .setTimestamp(1)
+        .build();
+    DistributionProto.Exemplar newer = DistributionProto.Exemplar.newBuilder()
+        .setValue(427)
+        .setTimestamp(2)
+        .build();
+    d1.addWithExemplar(427, newer);
+    d2.addWithExemplar(427, older);
+    all.addWithExemplar(427, older);
+    all.addWithExemplar(427, newer);
+    d1.addMultiple(1E42, 2);  // overflow
+    all.addMultiple(1E42, 2);
+
+    Distribution merged = d1.copy();
+    merged.merge(d2);
+    merged.merge(new Distribution(Bucketer.DEFAULT));
+    assertEquals(all.getCount(), merged.getCount());
+    assertEquals(all.getMean(), merged.getMean(), 1E-9 * Math.abs(all.getMean()));
+    assertEquals(all.getSumOfSquaredDeviation(), merged.getSumOfSquaredDeviation(),
+        1E-9 * all.getSumOfSquaredDeviation());
+    assertEquals(all.getUnderflowCount(), merged.getUnderflowCount());
+    assertEquals(all.getOverflowCount(), merged.getOverflowCount());
+    for (int i = 0; i < all.getBucketCount(); i++) {
+      assertEquals(all.getBucketHeight(i), merged.getBucketHeight(i));
+    }
+    assertEquals(newer, merged.exemplarForBucket(Bucketer.DEFAULT.findBucket(427)));
+
+    // Merging into an empty distribution copies the other one.
+    Distribution empty = new Distribution(Bucketer.DEFAULT);
+    empty.merge(d2);
+    assertEquals(d2, empty);
+
+    try {
+      d1.merge(new Distribution(Bucketer.powersOf(10)));
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   public void testProtoEncodingAndDecoding() throws Exception {
     Distribution d1 = new Distribution(Bucketer.DEFAULT);
     for (int ii = 0; ii < 1000; ++ii) { d1.add(ii); }
@@ -0,0 +1,134 @@
+package io.grpc.monitoring.streamz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharStreams;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PrometheusExporterTest {
+  private final MetricFactory factory = new TestMetricFactory();
+  private final PrometheusExporter exporter = new PrometheusExporter(factory);
+
+  @Test
+  public void counterAndGauge() throws Exception {
+    Counter2<String, Integer> requests = factory.newCounter("test.com/test/prometheus/requests",
+        new Metadata("Requests\\received"), Field.ofString("/method"), Field.ofInteger("/code"));
+    requests.incrementBy("Get \"x\"", 0, 3);
+    Metric0<Double> temperature = factory.newMetric("test.com/test/prometheus/temperature",
+        Double.class, new Metadata("Temperature"));
+    temperature.set(21.5);
+    Metric0<Boolean> serving = factory.newMetric("test.com/test/prometheus/serving",
+        Boolean.class, new Metadata("Serving"));
+    serving.set(true);
+    Metric0<String> version = factory.newMetric("test.com/test/prometheus/version",
+        String.class, new Metadata("Version"));
+    version.set("1.2");
+
+    String text = scrape();
+
+    assertContains(text, "# HELP test_com_test_prometheus_requests Requests\\\\received\n"
+        + "# TYPE test_com_test_prometheus_requests counter\n"
+        + "test_com_test_prometheus_requests{method=\"Get \\\"x\\\"\",code=\"0\"} 3\n");
+    assertContains(text, "# TYPE test_com_test_prometheus_temperature gauge\n"
+        + "test_com_test_prometheus_temperature 21.5\n");
+    assertContains(text, "test_com_test_prometheus_serving 1\n");
+    assertFalse(text.contains("version"));
+  }
+
+  @Test
+  public void distribution() throws Exception {
+    EventMetric1<String> latency = factory.newEventMetric("test.com/test/prometheus/latency",
+        Bucketer.custom(new double[] {1, 10, 100}), new Metadata("Latency"),
+        Field.ofString("/method"));
+    latency.record("get", 0.5);
+    latency.record("get", 5);
+    latency.record("get", 50);
+    latency.record("get", 500);
+
+    String text = scrape();
+
+    assertContains(text, "# TYPE test_com_test_prometheus_latency histogram\n"
+        + "test_com_test_prometheus_latency_bucket{method=\"get\",le=\"1.0\"} 1\n"
+        + "test_com_test_prometheus_latency_bucket{method=\"get\",le=\"10.0\"} 2\n"
+        + "test_com_test_prometheus_latency_bucket{method=\"get\",le=\"100.0\"} 3\n"
+        + "test_com_test_prometheus_latency_bucket{method=\"get\",le=\"+Inf\"} 4\n"
+        + "test_com_test_prometheus_latency_sum{method=\"get\"} 555.5\n"
+        + "test_com_test_prometheus_latency_count{method=\"get\"} 4\n");
+  }
+
+  @Test
+  public void callbackMetricsAreEvaluatedOncePerScrape() throws Exception {
+    final CallbackMetric0<Long> first = factory.newCallbackMetric(
+        "test.com/test/prometheus/first", Long.class, new Metadata("First"));
+    final CallbackMetric0<Long> second = factory.newCallbackMetric(
+        "test.com/test/prometheus/second", Long.class, new Metadata("Second"));
+    TestUtils.CountingRunnable trigger = TestUtils.countingDecorator(new Runnable() {
+      @Override
+      public void run() {
+        first.set(1L);
+        second.set(2L);
+      }
+    });
+    factory.newTrigger(ImmutableSet.of(first, second), trigger);
+
+    String text = scrape();
+
+    assertEquals(1, trigger.getRunCount());
+    assertContains(text, "test_com_test_prometheus_first 1\n");
+    assertContains(text, "test_com_test_prometheus_second 2\n");
+  }
+
+  @Test
+  public void httpServer() throws Exception {
+    factory.newCounter("test.com/test/prometheus/http", new Metadata("Http")).increment();
+    PrometheusHttpServer server = PrometheusHttpServer.start(
+        new InetSocketAddress("localhost", 0), exporter);
+    try {
+      URL url = new URL("http", "localhost", server.getAddress().getPort(),
+          PrometheusHttpServer.PATH);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertEquals(PrometheusExporter.CONTENT_TYPE, connection.getContentType());
+      String body = CharStreams.toString(
+          new InputStreamReader(connection.getInputStream(), Charsets.UTF_8));
+      assertContains(body, "test_com_test_prometheus_http 1\n");
+
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod("POST");
+      assertEquals(405, connection.getResponseCode());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void toPrometheusName() {
+    assertEquals("grpc_io_server_requests",
+        PrometheusExporter.toPrometheusName("grpc.io/server/requests"));
+    assertEquals("method", PrometheusExporter.toPrometheusName("/method"));
+    assertEquals("_2xx", PrometheusExporter.toPrometheusName("2xx"));
+  }
+
+  private String scrape() throws IOException {
+    StringWriter writer = new StringWriter();
+    exporter.writeTo(writer);
+    return writer.toString();
+  }
+
+  private static void assertContains(String text, String expected) {
+    assertTrue("Expected:\n" + expected + "in:\n" + text, text.contains(expected));
+  }
+}
@@ -0,0 +1,131 @@
+package io.grpc.monitoring.streamz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StoredCellTest {
+  private final MetricFactory factory = new TestMetricFactory();
+
+  @Test
+  public void counterCountsConcurrentIncrements() throws Exception {
+    final Counter1<String> counter = factory.newCounter("test.com/test/storedcell/concurrent",
+        new Metadata("test counter"), Field.ofString("/method"));
+    final int threadCount = 8;
+    final int incrementsPerThread = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          for (int j = 0; j < incrementsPerThread; j++) {
+            counter.increment("hot");
+            counter.incrementBy("by2", 2);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(Long.valueOf(threadCount * incrementsPerThread), counter.get("hot"));
+    assertEquals(Long.valueOf(2L * threadCount * incrementsPerThread), counter.get("by2"));
+    assertNull(counter.get("cold"));
+  }
+
+  @Test
+  public void eventMetricRecordsConcurrently() throws Exception {
+    final EventMetric1<String> eventMetric = factory.newEventMetric(
+        "test.com/test/storedcell/events", Bucketer.DEFAULT, new Metadata("test event metric"),
+        Field.ofString("/method"));
+    final int threadCount = 8;
+    final int recordsPerThread = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          for (int j = 0; j < recordsPerThread; j++) {
+            eventMetric.record("hot", j % 2 == 0 ? 2.0 : 1000.0);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Distribution expected = new Distribution(Bucketer.DEFAULT);
+    expected.addMultiple(2.0, threadCount * recordsPerThread / 2);
+    expected.addMultiple(1000.0, threadCount * recordsPerThread / 2);
+    Distribution recorded = eventMetric.get("hot");
+    assertEquals(expected.getCount(), recorded.getCount());
+    assertEquals(expected.getMean(), recorded.getMean(), 1E-6);
+    for (int i = 0; i < expected.getBucketCount(); i++) {
+      assertEquals(expected.getBucketHeight(i), recorded.getBucketHeight(i));
+    }
+  }
+
+  @Test
+  public void eventMetricSet() {
+    EventMetric0 eventMetric = factory.newEventMetric(
+        "test.com/test/storedcell/eventset", new Metadata("test event metric"));
+    eventMetric.record(3.0);
+    Distribution value = new Distribution(Bucketer.DEFAULT);
+    value.addMultiple(5.0, 4);
+
+    eventMetric.getUnderlyingMetric().set(FieldTuple.NO_FIELDS, value);
+    assertEquals(value, eventMetric.get());
+    eventMetric.record(5.0);
+    value.add(5.0);
+    assertEquals(value, eventMetric.get());
+  }
+
+  @Test
+  public void counterSetAndChange() {
+    Counter0 counter =
+        factory.newCounter("test.com/test/storedcell/set", new Metadata("test counter"));
+    assertEquals(Long.valueOf(0), counter.get());
+    counter.increment();
+    counter.incrementBy(41);
+    assertEquals(Long.valueOf(42), counter.get());
+
+    counter.set(FieldTuple.NO_FIELDS, 10L);
+    assertEquals(Long.valueOf(10), counter.get());
+    counter.changeUnderLock(FieldTuple.NO_FIELDS, new CellValueChanger<Long>() {
+      @Override
+      public Long change(Long value) {
+        return value * 3;
+      }
+    });
+    assertEquals(Long.valueOf(30), counter.get());
+    counter.incrementBy(-5);
+    assertEquals(Long.valueOf(25), counter.get());
+  }
+}
@@ -0,0 +1,188 @@
+package io.grpc.monitoring.streamz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StoredMetricTest {
+  private final MetricFactory factory = new TestMetricFactory();
+  private long nowNanos;
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nowNanos;
+    }
+  };
+
+  @Test
+  public void lookUpCellFindsEveryCell() {
+    Counter2<String, Integer> counter = factory.newCounter("test.com/test/storedmetric/lookup",
+        new Metadata("test counter"), Field.ofString("/method"), Field.ofInteger("/code"));
+    for (int i = 0; i < 1000; i++) {
+      counter.incrementBy("method" + (i % 100), i / 100, i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(Long.valueOf(i), counter.get("method" + (i % 100), i / 100));
+    }
+    assertEquals(1000, counter.keySet().size());
+
+    StoredCell<Long> cell = counter.lookUpCell("method5", 3);
+    assertSame(cell, counter.lookUpCell("method5", 3));
+    assertSame(cell, counter.getOrCreateCell(Metric2.createCellKey("method5", 3)));
+  }
+
+  @Test
+  public void lookUpCellSkipsClearedCells() {
+    Counter1<String> counter = factory.newCounter("test.com/test/storedmetric/clear",
+        new Metadata("test counter"), Field.ofString("/method"));
+    counter.increment("a");
+    counter.increment("b");
+    counter.clear("a");
+    assertNull(counter.get("a"));
+    assertEquals(Long.valueOf(1), counter.get("b"));
+
+    counter.increment("a");
+    counter.increment("a");
+    assertEquals(Long.valueOf(2), counter.get("a"));
+    assertEquals(2, counter.keySet().size());
+
+    counter.clear();
+    assertNull(counter.get("a"));
+    assertNull(counter.get("b"));
+    counter.increment("b");
+    assertEquals(Long.valueOf(1), counter.get("b"));
+    assertEquals(1, counter.keySet().size());
+  }
+
+  @Test
+  public void lookUpCellFindsCellsLeftAfterClears() {
+    Counter1<Integer> counter = factory.newCounter("test.com/test/storedmetric/clearmany",
+        new Metadata("test counter"), Field.ofInteger("/code"));
+    for (int i = 0; i < 1000; i++) {
+      counter.incrementBy(i, i + 1);
+    }
+    for (int i = 0; i < 1000; i += 3) {
+      counter.clear(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      StoredCell<Long> cell = counter.lookUpCell(i);
+      assertEquals(Long.valueOf(i % 3 == 0 ? 0 : i + 1), cell.getValue());
+      assertSame(cell, counter.lookUpCell(i));
+    }
+    assertEquals(1000, counter.keySet().size());
+  }
+
+  @Test
+  public void counterCellSurvivesClear() {
+    Counter2<String, Integer> counter = factory.newCounter("test.com/test/storedmetric/handle",
+        new Metadata("test counter"), Field.ofString("/method"), Field.ofInteger("/code"));
+    CounterCell handle = counter.cell("method", 0);
+    handle.increment();
+    handle.incrementBy(4);
+    counter.increment("method", 0);
+    assertEquals(Long.valueOf(6), handle.get());
+    assertEquals(Long.valueOf(6), counter.get("method", 0));
+
+    counter.clear("method", 0);
+    assertNull(counter.get("method", 0));
+    handle.increment();
+    assertEquals(Long.valueOf(1), counter.get("method", 0));
+
+    Counter0 total = factory.newCounter("test.com/test/storedmetric/total",
+        new Metadata("test counter"));
+    CounterCell totalHandle = total.cell();
+    totalHandle.incrementBy(3);
+    assertEquals(Long.valueOf(3), total.get());
+  }
+
+  @Test
+  public void cellLimitSendsNewFieldsToOverflowCell() {
+    String name = "test.com/test/storedmetric/limit";
+    Counter2<String, Boolean> counter = factory.newCounter(name, new Metadata("test counter"),
+        Field.ofString("/method"), Field.ofBoolean("/ok")).setCellLimit(2);
+    counter.increment("a", true);
+    counter.increment("b", true);
+    counter.increment("c", true);
+    counter.increment("d", false);
+    counter.incrementBy("d", false, 2);
+    counter.increment("a", true);
+
+    assertEquals(Long.valueOf(2), counter.get("a", true));
+    assertEquals(Long.valueOf(1), counter.get("b", true));
+    assertNull(counter.get("c", true));
+    assertEquals(Long.valueOf(1), counter.get(CellLimit.OVERFLOW_STRING, true));
+    assertEquals(Long.valueOf(3), counter.get(CellLimit.OVERFLOW_STRING, false));
+    assertEquals(4, counter.keySet().size());
+    // c, then d twice: every update that went to an overflow cell.
+    assertEquals(Long.valueOf(3), StreamzMetrics.rejectedUpdatesCounter.get(name));
+
+    EventMetric1<Integer> latency = factory.newEventMetric("test.com/test/storedmetric/latency",
+        Bucketer.DEFAULT, new Metadata("test metric"), Field.ofInteger("/code")).setCellLimit(1);
+    latency.record(0, 1);
+    latency.record(1, 2);
+    assertEquals(1, latency.get(0).getCount());
+    assertNull(latency.get(1));
+    assertEquals(1, latency.get(CellLimit.OVERFLOW_INTEGER).getCount());
+  }
+
+  @Test
+  public void cellLimitEvictsIdleCells() {
+    Counter1<String> counter = factory.newCounter("test.com/test/storedmetric/evict",
+        new Metadata("test counter"), Field.ofString("/method"));
+    counter.setCellLimit(new CellLimit(2, TimeUnit.MINUTES.toMillis(1), ticker));
+    counter.increment("a");
+    CounterCell b = counter.cell("b");
+    b.increment();
+
+    forwardTime(30);
+    counter.increment("a");
+    counter.increment("c");
+    assertNull(counter.get("c"));
+    assertEquals(Long.valueOf(1), counter.get(CellLimit.OVERFLOW_STRING));
+
+    forwardTime(20);
+    b.increment();
+    forwardTime(20);
+    counter.increment("d");
+    assertNull(counter.get("d"));
+    assertEquals(Long.valueOf(2), counter.get(CellLimit.OVERFLOW_STRING));
+
+    forwardTime(20);
+    // "a" was used the least recently, a minute ago.
+    counter.increment("d");
+    assertNull(counter.get("a"));
+    assertEquals(Long.valueOf(2), counter.get("b"));
+    assertEquals(Long.valueOf(1), counter.get("d"));
+  }
+
+  @Test
+  public void cellLimitEvictsAllIdleCellsAtOnce() {
+    Counter1<Integer> counter = factory.newCounter("test.com/test/storedmetric/evictall",
+        new Metadata("test counter"), Field.ofInteger("/code"));
+    counter.setCellLimit(new CellLimit(10, TimeUnit.MINUTES.toMillis(1), ticker));
+    for (int i = 0; i < 10; i++) {
+      counter.increment(i);
+    }
+    forwardTime(30);
+    counter.increment(9);
+    forwardTime(30);
+    counter.increment(10);
+    assertEquals(2, counter.keySet().size());
+    assertEquals(Long.valueOf(2), counter.get(9));
+    assertEquals(Long.valueOf(1), counter.get(10));
+    for (int i = 0; i < 9; i++) {
+      assertNull(counter.get(i));
+    }
+  }
+
+  private void forwardTime(long seconds) {
+    nowNanos += TimeUnit.SECONDS.toNanos(seconds);
+  }
+}
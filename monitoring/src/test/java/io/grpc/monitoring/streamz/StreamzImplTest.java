@@ -0,0 +1,246 @@
+package io.grpc.monitoring.streamz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.internal.FakeClock;
+import io.grpc.monitoring.streamz.proto.MonitorEvent;
+import io.grpc.monitoring.streamz.proto.MonitorRequest;
+import io.grpc.monitoring.streamz.proto.MonitorResponse;
+import io.grpc.monitoring.streamz.proto.StreamQuery;
+import io.grpc.monitoring.streamz.proto.StreamValue;
+import io.grpc.monitoring.streamz.proto.StreamzGrpc;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StreamzImplTest {
+  private static final String SERVER_NAME = "streamz-test";
+  private static final long POLL_PERIOD_MILLIS = 1000;
+
+  private final FakeClock clock = new FakeClock();
+  private final MetricFactory factory = new TestMetricFactory();
+  private final StreamzImpl service =
+      new StreamzImpl(factory, clock.getScheduledExecutorService(), POLL_PERIOD_MILLIS);
+  private final Counter1<String> requests = factory.newCounter("test.com/test/streamz/requests",
+      new Metadata("test counter"), Field.ofString("/method"));
+  private Server server;
+  private ManagedChannel channel;
+  private StreamzGrpc.StreamzStub stub;
+
+  @Before
+  public void setUp() throws Exception {
+    server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+        .addService(service).build().start();
+    channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    stub = StreamzGrpc.newStub(channel);
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void getStream() {
+    requests.increment("a");
+    requests.incrementBy("b", 2);
+
+    MonitorResponse response = StreamzGrpc.newBlockingStub(channel).getStream(newRequest(0));
+
+    Map<String, Long> values = new HashMap<String, Long>();
+    for (StreamValue value : response.getMonitorEvent().getValueList()) {
+      assertTrue(value.hasStreamDefinition());
+      values.put(value.getStreamDefinition().getStringFieldValues(0), value.getInt64Value());
+    }
+    assertEquals(2, values.size());
+    assertEquals(Long.valueOf(1), values.get("a"));
+    assertEquals(Long.valueOf(2), values.get("b"));
+  }
+
+  @Test
+  public void getStream_unknownRoot() {
+    try {
+      StreamzGrpc.newBlockingStub(channel).getStream(
+          newRequest(0).toBuilder().setRoot("no such root").build());
+      fail();
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void monitorStream_sendsOnlyChangedStreams() {
+    requests.increment("a");
+    requests.increment("b");
+    ResponseRecorder recorder = new ResponseRecorder();
+    stub.monitorStream(recorder).onNext(newRequest(3));
+
+    clock.runDueTasks();
+    assertEquals(1, recorder.events.size());
+    MonitorEvent first = recorder.events.get(0);
+    assertEquals(factory.getId(), first.getRootId());
+    assertEquals(2, first.getValueCount());
+    Map<Integer, String> streams = new HashMap<Integer, String>();
+    for (StreamValue value : first.getValueList()) {
+      assertTrue(value.hasStreamDefinition());
+      streams.put(value.getStreamIndex(), value.getStreamDefinition().getStringFieldValues(0));
+    }
+
+    requests.increment("b");
+    requests.increment("c");
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(2, recorder.events.size());
+    MonitorEvent second = recorder.events.get(1);
+    assertEquals(0, second.getRootId());
+    assertEquals(2, second.getValueCount());
+    for (StreamValue value : second.getValueList()) {
+      String field;
+      if (value.hasStreamDefinition()) {
+        field = value.getStreamDefinition().getStringFieldValues(0);
+        assertEquals("c", field);
+        assertFalse(streams.containsKey(value.getStreamIndex()));
+        // The metric was already defined in the first event.
+        assertFalse(value.getStreamDefinition().hasMetricDefinition());
+      } else {
+        field = streams.get(value.getStreamIndex());
+        assertEquals("b", field);
+      }
+      assertEquals(field.equals("b") ? 2 : 1, value.getInt64Value());
+    }
+
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(3, recorder.events.size());
+    assertEquals(0, recorder.events.get(2).getValueCount());
+    assertTrue(recorder.completed);
+    assertEquals(0, service.getSharedStreamCount());
+  }
+
+  @Test
+  public void monitorStream_watchersShareCollection() {
+    requests.increment("a");
+    ResponseRecorder first = new ResponseRecorder();
+    stub.monitorStream(first).onNext(newRequest(10));
+    clock.runDueTasks();
+    requests.increment("a");
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(2, first.events.size());
+
+    // A second watcher joins the same stream and gets everything in its first event.
+    ResponseRecorder second = new ResponseRecorder();
+    stub.monitorStream(second).onNext(newRequest(10));
+    clock.runDueTasks();
+    assertEquals(1, service.getSharedStreamCount());
+    assertEquals(2, first.events.size());
+    assertEquals(1, second.events.size());
+    StreamValue value = second.events.get(0).getValue(0);
+    assertTrue(value.hasStreamDefinition());
+    assertEquals(0, value.getStreamIndex());
+    assertEquals(2, value.getInt64Value());
+
+    requests.increment("a");
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(3, first.events.size());
+    assertEquals(2, second.events.size());
+    assertEquals(3, first.events.get(2).getValue(0).getInt64Value());
+    assertEquals(3, second.events.get(1).getValue(0).getInt64Value());
+    assertFalse(second.events.get(1).getValue(0).hasStreamDefinition());
+  }
+
+  @Test
+  public void monitorStream_forgetsRemovedStreams() {
+    requests.increment("a");
+    ResponseRecorder recorder = new ResponseRecorder();
+    stub.monitorStream(recorder).onNext(newRequest(10));
+    clock.runDueTasks();
+    assertEquals(1, recorder.events.size());
+
+    requests.clear();
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(2, recorder.events.size());
+    assertEquals(0, recorder.events.get(1).getValueCount());
+
+    requests.increment("a");
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(3, recorder.events.size());
+    StreamValue value = recorder.events.get(2).getValue(0);
+    // The watcher forgot both the stream and its metric, so they are defined again.
+    assertTrue(value.hasStreamDefinition());
+    assertTrue(value.getStreamDefinition().hasMetricDefinition());
+    assertEquals(1, value.getStreamIndex());
+    assertEquals(1, value.getStreamDefinition().getMetricIndex());
+  }
+
+  @Test
+  public void monitorStream_cancelStopsSharedStream() {
+    ResponseRecorder recorder = new ResponseRecorder();
+    StreamObserver<MonitorRequest> call = stub.monitorStream(recorder);
+    call.onNext(newRequest(10));
+    clock.runDueTasks();
+    assertEquals(1, service.getSharedStreamCount());
+
+    call.onError(Status.CANCELLED.asRuntimeException());
+    assertEquals(0, service.getSharedStreamCount());
+    clock.forwardTime(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    assertEquals(1, recorder.events.size());
+  }
+
+  @Test
+  public void monitorStream_singleEvent() {
+    requests.increment("a");
+    ResponseRecorder recorder = new ResponseRecorder();
+    stub.monitorStream(recorder).onNext(newRequest(1));
+    assertEquals(1, recorder.events.size());
+    assertTrue(recorder.completed);
+    assertNull(recorder.error);
+    assertEquals(0, service.getSharedStreamCount());
+  }
+
+  private static MonitorRequest newRequest(int numEvents) {
+    return MonitorRequest.newBuilder()
+        .setNumEvents(numEvents)
+        .setPollPeriodMs((int) POLL_PERIOD_MILLIS)
+        .addQuery(StreamQuery.newBuilder().setPattern("test.com/test/streamz/"))
+        .build();
+  }
+
+  private static final class ResponseRecorder implements StreamObserver<MonitorResponse> {
+    final List<MonitorEvent> events = new ArrayList<MonitorEvent>();
+    boolean completed;
+    Throwable error;
+
+    @Override
+    public void onNext(MonitorResponse response) {
+      events.add(response.getMonitorEvent());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.netty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Caches the results of {@link NettyDnsNameResolver} until their DNS TTL expires, so that the
+ * channels to the same target share one result instead of querying DNS each.
+ */
+@ThreadSafe
+final class DnsResultCache {
+  /**
+   * The number of results above which new results aren't cached, unless expired ones can be
+   * removed, so that resolving many distinct targets can't grow the cache without bound.
+   */
+  static final int MAX_SIZE = 1000;
+
+  private final ConcurrentMap<String, DnsResult> results =
+      new ConcurrentHashMap<String, DnsResult>();
+
+  /**
+   * Returns the unexpired result for the given key, or {@code null} if there is none.
+   */
+  @Nullable
+  DnsResult get(String key, long nowNanos) {
+    DnsResult result = results.get(key);
+    if (result == null) {
+      return null;
+    }
+    if (result.expiryNanos - nowNanos <= 0) {
+      results.remove(key, result);
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Caches {@code result} under {@code key}, first removing the expired results of all keys, as
+   * those of targets that are no longer resolved would otherwise never be.
+   */
+  void put(String key, DnsResult result, long nowNanos) {
+    for (Map.Entry<String, DnsResult> entry : results.entrySet()) {
+      if (entry.getValue().expiryNanos - nowNanos <= 0) {
+        results.remove(entry.getKey(), entry.getValue());
+      }
+    }
+    if (results.size() >= MAX_SIZE && !results.containsKey(key)) {
+      return;
+    }
+    results.put(key, result);
+  }
+
+  int size() {
+    return results.size();
+  }
+
+  /**
+   * The records found for a target.
+   */
+  @Immutable
+  static final class DnsResult {
+    final List<InetAddress> addresses;
+    final List<BalancerAddress> balancers;
+    /** The service config choices from the TXT records, in the parsed JSON form. */
+    @Nullable
+    final List<Map<String, Object>> serviceConfigChoices;
+    /** When the shortest TTL among the records expires, as per {@link System#nanoTime}. */
+    final long expiryNanos;
+
+    DnsResult(List<InetAddress> addresses, List<BalancerAddress> balancers,
+        @Nullable List<Map<String, Object>> serviceConfigChoices, long expiryNanos) {
+      this.addresses = Collections.unmodifiableList(checkNotNull(addresses, "addresses"));
+      this.balancers = Collections.unmodifiableList(checkNotNull(balancers, "balancers"));
+      this.serviceConfigChoices = serviceConfigChoices;
+      this.expiryNanos = expiryNanos;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("addresses", addresses)
+          .add("balancers", balancers)
+          .add("serviceConfigChoices", serviceConfigChoices)
+          .add("expiryNanos", expiryNanos)
+          .toString();
+    }
+  }
+
+  /**
+   * A grpclb balancer found through an SRV record.
+   */
+  @Immutable
+  static final class BalancerAddress {
+    final String authority;
+    final List<InetAddress> addresses;
+    final int port;
+
+    BalancerAddress(String authority, List<InetAddress> addresses, int port) {
+      this.authority = checkNotNull(authority, "authority");
+      this.addresses = Collections.unmodifiableList(checkNotNull(addresses, "addresses"));
+      this.port = port;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("authority", authority)
+          .add("addresses", addresses)
+          .add("port", port)
+          .toString();
+    }
+  }
+}
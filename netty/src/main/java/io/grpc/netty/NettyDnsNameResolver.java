@@ -0,0 +1,644 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.netty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Attributes;
+import io.grpc.NameResolver;
+import io.grpc.ResolvedServerInfo;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.Status;
+import io.grpc.internal.GrpcAttributes;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.JsonParser;
+import io.grpc.internal.SharedResourceHolder;
+import io.grpc.internal.SharedResourceHolder.Resource;
+import io.grpc.netty.DnsResultCache.BalancerAddress;
+import io.grpc.netty.DnsResultCache.DnsResult;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AddressedEnvelope;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DefaultDnsQuestion;
+import io.netty.handler.codec.dns.DefaultDnsRecordDecoder;
+import io.netty.handler.codec.dns.DnsRawRecord;
+import io.netty.handler.codec.dns.DnsRecord;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponse;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddresses;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A DNS-based {@link NameResolver} that queries DNS asynchronously with Netty's DNS client, on an
+ * event loop instead of a blocking thread.
+ *
+ * <p>Besides the A and AAAA records of the target, it looks up the TXT records of {@code
+ * _grpc_config.<host>} for the service config, and optionally the SRV records of {@code
+ * _grpclb._tcp.<host>} for grpclb balancers.  Results are cached in a {@link DnsResultCache}
+ * shared by all the resolvers of a {@link NettyDnsNameResolverProvider}, and refreshed when the
+ * shortest TTL among their records expires.
+ *
+ * @see NettyDnsNameResolverProvider
+ */
+final class NettyDnsNameResolver extends NameResolver {
+  private static final Logger logger = Logger.getLogger(NettyDnsNameResolver.class.getName());
+
+  @VisibleForTesting
+  static final String GRPCLB_SRV_PREFIX = "_grpclb._tcp.";
+  @VisibleForTesting
+  static final String SERVICE_CONFIG_NAME_PREFIX = "_grpc_config.";
+  @VisibleForTesting
+  static final String SERVICE_CONFIG_TXT_PREFIX = "grpc_config=";
+
+  /** The delay before resolving again after a failure. */
+  private static final long RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+  /** Results are refreshed at least this often, even if their TTLs are longer. */
+  @VisibleForTesting
+  static final long MAX_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+  private final String authority;
+  private final String host;
+  private final int port;
+  private final String cacheKey;
+  private final DnsServerAddresses nameServers;
+  private final DnsResultCache cache;
+  private final boolean srvRecordsEnabled;
+  private final long minRefreshNanos;
+  private final Resource<EventLoopGroup> eventLoopGroupResource;
+  // Decides once per resolver whether it falls into the percentage of a service config choice.
+  private final int percentageRoll;
+
+  @GuardedBy("this")
+  private EventLoopGroup eventLoopGroup;
+  @GuardedBy("this")
+  private EventLoop eventLoop;
+  @GuardedBy("this")
+  private boolean shutdownCalled;
+
+  // The fields below are only accessed from the event loop.
+  private Listener listener;
+  // The name of the local host, for service config choices, or null if it is unknown.
+  @Nullable
+  private String localHostname;
+  private DnsNameResolver dnsResolver;
+  private boolean shutdown;
+  private boolean resolving;
+  @Nullable
+  private ScheduledFuture<?> refreshTask;
+
+  NettyDnsNameResolver(@Nullable String nsAuthority, String name, Attributes params,
+      @Nullable DnsServerAddresses defaultNameServers, DnsResultCache cache,
+      boolean srvRecordsEnabled, long minRefreshNanos,
+      Resource<EventLoopGroup> eventLoopGroupResource, Random random) {
+    // Must prepend a "//" to the name when constructing a URI, otherwise it will be treated as an
+    // opaque URI, thus the authority and host of the resulted URI would be null.
+    URI nameUri = URI.create("//" + name);
+    authority = checkNotNull(nameUri.getAuthority(),
+        "nameUri (%s) doesn't have an authority", nameUri);
+    host = checkNotNull(nameUri.getHost(), "host");
+    if (nameUri.getPort() == -1) {
+      Integer defaultPort = params.get(NameResolver.Factory.PARAMS_DEFAULT_PORT);
+      if (defaultPort != null) {
+        port = defaultPort;
+      } else {
+        throw new IllegalArgumentException(
+            "name '" + name + "' doesn't contain a port, and default port is not set in params");
+      }
+    } else {
+      port = nameUri.getPort();
+    }
+    if (nsAuthority != null && !nsAuthority.isEmpty()) {
+      URI nsUri = URI.create("//" + nsAuthority);
+      String nsHost = checkNotNull(nsUri.getHost(), "DNS server host");
+      int nsPort = nsUri.getPort() == -1 ? 53 : nsUri.getPort();
+      nameServers = DnsServerAddresses.singleton(new InetSocketAddress(nsHost, nsPort));
+    } else {
+      nameServers = defaultNameServers != null
+          ? defaultNameServers : DnsServerAddresses.defaultAddresses();
+    }
+    // Different DNS servers may have different answers, and balancers are only looked up with SRV
+    // records enabled.
+    cacheKey = (srvRecordsEnabled ? "srv:" : "") + (nsAuthority == null ? "" : nsAuthority) + "/"
+        + host.toLowerCase(Locale.ROOT);
+    this.cache = checkNotNull(cache, "cache");
+    this.srvRecordsEnabled = srvRecordsEnabled;
+    this.minRefreshNanos = minRefreshNanos;
+    this.eventLoopGroupResource = checkNotNull(eventLoopGroupResource, "eventLoopGroupResource");
+    this.percentageRoll = random.nextInt(100);
+  }
+
+  @Override
+  public String getServiceAuthority() {
+    return authority;
+  }
+
+  @Override
+  public synchronized void start(final Listener listener) {
+    checkState(eventLoop == null, "already started");
+    checkNotNull(listener, "listener");
+    if (shutdownCalled) {
+      return;
+    }
+    eventLoopGroup = SharedResourceHolder.get(eventLoopGroupResource);
+    final EventLoop loop = eventLoopGroup.next();
+    eventLoop = loop;
+    final ExecutorService executor = SharedResourceHolder.get(GrpcUtil.SHARED_CHANNEL_EXECUTOR);
+    // Looking up the local host name may block, so it is done neither on the event loop, which is
+    // shared with transports, nor on the caller's thread.
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final String hostname;
+        try {
+          hostname = LocalHostnameHolder.HOSTNAME;
+        } finally {
+          SharedResourceHolder.release(GrpcUtil.SHARED_CHANNEL_EXECUTOR, executor);
+        }
+        loop.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (shutdown) {
+              return;
+            }
+            NettyDnsNameResolver.this.listener = listener;
+            localHostname = hostname;
+            dnsResolver = new DnsNameResolverBuilder(loop)
+                .channelType(NioDatagramChannel.class)
+                .nameServerAddresses(nameServers)
+                .build();
+            resolve();
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  public synchronized void refresh() {
+    checkState(eventLoop != null, "not started");
+    if (shutdownCalled) {
+      return;
+    }
+    eventLoop.execute(resolveRunnable);
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (shutdownCalled) {
+      return;
+    }
+    shutdownCalled = true;
+    if (eventLoop == null) {
+      return;
+    }
+    final EventLoopGroup group = eventLoopGroup;
+    eventLoopGroup = null;
+    eventLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        shutdown = true;
+        if (refreshTask != null) {
+          refreshTask.cancel(false);
+          refreshTask = null;
+        }
+        // The resolver isn't created yet if the local host name is still being looked up.
+        if (dnsResolver != null) {
+          dnsResolver.close();
+        }
+        SharedResourceHolder.release(eventLoopGroupResource, group);
+      }
+    });
+  }
+
+  private final Runnable resolveRunnable = new Runnable() {
+    @Override
+    public void run() {
+      resolve();
+    }
+  };
+
+  private void resolve() {
+    // Until dnsResolver is created, start() is going to resolve anyway.
+    if (shutdown || resolving || dnsResolver == null) {
+      return;
+    }
+    if (refreshTask != null) {
+      refreshTask.cancel(false);
+      refreshTask = null;
+    }
+    DnsResult cached = cache.get(cacheKey, System.nanoTime());
+    if (cached != null) {
+      deliver(cached);
+      return;
+    }
+    resolving = true;
+    new Resolution().start();
+  }
+
+  private void deliver(DnsResult result) {
+    List<ResolvedServerInfoGroup> servers = new ArrayList<ResolvedServerInfoGroup>();
+    if (!result.addresses.isEmpty()) {
+      ResolvedServerInfoGroup.Builder backends = ResolvedServerInfoGroup.builder();
+      for (InetAddress address : result.addresses) {
+        backends.add(
+            new ResolvedServerInfo(new InetSocketAddress(address, port), Attributes.EMPTY));
+      }
+      servers.add(backends.build());
+    }
+    for (BalancerAddress balancer : result.balancers) {
+      ResolvedServerInfoGroup.Builder balancerGroup = ResolvedServerInfoGroup.builder(
+          Attributes.newBuilder()
+              .set(GrpcAttributes.ATTR_LB_ADDR_AUTHORITY, balancer.authority)
+              .build());
+      for (InetAddress address : balancer.addresses) {
+        balancerGroup.add(new ResolvedServerInfo(
+            new InetSocketAddress(address, balancer.port), Attributes.EMPTY));
+      }
+      servers.add(balancerGroup.build());
+    }
+    Attributes attributes = Attributes.EMPTY;
+    Map<String, Object> serviceConfig = null;
+    try {
+      serviceConfig =
+          selectServiceConfig(result.serviceConfigChoices, percentageRoll, localHostname);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Ignoring malformed service config choices for " + host, e);
+    }
+    if (serviceConfig != null) {
+      attributes = Attributes.newBuilder()
+          .set(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG, serviceConfig)
+          .build();
+    }
+    long refreshNanos = Math.min(
+        Math.max(result.expiryNanos - System.nanoTime(), minRefreshNanos), MAX_REFRESH_NANOS);
+    scheduleRefresh(refreshNanos);
+    listener.onUpdate(servers, attributes);
+  }
+
+  private void scheduleRefresh(long delayNanos) {
+    refreshTask = eventLoop().schedule(resolveRunnable, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private synchronized EventLoop eventLoop() {
+    return eventLoop;
+  }
+
+  /**
+   * Picks the first service config choice that applies to this client, as per the gRPC DNS
+   * service config specification.  A choice applies if its {@code clientLanguage} includes Java,
+   * its {@code percentage} includes this resolver, and its {@code clientHostname} includes this
+   * host.  All the three are optional.
+   *
+   * @throws RuntimeException if the choices are malformed
+   */
+  @VisibleForTesting
+  @Nullable
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> selectServiceConfig(
+      @Nullable List<Map<String, Object>> choices, int percentageRoll,
+      @Nullable String localHostname) {
+    if (choices == null) {
+      return null;
+    }
+    for (Map<String, Object> choice : choices) {
+      List<String> languages = (List<String>) choice.get("clientLanguage");
+      if (languages != null && !containsIgnoreCase(languages, "java")) {
+        continue;
+      }
+      Number percentage = (Number) choice.get("percentage");
+      if (percentage != null && percentageRoll >= percentage.intValue()) {
+        continue;
+      }
+      List<String> hostnames = (List<String>) choice.get("clientHostname");
+      if (hostnames != null && !containsIgnoreCase(hostnames, localHostname)) {
+        continue;
+      }
+      Map<String, Object> serviceConfig = (Map<String, Object>) choice.get("serviceConfig");
+      if (serviceConfig == null) {
+        throw new IllegalArgumentException("service config choice without serviceConfig");
+      }
+      return serviceConfig;
+    }
+    return null;
+  }
+
+  private static boolean containsIgnoreCase(List<String> list, @Nullable String value) {
+    for (String element : list) {
+      if (element.equalsIgnoreCase(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses the service config choices from the TXT records, or returns {@code null} if there is
+   * none or they are malformed.
+   */
+  @VisibleForTesting
+  @Nullable
+  @SuppressWarnings("unchecked")
+  static List<Map<String, Object>> parseServiceConfigChoices(List<String> txtRecords) {
+    for (String txtRecord : txtRecords) {
+      if (!txtRecord.startsWith(SERVICE_CONFIG_TXT_PREFIX)) {
+        continue;
+      }
+      String json = txtRecord.substring(SERVICE_CONFIG_TXT_PREFIX.length());
+      try {
+        Object choices = JsonParser.parse(json);
+        if (!(choices instanceof List)) {
+          throw new IOException("service config choices must be a list");
+        }
+        for (Object choice : (List<?>) choices) {
+          if (!(choice instanceof Map)) {
+            throw new IOException("service config choice must be an object");
+          }
+        }
+        return (List<Map<String, Object>>) choices;
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Ignoring malformed service config " + json, e);
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The queries for one resolution, all run on the event loop.  The A, AAAA, TXT and SRV records
+   * of the target are queried at once, followed by the addresses of the balancers found in the SRV
+   * records, if any.
+   */
+  private final class Resolution {
+    final List<InetAddress> ipv4Addresses = new ArrayList<InetAddress>();
+    final List<InetAddress> ipv6Addresses = new ArrayList<InetAddress>();
+    final List<String> txtRecords = new ArrayList<String>();
+    final List<SrvRecord> srvRecords = new ArrayList<SrvRecord>();
+    long minTtlSeconds = Long.MAX_VALUE;
+    @Nullable
+    Throwable addressError;
+    int pendingQueries;
+    boolean balancersQueried;
+
+    void start() {
+      query(host, DnsRecordType.A, new AddressHandler(ipv4Addresses, true));
+      query(host, DnsRecordType.AAAA, new AddressHandler(ipv6Addresses, true));
+      query(SERVICE_CONFIG_NAME_PREFIX + host, DnsRecordType.TXT, new RecordHandler() {
+        @Override
+        void onRecord(DnsRawRecord record) {
+          txtRecords.add(decodeTxt(record.content()));
+        }
+      });
+      if (srvRecordsEnabled) {
+        query(GRPCLB_SRV_PREFIX + host, DnsRecordType.SRV, new RecordHandler() {
+          @Override
+          void onRecord(DnsRawRecord record) {
+            srvRecords.add(decodeSrv(record.content()));
+          }
+        });
+      }
+    }
+
+    void query(final String name, final DnsRecordType type, final RecordHandler handler) {
+      pendingQueries++;
+      dnsResolver.query(new DefaultDnsQuestion(name, type)).addListener(
+          new FutureListener<AddressedEnvelope<DnsResponse, InetSocketAddress>>() {
+            @Override
+            public void operationComplete(
+                Future<AddressedEnvelope<DnsResponse, InetSocketAddress>> future) {
+              try {
+                if (future.isSuccess()) {
+                  handleResponse(name, type, future.getNow(), handler);
+                } else {
+                  handler.onFailure(future.cause());
+                }
+              } finally {
+                pendingQueries--;
+                if (pendingQueries == 0) {
+                  onQueriesDone();
+                }
+              }
+            }
+          });
+    }
+
+    void handleResponse(String name, DnsRecordType type,
+        AddressedEnvelope<DnsResponse, InetSocketAddress> envelope, RecordHandler handler) {
+      try {
+        DnsResponse response = envelope.content();
+        if (response.code() != DnsResponseCode.NOERROR) {
+          handler.onFailure(new UnknownHostException(name + ": " + response.code()));
+          return;
+        }
+        int count = response.count(DnsSection.ANSWER);
+        for (int i = 0; i < count; i++) {
+          DnsRecord record = response.recordAt(DnsSection.ANSWER, i);
+          // Other types, e.g., CNAME, are followed by the DNS server
+          if (record.type() == type && record instanceof DnsRawRecord) {
+            minTtlSeconds = Math.min(minTtlSeconds, record.timeToLive());
+            handler.onRecord((DnsRawRecord) record);
+          }
+        }
+      } catch (RuntimeException e) {
+        handler.onFailure(e);
+      } finally {
+        envelope.release();
+      }
+    }
+
+    void onQueriesDone() {
+      if (shutdown) {
+        resolving = false;
+        return;
+      }
+      if (!balancersQueried && !srvRecords.isEmpty()) {
+        balancersQueried = true;
+        for (SrvRecord srvRecord : srvRecords) {
+          query(srvRecord.target, DnsRecordType.A, new AddressHandler(srvRecord.addresses, false));
+          query(srvRecord.target, DnsRecordType.AAAA,
+              new AddressHandler(srvRecord.addresses, false));
+        }
+        return;
+      }
+      resolving = false;
+      List<InetAddress> addresses = new ArrayList<InetAddress>(ipv4Addresses);
+      addresses.addAll(ipv6Addresses);
+      List<BalancerAddress> balancers = new ArrayList<BalancerAddress>();
+      for (SrvRecord srvRecord : srvRecords) {
+        if (!srvRecord.addresses.isEmpty()) {
+          balancers.add(
+              new BalancerAddress(srvRecord.authority, srvRecord.addresses, srvRecord.port));
+        }
+      }
+      if (addresses.isEmpty() && balancers.isEmpty()) {
+        scheduleRefresh(RETRY_DELAY_NANOS);
+        listener.onError(Status.UNAVAILABLE
+            .withDescription("No address found for " + host)
+            .withCause(addressError));
+        return;
+      }
+      long ttlNanos = minTtlSeconds == Long.MAX_VALUE
+          ? MAX_REFRESH_NANOS : TimeUnit.SECONDS.toNanos(minTtlSeconds);
+      DnsResult result = new DnsResult(addresses, balancers,
+          parseServiceConfigChoices(txtRecords), System.nanoTime() + ttlNanos);
+      cache.put(cacheKey, result, System.nanoTime());
+      deliver(result);
+    }
+
+    final class AddressHandler extends RecordHandler {
+      final List<InetAddress> addresses;
+      final boolean isTarget;
+
+      AddressHandler(List<InetAddress> addresses, boolean isTarget) {
+        this.addresses = addresses;
+        this.isTarget = isTarget;
+      }
+
+      @Override
+      void onRecord(DnsRawRecord record) {
+        ByteBuf content = record.content();
+        byte[] bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        try {
+          addresses.add(InetAddress.getByAddress(bytes));
+        } catch (UnknownHostException e) {
+          onFailure(e);
+        }
+      }
+
+      @Override
+      void onFailure(Throwable cause) {
+        if (isTarget && addressError == null) {
+          addressError = cause;
+        }
+      }
+    }
+  }
+
+  /**
+   * Handles the records of a query.  Failures of the TXT and SRV queries are ignored, as most
+   * targets have no such records.
+   */
+  private abstract static class RecordHandler {
+    abstract void onRecord(DnsRawRecord record);
+
+    void onFailure(Throwable cause) {
+      logger.log(Level.FINE, "DNS query failed", cause);
+    }
+  }
+
+  private static final class SrvRecord {
+    final String target;
+    final String authority;
+    final int port;
+    final List<InetAddress> addresses = new ArrayList<InetAddress>();
+
+    SrvRecord(String target, int port) {
+      this.target = target;
+      // The balancer is addressed by its host name, without the root label
+      this.authority = (target.endsWith(".") ? target.substring(0, target.length() - 1) : target)
+          + ":" + port;
+      this.port = port;
+    }
+  }
+
+  @VisibleForTesting
+  static String decodeTxt(ByteBuf content) {
+    // A TXT record is a sequence of length-prefixed strings, which together form its value
+    ByteBuf in = content.duplicate();
+    StringBuilder sb = new StringBuilder();
+    while (in.isReadable()) {
+      int length = in.readUnsignedByte();
+      sb.append(in.toString(in.readerIndex(), length, CharsetUtil.UTF_8));
+      in.skipBytes(length);
+    }
+    return sb.toString();
+  }
+
+  private static SrvRecord decodeSrv(ByteBuf content) {
+    ByteBuf in = content.duplicate();
+    in.skipBytes(4);  // priority and weight
+    int port = in.readUnsignedShort();
+    // The content shares the buffer of the whole message, so compressed names can be decoded
+    String target = DefaultDnsRecordDecoder.decodeName(in);
+    return new SrvRecord(target, port);
+  }
+
+  /**
+   * Looks up the local host name once per process, as it may block.
+   */
+  private static final class LocalHostnameHolder {
+    @Nullable
+    static final String HOSTNAME = getLocalHostname();
+
+    @Nullable
+    private static String getLocalHostname() {
+      try {
+        return InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        logger.log(Level.FINE, "Unable to get the local host name", e);
+        return null;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getPort() {
+    return port;
+  }
+}
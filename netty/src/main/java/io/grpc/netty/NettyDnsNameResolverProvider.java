@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.netty;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.grpc.Attributes;
+import io.grpc.ExperimentalApi;
+import io.grpc.NameResolverProvider;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A provider for {@link NettyDnsNameResolver}, which resolves {@code "dns"} targets
+ * asynchronously on a Netty event loop, and caches the results until their TTLs expire.
+ *
+ * <p>It accepts the same target URIs as {@link io.grpc.internal.DnsNameResolverProvider}, and
+ * additionally honors the authority of the target as the address of the DNS server to use, e.g.,
+ * {@code "dns://8.8.8.8/foo.googleapis.com:8080"}.
+ *
+ * <p>This provider is not registered automatically.  Pass it to {@link
+ * io.grpc.ManagedChannelBuilder#nameResolverFactory} to use it.
+ */
+@ExperimentalApi
+public final class NettyDnsNameResolverProvider extends NameResolverProvider {
+
+  private static final String SCHEME = "dns";
+
+  /** Results are not refreshed more often than this, however short their TTLs. */
+  private static final long DEFAULT_MIN_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private static final DnsResultCache SHARED_CACHE = new DnsResultCache();
+
+  private final DnsResultCache cache;
+  private final boolean srvRecordsEnabled;
+  private final long minRefreshNanos;
+
+  /**
+   * Creates a provider that does not look up grpclb balancers.
+   */
+  public NettyDnsNameResolverProvider() {
+    this(false);
+  }
+
+  /**
+   * Creates a provider.
+   *
+   * @param srvRecordsEnabled whether to look up the SRV records of {@code _grpclb._tcp.<host>}
+   *     for grpclb balancers.  Only enable this if the channel uses the grpclb load balancer.
+   */
+  public NettyDnsNameResolverProvider(boolean srvRecordsEnabled) {
+    this(SHARED_CACHE, srvRecordsEnabled, DEFAULT_MIN_REFRESH_NANOS);
+  }
+
+  @VisibleForTesting
+  NettyDnsNameResolverProvider(
+      DnsResultCache cache, boolean srvRecordsEnabled, long minRefreshNanos) {
+    this.cache = Preconditions.checkNotNull(cache, "cache");
+    this.srvRecordsEnabled = srvRecordsEnabled;
+    this.minRefreshNanos = minRefreshNanos;
+  }
+
+  @Override
+  public NettyDnsNameResolver newNameResolver(URI targetUri, Attributes params) {
+    if (SCHEME.equals(targetUri.getScheme())) {
+      String targetPath = Preconditions.checkNotNull(targetUri.getPath(), "targetPath");
+      Preconditions.checkArgument(targetPath.startsWith("/"),
+          "the path component (%s) of the target (%s) must start with '/'", targetPath, targetUri);
+      String name = targetPath.substring(1);
+      return new NettyDnsNameResolver(targetUri.getAuthority(), name, params, null, cache,
+          srvRecordsEnabled, minRefreshNanos, Utils.DEFAULT_WORKER_EVENT_LOOP_GROUP, new Random());
+    } else {
+      return null;
+    }
+  }
+
+  @Override
+  public String getDefaultScheme() {
+    return SCHEME;
+  }
+
+  @Override
+  protected boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  protected int priority() {
+    return 5;
+  }
+}
@@ -109,6 +109,16 @@ class NettyReadableBuffer extends AbstractReadableBuffer {
     return buffer.arrayOffset() + buffer.readerIndex();
   }
 
+  @Override
+  public boolean byteBufferSupported() {
+    return buffer.nioBufferCount() == 1;
+  }
+
+  @Override
+  public ByteBuffer getByteBuffer() {
+    return buffer.isReadable() ? buffer.nioBuffer() : null;
+  }
+
   /**
    * If the first call to close, calls {@link ByteBuf#release} to release the internal Netty buffer.
    */
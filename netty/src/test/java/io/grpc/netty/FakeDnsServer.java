@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DatagramDnsQuery;
+import io.netty.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty.handler.codec.dns.DatagramDnsResponse;
+import io.netty.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+import io.netty.util.CharsetUtil;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal DNS server over UDP on the loopback interface, answering from the records added to it.
+ */
+final class FakeDnsServer {
+  private final Map<String, List<Record>> records = new ConcurrentHashMap<String, List<Record>>();
+  private final Set<String> nxDomains =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Map<String, AtomicInteger> queryCounts =
+      new ConcurrentHashMap<String, AtomicInteger>();
+  private EventLoopGroup group;
+  private Channel channel;
+
+  void start() throws InterruptedException {
+    group = new NioEventLoopGroup(1);
+    channel = new Bootstrap()
+        .group(group)
+        .channel(NioDatagramChannel.class)
+        .handler(new ChannelInitializer<NioDatagramChannel>() {
+          @Override
+          protected void initChannel(NioDatagramChannel ch) {
+            ch.pipeline().addLast(
+                new DatagramDnsQueryDecoder(), new DatagramDnsResponseEncoder(), new Handler());
+          }
+        })
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+        .sync()
+        .channel();
+  }
+
+  void stop() {
+    if (channel != null) {
+      channel.close().syncUninterruptibly();
+    }
+    if (group != null) {
+      group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Returns the address of the server, in the form of a target authority. */
+  String authority() {
+    InetSocketAddress address = (InetSocketAddress) channel.localAddress();
+    return address.getAddress().getHostAddress() + ":" + address.getPort();
+  }
+
+  void addA(String name, String address, long ttl) throws Exception {
+    add(name, DnsRecordType.A, ttl, InetAddress.getByName(address).getAddress());
+  }
+
+  void addAaaa(String name, String address, long ttl) throws Exception {
+    add(name, DnsRecordType.AAAA, ttl, InetAddress.getByName(address).getAddress());
+  }
+
+  void addSrv(String name, String target, int port, long ttl) {
+    ByteBuf buf = Unpooled.buffer();
+    buf.writeShort(0);  // priority
+    buf.writeShort(0);  // weight
+    buf.writeShort(port);
+    for (String label : target.split("\\.")) {
+      byte[] bytes = label.getBytes(CharsetUtil.US_ASCII);
+      buf.writeByte(bytes.length);
+      buf.writeBytes(bytes);
+    }
+    buf.writeByte(0);
+    byte[] content = new byte[buf.readableBytes()];
+    buf.readBytes(content);
+    add(name, DnsRecordType.SRV, ttl, content);
+  }
+
+  void addTxt(String name, String text, long ttl) {
+    // Split into strings of at most 255 bytes, as a real server would
+    byte[] bytes = text.getBytes(CharsetUtil.UTF_8);
+    ByteBuf buf = Unpooled.buffer();
+    for (int i = 0; i < bytes.length; i += 255) {
+      int length = Math.min(255, bytes.length - i);
+      buf.writeByte(length);
+      buf.writeBytes(bytes, i, length);
+    }
+    byte[] content = new byte[buf.readableBytes()];
+    buf.readBytes(content);
+    add(name, DnsRecordType.TXT, ttl, content);
+  }
+
+  void setNxDomain(String name) {
+    nxDomains.add(normalize(name));
+  }
+
+  /** Returns the number of queries received for the name and type. */
+  int queryCount(String name, DnsRecordType type) {
+    AtomicInteger count = queryCounts.get(key(name, type));
+    return count == null ? 0 : count.get();
+  }
+
+  private synchronized void add(String name, DnsRecordType type, long ttl, byte[] content) {
+    String key = key(name, type);
+    List<Record> list = records.get(key);
+    if (list == null) {
+      list = new ArrayList<Record>();
+      records.put(key, list);
+    }
+    list.add(new Record(ttl, content));
+  }
+
+  private static String normalize(String name) {
+    name = name.toLowerCase(Locale.ROOT);
+    return name.endsWith(".") ? name : name + ".";
+  }
+
+  private static String key(String name, DnsRecordType type) {
+    return normalize(name) + " " + type.name();
+  }
+
+  private static final class Record {
+    final long ttl;
+    final byte[] content;
+
+    Record(long ttl, byte[] content) {
+      this.ttl = ttl;
+      this.content = content;
+    }
+  }
+
+  private final class Handler extends SimpleChannelInboundHandler<DatagramDnsQuery> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramDnsQuery query) {
+      DnsQuestion question = query.recordAt(DnsSection.QUESTION);
+      String key = key(question.name(), question.type());
+      AtomicInteger count = queryCounts.get(key);
+      if (count == null) {
+        queryCounts.put(key, count = new AtomicInteger());
+      }
+      count.incrementAndGet();
+      DatagramDnsResponse response =
+          new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+      response.addRecord(DnsSection.QUESTION, question);
+      if (nxDomains.contains(normalize(question.name()))) {
+        response.setCode(DnsResponseCode.NXDOMAIN);
+      } else {
+        List<Record> answers = records.get(key);
+        if (answers != null) {
+          synchronized (FakeDnsServer.this) {
+            for (Record record : answers) {
+              response.addRecord(DnsSection.ANSWER, new DefaultDnsRawRecord(question.name(),
+                  question.type(), record.ttl, Unpooled.wrappedBuffer(record.content)));
+            }
+          }
+        }
+      }
+      ctx.writeAndFlush(response);
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import io.grpc.Attributes;
+import io.grpc.NameResolver;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.Status;
+import io.grpc.internal.GrpcAttributes;
+import io.netty.handler.codec.dns.DnsRecordType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/** Unit tests for {@link NettyDnsNameResolver}. */
+@RunWith(JUnit4.class)
+public class NettyDnsNameResolverTest {
+  private static final int DEFAULT_PORT = 887;
+  private static final Attributes NAME_RESOLVER_PARAMS =
+      Attributes.newBuilder().set(NameResolver.Factory.PARAMS_DEFAULT_PORT, DEFAULT_PORT).build();
+  private static final int TIMEOUT_MS = 5000;
+
+  private final FakeDnsServer dnsServer = new FakeDnsServer();
+  private final DnsResultCache cache = new DnsResultCache();
+  private final List<NameResolver> resolvers = new ArrayList<NameResolver>();
+
+  @Mock
+  private NameResolver.Listener mockListener;
+  @Captor
+  private ArgumentCaptor<List<ResolvedServerInfoGroup>> resultCaptor;
+  @Captor
+  private ArgumentCaptor<Attributes> attrsCaptor;
+  @Captor
+  private ArgumentCaptor<Status> statusCaptor;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    dnsServer.start();
+  }
+
+  @After
+  public void tearDown() {
+    for (NameResolver resolver : resolvers) {
+      resolver.shutdown();
+    }
+    dnsServer.stop();
+  }
+
+  @Test
+  public void resolveAddresses() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    dnsServer.addA("foo.googleapis.com", "5.6.7.8", 300);
+    dnsServer.addAaaa("foo.googleapis.com", "::1", 300);
+
+    NameResolver resolver = newResolver("foo.googleapis.com:456", false, 0);
+    resolver.start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    List<ResolvedServerInfoGroup> groups = resultCaptor.getValue();
+    assertEquals(1, groups.size());
+    assertEquals(Arrays.asList(
+        new InetSocketAddress(InetAddress.getByName("1.2.3.4"), 456),
+        new InetSocketAddress(InetAddress.getByName("5.6.7.8"), 456),
+        new InetSocketAddress(InetAddress.getByName("::1"), 456)),
+        groups.get(0).toEquivalentAddressGroup().getAddresses());
+  }
+
+  @Test
+  public void defaultPort() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+
+    NameResolver resolver = newResolver("foo.googleapis.com", false, 0);
+    resolver.start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    assertEquals(
+        Collections.singletonList(
+            new InetSocketAddress(InetAddress.getByName("1.2.3.4"), DEFAULT_PORT)),
+        resultCaptor.getValue().get(0).toEquivalentAddressGroup().getAddresses());
+  }
+
+  @Test
+  public void resultsAreCachedAcrossResolvers() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    NameResolver.Listener otherListener = mock(NameResolver.Listener.class);
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    newResolver("foo.googleapis.com:789", false, 0).start(otherListener);
+    verify(otherListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+
+    assertEquals(
+        Collections.singletonList(new InetSocketAddress(InetAddress.getByName("1.2.3.4"), 789)),
+        resultCaptor.getValue().get(0).toEquivalentAddressGroup().getAddresses());
+    assertEquals(1, dnsServer.queryCount("foo.googleapis.com", DnsRecordType.A));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void refreshWhenTtlExpires() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 1);
+
+    NameResolver resolver = newResolver("foo.googleapis.com:456", false, 0);
+    resolver.start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS).times(2))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    assertEquals(2, dnsServer.queryCount("foo.googleapis.com", DnsRecordType.A));
+  }
+
+  @Test
+  public void srvRecordsResolveBalancers() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    dnsServer.addSrv(NettyDnsNameResolver.GRPCLB_SRV_PREFIX + "foo.googleapis.com",
+        "lb.googleapis.com", 1234, 300);
+    dnsServer.addA("lb.googleapis.com", "10.0.0.1", 300);
+
+    NameResolver resolver = newResolver("foo.googleapis.com:456", true, 0);
+    resolver.start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    List<ResolvedServerInfoGroup> groups = resultCaptor.getValue();
+    assertEquals(2, groups.size());
+    ResolvedServerInfoGroup balancer = groups.get(1);
+    assertEquals("lb.googleapis.com:1234",
+        balancer.getAttributes().get(GrpcAttributes.ATTR_LB_ADDR_AUTHORITY));
+    assertEquals(
+        Collections.singletonList(new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 1234)),
+        balancer.toEquivalentAddressGroup().getAddresses());
+  }
+
+  @Test
+  public void srvRecordsNotQueriedByDefault() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    assertEquals(0, dnsServer.queryCount(
+        NettyDnsNameResolver.GRPCLB_SRV_PREFIX + "foo.googleapis.com", DnsRecordType.SRV));
+  }
+
+  @Test
+  public void txtRecordProvidesServiceConfig() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    dnsServer.addTxt(NettyDnsNameResolver.SERVICE_CONFIG_NAME_PREFIX + "foo.googleapis.com",
+        NettyDnsNameResolver.SERVICE_CONFIG_TXT_PREFIX
+        + "[{\"clientLanguage\": [\"go\"], \"serviceConfig\": {\"loadBalancingPolicy\": \"a\"}},"
+        + "{\"serviceConfig\": {\"loadBalancingPolicy\": \"round_robin\"}}]", 300);
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(any(List.class), attrsCaptor.capture());
+    Map<String, Object> serviceConfig =
+        attrsCaptor.getValue().get(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG);
+    assertEquals("round_robin", serviceConfig.get("loadBalancingPolicy"));
+  }
+
+  @Test
+  public void malformedServiceConfigIgnored() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    dnsServer.addTxt(NettyDnsNameResolver.SERVICE_CONFIG_NAME_PREFIX + "foo.googleapis.com",
+        NettyDnsNameResolver.SERVICE_CONFIG_TXT_PREFIX + "[{", 300);
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), attrsCaptor.capture());
+    assertEquals(1, resultCaptor.getValue().size());
+    assertNull(attrsCaptor.getValue().get(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG));
+  }
+
+  @Test
+  public void nxDomainIsAnError() throws Exception {
+    dnsServer.setNxDomain("foo.googleapis.com");
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onError(statusCaptor.capture());
+    assertEquals(Status.Code.UNAVAILABLE, statusCaptor.getValue().getCode());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void cacheEntriesExpire() {
+    DnsResultCache.DnsResult result = newResult(100);
+    cache.put("key", result, 0);
+
+    assertSame(result, cache.get("key", 99));
+    assertNull(cache.get("key", 100));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void cacheIsBounded() {
+    for (int i = 0; i < DnsResultCache.MAX_SIZE; i++) {
+      cache.put("key" + i, newResult(100 + i), 0);
+    }
+    cache.put("other", newResult(200), 0);
+    assertNull(cache.get("other", 0));
+    assertEquals(DnsResultCache.MAX_SIZE, cache.size());
+
+    // Results of keys that aren't looked up again are removed once expired.
+    cache.put("other", newResult(200), 110);
+    assertEquals(DnsResultCache.MAX_SIZE - 10, cache.size());
+    assertNull(cache.get("key0", 0));
+    assertEquals(200, cache.get("other", 110).expiryNanos);
+  }
+
+  @Test
+  public void resultsWithAndWithoutSrvRecordsAreCachedSeparately() throws Exception {
+    dnsServer.addA("foo.googleapis.com", "1.2.3.4", 300);
+    dnsServer.addSrv(NettyDnsNameResolver.GRPCLB_SRV_PREFIX + "foo.googleapis.com",
+        "lb.googleapis.com", 1234, 300);
+    dnsServer.addA("lb.googleapis.com", "10.0.0.1", 300);
+    NameResolver.Listener otherListener = mock(NameResolver.Listener.class);
+
+    newResolver("foo.googleapis.com:456", false, 0).start(mockListener);
+    verify(mockListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+    assertEquals(1, resultCaptor.getValue().size());
+    newResolver("foo.googleapis.com:456", true, 0).start(otherListener);
+    verify(otherListener, timeout(TIMEOUT_MS))
+        .onUpdate(resultCaptor.capture(), any(Attributes.class));
+
+    // The balancer is found, rather than the cached result without it.
+    assertEquals(2, resultCaptor.getValue().size());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void selectServiceConfig() {
+    Map<String, Object> config1 = Collections.<String, Object>singletonMap("a", "1");
+    Map<String, Object> config2 = Collections.<String, Object>singletonMap("a", "2");
+    List<Map<String, Object>> choices = Arrays.asList(
+        choice(config1, "clientLanguage", Arrays.asList("c++", "go")),
+        choice(config1, "percentage", 50.0),
+        choice(config2, "clientLanguage", Arrays.asList("JAVA")));
+
+    assertSame(config1, NettyDnsNameResolver.selectServiceConfig(choices, 49, "localhost"));
+    assertSame(config2, NettyDnsNameResolver.selectServiceConfig(choices, 50, "localhost"));
+    assertNull(NettyDnsNameResolver.selectServiceConfig(choices.subList(0, 2), 99, "localhost"));
+    assertNull(NettyDnsNameResolver.selectServiceConfig(null, 0, "localhost"));
+  }
+
+  @Test
+  public void selectServiceConfig_clientHostname() {
+    Map<String, Object> config1 = Collections.<String, Object>singletonMap("a", "1");
+    Map<String, Object> config2 = Collections.<String, Object>singletonMap("a", "2");
+    List<Map<String, Object>> choices = Arrays.asList(
+        choice(config1, "clientHostname", Arrays.asList("host1", "Host2")),
+        choice(config2, "clientHostname", Arrays.asList("host3")));
+
+    assertSame(config1, NettyDnsNameResolver.selectServiceConfig(choices, 0, "host2"));
+    assertSame(config2, NettyDnsNameResolver.selectServiceConfig(choices, 0, "host3"));
+    assertNull(NettyDnsNameResolver.selectServiceConfig(choices, 0, "host4"));
+    // The local host name is unknown
+    assertNull(NettyDnsNameResolver.selectServiceConfig(choices, 0, null));
+  }
+
+  private static Map<String, Object> choice(
+      Map<String, Object> serviceConfig, String key, Object value) {
+    Map<String, Object> choice = new LinkedHashMap<String, Object>();
+    choice.put(key, value);
+    choice.put("serviceConfig", serviceConfig);
+    return choice;
+  }
+
+  private static DnsResultCache.DnsResult newResult(long expiryNanos) {
+    return new DnsResultCache.DnsResult(Collections.<InetAddress>emptyList(),
+        Collections.<DnsResultCache.BalancerAddress>emptyList(), null, expiryNanos);
+  }
+
+  private NameResolver newResolver(String name, boolean srvRecordsEnabled, long minRefreshSeconds) {
+    NettyDnsNameResolverProvider provider = new NettyDnsNameResolverProvider(
+        cache, srvRecordsEnabled, TimeUnit.SECONDS.toNanos(minRefreshSeconds));
+    NameResolver resolver = provider.newNameResolver(
+        URI.create("dns://" + dnsServer.authority() + "/" + name), NAME_RESOLVER_PARAMS);
+    resolvers.add(resolver);
+    return resolver;
+  }
+}
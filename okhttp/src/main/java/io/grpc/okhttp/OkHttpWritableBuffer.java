@@ -32,6 +32,7 @@
 package io.grpc.okhttp;
 
 import io.grpc.internal.WritableBuffer;
+import java.nio.ByteBuffer;
 import okio.Buffer;
 
 class OkHttpWritableBuffer implements WritableBuffer {
@@ -69,6 +70,21 @@ class OkHttpWritableBuffer implements WritableBuffer {
     return readableBytes;
   }
 
+  @Override
+  public boolean byteBufferSupported() {
+    return false;
+  }
+
+  @Override
+  public ByteBuffer getWritableByteBuffer() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void advanceWritePosition(int length) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void release() {
   }
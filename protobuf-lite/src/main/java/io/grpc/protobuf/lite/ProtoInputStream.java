@@ -36,11 +36,13 @@ import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
 import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.KnownLength;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import javax.annotation.Nullable;
 
 /**
@@ -64,8 +66,24 @@ class ProtoInputStream extends InputStream implements Drainable, KnownLength {
   public int drainTo(OutputStream target) throws IOException {
     int written;
     if (message != null) {
-      written = message.getSerializedSize();
-      message.writeTo(target);
+      ByteBuffer buffer = null;
+      if (target instanceof HasWritableByteBuffer) {
+        buffer = ((HasWritableByteBuffer) target).getWritableByteBuffer(
+            message.getSerializedSize());
+      }
+      if (buffer != null) {
+        // Serialize straight into the transport's buffer, skipping the intermediate heap buffer
+        // that writeTo(OutputStream) would use.
+        int start = buffer.position();
+        CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+        message.writeTo(output);
+        output.flush();
+        written = buffer.position() - start;
+        ((HasWritableByteBuffer) target).commitWritableByteBuffer(written);
+      } else {
+        written = message.getSerializedSize();
+        message.writeTo(target);
+      }
       message = null;
     } else if (partial != null) {
       written = (int) ByteStreams.copy(partial, target);
@@ -39,6 +39,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
 import io.grpc.ExperimentalApi;
+import io.grpc.HasByteBuffer;
 import io.grpc.KnownLength;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor.Marshaller;
@@ -49,6 +50,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 
 /**
  * Utility methods for using protobuf with grpc.
@@ -86,6 +88,40 @@ public class ProtoLiteUtils {
     }
   };
 
+  /**
+   * Whether the protobuf runtime parses direct {@link ByteBuffer}s in place. Older ones, including
+   * protobuf-lite 3.0, copy them into a new array instead, which is worse than copying them into
+   * the reusable {@link #bufs}.
+   */
+  private static final boolean PARSES_DIRECT_BUFFERS_IN_PLACE = parsesDirectBuffersInPlace();
+
+  private static boolean parsesDirectBuffersInPlace() {
+    try {
+      return CodedInputStream.newInstance(ByteBuffer.allocateDirect(1)).getClass().getSimpleName()
+          .equals("UnsafeDirectNioDecoder");
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a {@link ByteBuffer} that holds all the {@code size} remaining bytes of the stream and
+   * that protobuf can parse in place, or {@code null} if there isn't one.
+   */
+  private static ByteBuffer getWholeByteBuffer(InputStream stream, int size) {
+    if (!(stream instanceof HasByteBuffer) || !((HasByteBuffer) stream).byteBufferSupported()) {
+      return null;
+    }
+    ByteBuffer buffer = ((HasByteBuffer) stream).getByteBuffer();
+    if (buffer == null || buffer.remaining() != size) {
+      return null;
+    }
+    if (buffer.hasArray() || (buffer.isDirect() && PARSES_DIRECT_BUFFERS_IN_PLACE)) {
+      return buffer;
+    }
+    return null;
+  }
+
   /** Create a {@code Marshaller} for protos of the same type as {@code defaultInstance}. */
   public static <T extends MessageLite> Marshaller<T> marshaller(final T defaultInstance) {
     @SuppressWarnings("unchecked")
@@ -133,10 +169,18 @@ public class ProtoLiteUtils {
           }
         }
         CodedInputStream cis = null;
+        // Bytes parsed straight from the stream's buffer, which still need skipping in the stream
+        int parsedInPlace = 0;
         try {
           if (stream instanceof KnownLength) {
             int size = stream.available();
-            if (size > 0 && size <= GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE) {
+            ByteBuffer wholeBuffer = size > 0 ? getWholeByteBuffer(stream, size) : null;
+            if (wholeBuffer != null) {
+              // Zero-copy: the buffer is valid until the stream is read from or closed, which
+              // doesn't happen before parsing completes.
+              cis = CodedInputStream.newInstance(wholeBuffer);
+              parsedInPlace = size;
+            } else if (size > 0 && size <= GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE) {
               // buf should not be used after this method has returned.
               byte[] buf = bufs.get().get();
               if (buf == null || buf.length < size) {
@@ -167,10 +211,16 @@ public class ProtoLiteUtils {
         cis.setSizeLimit(Integer.MAX_VALUE);
 
         try {
-          return parseFrom(cis);
+          T message = parseFrom(cis);
+          if (parsedInPlace > 0) {
+            stream.skip(parsedInPlace);
+          }
+          return message;
         } catch (InvalidProtocolBufferException ipbe) {
           throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence")
             .withCause(ipbe).asRuntimeException();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
         }
       }
 
@@ -44,15 +44,19 @@ import com.google.protobuf.Enum;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Type;
 import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.MethodDescriptor.PrototypeMarshaller;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.internal.CompositeReadableBuffer;
+import io.grpc.internal.ReadableBuffers;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
@@ -81,6 +85,35 @@ public class ProtoLiteUtilsTest {
     assertEquals(proto, marshaller.parse(is));
   }
 
+  @Test
+  public void parseFromHeapByteBuffer() throws Exception {
+    InputStream is = ReadableBuffers.openStream(
+        ReadableBuffers.wrap(ByteBuffer.wrap(proto.toByteArray())), true);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseFromDirectByteBuffer() throws Exception {
+    byte[] bytes = proto.toByteArray();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    InputStream is = ReadableBuffers.openStream(ReadableBuffers.wrap(buffer), true);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseFromSplitBuffers() throws Exception {
+    byte[] bytes = proto.toByteArray();
+    CompositeReadableBuffer buffer = new CompositeReadableBuffer();
+    buffer.addBuffer(ReadableBuffers.wrap(bytes, 0, 3));
+    buffer.addBuffer(ReadableBuffers.wrap(bytes, 3, bytes.length - 3));
+    InputStream is = ReadableBuffers.openStream(buffer, true);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
   @Test
   public void testInvalidatedMessage() throws Exception {
     InputStream is = marshaller.stream(proto);
@@ -204,6 +237,32 @@ public class ProtoLiteUtilsTest {
     assertEquals(0, is.available());
   }
 
+  @Test
+  public void testDrainTo_writableByteBuffer() throws Exception {
+    byte[] golden = ByteStreams.toByteArray(marshaller.stream(proto));
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocateDirect(1024));
+    target.write(1);
+    int drained = ((Drainable) marshaller.stream(proto)).drainTo(target);
+    assertEquals(golden.length, drained);
+    assertEquals(golden.length, target.committed);
+    // Nothing went through write()
+    assertEquals(1, target.size());
+    byte[] lent = new byte[drained];
+    target.lent.flip();
+    target.lent.get(lent);
+    assertArrayEquals(golden, lent);
+  }
+
+  @Test
+  public void testDrainTo_writableByteBufferTooSmall() throws Exception {
+    byte[] golden = ByteStreams.toByteArray(marshaller.stream(proto));
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocate(golden.length - 1));
+    int drained = ((Drainable) marshaller.stream(proto)).drainTo(target);
+    assertEquals(golden.length, drained);
+    assertEquals(0, target.committed);
+    assertArrayEquals(golden, target.toByteArray());
+  }
+
   @Test
   public void metadataMarshaller_roundtrip() {
     Metadata.BinaryMarshaller<Type> metadataMarshaller =
@@ -230,4 +289,24 @@ public class ProtoLiteUtilsTest {
 
     ProtoLiteUtils.setExtensionRegistry(null);
   }
+
+  private static class LendingOutputStream extends ByteArrayOutputStream
+      implements HasWritableByteBuffer {
+    final ByteBuffer lent;
+    int committed;
+
+    LendingOutputStream(ByteBuffer lent) {
+      this.lent = lent;
+    }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer(int length) {
+      return lent.remaining() >= length ? lent : null;
+    }
+
+    @Override
+    public void commitWritableByteBuffer(int length) {
+      committed += length;
+    }
+  }
 }
@@ -31,18 +31,24 @@
 
 package io.grpc.protobuf.nano;
 
+import com.google.common.io.ByteStreams;
 import com.google.protobuf.nano.CodedOutputByteBufferNano;
 import com.google.protobuf.nano.MessageNano;
+import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
 import io.grpc.KnownLength;
+import io.grpc.internal.GrpcUtil;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import javax.annotation.Nullable;
 
 /**
  * An {@link InputStream} backed by a nano proto.
  */
-class NanoProtoInputStream extends InputStream implements KnownLength {
+class NanoProtoInputStream extends InputStream implements Drainable, KnownLength {
 
   // NanoProtoInputStream is first initialized with a *message*. *partial* is initially null.
   // Once there has been a read operation on this stream, *message* is serialized to *partial* and
@@ -54,6 +60,45 @@ class NanoProtoInputStream extends InputStream implements KnownLength {
     this.message = message;
   }
 
+  @Override
+  public int drainTo(OutputStream target) throws IOException {
+    int written;
+    if (message != null) {
+      written = message.getSerializedSize();
+      ByteBuffer buffer = null;
+      if (written > 0 && target instanceof HasWritableByteBuffer) {
+        buffer = ((HasWritableByteBuffer) target).getWritableByteBuffer(written);
+      }
+      if (buffer != null && buffer.hasArray()) {
+        // Serialize straight into the transport's buffer.
+        writeTo(message, buffer.array(), buffer.arrayOffset() + buffer.position(), written);
+        ((HasWritableByteBuffer) target).commitWritableByteBuffer(written);
+      } else if (written > 0 && written <= GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE) {
+        // Nano can only serialize to arrays, so go through the reusable one rather than a new one.
+        byte[] buf = NanoUtils.getBuffer(written);
+        writeTo(message, buf, 0, written);
+        target.write(buf, 0, written);
+      } else if (written > 0) {
+        target.write(MessageNano.toByteArray(message));
+      }
+      message = null;
+    } else if (partial != null) {
+      written = (int) ByteStreams.copy(partial, target);
+      partial = null;
+    } else {
+      written = 0;
+    }
+    return written;
+  }
+
+  /** Serializes {@code message}, whose serialized size has been computed, into the array. */
+  private static void writeTo(MessageNano message, byte[] buf, int off, int size)
+      throws IOException {
+    CodedOutputByteBufferNano output = CodedOutputByteBufferNano.newInstance(buf, off, size);
+    message.writeTo(output);
+    output.checkNoSpaceLeft();
+  }
+
   private void toPartial() {
     if (message != null) {
       partial = new ByteArrayInputStream(MessageNano.toByteArray(message));
@@ -81,9 +126,7 @@ class NanoProtoInputStream extends InputStream implements KnownLength {
       }
       if (len >= size) {
         // This is the only case that is zero-copy.
-        CodedOutputByteBufferNano output = CodedOutputByteBufferNano.newInstance(b, off, size);
-        message.writeTo(output);
-        output.checkNoSpaceLeft();
+        writeTo(message, b, off, size);
 
         message = null;
         partial = null;
@@ -34,18 +34,62 @@ package io.grpc.protobuf.nano;
 import com.google.common.io.ByteStreams;
 import com.google.protobuf.nano.CodedInputByteBufferNano;
 import com.google.protobuf.nano.MessageNano;
+import io.grpc.HasByteBuffer;
+import io.grpc.KnownLength;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * Utility methods for using nano proto with grpc.
  */
 public class NanoUtils {
 
+  private static final ThreadLocal<Reference<byte[]>> bufs = new ThreadLocal<Reference<byte[]>>() {
+
+    @Override
+    protected Reference<byte[]> initialValue() {
+      return new WeakReference<byte[]>(new byte[4096]); // Picked at random.
+    }
+  };
+
   private NanoUtils() {}
 
+  /**
+   * Returns this thread's reusable buffer, of at least {@code size} bytes. It is shared by parsing
+   * and serializing, so must not be used after the method that got it has returned.
+   */
+  static byte[] getBuffer(int size) {
+    byte[] buf = bufs.get().get();
+    if (buf == null || buf.length < size) {
+      buf = new byte[size];
+      bufs.set(new WeakReference<byte[]>(buf));
+    }
+    return buf;
+  }
+
+  /**
+   * Returns the array-backed {@link ByteBuffer} holding all the {@code size} remaining bytes of
+   * the stream, or {@code null} if there isn't one.
+   */
+  @Nullable
+  private static ByteBuffer getWholeArrayBuffer(InputStream stream, int size) {
+    if (!(stream instanceof HasByteBuffer) || !((HasByteBuffer) stream).byteBufferSupported()) {
+      return null;
+    }
+    ByteBuffer buffer = ((HasByteBuffer) stream).getByteBuffer();
+    if (buffer == null || !buffer.hasArray() || buffer.remaining() != size) {
+      return null;
+    }
+    return buffer;
+  }
+
   /** Adapt {@code parser} to a {@code Marshaller}. */
   public static <T extends MessageNano> Marshaller<T> marshaller(
       final MessageNanoFactory<T> factory) {
@@ -58,12 +102,44 @@ public class NanoUtils {
       @Override
       public T parse(InputStream stream) {
         try {
-          // TODO(simonma): Investigate whether we can do 0-copy here. 
-          CodedInputByteBufferNano input =
-              CodedInputByteBufferNano.newInstance(ByteStreams.toByteArray(stream));
+          CodedInputByteBufferNano input = null;
+          // Bytes parsed straight from the stream's buffer, which still need skipping in the stream
+          int parsedInPlace = 0;
+          if (stream instanceof KnownLength) {
+            int size = stream.available();
+            ByteBuffer wholeBuffer = size > 0 ? getWholeArrayBuffer(stream, size) : null;
+            if (wholeBuffer != null) {
+              // Zero-copy: nano messages copy the bytes and strings they keep, so the buffer only
+              // needs to stay valid until parsing completes.
+              input = CodedInputByteBufferNano.newInstance(wholeBuffer.array(),
+                  wholeBuffer.arrayOffset() + wholeBuffer.position(), size);
+              parsedInPlace = size;
+            } else if (size > 0 && size <= GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE) {
+              // As above, the buffer can be reused once parsing completes.
+              byte[] buf = getBuffer(size);
+              int chunkSize;
+              int position = 0;
+              while (position < size
+                  && (chunkSize = stream.read(buf, position, size - position)) != -1) {
+                position += chunkSize;
+              }
+              if (size != position) {
+                throw new RuntimeException("size inaccurate: " + size + " != " + position);
+              }
+              input = CodedInputByteBufferNano.newInstance(buf, 0, size);
+            } else if (size == 0) {
+              return factory.newInstance();
+            }
+          }
+          if (input == null) {
+            input = CodedInputByteBufferNano.newInstance(ByteStreams.toByteArray(stream));
+          }
           input.setSizeLimit(Integer.MAX_VALUE);
           T message = factory.newInstance();
           message.mergeFrom(input);
+          if (parsedInPlace > 0) {
+            stream.skip(parsedInPlace);
+          }
           return message;
         } catch (IOException ipbe) {
           throw Status.INTERNAL.withDescription("Failed parsing nano proto message").withCause(ipbe)
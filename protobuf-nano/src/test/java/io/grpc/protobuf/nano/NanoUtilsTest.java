@@ -37,15 +37,24 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.common.io.ByteStreams;
 import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
 import com.google.protobuf.nano.MessageNano;
+import io.grpc.Drainable;
+import io.grpc.HasWritableByteBuffer;
+import io.grpc.KnownLength;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.internal.ReadableBuffers;
 import io.grpc.protobuf.nano.Messages.Message;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -74,6 +83,37 @@ public class NanoUtilsTest {
     assertTrue(MessageNano.messageNanoEquals(m, m2));
   }
 
+  @Test
+  public void parseFromHeapByteBuffer() throws Exception {
+    Message m = newMessage();
+    byte[] bytes = new byte[m.getSerializedSize() + 2];
+    MessageNano.toByteArray(m, bytes, 1, bytes.length - 2);
+    InputStream is = ReadableBuffers.openStream(ReadableBuffers.wrap(
+        ByteBuffer.wrap(bytes, 1, bytes.length - 2).slice()), true);
+    assertTrue(MessageNano.messageNanoEquals(m, marshaller.parse(is)));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseReusesBuffer() throws Exception {
+    Message m = newMessage();
+    Message other = newMessage();
+    other.s = "other!";
+    other.bs = new byte[] {4, 5, 6};
+    Message first = marshaller.parse(new KnownLengthInputStream(MessageNano.toByteArray(m)));
+    // Overwrites the same bytes of the reused buffer, which first must not be referencing
+    Message second = marshaller.parse(new KnownLengthInputStream(MessageNano.toByteArray(other)));
+    assertTrue(MessageNano.messageNanoEquals(m, first));
+    assertTrue(MessageNano.messageNanoEquals(other, second));
+  }
+
+  @Test
+  public void parseUnknownLengthStream() throws Exception {
+    Message m = newMessage();
+    InputStream is = new FilterInputStream(new ByteArrayInputStream(MessageNano.toByteArray(m))) {};
+    assertTrue(MessageNano.messageNanoEquals(m, marshaller.parse(is)));
+  }
+
   @Test
   public void parseInvalid() throws Exception {
     InputStream is = new ByteArrayInputStream(new byte[] {-127});
@@ -115,6 +155,76 @@ public class NanoUtilsTest {
     assertEquals(0, is.available());
   }
 
+  @Test
+  public void testDrainTo_all() throws Exception {
+    Message m = newMessage();
+    InputStream is = marshaller.stream(m);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    int drained = ((Drainable) is).drainTo(baos);
+    assertEquals(m.getSerializedSize(), drained);
+    assertArrayEquals(MessageNano.toByteArray(m), baos.toByteArray());
+    assertEquals(0, is.available());
+    assertEquals(0, ((Drainable) is).drainTo(baos));
+  }
+
+  @Test
+  public void testDrainTo_partial() throws Exception {
+    Message m = newMessage();
+    byte[] golden = MessageNano.toByteArray(m);
+    InputStream is = marshaller.stream(m);
+    is.read();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    int drained = ((Drainable) is).drainTo(baos);
+    assertEquals(golden.length - 1, drained);
+    assertArrayEquals(Arrays.copyOfRange(golden, 1, golden.length), baos.toByteArray());
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void testDrainTo_writableByteBuffer() throws Exception {
+    Message m = newMessage();
+    byte[] golden = MessageNano.toByteArray(m);
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocate(1024));
+    target.lent.position(1);
+    int drained = ((Drainable) marshaller.stream(m)).drainTo(target);
+    assertEquals(golden.length, drained);
+    assertEquals(golden.length, target.committed);
+    // Nothing went through write()
+    assertEquals(0, target.size());
+    assertArrayEquals(golden, Arrays.copyOfRange(target.lent.array(), 1, 1 + golden.length));
+  }
+
+  @Test
+  public void testDrainTo_directWritableByteBuffer() throws Exception {
+    Message m = newMessage();
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocateDirect(1024));
+    int drained = ((Drainable) marshaller.stream(m)).drainTo(target);
+    // Nano can't serialize into a direct buffer, so the bytes are written instead
+    assertEquals(m.getSerializedSize(), drained);
+    assertEquals(0, target.committed);
+    assertArrayEquals(MessageNano.toByteArray(m), target.toByteArray());
+  }
+
+  @Test
+  public void testDrainTo_writableByteBufferTooSmall() throws Exception {
+    Message m = newMessage();
+    byte[] golden = MessageNano.toByteArray(m);
+    LendingOutputStream target = new LendingOutputStream(ByteBuffer.allocate(golden.length - 1));
+    int drained = ((Drainable) marshaller.stream(m)).drainTo(target);
+    assertEquals(golden.length, drained);
+    assertEquals(0, target.committed);
+    assertArrayEquals(golden, target.toByteArray());
+  }
+
+  @Test
+  public void testDrainTo_empty() throws Exception {
+    InputStream is = marshaller.stream(new Message());
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    assertEquals(0, ((Drainable) is).drainTo(baos));
+    assertEquals(0, baos.size());
+    assertEquals(0, ByteStreams.toByteArray(is).length);
+  }
+
   @Test
   public void testEmpty() throws IOException {
     InputStream is = marshaller.stream(new Message());
@@ -128,4 +238,40 @@ public class NanoUtilsTest {
     assertEquals(-1, is.read());
     assertEquals(0, is.available());
   }
+
+  private static Message newMessage() {
+    Message m = new Message();
+    m.i = 2;
+    m.b = true;
+    m.s = "string";
+    m.bs = new byte[] {1, 2, 3};
+    return m;
+  }
+
+  private static class KnownLengthInputStream extends ByteArrayInputStream
+      implements KnownLength {
+    KnownLengthInputStream(byte[] buf) {
+      super(buf);
+    }
+  }
+
+  private static class LendingOutputStream extends ByteArrayOutputStream
+      implements HasWritableByteBuffer {
+    final ByteBuffer lent;
+    int committed;
+
+    LendingOutputStream(ByteBuffer lent) {
+      this.lent = lent;
+    }
+
+    @Override
+    public ByteBuffer getWritableByteBuffer(int length) {
+      return lent.remaining() >= length ? lent : null;
+    }
+
+    @Override
+    public void commitWritableByteBuffer(int length) {
+      committed += length;
+    }
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.proxy;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.Detachable;
+import io.grpc.ExperimentalApi;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link MethodDescriptor.Marshaller} for messages that are forwarded without being parsed.
+ *
+ * <p>Parsing takes over the transport's buffers holding the message, when the transport supports
+ * it, instead of copying them, and sending the message writes those buffers out directly. The
+ * buffers are released once the message has been sent, dropped by a call that was already closed,
+ * or read through. Each parsed message can only be streamed once.
+ */
+@ExperimentalApi
+public final class PassThroughMarshaller implements MethodDescriptor.Marshaller<InputStream> {
+  private static final PassThroughMarshaller INSTANCE = new PassThroughMarshaller();
+
+  /**
+   * Returns the marshaller instance.
+   */
+  public static PassThroughMarshaller getInstance() {
+    return INSTANCE;
+  }
+
+  private PassThroughMarshaller() {
+  }
+
+  @Override
+  public InputStream stream(InputStream value) {
+    return value;
+  }
+
+  @Override
+  public InputStream parse(InputStream stream) {
+    if (stream instanceof Detachable) {
+      return ((Detachable) stream).detach();
+    }
+    try {
+      return new ByteArrayInputStream(ByteStreams.toByteArray(stream));
+    } catch (IOException e) {
+      throw Status.INTERNAL.withDescription("Failed to read message").withCause(e)
+          .asRuntimeException();
+    }
+  }
+}
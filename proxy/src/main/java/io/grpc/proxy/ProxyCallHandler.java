@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.proxy;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import java.io.InputStream;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ServerCallHandler} that forwards each call to a backend {@link Channel}, passing on
+ * headers, messages, half-close, cancellation, and the backend's status and trailers. Messages are
+ * expected to use the {@link PassThroughMarshaller}.
+ *
+ * <p>Flow control is tied between the two calls: a message is only requested from one side once
+ * the previous one has been sent and the other side {@link ClientCall#isReady is ready} for more,
+ * so a slow receiver pushes back on the sender instead of having messages buffered in the proxy.
+ */
+@ExperimentalApi
+public final class ProxyCallHandler implements ServerCallHandler<InputStream, InputStream> {
+  private final Channel backend;
+
+  /**
+   * Creates a handler forwarding calls to {@code backend}.
+   */
+  public ProxyCallHandler(Channel backend) {
+    this.backend = checkNotNull(backend, "backend");
+  }
+
+  @Override
+  public ServerCall.Listener<InputStream> startCall(
+      ServerCall<InputStream, InputStream> serverCall, Metadata headers) {
+    ClientCall<InputStream, InputStream> clientCall =
+        backend.newCall(serverCall.getMethodDescriptor(), CallOptions.DEFAULT);
+    CallProxy proxy = new CallProxy(serverCall, clientCall);
+    clientCall.start(proxy.responseProxy, headers);
+    serverCall.request(1);
+    clientCall.request(1);
+    return proxy.requestProxy;
+  }
+
+  private static final class CallProxy {
+    final ServerCall<InputStream, InputStream> serverCall;
+    final ClientCall<InputStream, InputStream> clientCall;
+    final RequestProxy requestProxy = new RequestProxy();
+    final ResponseProxy responseProxy = new ResponseProxy();
+
+    CallProxy(ServerCall<InputStream, InputStream> serverCall,
+        ClientCall<InputStream, InputStream> clientCall) {
+      this.serverCall = serverCall;
+      this.clientCall = clientCall;
+    }
+
+    /** Forwards the requests of the server call to the backend. */
+    private final class RequestProxy extends ServerCall.Listener<InputStream> {
+      // Set when a request was received while the backend was not ready.
+      @GuardedBy("this")
+      private boolean needToRequest;
+
+      @Override
+      public void onMessage(InputStream message) {
+        boolean sent = false;
+        try {
+          clientCall.sendMessage(message);
+          sent = true;
+        } finally {
+          if (!sent) {
+            // The call didn't take over the message, e.g. because it was already closed.
+            GrpcUtil.closeQuietly(message);
+          }
+        }
+        synchronized (this) {
+          if (clientCall.isReady()) {
+            serverCall.request(1);
+          } else {
+            needToRequest = true;
+          }
+        }
+      }
+
+      @Override
+      public void onHalfClose() {
+        clientCall.halfClose();
+      }
+
+      @Override
+      public void onCancel() {
+        clientCall.cancel("Server call cancelled", null);
+      }
+
+      @Override
+      public void onReady() {
+        responseProxy.onServerCallReady();
+      }
+
+      synchronized void onClientCallReady() {
+        if (needToRequest) {
+          needToRequest = false;
+          serverCall.request(1);
+        }
+      }
+    }
+
+    /** Forwards the responses of the backend to the server call. */
+    private final class ResponseProxy extends ClientCall.Listener<InputStream> {
+      // Set when a response was received while the server call was not ready.
+      @GuardedBy("this")
+      private boolean needToRequest;
+
+      @Override
+      public void onHeaders(Metadata headers) {
+        serverCall.sendHeaders(headers);
+      }
+
+      @Override
+      public void onMessage(InputStream message) {
+        boolean sent = false;
+        try {
+          serverCall.sendMessage(message);
+          sent = true;
+        } finally {
+          if (!sent) {
+            // The call didn't take over the message, e.g. because it was already closed.
+            GrpcUtil.closeQuietly(message);
+          }
+        }
+        synchronized (this) {
+          if (serverCall.isReady()) {
+            clientCall.request(1);
+          } else {
+            needToRequest = true;
+          }
+        }
+      }
+
+      @Override
+      public void onClose(Status status, Metadata trailers) {
+        serverCall.close(status, trailers);
+      }
+
+      @Override
+      public void onReady() {
+        requestProxy.onClientCallReady();
+      }
+
+      synchronized void onServerCallReady() {
+        if (needToRequest) {
+          needToRequest = false;
+          clientCall.request(1);
+        }
+      }
+    }
+  }
+}
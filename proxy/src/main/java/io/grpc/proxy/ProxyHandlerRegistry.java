@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.proxy;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.Channel;
+import io.grpc.ExperimentalApi;
+import io.grpc.HandlerRegistry;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.ServerMethodDefinition;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link HandlerRegistry} that accepts any method and forwards its calls to a backend
+ * {@link Channel} with a {@link ProxyCallHandler}. Messages are never parsed, so it can be used as
+ * the {@link io.grpc.ServerBuilder#fallbackHandlerRegistry fallback registry} of a proxy server
+ * without knowing the services behind it.
+ *
+ * <p>Routing calls to different backends is left to the {@code Channel}, which gets the method
+ * of each call.
+ */
+@ExperimentalApi
+public final class ProxyHandlerRegistry extends HandlerRegistry {
+  private final ProxyCallHandler handler;
+
+  /**
+   * Creates a registry forwarding all calls to {@code backend}.
+   */
+  public ProxyHandlerRegistry(Channel backend) {
+    handler = new ProxyCallHandler(checkNotNull(backend, "backend"));
+  }
+
+  @Override
+  public ServerMethodDefinition<?, ?> lookupMethod(
+      String methodName, @Nullable String authority) {
+    MethodDescriptor<InputStream, InputStream> method = MethodDescriptor.create(
+        MethodType.UNKNOWN, methodName, PassThroughMarshaller.getInstance(),
+        PassThroughMarshaller.getInstance());
+    return ServerMethodDefinition.create(method, handler);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.proxy;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.internal.ForwardingReadableBuffer;
+import io.grpc.internal.ReadableBuffers;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link PassThroughMarshaller}.
+ */
+@RunWith(JUnit4.class)
+public class PassThroughMarshallerTest {
+  private static final byte[] MSG = "hello".getBytes(UTF_8);
+
+  private final PassThroughMarshaller marshaller = PassThroughMarshaller.getInstance();
+
+  @Test
+  public void parseShouldTakeOverTransportBuffers() throws Exception {
+    CloseTrackingBuffer buffer = new CloseTrackingBuffer();
+    InputStream stream = ReadableBuffers.openStream(buffer, true);
+
+    InputStream parsed = marshaller.parse(stream);
+    assertNotSame(stream, parsed);
+    // The caller closes the stream it passed in, which must not release the message.
+    stream.close();
+    assertFalse(buffer.closed);
+
+    assertSame(parsed, marshaller.stream(parsed));
+    assertArrayEquals(MSG, ByteStreams.toByteArray(parsed));
+    parsed.close();
+    assertTrue(buffer.closed);
+  }
+
+  @Test
+  public void parseShouldCopyOtherStreams() throws Exception {
+    InputStream stream = new ByteArrayInputStream(MSG);
+
+    InputStream parsed = marshaller.parse(stream);
+    assertEquals(0, stream.available());
+    assertArrayEquals(MSG, ByteStreams.toByteArray(parsed));
+  }
+
+  private static class CloseTrackingBuffer extends ForwardingReadableBuffer {
+    boolean closed;
+
+    CloseTrackingBuffer() {
+      super(ReadableBuffers.wrap(MSG));
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
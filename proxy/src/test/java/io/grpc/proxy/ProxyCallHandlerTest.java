@@ -0,0 +1,333 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.StringMarshaller;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.internal.ForwardingReadableBuffer;
+import io.grpc.internal.ReadableBuffers;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * End-to-end tests for {@link ProxyCallHandler} and {@link ProxyHandlerRegistry}, proxying calls
+ * to a backend over the in-process transport.
+ */
+@RunWith(JUnit4.class)
+public class ProxyCallHandlerTest {
+  private static final Metadata.Key<String> TEST_KEY =
+      Metadata.Key.of("test", Metadata.ASCII_STRING_MARSHALLER);
+  private static final MethodDescriptor<String, String> ECHO_METHOD =
+      method(MethodType.UNARY, "echo");
+  private static final MethodDescriptor<String, String> STREAM_METHOD =
+      method(MethodType.SERVER_STREAMING, "stream");
+  private static final int STREAM_SIZE = 10;
+
+  private Server backendServer;
+  private ManagedChannel backendChannel;
+  private Server proxyServer;
+  private ManagedChannel channel;
+  /** The number of messages the backend has sent for the stream method. */
+  private int backendSent;
+  private boolean backendCancelled;
+
+  @Before
+  public void setUp() throws Exception {
+    ServerServiceDefinition service = ServerServiceDefinition.builder(
+        new ServiceDescriptor("backend", ECHO_METHOD, STREAM_METHOD))
+        .addMethod(ECHO_METHOD, new ServerCallHandler<String, String>() {
+          @Override
+          public ServerCall.Listener<String> startCall(
+              final ServerCall<String, String> call, final Metadata headers) {
+            call.request(1);
+            return new ServerCall.Listener<String>() {
+              @Override
+              public void onMessage(String message) {
+                Metadata responseHeaders = new Metadata();
+                responseHeaders.merge(headers, Collections.<Metadata.Key<?>>singleton(TEST_KEY));
+                call.sendHeaders(responseHeaders);
+                if (message.isEmpty()) {
+                  Metadata trailers = new Metadata();
+                  trailers.put(TEST_KEY, "empty");
+                  call.close(Status.INVALID_ARGUMENT.withDescription("empty"), trailers);
+                  return;
+                }
+                call.sendMessage(message + "!");
+                call.close(Status.OK, new Metadata());
+              }
+
+              @Override
+              public void onCancel() {
+                backendCancelled = true;
+              }
+            };
+          }
+        })
+        .addMethod(STREAM_METHOD, new ServerCallHandler<String, String>() {
+          @Override
+          public ServerCall.Listener<String> startCall(
+              final ServerCall<String, String> call, Metadata headers) {
+            call.sendHeaders(new Metadata());
+            return new ServerCall.Listener<String>() {
+              @Override
+              public void onReady() {
+                while (call.isReady() && backendSent < STREAM_SIZE) {
+                  call.sendMessage(String.valueOf(backendSent++));
+                  if (backendSent == STREAM_SIZE) {
+                    call.close(Status.OK, new Metadata());
+                  }
+                }
+              }
+            };
+          }
+        })
+        .build();
+    String backendName = "backend-" + System.nanoTime();
+    backendServer = InProcessServerBuilder.forName(backendName).directExecutor()
+        .addService(service).build().start();
+    backendChannel = InProcessChannelBuilder.forName(backendName).directExecutor().build();
+
+    String proxyName = "proxy-" + System.nanoTime();
+    proxyServer = InProcessServerBuilder.forName(proxyName).directExecutor()
+        .fallbackHandlerRegistry(new ProxyHandlerRegistry(backendChannel)).build().start();
+    channel = InProcessChannelBuilder.forName(proxyName).directExecutor().build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    proxyServer.shutdownNow();
+    backendChannel.shutdownNow();
+    backendServer.shutdownNow();
+  }
+
+  @Test
+  public void unaryCall() {
+    RecordingListener listener = new RecordingListener();
+    ClientCall<String, String> call = channel.newCall(ECHO_METHOD, CallOptions.DEFAULT);
+    Metadata headers = new Metadata();
+    headers.put(TEST_KEY, "value");
+    call.start(listener, headers);
+    call.request(1);
+    call.sendMessage("hello");
+    call.halfClose();
+
+    assertEquals("value", listener.headers.get(TEST_KEY));
+    assertEquals(Arrays.asList("hello!"), listener.messages);
+    assertEquals(Status.Code.OK, listener.status.getCode());
+  }
+
+  @Test
+  public void errorStatusAndTrailers() {
+    RecordingListener listener = new RecordingListener();
+    ClientCall<String, String> call = channel.newCall(ECHO_METHOD, CallOptions.DEFAULT);
+    call.start(listener, new Metadata());
+    call.request(1);
+    call.sendMessage("");
+    call.halfClose();
+
+    assertTrue(listener.messages.isEmpty());
+    assertEquals(Status.Code.INVALID_ARGUMENT, listener.status.getCode());
+    assertEquals("empty", listener.status.getDescription());
+    assertEquals("empty", listener.trailers.get(TEST_KEY));
+  }
+
+  @Test
+  public void unknownMethodIsRejectedByBackend() {
+    RecordingListener listener = new RecordingListener();
+    ClientCall<String, String> call =
+        channel.newCall(method(MethodType.UNARY, "unknown"), CallOptions.DEFAULT);
+    call.start(listener, new Metadata());
+    call.request(1);
+    call.sendMessage("hello");
+    call.halfClose();
+
+    assertEquals(Status.Code.UNIMPLEMENTED, listener.status.getCode());
+  }
+
+  @Test
+  public void cancellationIsForwarded() {
+    RecordingListener listener = new RecordingListener();
+    ClientCall<String, String> call = channel.newCall(ECHO_METHOD, CallOptions.DEFAULT);
+    call.start(listener, new Metadata());
+    call.cancel("cancelled", null);
+
+    assertTrue(backendCancelled);
+    assertEquals(Status.Code.CANCELLED, listener.status.getCode());
+  }
+
+  @Test
+  public void flowControlIsTiedBetweenCalls() {
+    RecordingListener listener = new RecordingListener();
+    ClientCall<String, String> call = channel.newCall(STREAM_METHOD, CallOptions.DEFAULT);
+    call.start(listener, new Metadata());
+    call.request(2);
+    call.sendMessage("");
+    call.halfClose();
+
+    assertEquals(Arrays.asList("0", "1"), listener.messages);
+    // The backend is only asked for a message once the client is ready for it.
+    assertEquals(2, backendSent);
+    assertNull(listener.status);
+
+    call.request(STREAM_SIZE);
+    assertEquals(STREAM_SIZE, listener.messages.size());
+    assertEquals(Status.Code.OK, listener.status.getCode());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void messagesAreReleasedWhenCallsCloseWhileForwarding() {
+    MethodDescriptor<InputStream, InputStream> method = MethodDescriptor.create(
+        MethodType.BIDI_STREAMING, MethodDescriptor.generateFullMethodName("backend", "bidi"),
+        PassThroughMarshaller.getInstance(), PassThroughMarshaller.getInstance());
+    ServerCall<InputStream, InputStream> serverCall = mock(ServerCall.class);
+    ClientCall<InputStream, InputStream> clientCall = mock(ClientCall.class);
+    Channel backend = mock(Channel.class);
+    when(serverCall.getMethodDescriptor()).thenReturn(method);
+    when(backend.newCall(method, CallOptions.DEFAULT)).thenReturn(clientCall);
+    ServerCall.Listener<InputStream> requestListener =
+        new ProxyCallHandler(backend).startCall(serverCall, new Metadata());
+    ArgumentCaptor<ClientCall.Listener> responseListener =
+        ArgumentCaptor.forClass(ClientCall.Listener.class);
+    verify(clientCall).start(responseListener.capture(), any(Metadata.class));
+
+    // Each call gets closed while a message is on its way to it.
+    doThrow(new IllegalStateException("call was cancelled"))
+        .when(clientCall).sendMessage(any(InputStream.class));
+    doThrow(new IllegalStateException("call is closed"))
+        .when(serverCall).sendMessage(any(InputStream.class));
+    CloseTrackingBuffer request = new CloseTrackingBuffer();
+    try {
+      requestListener.onMessage(parse(request));
+      fail();
+    } catch (IllegalStateException expected) {
+      // The exception is propagated.
+    }
+    assertTrue(request.closed);
+
+    CloseTrackingBuffer response = new CloseTrackingBuffer();
+    try {
+      responseListener.getValue().onMessage(parse(response));
+      fail();
+    } catch (IllegalStateException expected) {
+      // The exception is propagated.
+    }
+    assertTrue(response.closed);
+  }
+
+  /**
+   * Parses a message from a stream over {@code buffer}, like the proxy does for messages received
+   * by a transport.
+   */
+  private static InputStream parse(CloseTrackingBuffer buffer) {
+    InputStream message = PassThroughMarshaller.getInstance().parse(
+        ReadableBuffers.openStream(buffer, true));
+    assertFalse(buffer.closed);
+    return message;
+  }
+
+  private static MethodDescriptor<String, String> method(MethodType type, String name) {
+    return MethodDescriptor.create(type, MethodDescriptor.generateFullMethodName("backend", name),
+        StringMarshaller.INSTANCE, StringMarshaller.INSTANCE);
+  }
+
+  private static class RecordingListener extends ClientCall.Listener<String> {
+    Metadata headers;
+    final List<String> messages = new ArrayList<String>();
+    Status status;
+    Metadata trailers;
+
+    @Override
+    public void onHeaders(Metadata headers) {
+      this.headers = headers;
+    }
+
+    @Override
+    public void onMessage(String message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void onClose(Status status, Metadata trailers) {
+      this.status = status;
+      this.trailers = trailers;
+    }
+  }
+
+  private static class CloseTrackingBuffer extends ForwardingReadableBuffer {
+    boolean closed;
+
+    CloseTrackingBuffer() {
+      super(ReadableBuffers.wrap(new byte[] {1, 2, 3}));
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A {@link Publisher} of the messages received by a call, which turns the demand of its only
+ * {@link Subscriber} into flow-control requests on the call.
+ *
+ * <p>Demand is forwarded to the call in batches.  While the call still has more than half of the
+ * previously requested messages to deliver, new demand is accumulated instead of being forwarded
+ * one request at a time.  The call never delivers more messages than the subscriber has requested,
+ * so no messages are buffered here.
+ *
+ * <p>{@link #onMessage} and {@link #onClose} must be called serially, as call listeners are.
+ */
+abstract class InboundPublisher<T> implements Publisher<T>, Subscription {
+  private static final Subscription NOOP_SUBSCRIPTION = new Subscription() {
+      @Override
+      public void request(long n) {}
+
+      @Override
+      public void cancel() {}
+    };
+
+  // Guards the state, and the call which isn't thread-safe
+  protected final Object lock;
+
+  @GuardedBy("lock")
+  private Subscriber<? super T> subscriber;
+  @GuardedBy("lock")
+  private boolean started;
+  // Cancelled by the subscriber, or terminated
+  @GuardedBy("lock")
+  private boolean done;
+  // Messages requested by the subscriber and not delivered yet.  Long.MAX_VALUE means unbounded.
+  @GuardedBy("lock")
+  private long demand;
+  // Messages requested from the call and not received yet
+  @GuardedBy("lock")
+  private long outstanding;
+  @GuardedBy("lock")
+  private int lastBatch;
+  // Whether onSubscribe has returned, after which the subscriber can be terminated
+  @GuardedBy("lock")
+  private boolean subscribed;
+  // Set when the call closed before the subscriber could be terminated, so that it is terminated
+  // once subscribed
+  @GuardedBy("lock")
+  private boolean pendingClose;
+  @GuardedBy("lock")
+  @Nullable
+  private Throwable pendingCloseError;
+
+  InboundPublisher(Object lock) {
+    this.lock = checkNotNull(lock, "lock");
+  }
+
+  /**
+   * Starts the call if needed.  Called once, without holding the lock, after the subscriber has
+   * been given its subscription.
+   */
+  protected abstract void startCall();
+
+  /**
+   * Requests {@code numMessages} more messages from the call.  Called while holding the lock.
+   */
+  @GuardedBy("lock")
+  protected abstract void requestFromCall(int numMessages);
+
+  /**
+   * Stops the call from delivering messages, as the subscriber has cancelled.  Called while
+   * holding the lock.
+   */
+  @GuardedBy("lock")
+  protected abstract void cancelCall();
+
+  @Override
+  public final void subscribe(Subscriber<? super T> subscriber) {
+    checkNotNull(subscriber, "subscriber");
+    boolean alreadySubscribed;
+    synchronized (lock) {
+      alreadySubscribed = this.subscriber != null;
+      if (!alreadySubscribed) {
+        this.subscriber = subscriber;
+      }
+    }
+    if (alreadySubscribed) {
+      subscriber.onSubscribe(NOOP_SUBSCRIPTION);
+      subscriber.onError(new IllegalStateException("Only one subscriber is allowed"));
+      return;
+    }
+    subscriber.onSubscribe(this);
+    boolean closed;
+    Throwable error;
+    synchronized (lock) {
+      subscribed = true;
+      closed = pendingClose;
+      error = pendingCloseError;
+      pendingClose = false;
+      pendingCloseError = null;
+      if (done && !closed) {
+        return;
+      }
+    }
+    if (closed) {
+      terminate(subscriber, error);
+      return;
+    }
+    startCall();
+    synchronized (lock) {
+      started = true;
+      if (!done) {
+        maybeRequestFromCall();
+      }
+    }
+  }
+
+  @Override
+  public final void request(long n) {
+    Subscriber<? super T> errorSubscriber = null;
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      if (n <= 0) {
+        done = true;
+        errorSubscriber = subscriber;
+        if (started) {
+          cancelCall();
+        }
+      } else {
+        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        if (started) {
+          maybeRequestFromCall();
+        }
+      }
+    }
+    if (errorSubscriber != null) {
+      errorSubscriber.onError(
+          new IllegalArgumentException("Non-positive request signals are illegal: " + n));
+    }
+  }
+
+  @Override
+  public final void cancel() {
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      done = true;
+      if (started) {
+        cancelCall();
+      }
+    }
+  }
+
+  /**
+   * Delivers a message received by the call to the subscriber.
+   */
+  final void onMessage(T message) {
+    Subscriber<? super T> currentSubscriber;
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      outstanding--;
+      if (demand != Long.MAX_VALUE) {
+        demand--;
+      }
+      currentSubscriber = subscriber;
+    }
+    currentSubscriber.onNext(message);
+    synchronized (lock) {
+      if (!done) {
+        maybeRequestFromCall();
+      }
+    }
+  }
+
+  /**
+   * Terminates the subscriber, as the call has been closed.
+   *
+   * @param error the error to signal, or {@code null} to signal completion
+   */
+  final void onClose(@Nullable Throwable error) {
+    Subscriber<? super T> currentSubscriber;
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      done = true;
+      if (!subscribed) {
+        // The call closed before anyone subscribed, e.g., because the client half-closed without
+        // sending any message
+        pendingClose = true;
+        pendingCloseError = error;
+        return;
+      }
+      currentSubscriber = subscriber;
+    }
+    terminate(currentSubscriber, error);
+  }
+
+  private static void terminate(Subscriber<?> subscriber, @Nullable Throwable error) {
+    if (error == null) {
+      subscriber.onComplete();
+    } else {
+      subscriber.onError(error);
+    }
+  }
+
+  @VisibleForTesting
+  @GuardedBy("lock")
+  final void maybeRequestFromCall() {
+    if (outstanding > lastBatch / 2) {
+      return;
+    }
+    long unforwarded = demand == Long.MAX_VALUE ? Long.MAX_VALUE : demand - outstanding;
+    if (unforwarded <= 0) {
+      return;
+    }
+    int batch = (int) Math.min(unforwarded, Integer.MAX_VALUE);
+    outstanding += batch;
+    lastBatch = batch;
+    requestFromCall(batch);
+  }
+}
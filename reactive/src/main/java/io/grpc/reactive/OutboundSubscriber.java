@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.annotation.concurrent.GuardedBy;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A {@link Subscriber} that sends what a {@link org.reactivestreams.Publisher} emits on a call.  It
+ * requests one message at a time from the publisher, and only while the call is ready, so the
+ * publisher is held back by the flow control of the call.
+ *
+ * <p>{@link #onReady} must be called whenever the call becomes ready, and {@link #cancel} when the
+ * call has been closed.
+ */
+abstract class OutboundSubscriber<T> implements Subscriber<T> {
+  // Guards the state, and the call which isn't thread-safe
+  protected final Object lock;
+
+  @GuardedBy("lock")
+  private Subscription subscription;
+  // Whether a message has been requested from the publisher and not received yet
+  @GuardedBy("lock")
+  private boolean requested;
+  // Terminated by the publisher, or the call has been closed
+  @GuardedBy("lock")
+  private boolean done;
+
+  OutboundSubscriber(Object lock) {
+    this.lock = checkNotNull(lock, "lock");
+  }
+
+  @GuardedBy("lock")
+  protected abstract boolean isCallReady();
+
+  @GuardedBy("lock")
+  protected abstract void send(T message);
+
+  /**
+   * Called when the publisher has completed.
+   */
+  @GuardedBy("lock")
+  protected abstract void complete();
+
+  /**
+   * Called when the publisher has failed.
+   */
+  @GuardedBy("lock")
+  protected abstract void fail(Throwable error);
+
+  @Override
+  public final void onSubscribe(Subscription subscription) {
+    checkNotNull(subscription, "subscription");
+    boolean duplicate;
+    synchronized (lock) {
+      duplicate = this.subscription != null || done;
+      if (!duplicate) {
+        this.subscription = subscription;
+      }
+    }
+    if (duplicate) {
+      subscription.cancel();
+      return;
+    }
+    onReady();
+  }
+
+  @Override
+  public final void onNext(T message) {
+    checkNotNull(message, "message");
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      requested = false;
+      send(message);
+    }
+    onReady();
+  }
+
+  @Override
+  public final void onError(Throwable error) {
+    checkNotNull(error, "error");
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      done = true;
+      fail(error);
+    }
+  }
+
+  @Override
+  public final void onComplete() {
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      done = true;
+      complete();
+    }
+  }
+
+  /**
+   * Requests the next message from the publisher if the call is ready for it.
+   */
+  final void onReady() {
+    Subscription currentSubscription;
+    synchronized (lock) {
+      if (done || subscription == null || requested || !isCallReady()) {
+        return;
+      }
+      requested = true;
+      currentSubscription = subscription;
+    }
+    currentSubscription.request(1);
+  }
+
+  /**
+   * Cancels the subscription to the publisher, as the call has been closed.
+   */
+  final void cancel() {
+    Subscription currentSubscription;
+    synchronized (lock) {
+      if (done) {
+        return;
+      }
+      done = true;
+      currentSubscription = subscription;
+    }
+    if (currentSubscription != null) {
+      currentSubscription.cancel();
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.ClientCall;
+import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.reactivestreams.Publisher;
+
+/**
+ * Utility functions for processing the calls of a client with Reactive Streams.
+ *
+ * <p>Each function returns a {@link Publisher} of the responses, which starts the call when it is
+ * subscribed to, and allows only one subscriber.  The demand of the subscriber is passed on to
+ * {@link ClientCall#request}, and the requests are taken from the request {@code Publisher} only
+ * while {@link ClientCall#isReady} is true, so that neither side needs unbounded buffers.
+ * Cancelling the subscription cancels the call.  If the call fails, the subscriber receives a
+ * {@link io.grpc.StatusRuntimeException}.
+ */
+@ExperimentalApi
+public final class ReactiveClientCalls {
+  private ReactiveClientCalls() {
+  }
+
+  /**
+   * Executes a unary call.  The returned publisher emits one response.
+   */
+  public static <ReqT, RespT> Publisher<RespT> unaryCall(
+      ClientCall<ReqT, RespT> call, ReqT request) {
+    return new ResponsePublisher<ReqT, RespT>(
+        call, checkNotNull(request, "request"), null);
+  }
+
+  /**
+   * Executes a server-streaming call.
+   */
+  public static <ReqT, RespT> Publisher<RespT> serverStreamingCall(
+      ClientCall<ReqT, RespT> call, ReqT request) {
+    return new ResponsePublisher<ReqT, RespT>(
+        call, checkNotNull(request, "request"), null);
+  }
+
+  /**
+   * Executes a client-streaming call, sending what {@code requests} emits.  The returned publisher
+   * emits one response.
+   */
+  public static <ReqT, RespT> Publisher<RespT> clientStreamingCall(
+      ClientCall<ReqT, RespT> call, Publisher<ReqT> requests) {
+    return new ResponsePublisher<ReqT, RespT>(
+        call, null, checkNotNull(requests, "requests"));
+  }
+
+  /**
+   * Executes a bidirectional-streaming call, sending what {@code requests} emits.
+   */
+  public static <ReqT, RespT> Publisher<RespT> bidiStreamingCall(
+      ClientCall<ReqT, RespT> call, Publisher<ReqT> requests) {
+    return new ResponsePublisher<ReqT, RespT>(
+        call, null, checkNotNull(requests, "requests"));
+  }
+
+  private static final class ResponsePublisher<ReqT, RespT> extends InboundPublisher<RespT> {
+    @GuardedBy("lock")
+    private final ClientCall<ReqT, RespT> call;
+    // Either request or requests is null
+    @Nullable
+    private final ReqT request;
+    @Nullable
+    private final Publisher<ReqT> requests;
+    private final RequestSubscriber<ReqT> requestSubscriber;
+
+    ResponsePublisher(ClientCall<ReqT, RespT> call, @Nullable ReqT request,
+        @Nullable Publisher<ReqT> requests) {
+      super(new Object());
+      this.call = checkNotNull(call, "call");
+      this.request = request;
+      this.requests = requests;
+      this.requestSubscriber = new RequestSubscriber<ReqT>(lock, call);
+    }
+
+    @Override
+    protected void startCall() {
+      synchronized (lock) {
+        call.start(new ClientCall.Listener<RespT>() {
+            @Override
+            public void onMessage(RespT message) {
+              ResponsePublisher.this.onMessage(message);
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+              requestSubscriber.cancel();
+              ResponsePublisher.this.onClose(
+                  status.isOk() ? null : status.asRuntimeException(trailers));
+            }
+
+            @Override
+            public void onReady() {
+              requestSubscriber.onReady();
+            }
+          }, new Metadata());
+        if (request != null) {
+          call.sendMessage(request);
+          call.halfClose();
+        }
+      }
+      if (requests != null) {
+        requests.subscribe(requestSubscriber);
+      }
+    }
+
+    @Override
+    protected void requestFromCall(int numMessages) {
+      call.request(numMessages);
+    }
+
+    @Override
+    protected void cancelCall() {
+      call.cancel("Cancelled by the subscriber", null);
+    }
+  }
+
+  private static final class RequestSubscriber<ReqT> extends OutboundSubscriber<ReqT> {
+    @GuardedBy("lock")
+    private final ClientCall<ReqT, ?> call;
+
+    RequestSubscriber(Object lock, ClientCall<ReqT, ?> call) {
+      super(lock);
+      this.call = call;
+    }
+
+    @Override
+    protected boolean isCallReady() {
+      return call.isReady();
+    }
+
+    @Override
+    protected void send(ReqT message) {
+      call.sendMessage(message);
+    }
+
+    @Override
+    protected void complete() {
+      call.halfClose();
+    }
+
+    @Override
+    protected void fail(Throwable error) {
+      call.cancel("The request publisher failed", error);
+    }
+  }
+}
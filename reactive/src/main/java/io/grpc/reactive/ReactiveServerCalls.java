@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import javax.annotation.concurrent.GuardedBy;
+import org.reactivestreams.Publisher;
+
+/**
+ * Utility functions for implementing the methods of a service with Reactive Streams.
+ *
+ * <p>The {@link Publisher} returned by a method is subscribed to once, and messages are taken from
+ * it only while {@link ServerCall#isReady} is true.  Its completion closes the call with {@code
+ * OK}, and its failure closes the call with {@link Status#fromThrowable}.  For streaming requests,
+ * the demand of the subscriber of the request {@code Publisher} is passed on to {@link
+ * ServerCall#request}; the request publisher completes when the client half-closes, and fails if
+ * the call is cancelled.
+ */
+@ExperimentalApi
+public final class ReactiveServerCalls {
+  private ReactiveServerCalls() {
+  }
+
+  /**
+   * Adaptor to a unary or server-streaming method.
+   */
+  public interface ServerStreamingMethod<ReqT, RespT> {
+    Publisher<RespT> invoke(ReqT request);
+  }
+
+  /**
+   * Adaptor to a client-streaming or bidirectional-streaming method.
+   */
+  public interface StreamingMethod<ReqT, RespT> {
+    Publisher<RespT> invoke(Publisher<ReqT> requests);
+  }
+
+  /**
+   * Creates a {@code ServerCallHandler} for a unary or server-streaming method of the service.
+   *
+   * @param method an adaptor to the actual method on the service implementation.
+   */
+  public static <ReqT, RespT> ServerCallHandler<ReqT, RespT> asServerStreamingCall(
+      final ServerStreamingMethod<ReqT, RespT> method) {
+    checkNotNull(method, "method");
+    return new ServerCallHandler<ReqT, RespT>() {
+      @Override
+      public ServerCall.Listener<ReqT> startCall(
+          final ServerCall<ReqT, RespT> call, Metadata headers) {
+        final Object lock = new Object();
+        final ResponseSubscriber<RespT> responseSubscriber =
+            new ResponseSubscriber<RespT>(lock, call);
+        synchronized (lock) {
+          // One more than needed, to detect clients that send more than one request
+          call.request(2);
+        }
+        return new ServerCall.Listener<ReqT>() {
+          ReqT request;
+          boolean closed;
+
+          @Override
+          public void onMessage(ReqT message) {
+            if (closed) {
+              return;
+            }
+            if (request == null) {
+              request = message;
+            } else {
+              closed = true;
+              closeWithError(lock, call, Status.INTERNAL.withDescription(
+                  "Too many requests for a server-streaming method"));
+            }
+          }
+
+          @Override
+          public void onHalfClose() {
+            if (closed) {
+              return;
+            }
+            if (request == null) {
+              closeWithError(lock, call,
+                  Status.INTERNAL.withDescription("Half-closed without a request"));
+              return;
+            }
+            Publisher<RespT> responses;
+            try {
+              responses = checkNotNull(method.invoke(request), "Method returned null publisher");
+            } catch (RuntimeException e) {
+              closeWithError(lock, call, Status.fromThrowable(e));
+              return;
+            }
+            responses.subscribe(responseSubscriber);
+          }
+
+          @Override
+          public void onCancel() {
+            responseSubscriber.cancel();
+          }
+
+          @Override
+          public void onReady() {
+            responseSubscriber.onReady();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Creates a {@code ServerCallHandler} for a client-streaming or bidirectional-streaming method of
+   * the service.
+   *
+   * @param method an adaptor to the actual method on the service implementation.
+   */
+  public static <ReqT, RespT> ServerCallHandler<ReqT, RespT> asStreamingCall(
+      final StreamingMethod<ReqT, RespT> method) {
+    checkNotNull(method, "method");
+    return new ServerCallHandler<ReqT, RespT>() {
+      @Override
+      public ServerCall.Listener<ReqT> startCall(
+          final ServerCall<ReqT, RespT> call, Metadata headers) {
+        final Object lock = new Object();
+        final ResponseSubscriber<RespT> responseSubscriber =
+            new ResponseSubscriber<RespT>(lock, call);
+        final RequestPublisher<ReqT> requests = new RequestPublisher<ReqT>(lock, call);
+        Publisher<RespT> responses = null;
+        try {
+          responses = checkNotNull(method.invoke(requests), "Method returned null publisher");
+        } catch (RuntimeException e) {
+          closeWithError(lock, call, Status.fromThrowable(e));
+        }
+        if (responses != null) {
+          responses.subscribe(responseSubscriber);
+        }
+        return new ServerCall.Listener<ReqT>() {
+          @Override
+          public void onMessage(ReqT message) {
+            requests.onMessage(message);
+          }
+
+          @Override
+          public void onHalfClose() {
+            requests.onClose(null);
+          }
+
+          @Override
+          public void onCancel() {
+            responseSubscriber.cancel();
+            requests.onClose(Status.CANCELLED.withDescription("Call cancelled by the client")
+                .asRuntimeException());
+          }
+
+          @Override
+          public void onComplete() {
+            // The responses have ended the call before the client half-closed
+            requests.onClose(null);
+          }
+
+          @Override
+          public void onReady() {
+            responseSubscriber.onReady();
+          }
+        };
+      }
+    };
+  }
+
+  private static void closeWithError(Object lock, ServerCall<?, ?> call, Status status) {
+    synchronized (lock) {
+      call.close(status, new Metadata());
+    }
+  }
+
+  private static final class RequestPublisher<ReqT> extends InboundPublisher<ReqT> {
+    @GuardedBy("lock")
+    private final ServerCall<ReqT, ?> call;
+
+    RequestPublisher(Object lock, ServerCall<ReqT, ?> call) {
+      super(lock);
+      this.call = call;
+    }
+
+    @Override
+    protected void startCall() {
+      // The call has already started
+    }
+
+    @Override
+    protected void requestFromCall(int numMessages) {
+      call.request(numMessages);
+    }
+
+    @Override
+    protected void cancelCall() {
+      // The method isn't interested in more requests, which are simply not requested.  The
+      // responses decide how the call ends.
+    }
+  }
+
+  private static final class ResponseSubscriber<RespT> extends OutboundSubscriber<RespT> {
+    @GuardedBy("lock")
+    private final ServerCall<?, RespT> call;
+    @GuardedBy("lock")
+    private boolean headersSent;
+
+    ResponseSubscriber(Object lock, ServerCall<?, RespT> call) {
+      super(lock);
+      this.call = call;
+    }
+
+    @Override
+    protected boolean isCallReady() {
+      return call.isReady();
+    }
+
+    @Override
+    protected void send(RespT message) {
+      if (!headersSent) {
+        call.sendHeaders(new Metadata());
+        headersSent = true;
+      }
+      call.sendMessage(message);
+    }
+
+    @Override
+    protected void complete() {
+      call.close(Status.OK, new Metadata());
+    }
+
+    @Override
+    protected void fail(Throwable error) {
+      Metadata trailers = Status.trailersFromThrowable(error);
+      call.close(Status.fromThrowable(error), trailers == null ? new Metadata() : trailers);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Unit tests for {@link InboundPublisher}.
+ */
+@RunWith(JUnit4.class)
+public class InboundPublisherTest {
+  private final List<Integer> callRequests = new ArrayList<Integer>();
+  private int cancelCount;
+  private final InboundPublisher<Integer> publisher = new InboundPublisher<Integer>(new Object()) {
+      @Override
+      protected void startCall() {}
+
+      @Override
+      protected void requestFromCall(int numMessages) {
+        callRequests.add(numMessages);
+      }
+
+      @Override
+      protected void cancelCall() {
+        cancelCount++;
+      }
+    };
+  private final RecordingSubscriber subscriber = new RecordingSubscriber();
+
+  @Test
+  public void demandBeforeStartIsForwardedOnStart() {
+    publisher.subscribe(new RecordingSubscriber() {
+        @Override
+        public void onSubscribe(Subscription subscription) {
+          subscription.request(3);
+          subscription.request(2);
+          assertTrue(callRequests.isEmpty());
+        }
+      });
+    assertEquals(Arrays.asList(5), callRequests);
+  }
+
+  @Test
+  public void demandIsBatched() {
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(10);
+    assertEquals(Arrays.asList(10), callRequests);
+
+    // Replenishing one at a time while most of the batch is outstanding doesn't reach the call
+    for (int i = 0; i < 4; i++) {
+      publisher.onMessage(i);
+      subscriber.subscription.request(1);
+    }
+    assertEquals(Arrays.asList(10), callRequests);
+    // Only half of the batch is outstanding, so the unforwarded demand is sent as the next batch
+    publisher.onMessage(4);
+    assertEquals(Arrays.asList(10, 4), callRequests);
+    subscriber.subscription.request(1);
+    assertEquals(Arrays.asList(10, 4), callRequests);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.values);
+  }
+
+  @Test
+  public void demandIsNotForwardedBeyondWhatWasRequested() {
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    publisher.onMessage(0);
+    assertEquals(Arrays.asList(1), callRequests);
+    subscriber.subscription.request(1);
+    assertEquals(Arrays.asList(1, 1), callRequests);
+  }
+
+  @Test
+  public void unboundedDemand() {
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(Arrays.asList(Integer.MAX_VALUE), callRequests);
+  }
+
+  @Test
+  public void nonPositiveRequestFails() {
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertEquals(1, cancelCount);
+    // No more signals
+    publisher.onClose(null);
+    assertEquals(0, subscriber.completions);
+  }
+
+  @Test
+  public void subscribeAfterClose() {
+    publisher.onClose(null);
+    publisher.subscribe(subscriber);
+    assertEquals(1, subscriber.completions);
+    assertTrue(callRequests.isEmpty());
+  }
+
+  @Test
+  public void subscribeAfterCloseWithError() {
+    RuntimeException error = new RuntimeException("cancelled");
+    publisher.onClose(error);
+    publisher.subscribe(subscriber);
+    assertSame(error, subscriber.error);
+    assertEquals(0, subscriber.completions);
+  }
+
+  @Test
+  public void closeWhileSubscribing() {
+    RecordingSubscriber lateSubscriber = new RecordingSubscriber() {
+        @Override
+        public void onSubscribe(Subscription subscription) {
+          publisher.onClose(null);
+          // Not terminated before onSubscribe returns
+          assertEquals(0, completions);
+        }
+      };
+    publisher.subscribe(lateSubscriber);
+    assertEquals(1, lateSubscriber.completions);
+  }
+
+  @Test
+  public void cancelStopsSignals() {
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(2);
+    subscriber.subscription.cancel();
+    subscriber.subscription.cancel();
+    assertEquals(1, cancelCount);
+    publisher.onMessage(0);
+    publisher.onClose(null);
+    assertTrue(subscriber.values.isEmpty());
+    assertEquals(0, subscriber.completions);
+  }
+
+  @Test
+  public void onlyOneSubscriber() {
+    publisher.subscribe(subscriber);
+    RecordingSubscriber secondSubscriber = new RecordingSubscriber();
+    publisher.subscribe(secondSubscriber);
+    assertTrue(secondSubscriber.error instanceof IllegalStateException);
+    publisher.onClose(null);
+    assertEquals(1, subscriber.completions);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullSubscriber() {
+    publisher.subscribe(null);
+  }
+
+  private static class RecordingSubscriber implements Subscriber<Integer> {
+    Subscription subscription;
+    final List<Integer> values = new ArrayList<Integer>();
+    Throwable error;
+    int completions;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer value) {
+      values.add(value);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completions++;
+    }
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.StringMarshaller;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * End-to-end tests for {@link ReactiveClientCalls} and {@link ReactiveServerCalls} over the
+ * in-process transport, checking the Reactive Streams rules that matter for flow control.
+ */
+@RunWith(JUnit4.class)
+public class ReactiveCallsTest {
+  private static final MethodDescriptor<String, String> UNARY_METHOD =
+      method(MethodType.UNARY, "unary");
+  private static final MethodDescriptor<String, String> SERVER_STREAMING_METHOD =
+      method(MethodType.SERVER_STREAMING, "serverStreaming");
+  private static final MethodDescriptor<String, String> CLIENT_STREAMING_METHOD =
+      method(MethodType.CLIENT_STREAMING, "clientStreaming");
+  private static final MethodDescriptor<String, String> BIDI_STREAMING_METHOD =
+      method(MethodType.BIDI_STREAMING, "bidiStreaming");
+
+  private Server server;
+  private ManagedChannel channel;
+  /** The publisher returned by the last server streaming invocation. */
+  private RangePublisher serverPublisher;
+  /** The status the server streaming method fails with, after its messages, if not null. */
+  private Status serverStatus;
+
+  @Before
+  public void setUp() throws Exception {
+    ServerServiceDefinition service = ServerServiceDefinition.builder(
+        new ServiceDescriptor("reactive", UNARY_METHOD, SERVER_STREAMING_METHOD,
+            CLIENT_STREAMING_METHOD, BIDI_STREAMING_METHOD))
+        .addMethod(UNARY_METHOD, ReactiveServerCalls.asServerStreamingCall(
+            new ReactiveServerCalls.ServerStreamingMethod<String, String>() {
+              @Override
+              public Publisher<String> invoke(String request) {
+                return new RangePublisher(request, 1, null);
+              }
+            }))
+        .addMethod(SERVER_STREAMING_METHOD, ReactiveServerCalls.asServerStreamingCall(
+            new ReactiveServerCalls.ServerStreamingMethod<String, String>() {
+              @Override
+              public Publisher<String> invoke(String request) {
+                serverPublisher = new RangePublisher("", Integer.parseInt(request), serverStatus);
+                return serverPublisher;
+              }
+            }))
+        .addMethod(CLIENT_STREAMING_METHOD, ReactiveServerCalls.asStreamingCall(
+            new ReactiveServerCalls.StreamingMethod<String, String>() {
+              @Override
+              public Publisher<String> invoke(Publisher<String> requests) {
+                return new JoinPublisher(requests);
+              }
+            }))
+        .addMethod(BIDI_STREAMING_METHOD, ReactiveServerCalls.asStreamingCall(
+            new ReactiveServerCalls.StreamingMethod<String, String>() {
+              @Override
+              public Publisher<String> invoke(Publisher<String> requests) {
+                return requests;
+              }
+            }))
+        .build();
+    String name = "reactive-" + System.nanoTime();
+    server = InProcessServerBuilder.forName(name).directExecutor().addService(service).build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void unary() {
+    TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+    ReactiveClientCalls.unaryCall(channel.newCall(UNARY_METHOD, CallOptions.DEFAULT), "hello")
+        .subscribe(subscriber);
+
+    assertEquals(Arrays.asList("hello0"), subscriber.values);
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void serverStreaming_respectsDemandEndToEnd() {
+    TestSubscriber subscriber = new TestSubscriber(5);
+    ReactiveClientCalls.serverStreamingCall(
+        channel.newCall(SERVER_STREAMING_METHOD, CallOptions.DEFAULT), "1000")
+        .subscribe(subscriber);
+
+    assertEquals(5, subscriber.values.size());
+    // The server publisher is asked for no more than what the client transport can take
+    assertTrue("requested " + serverPublisher.requested, serverPublisher.requested <= 6);
+
+    subscriber.subscription.request(10);
+    assertEquals(15, subscriber.values.size());
+    assertTrue("requested " + serverPublisher.requested, serverPublisher.requested <= 16);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(1000, subscriber.values.size());
+    assertEquals("999", subscriber.values.get(999));
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void serverStreaming_cancelPropagatesToServerPublisher() {
+    TestSubscriber subscriber = new TestSubscriber(2);
+    ReactiveClientCalls.serverStreamingCall(
+        channel.newCall(SERVER_STREAMING_METHOD, CallOptions.DEFAULT), "1000")
+        .subscribe(subscriber);
+    assertEquals(2, subscriber.values.size());
+
+    subscriber.subscription.cancel();
+
+    assertTrue(serverPublisher.cancelled);
+    assertEquals(2, subscriber.values.size());
+    assertTrue(!subscriber.completed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void serverStreaming_serverErrorPropagates() {
+    serverStatus = Status.INVALID_ARGUMENT.withDescription("bad");
+    TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+    ReactiveClientCalls.serverStreamingCall(
+        channel.newCall(SERVER_STREAMING_METHOD, CallOptions.DEFAULT), "3")
+        .subscribe(subscriber);
+
+    assertEquals(Arrays.asList("0", "1", "2"), subscriber.values);
+    Status status = ((StatusRuntimeException) subscriber.error).getStatus();
+    assertEquals(Status.Code.INVALID_ARGUMENT, status.getCode());
+    assertEquals("bad", status.getDescription());
+  }
+
+  @Test
+  public void clientStreaming() {
+    RangePublisher requests = new RangePublisher("r", 20, null);
+    TestSubscriber subscriber = new TestSubscriber(1);
+    ReactiveClientCalls.clientStreamingCall(
+        channel.newCall(CLIENT_STREAMING_METHOD, CallOptions.DEFAULT), requests)
+        .subscribe(subscriber);
+
+    assertEquals(1, subscriber.values.size());
+    assertTrue(subscriber.values.get(0).startsWith("r0,r1,"));
+    assertTrue(subscriber.values.get(0).endsWith(",r19"));
+    assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void clientStreaming_requestPublisherFailureCancelsCall() {
+    RangePublisher requests =
+        new RangePublisher("r", 2, Status.DATA_LOSS.withDescription("oops"));
+    TestSubscriber subscriber = new TestSubscriber(1);
+    ReactiveClientCalls.clientStreamingCall(
+        channel.newCall(CLIENT_STREAMING_METHOD, CallOptions.DEFAULT), requests)
+        .subscribe(subscriber);
+
+    assertTrue(subscriber.values.isEmpty());
+    Status status = ((StatusRuntimeException) subscriber.error).getStatus();
+    assertEquals(Status.Code.CANCELLED, status.getCode());
+  }
+
+  @Test
+  public void bidiStreaming_echo() {
+    RangePublisher requests = new RangePublisher("", 100, null);
+    TestSubscriber subscriber = new TestSubscriber(10);
+    ReactiveClientCalls.bidiStreamingCall(
+        channel.newCall(BIDI_STREAMING_METHOD, CallOptions.DEFAULT), requests)
+        .subscribe(subscriber);
+
+    assertEquals(10, subscriber.values.size());
+    // Requests are only pulled as the echoed responses are consumed
+    assertTrue("requested " + requests.requested, requests.requested < 100);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(100, subscriber.values.size());
+    assertEquals("99", subscriber.values.get(99));
+    assertTrue(subscriber.completed);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void subscribe_nullSubscriber() {
+    ReactiveClientCalls.unaryCall(channel.newCall(UNARY_METHOD, CallOptions.DEFAULT), "hello")
+        .subscribe(null);
+  }
+
+  @Test
+  public void subscribe_secondSubscriberRejected() {
+    Publisher<String> publisher = ReactiveClientCalls.serverStreamingCall(
+        channel.newCall(SERVER_STREAMING_METHOD, CallOptions.DEFAULT), "3");
+    TestSubscriber subscriber = new TestSubscriber(0);
+    publisher.subscribe(subscriber);
+    TestSubscriber secondSubscriber = new TestSubscriber(Long.MAX_VALUE);
+    publisher.subscribe(secondSubscriber);
+
+    assertTrue(secondSubscriber.error instanceof IllegalStateException);
+    assertTrue(secondSubscriber.values.isEmpty());
+    subscriber.subscription.request(3);
+    assertEquals(Arrays.asList("0", "1", "2"), subscriber.values);
+  }
+
+  @Test
+  public void request_nonPositiveSignalsErrorAndCancels() {
+    TestSubscriber subscriber = new TestSubscriber(1);
+    ReactiveClientCalls.serverStreamingCall(
+        channel.newCall(SERVER_STREAMING_METHOD, CallOptions.DEFAULT), "1000")
+        .subscribe(subscriber);
+
+    subscriber.subscription.request(0);
+
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertTrue(serverPublisher.cancelled);
+  }
+
+  private static MethodDescriptor<String, String> method(MethodType type, String name) {
+    return MethodDescriptor.<String, String>newBuilder()
+        .setType(type)
+        .setFullMethodName(MethodDescriptor.generateFullMethodName("reactive", name))
+        .setRequestMarshaller(StringMarshaller.INSTANCE)
+        .setResponseMarshaller(StringMarshaller.INSTANCE)
+        .build();
+  }
+
+  /**
+   * Publishes {@code prefix + i} for {@code i} in {@code [0, count)} as demanded, then completes
+   * or fails with {@code status}.
+   */
+  private static final class RangePublisher implements Publisher<String>, Subscription {
+    private final String prefix;
+    private final int count;
+    private final Status status;
+    private Subscriber<? super String> subscriber;
+    private long demand;
+    private int next;
+    private boolean emitting;
+    long requested;
+    boolean cancelled;
+
+    RangePublisher(String prefix, int count, Status status) {
+      this.prefix = prefix;
+      this.count = count;
+      this.status = status;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+      this.subscriber = subscriber;
+      subscriber.onSubscribe(this);
+      if (count == 0) {
+        drain();
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    private void drain() {
+      if (emitting) {
+        return;
+      }
+      emitting = true;
+      while (!cancelled && next < count && demand > 0) {
+        demand--;
+        subscriber.onNext(prefix + next++);
+      }
+      emitting = false;
+      if (!cancelled && next == count) {
+        cancelled = true;
+        if (status == null) {
+          subscriber.onComplete();
+        } else {
+          subscriber.onError(status.asRuntimeException());
+        }
+      }
+    }
+  }
+
+  /**
+   * Consumes all of its upstream and publishes a single comma-separated join of it.
+   */
+  private static final class JoinPublisher implements Publisher<String> {
+    private final Publisher<String> upstream;
+
+    JoinPublisher(Publisher<String> upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super String> subscriber) {
+      final StringBuilder joined = new StringBuilder();
+      upstream.subscribe(new Subscriber<String>() {
+        private boolean demanded;
+        private boolean upstreamDone;
+
+        @Override
+        public void onSubscribe(final Subscription upstreamSubscription) {
+          subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+              demanded = true;
+              maybeEmit();
+            }
+
+            @Override
+            public void cancel() {
+              upstreamSubscription.cancel();
+            }
+          });
+          upstreamSubscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String value) {
+          joined.append(joined.length() == 0 ? "" : ",").append(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          subscriber.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+          upstreamDone = true;
+          maybeEmit();
+        }
+
+        private void maybeEmit() {
+          if (demanded && upstreamDone) {
+            demanded = false;
+            upstreamDone = false;
+            subscriber.onNext(joined.toString());
+            subscriber.onComplete();
+          }
+        }
+      });
+    }
+  }
+
+  private static final class TestSubscriber implements Subscriber<String> {
+    private final long initialRequest;
+    Subscription subscription;
+    final List<String> values = new ArrayList<String>();
+    Throwable error;
+    boolean completed;
+
+    TestSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      if (initialRequest > 0) {
+        subscription.request(initialRequest);
+      }
+    }
+
+    @Override
+    public void onNext(String value) {
+      values.add(value);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
@@ -39,6 +39,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.ClientCall;
+import io.grpc.ExperimentalApi;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
@@ -64,6 +65,18 @@ import javax.annotation.Nullable;
 public final class ClientCalls {
   private static final Logger log = Logger.getLogger(ClientCalls.class.getName());
 
+  /**
+   * The number of responses a blocking server-streaming iterator may buffer ahead of the reader.
+   * The default of {@code 1} requests each message only after the previous one has been consumed.
+   * Larger windows let the server run ahead and replenish the demand in batches, once half of the
+   * window has been consumed. Only honored by {@link #blockingServerStreamingCall(Channel,
+   * MethodDescriptor, CallOptions, Object)}, which is what blocking stubs use; set it with
+   * {@link AbstractStub#withOption}.
+   */
+  @ExperimentalApi
+  public static final CallOptions.Key<Integer> BLOCKING_STREAM_PREFETCH =
+      CallOptions.Key.of("io.grpc.stub.ClientCalls.blockingStreamPrefetch", 1);
+
   // Prevent instantiation
   private ClientCalls() {}
 
@@ -167,10 +180,14 @@ public final class ClientCalls {
   // TODO(louiscryan): Not clear if we want to use this idiom for 'simple' stubs.
   public static <ReqT, RespT> Iterator<RespT> blockingServerStreamingCall(
       Channel channel, MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, ReqT param) {
+    int prefetch = callOptions.getOption(BLOCKING_STREAM_PREFETCH);
+    Preconditions.checkArgument(prefetch > 0, "prefetch must be positive");
     ThreadlessExecutor executor = new ThreadlessExecutor();
     ClientCall<ReqT, RespT> call = channel.newCall(method, callOptions.withExecutor(executor));
-    BlockingResponseStream<RespT> result = new BlockingResponseStream<RespT>(call, executor);
+    BlockingResponseStream<RespT> result =
+        new BlockingResponseStream<RespT>(call, executor, prefetch);
     asyncUnaryRequestCall(call, param, result.listener(), true);
+    result.requestPrefetch();
     return result;
   }
 
@@ -473,22 +490,43 @@ public final class ClientCalls {
    */
   // TODO(ejona86): determine how to allow ClientCall.cancel() in case of application error.
   private static class BlockingResponseStream<T> implements Iterator<T> {
-    // Due to flow control, only needs to hold up to 2 items: 1 for value, 1 for close.
-    private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(2);
+    // Larger windows use a linked buffer, rather than allocating the whole window up front.
+    private static final int MAX_ARRAY_BUFFER_PREFETCH = 32;
+
+    // Due to flow control, only needs to hold up to prefetch + 1 items: the values, 1 for close.
+    private final BlockingQueue<Object> buffer;
     private final ClientCall.Listener<T> listener = new QueuingListener();
     private final ClientCall<?, T> call;
     /** May be null. */
     private final ThreadlessExecutor threadless;
+    private final int prefetch;
     // Only accessed when iterating.
     private Object last;
+    // Messages requested from the call but not yet returned by next(), starting with the one
+    // requested by startCall(). Only accessed when iterating.
+    private int outstanding = 1;
 
     private BlockingResponseStream(ClientCall<?, T> call) {
-      this(call, null);
+      this(call, null, 1);
     }
 
-    private BlockingResponseStream(ClientCall<?, T> call, ThreadlessExecutor threadless) {
+    private BlockingResponseStream(
+        ClientCall<?, T> call, ThreadlessExecutor threadless, int prefetch) {
       this.call = call;
       this.threadless = threadless;
+      this.prefetch = prefetch;
+      this.buffer = prefetch <= MAX_ARRAY_BUFFER_PREFETCH
+          ? new ArrayBlockingQueue<Object>(prefetch + 1) : new LinkedBlockingQueue<Object>();
+    }
+
+    /**
+     * Fills the prefetch window, on top of the message requested when starting the call.
+     */
+    void requestPrefetch() {
+      if (prefetch > outstanding) {
+        call.request(prefetch - outstanding);
+        outstanding = prefetch;
+      }
     }
 
     ClientCall.Listener<T> listener() {
@@ -534,7 +572,11 @@ public final class ClientCalls {
         throw new NoSuchElementException();
       }
       try {
-        call.request(1);
+        // Replenish in batches once the window is half empty, instead of once per message
+        if (--outstanding <= prefetch / 2) {
+          call.request(prefetch - outstanding);
+          outstanding = prefetch;
+        }
         @SuppressWarnings("unchecked")
         T tmp = (T) last;
         return tmp;
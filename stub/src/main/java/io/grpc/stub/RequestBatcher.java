@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.stub;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ExperimentalApi;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Coalesces many small unary requests into calls on a batch method, to amortize the per-RPC
+ * overhead (headers, stream creation, flow control) over many requests.
+ *
+ * <p>Requests passed to {@link #submit} are collected until either {@link Builder#maxBatchSize}
+ * requests are pending or {@link Builder#maxDelay} has passed since the first of them was
+ * submitted. They are then merged by the {@link BatchAdapter} into a single request on the batch
+ * method, and the batch response is split back into one response per request, completing each
+ * caller's future individually. If the batch call fails, all the futures of the batch fail with its
+ * status.
+ *
+ * <p>Cancelling one of the returned futures doesn't cancel its batch.
+ *
+ * @param <ReqT> type of the individual requests
+ * @param <RespT> type of the individual responses
+ * @param <BatchReqT> request type of the batch method
+ * @param <BatchRespT> response type of the batch method
+ */
+@ExperimentalApi
+@ThreadSafe
+public final class RequestBatcher<ReqT, RespT, BatchReqT, BatchRespT> {
+  /**
+   * Converts between individual requests and responses and the messages of the batch method.
+   */
+  public interface BatchAdapter<ReqT, RespT, BatchReqT, BatchRespT> {
+    /**
+     * Merges the requests into one batch request.
+     */
+    BatchReqT merge(List<ReqT> requests);
+
+    /**
+     * Splits the response to the batch of {@code requests} into exactly one response per request,
+     * in the same order.
+     */
+    List<RespT> split(List<ReqT> requests, BatchRespT batchResponse);
+  }
+
+  private final Channel channel;
+  private final MethodDescriptor<BatchReqT, BatchRespT> batchMethod;
+  private final BatchAdapter<ReqT, RespT, BatchReqT, BatchRespT> adapter;
+  private final CallOptions callOptions;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final ScheduledExecutorService scheduler;
+
+  private final Object lock = new Object();
+  @GuardedBy("lock")
+  private List<ReqT> pendingRequests = new ArrayList<ReqT>();
+  @GuardedBy("lock")
+  private List<SettableFuture<RespT>> pendingFutures = new ArrayList<SettableFuture<RespT>>();
+  @GuardedBy("lock")
+  private ScheduledFuture<?> pendingFlush;
+
+  private RequestBatcher(Builder<ReqT, RespT, BatchReqT, BatchRespT> builder) {
+    this.channel = builder.channel;
+    this.batchMethod = builder.batchMethod;
+    this.adapter = builder.adapter;
+    this.callOptions = builder.callOptions;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.maxDelayNanos = builder.maxDelayNanos;
+    this.scheduler = checkNotNull(builder.scheduler, "scheduledExecutorService");
+  }
+
+  /**
+   * Creates a builder for a batcher that sends {@code batchMethod} calls on {@code channel}.
+   */
+  public static <ReqT, RespT, BatchReqT, BatchRespT>
+      Builder<ReqT, RespT, BatchReqT, BatchRespT> newBuilder(
+          Channel channel, MethodDescriptor<BatchReqT, BatchRespT> batchMethod,
+          BatchAdapter<ReqT, RespT, BatchReqT, BatchRespT> adapter) {
+    return new Builder<ReqT, RespT, BatchReqT, BatchRespT>(channel, batchMethod, adapter);
+  }
+
+  /**
+   * Adds a request to the current batch.
+   *
+   * @return a future for the response to this request.
+   */
+  public ListenableFuture<RespT> submit(ReqT request) {
+    checkNotNull(request, "request");
+    SettableFuture<RespT> future = SettableFuture.create();
+    List<ReqT> requests = null;
+    List<SettableFuture<RespT>> futures = null;
+    synchronized (lock) {
+      pendingRequests.add(request);
+      pendingFutures.add(future);
+      if (pendingRequests.size() >= maxBatchSize) {
+        requests = pendingRequests;
+        futures = pendingFutures;
+        resetPending();
+      } else if (pendingFlush == null) {
+        pendingFlush = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+              flush();
+            }
+          }, maxDelayNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+    if (requests != null) {
+      sendBatch(requests, futures);
+    }
+    return future;
+  }
+
+  /**
+   * Sends the pending requests now, without waiting for the batch to fill up or for its delay to
+   * expire.
+   */
+  public void flush() {
+    List<ReqT> requests;
+    List<SettableFuture<RespT>> futures;
+    synchronized (lock) {
+      if (pendingRequests.isEmpty()) {
+        return;
+      }
+      requests = pendingRequests;
+      futures = pendingFutures;
+      resetPending();
+    }
+    sendBatch(requests, futures);
+  }
+
+  @GuardedBy("lock")
+  private void resetPending() {
+    pendingRequests = new ArrayList<ReqT>();
+    pendingFutures = new ArrayList<SettableFuture<RespT>>();
+    if (pendingFlush != null) {
+      pendingFlush.cancel(false);
+      pendingFlush = null;
+    }
+  }
+
+  private void sendBatch(
+      final List<ReqT> requests, final List<SettableFuture<RespT>> futures) {
+    ListenableFuture<BatchRespT> batchFuture;
+    try {
+      batchFuture = ClientCalls.futureUnaryCall(
+          channel.newCall(batchMethod, callOptions), adapter.merge(requests));
+    } catch (Throwable t) {
+      failAll(futures, t);
+      return;
+    }
+    Futures.addCallback(batchFuture, new FutureCallback<BatchRespT>() {
+      @Override
+      public void onSuccess(BatchRespT batchResponse) {
+        List<RespT> responses;
+        try {
+          responses = adapter.split(requests, batchResponse);
+        } catch (Throwable t) {
+          failAll(futures, t);
+          return;
+        }
+        if (responses.size() != futures.size()) {
+          failAll(futures, Status.INTERNAL
+              .withDescription("Batch of " + futures.size() + " requests was split into "
+                  + responses.size() + " responses")
+              .asRuntimeException());
+          return;
+        }
+        for (int i = 0; i < futures.size(); i++) {
+          futures.get(i).set(responses.get(i));
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        failAll(futures, t);
+      }
+    });
+  }
+
+  private static void failAll(List<? extends SettableFuture<?>> futures, Throwable t) {
+    for (SettableFuture<?> future : futures) {
+      future.setException(t);
+    }
+  }
+
+  /**
+   * Builder for {@link RequestBatcher}.
+   */
+  public static final class Builder<ReqT, RespT, BatchReqT, BatchRespT> {
+    private final Channel channel;
+    private final MethodDescriptor<BatchReqT, BatchRespT> batchMethod;
+    private final BatchAdapter<ReqT, RespT, BatchReqT, BatchRespT> adapter;
+    private CallOptions callOptions = CallOptions.DEFAULT;
+    private int maxBatchSize = 100;
+    private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private ScheduledExecutorService scheduler;
+
+    private Builder(Channel channel, MethodDescriptor<BatchReqT, BatchRespT> batchMethod,
+        BatchAdapter<ReqT, RespT, BatchReqT, BatchRespT> adapter) {
+      this.channel = checkNotNull(channel, "channel");
+      this.batchMethod = checkNotNull(batchMethod, "batchMethod");
+      checkArgument(batchMethod.getType() == MethodDescriptor.MethodType.UNARY,
+          "batchMethod must be unary");
+      this.adapter = checkNotNull(adapter, "adapter");
+    }
+
+    /**
+     * Sets the {@link CallOptions} of the batch calls. Defaults to {@link CallOptions#DEFAULT}.
+     */
+    public Builder<ReqT, RespT, BatchReqT, BatchRespT> callOptions(CallOptions callOptions) {
+      this.callOptions = checkNotNull(callOptions, "callOptions");
+      return this;
+    }
+
+    /**
+     * Sets the number of pending requests that triggers sending a batch. Defaults to 100.
+     */
+    public Builder<ReqT, RespT, BatchReqT, BatchRespT> maxBatchSize(int maxBatchSize) {
+      checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets how long a request may wait for its batch to fill up before the batch is sent anyway.
+     * Defaults to 1 millisecond.
+     */
+    public Builder<ReqT, RespT, BatchReqT, BatchRespT> maxDelay(long delay, TimeUnit unit) {
+      checkArgument(delay >= 0, "delay must be non-negative");
+      this.maxDelayNanos = unit.toNanos(delay);
+      return this;
+    }
+
+    /**
+     * Sets the executor used to send batches once their delay expires. Required.
+     */
+    public Builder<ReqT, RespT, BatchReqT, BatchRespT> scheduledExecutorService(
+        ScheduledExecutorService scheduler) {
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      return this;
+    }
+
+    public RequestBatcher<ReqT, RespT, BatchReqT, BatchRespT> build() {
+      return new RequestBatcher<ReqT, RespT, BatchReqT, BatchRespT>(this);
+    }
+  }
+}
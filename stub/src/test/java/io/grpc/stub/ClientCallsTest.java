@@ -33,6 +33,7 @@ package io.grpc.stub;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -41,6 +42,7 @@ import static org.junit.Assert.fail;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.grpc.CallOptions;
+import io.grpc.Channel;
 import io.grpc.ClientCall;
 import io.grpc.ManagedChannel;
 import io.grpc.Metadata;
@@ -553,6 +555,114 @@ public class ClientCallsTest {
     assertEquals(Arrays.asList(0, 1, 1, 2, 2, 2), receivedMessages);
   }
 
+  @Test
+  public void blockingResponseStreamPrefetch() throws Exception {
+    final AtomicReference<ClientCall.Listener<Integer>> listener =
+        new AtomicReference<ClientCall.Listener<Integer>>();
+    final List<Integer> requests = new ArrayList<Integer>();
+    final NoopClientCall<Integer, Integer> call = new NoopClientCall<Integer, Integer>() {
+      @Override
+      public void start(io.grpc.ClientCall.Listener<Integer> responseListener, Metadata headers) {
+        listener.set(responseListener);
+      }
+
+      @Override
+      public void request(int numMessages) {
+        requests.add(numMessages);
+      }
+    };
+    Channel channel = new Channel() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        return (ClientCall<ReqT, RespT>) call;
+      }
+
+      @Override
+      public String authority() {
+        return "authority";
+      }
+    };
+    MethodDescriptor<Integer, Integer> method = MethodDescriptor.<Integer, Integer>newBuilder()
+        .setType(MethodDescriptor.MethodType.SERVER_STREAMING)
+        .setFullMethodName("some/method")
+        .setRequestMarshaller(new IntegerMarshaller())
+        .setResponseMarshaller(new IntegerMarshaller())
+        .build();
+
+    Iterator<Integer> iter = ClientCalls.blockingServerStreamingCall(channel, method,
+        CallOptions.DEFAULT.withOption(ClientCalls.BLOCKING_STREAM_PREFETCH, 4), 1);
+    // The whole window is requested upfront
+    assertEquals(Arrays.asList(1, 3), requests);
+
+    for (int i = 0; i < 4; i++) {
+      listener.get().onMessage(i);
+    }
+    assertEquals(0, (int) iter.next());
+    assertEquals(Arrays.asList(1, 3), requests);
+    // Half of the window has been consumed
+    assertEquals(1, (int) iter.next());
+    assertEquals(Arrays.asList(1, 3, 2), requests);
+
+    listener.get().onMessage(4);
+    listener.get().onClose(Status.OK, new Metadata());
+    assertEquals(2, (int) iter.next());
+    assertEquals(3, (int) iter.next());
+    assertEquals(4, (int) iter.next());
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void blockingResponseStreamMaxPrefetch() throws Exception {
+    final AtomicReference<ClientCall.Listener<Integer>> listener =
+        new AtomicReference<ClientCall.Listener<Integer>>();
+    final List<Integer> requests = new ArrayList<Integer>();
+    final NoopClientCall<Integer, Integer> call = new NoopClientCall<Integer, Integer>() {
+      @Override
+      public void start(io.grpc.ClientCall.Listener<Integer> responseListener, Metadata headers) {
+        listener.set(responseListener);
+      }
+
+      @Override
+      public void request(int numMessages) {
+        requests.add(numMessages);
+      }
+    };
+    Channel channel = new Channel() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        return (ClientCall<ReqT, RespT>) call;
+      }
+
+      @Override
+      public String authority() {
+        return "authority";
+      }
+    };
+    MethodDescriptor<Integer, Integer> method = MethodDescriptor.<Integer, Integer>newBuilder()
+        .setType(MethodDescriptor.MethodType.SERVER_STREAMING)
+        .setFullMethodName("some/method")
+        .setRequestMarshaller(new IntegerMarshaller())
+        .setResponseMarshaller(new IntegerMarshaller())
+        .build();
+
+    // The buffer isn't sized for the window
+    Iterator<Integer> iter = ClientCalls.blockingServerStreamingCall(channel, method,
+        CallOptions.DEFAULT.withOption(ClientCalls.BLOCKING_STREAM_PREFETCH, Integer.MAX_VALUE), 1);
+    assertEquals(Arrays.asList(1, Integer.MAX_VALUE - 1), requests);
+    for (int i = 0; i < 100; i++) {
+      listener.get().onMessage(i);
+    }
+    listener.get().onClose(Status.OK, new Metadata());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, (int) iter.next());
+    }
+    assertFalse(iter.hasNext());
+  }
+
   @Test
   public void blockingResponseStreamFailed() throws Exception {
     final AtomicReference<ClientCall.Listener<String>> listener =
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link RequestBatcher}.
+ */
+@RunWith(JUnit4.class)
+public class RequestBatcherTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** A batch request is a comma-separated list of numbers, and its response their doubles. */
+  private static final MethodDescriptor<String, String> BATCH_METHOD =
+      MethodDescriptor.<String, String>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName("some/batch")
+          .setRequestMarshaller(new StringMarshaller())
+          .setResponseMarshaller(new StringMarshaller())
+          .build();
+
+  private static final RequestBatcher.BatchAdapter<Integer, Integer, String, String> ADAPTER =
+      new RequestBatcher.BatchAdapter<Integer, Integer, String, String>() {
+        @Override
+        public String merge(List<Integer> requests) {
+          return Joiner.on(',').join(requests);
+        }
+
+        @Override
+        public List<Integer> split(List<Integer> requests, String batchResponse) {
+          List<Integer> responses = new ArrayList<Integer>();
+          for (String response : Splitter.on(',').split(batchResponse)) {
+            responses.add(Integer.parseInt(response));
+          }
+          return responses;
+        }
+      };
+
+  private final List<String> batches = new ArrayList<String>();
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  private Status batchStatus;
+  private boolean dropLastResponse;
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws Exception {
+    ServerServiceDefinition service = ServerServiceDefinition.builder(
+        new ServiceDescriptor("some", BATCH_METHOD))
+        .addMethod(BATCH_METHOD, ServerCalls.asyncUnaryCall(
+            new ServerCalls.UnaryMethod<String, String>() {
+              @Override
+              public void invoke(String request, StreamObserver<String> responseObserver) {
+                synchronized (batches) {
+                  batches.add(request);
+                }
+                if (batchStatus != null) {
+                  responseObserver.onError(batchStatus.asRuntimeException());
+                  return;
+                }
+                List<String> responses = new ArrayList<String>();
+                for (String number : Splitter.on(',').split(request)) {
+                  responses.add(String.valueOf(2 * Integer.parseInt(number)));
+                }
+                if (dropLastResponse) {
+                  responses.remove(responses.size() - 1);
+                }
+                responseObserver.onNext(Joiner.on(',').join(responses));
+                responseObserver.onCompleted();
+              }
+            }))
+        .build();
+    String name = "batcher" + System.nanoTime();
+    server = InProcessServerBuilder.forName(name).directExecutor().addService(service).build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void fullBatchIsSentImmediately() throws Exception {
+    RequestBatcher<Integer, Integer, String, String> batcher = newBatcher(3, TimeUnit.HOURS);
+    ListenableFuture<Integer> first = batcher.submit(1);
+    ListenableFuture<Integer> second = batcher.submit(2);
+    assertFalse(first.isDone());
+    ListenableFuture<Integer> third = batcher.submit(3);
+    ListenableFuture<Integer> fourth = batcher.submit(4);
+
+    assertEquals(Arrays.asList("1,2,3"), batches);
+    assertEquals(2, (int) first.get());
+    assertEquals(4, (int) second.get());
+    assertEquals(6, (int) third.get());
+    assertFalse(fourth.isDone());
+  }
+
+  @Test
+  public void partialBatchIsSentAfterDelay() throws Exception {
+    RequestBatcher<Integer, Integer, String, String> batcher =
+        newBatcher(100, TimeUnit.MILLISECONDS);
+    ListenableFuture<Integer> first = batcher.submit(1);
+
+    assertEquals(2, (int) first.get(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("1"), batches);
+  }
+
+  @Test
+  public void flush() throws Exception {
+    RequestBatcher<Integer, Integer, String, String> batcher = newBatcher(100, TimeUnit.HOURS);
+    ListenableFuture<Integer> first = batcher.submit(1);
+    batcher.flush();
+    // Nothing pending
+    batcher.flush();
+
+    assertEquals(2, (int) first.get());
+    assertEquals(Arrays.asList("1"), batches);
+  }
+
+  @Test
+  public void batchFailureFailsAllRequests() throws Exception {
+    batchStatus = Status.UNAVAILABLE.withDescription("down");
+    RequestBatcher<Integer, Integer, String, String> batcher = newBatcher(2, TimeUnit.HOURS);
+    ListenableFuture<Integer> first = batcher.submit(1);
+    ListenableFuture<Integer> second = batcher.submit(2);
+
+    assertFailsWith(Status.Code.UNAVAILABLE, first);
+    assertFailsWith(Status.Code.UNAVAILABLE, second);
+  }
+
+  @Test
+  public void responseCountMismatchFailsAllRequests() throws Exception {
+    dropLastResponse = true;
+    RequestBatcher<Integer, Integer, String, String> batcher = newBatcher(2, TimeUnit.HOURS);
+    ListenableFuture<Integer> first = batcher.submit(1);
+    ListenableFuture<Integer> second = batcher.submit(2);
+
+    assertFailsWith(Status.Code.INTERNAL, first);
+    assertFailsWith(Status.Code.INTERNAL, second);
+  }
+
+  private RequestBatcher<Integer, Integer, String, String> newBatcher(
+      int maxBatchSize, TimeUnit delayUnit) {
+    return RequestBatcher.newBuilder(channel, BATCH_METHOD, ADAPTER)
+        .maxBatchSize(maxBatchSize)
+        .maxDelay(1, delayUnit)
+        .scheduledExecutorService(scheduler)
+        .build();
+  }
+
+  private static void assertFailsWith(Status.Code code, ListenableFuture<?> future)
+      throws InterruptedException {
+    try {
+      future.get();
+      fail("Should fail");
+    } catch (ExecutionException e) {
+      assertEquals(code, Status.fromThrowable(e.getCause()).getCode());
+    }
+  }
+
+  private static class StringMarshaller implements MethodDescriptor.Marshaller<String> {
+    @Override
+    public InputStream stream(String value) {
+      return new ByteArrayInputStream(value.getBytes(UTF_8));
+    }
+
+    @Override
+    public String parse(InputStream stream) {
+      try {
+        return new String(ByteStreams.toByteArray(stream), UTF_8);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017, Google Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ *    * Neither the name of Google Inc. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.grpc.thrift;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
+import io.grpc.KnownLength;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Thrift protocols and buffers of a thread, reused for all the messages it serializes and parses
+ * with the marshallers of a protocol factory. Not thread-safe.
+ */
+final class ThriftCodec {
+  /** Messages larger than this are serialized into a buffer that is not kept afterwards. */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 8192;
+  private static final int INITIAL_BUFFER_SIZE = 512;
+
+  private static final ThreadLocal<ThriftCodec> BINARY_CODECS =
+      threadLocal(new TBinaryProtocol.Factory());
+
+  /**
+   * The codecs of the marshallers created with a given protocol factory, shared by all of them.
+   * Entries go away once no marshaller uses them anymore.
+   */
+  private static final LoadingCache<TProtocolFactory, ThreadLocal<ThriftCodec>> CODECS =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .weakValues()
+          .build(new CacheLoader<TProtocolFactory, ThreadLocal<ThriftCodec>>() {
+            @Override
+            public ThreadLocal<ThriftCodec> load(TProtocolFactory protocolFactory) {
+              return threadLocal(protocolFactory);
+            }
+          });
+
+  /**
+   * Returns the codecs of the threads for the binary protocol.
+   */
+  static ThreadLocal<ThriftCodec> binaryCodecs() {
+    return BINARY_CODECS;
+  }
+
+  /**
+   * Returns the codecs of the threads for {@code protocolFactory}. Factories are compared by
+   * identity, as two instances of a factory class may be configured differently.
+   */
+  static ThreadLocal<ThriftCodec> codecs(TProtocolFactory protocolFactory) {
+    return CODECS.getUnchecked(protocolFactory);
+  }
+
+  private static ThreadLocal<ThriftCodec> threadLocal(final TProtocolFactory protocolFactory) {
+    return new ThreadLocal<ThriftCodec>() {
+      @Override
+      protected ThriftCodec initialValue() {
+        return new ThriftCodec(protocolFactory);
+      }
+    };
+  }
+
+  private final StreamTransport streamTransport = new StreamTransport();
+  private final TProtocol streamProtocol;
+  private final TMemoryInputTransport memoryTransport = new TMemoryInputTransport();
+  private final TProtocol memoryProtocol;
+  private final BufferTransport bufferTransport = new BufferTransport();
+  private final TProtocol bufferProtocol;
+  // The stream whose message is serialized in buffer, if any.
+  @Nullable private Object bufferOwner;
+
+  private ThriftCodec(TProtocolFactory protocolFactory) {
+    streamProtocol = protocolFactory.getProtocol(streamTransport);
+    memoryProtocol = protocolFactory.getProtocol(memoryTransport);
+    bufferProtocol = protocolFactory.getProtocol(bufferTransport);
+  }
+
+  /**
+   * Parses {@code message} from {@code stream}. Streams of known length are read in one go into an
+   * array of the right size, others are parsed as they are read.
+   */
+  void read(TBase<?, ?> message, InputStream stream) throws TException, IOException {
+    if (stream instanceof KnownLength || stream instanceof ByteArrayInputStream) {
+      // The array can't be reused, as protocols return binary fields as views of it.
+      byte[] bytes = new byte[stream.available()];
+      ByteStreams.readFully(stream, bytes);
+      memoryTransport.reset(bytes);
+      try {
+        memoryProtocol.reset();
+        message.read(memoryProtocol);
+      } finally {
+        memoryTransport.clear();
+      }
+    } else {
+      streamTransport.in = stream;
+      try {
+        streamProtocol.reset();
+        message.read(streamProtocol);
+      } finally {
+        streamTransport.in = null;
+      }
+    }
+  }
+
+  /**
+   * Serializes {@code message} straight into {@code target}.
+   *
+   * @return the number of bytes written
+   */
+  int write(TBase<?, ?> message, OutputStream target) throws TException {
+    streamTransport.out = target;
+    streamTransport.written = 0;
+    try {
+      streamProtocol.reset();
+      message.write(streamProtocol);
+      return streamTransport.written;
+    } finally {
+      streamTransport.out = null;
+    }
+  }
+
+  /**
+   * Serializes {@code message} into the buffer of this codec, which is then owned by {@code owner}
+   * until it is taken or serialized into again.
+   *
+   * @return the length of the serialized message
+   */
+  int serializeToBuffer(TBase<?, ?> message, Object owner) throws TException {
+    bufferOwner = null;
+    bufferTransport.length = 0;
+    bufferProtocol.reset();
+    message.write(bufferProtocol);
+    bufferOwner = owner;
+    return bufferTransport.length;
+  }
+
+  boolean bufferOwnedBy(Object owner) {
+    return bufferOwner == owner;
+  }
+
+  /**
+   * Writes the serialized message in the buffer to {@code target}, and releases the buffer.
+   */
+  int writeBuffer(OutputStream target) throws IOException {
+    int length = bufferTransport.length;
+    try {
+      target.write(bufferTransport.buffer, 0, length);
+    } finally {
+      releaseBuffer();
+    }
+    return length;
+  }
+
+  /**
+   * Returns a copy of the serialized message in the buffer, and releases the buffer.
+   */
+  byte[] takeBuffer() {
+    byte[] bytes = Arrays.copyOf(bufferTransport.buffer, bufferTransport.length);
+    releaseBuffer();
+    return bytes;
+  }
+
+  private void releaseBuffer() {
+    bufferOwner = null;
+    if (bufferTransport.buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+      bufferTransport.buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+  }
+
+  /**
+   * A transport writing to a growable array. Unlike a {@link TIOStreamTransport} over a
+   * {@link TByteArrayOutputStream}, it doesn't synchronize on each of the many small writes of a
+   * protocol.
+   */
+  private static final class BufferTransport extends TTransport {
+    byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    int length;
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+      if (length + len > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+      }
+      System.arraycopy(buf, off, buffer, length, len);
+      length += len;
+    }
+  }
+
+  /**
+   * A transport over streams that can be replaced, unlike {@link TIOStreamTransport}'s.
+   */
+  private static final class StreamTransport extends TTransport {
+    @Nullable InputStream in;
+    @Nullable OutputStream out;
+    int written;
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+      int read;
+      try {
+        read = in.read(buf, off, len);
+      } catch (IOException e) {
+        throw new TTransportException(TTransportException.UNKNOWN, e);
+      }
+      if (read < 0) {
+        throw new TTransportException(TTransportException.END_OF_FILE);
+      }
+      return read;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+      try {
+        out.write(buf, off, len);
+      } catch (IOException e) {
+        throw new TTransportException(TTransportException.UNKNOWN, e);
+      }
+      written += len;
+    }
+  }
+}
@@ -42,38 +42,44 @@ import java.io.OutputStream;
 import javax.annotation.Nullable;
 import org.apache.thrift.TBase;
 import org.apache.thrift.TException;
-import org.apache.thrift.TSerializer;
 
 /** InputStream for Thrift. */
-@SuppressWarnings("InputStreamSlowMultibyteRead") // TODO(ejona): would be good to fix
 final class ThriftInputStream extends InputStream implements Drainable, KnownLength {
 
   /**
-   * ThriftInput stream is initialized with a *message* , *serializer*
-   * *partial* is initially null.
+   * ThriftInput stream is initialized with a *message*, serialized with the codec of the thread
+   * using it. *partial* is initially null.
    */
   @Nullable private TBase<?,?> message;
   @Nullable private ByteArrayInputStream partial;
-  private final TSerializer serializer = new TSerializer();
+  private final ThreadLocal<ThriftCodec> codecs;
+  // The codec that serialized message into its buffer to get its length, if any.
+  @Nullable private ThriftCodec serializedBy;
+  private int serializedLength;
 
   /** Initialize message with @param message. */
-  public ThriftInputStream(TBase<?,?> message) {
+  public ThriftInputStream(TBase<?,?> message, ThreadLocal<ThriftCodec> codecs) {
     this.message = message;
+    this.codecs = codecs;
   }
 
   @Override
   public int drainTo(OutputStream target) throws IOException {
-    int written = 0;
+    int written;
     if (message != null) {
-      try {
-        byte[] bytes = serializer.serialize(message);
-        written = bytes.length;
-        target.write(bytes);
-        message = null;
-      } catch (TException e) {
-        throw Status.INTERNAL.withDescription("failed to serialize thrift message")
-            .withCause(e).asRuntimeException();
+      ThriftCodec codec = codecs.get();
+      if (codec == serializedBy && codec.bufferOwnedBy(this)) {
+        written = codec.writeBuffer(target);
+      } else {
+        try {
+          written = codec.write(message, target);
+        } catch (TException e) {
+          throw Status.INTERNAL.withDescription("failed to serialize thrift message")
+              .withCause(e).asRuntimeException();
+        }
       }
+      message = null;
+      serializedBy = null;
     } else if (partial != null) {
       written = (int) ByteStreams.copy(partial, target);
       partial = null;
@@ -86,13 +92,7 @@ final class ThriftInputStream extends InputStream implements Drainable, KnownLen
   @Override
   public int read() throws IOException {
     if (message != null) {
-      try {
-        partial = new ByteArrayInputStream(serializer.serialize(message));
-        message = null;
-      } catch (TException e) {
-        throw Status.INTERNAL.withDescription("failed to serialize thrift message")
-            .withCause(e).asRuntimeException();
-      }
+      partial = new ByteArrayInputStream(toByteArray());
     }
     if (partial != null) {
       return partial.read();
@@ -100,21 +100,49 @@ final class ThriftInputStream extends InputStream implements Drainable, KnownLen
     return -1;
   }
 
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (message != null) {
+      partial = new ByteArrayInputStream(toByteArray());
+    }
+    if (partial != null) {
+      return partial.read(b, off, len);
+    }
+    return -1;
+  }
+
   @Override
   public int available() throws IOException {
     if (message != null) {
-      try {
-        partial = new ByteArrayInputStream(serializer.serialize(message));
-        message = null;
-        return partial.available();
-      } catch (TException e) {
-        throw Status.INTERNAL.withDescription("failed to serialize thrift message")
-            .withCause(e).asRuntimeException();
+      if (serializedBy == null) {
+        // Serialize once into the codec's buffer, which drainTo() can then write out as is.
+        ThriftCodec codec = codecs.get();
+        serializedLength = serialize(codec);
+        serializedBy = codec;
       }
+      return serializedLength;
     } else if (partial != null) {
       return partial.available();
     }
     return 0;
   }
 
+  private byte[] toByteArray() {
+    ThriftCodec codec = codecs.get();
+    if (codec != serializedBy || !codec.bufferOwnedBy(this)) {
+      serialize(codec);
+    }
+    message = null;
+    serializedBy = null;
+    return codec.takeBuffer();
+  }
+
+  private int serialize(ThriftCodec codec) {
+    try {
+      return codec.serializeToBuffer(message, this);
+    } catch (TException e) {
+      throw Status.INTERNAL.withDescription("failed to serialize thrift message")
+          .withCause(e).asRuntimeException();
+    }
+  }
 }
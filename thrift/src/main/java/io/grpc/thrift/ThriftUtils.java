@@ -31,38 +31,55 @@
 
 package io.grpc.thrift;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import io.grpc.ExperimentalApi;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.Status;
-import io.grpc.internal.IoUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.thrift.TBase;
 import org.apache.thrift.TDeserializer;
 import org.apache.thrift.TException;
 import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TProtocolFactory;
 
 @ExperimentalApi("https://github.com/grpc/grpc-java/issues/2170")
 public final class ThriftUtils {
 
-  /** Create a {@code Marshaller} for thrift messages. */
+  /** Create a {@code Marshaller} for thrift messages, using the binary protocol. */
   public static <T extends TBase<T,?>> Marshaller<T> marshaller(final MessageFactory<T> factory) {
+    return marshaller(factory, ThriftCodec.binaryCodecs());
+  }
 
+  /**
+   * Create a {@code Marshaller} for thrift messages using the given protocol, such as {@link
+   * org.apache.thrift.protocol.TCompactProtocol}. Both ends of a call must use the same protocol.
+   * Marshallers created with the same {@code protocolFactory} instance share their per-thread
+   * buffers, so a single instance should be used for all the methods of a service.
+   */
+  public static <T extends TBase<T,?>> Marshaller<T> marshaller(
+      final MessageFactory<T> factory, TProtocolFactory protocolFactory) {
+    return marshaller(
+        factory, ThriftCodec.codecs(checkNotNull(protocolFactory, "protocolFactory")));
+  }
+
+  private static <T extends TBase<T,?>> Marshaller<T> marshaller(
+      final MessageFactory<T> factory, final ThreadLocal<ThriftCodec> codecs) {
+    checkNotNull(factory, "factory");
     return new Marshaller<T>() {
 
       @Override
       public InputStream stream(T value) {
-        return new ThriftInputStream(value);
+        return new ThriftInputStream(value, codecs);
       }
 
       @Override
       public T parse(InputStream stream) {
         try {
-          byte[] bytes = IoUtils.toByteArray(stream);
-          TDeserializer deserializer = new TDeserializer();
           T message = factory.newInstance();
-          deserializer.deserialize(message, bytes);
+          codecs.get().read(message, stream);
           return message;
         } catch (TException e) {
           throw Status.INTERNAL.withDescription("Invalid Stream")
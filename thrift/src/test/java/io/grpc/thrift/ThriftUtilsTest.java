@@ -34,6 +34,7 @@ package io.grpc.thrift;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -43,13 +44,17 @@ import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import io.grpc.internal.IoUtils;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import org.apache.thrift.TException;
 import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -179,4 +184,108 @@ public class ThriftUtilsTest {
     assertArrayEquals(new byte[0], baos.toByteArray());
     assertEquals(0, is.available());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testDrainTo_afterAvailable() throws Exception {
+    Message m = new Message();
+    m.s = "string";
+    byte[] bytes = new TSerializer().serialize(m);
+    InputStream is = marshaller.stream(m);
+    assertEquals(bytes.length, is.available());
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    assertEquals(bytes.length, ((Drainable) is).drainTo(baos));
+    assertArrayEquals(bytes, baos.toByteArray());
+  }
+
+  @Test
+  public void testDrainTo_afterOtherStreamSerialized() throws Exception {
+    Message m = new Message();
+    m.s = "string";
+    Message other = new Message();
+    other.i = 3;
+    byte[] bytes = new TSerializer().serialize(m);
+    InputStream is = marshaller.stream(m);
+    assertEquals(bytes.length, is.available());
+    // Takes over the serialization buffer of the thread
+    InputStream otherIs = marshaller.stream(other);
+    otherIs.available();
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    assertEquals(bytes.length, ((Drainable) is).drainTo(baos));
+    assertArrayEquals(bytes, baos.toByteArray());
+    assertArrayEquals(new TSerializer().serialize(other), IoUtils.toByteArray(otherIs));
+  }
+
+  @Test
+  public void marshallersOfAProtocolFactoryShareCodecs() throws Exception {
+    TProtocolFactory protocolFactory = new TCompactProtocol.Factory();
+    assertSame(ThriftCodec.codecs(protocolFactory), ThriftCodec.codecs(protocolFactory));
+    assertNotSame(ThriftCodec.codecs(protocolFactory),
+        ThriftCodec.codecs(new TCompactProtocol.Factory()));
+
+    // A stream of another marshaller takes over the serialization buffer of the thread
+    Marshaller<Message> otherMarshaller = ThriftUtils.marshaller(new MessageFactory<Message>() {
+      @Override
+      public Message newInstance() {
+        return new Message();
+      }
+    });
+    Message m = new Message();
+    m.s = "string";
+    Message other = new Message();
+    other.i = 3;
+    InputStream is = marshaller.stream(m);
+    is.available();
+    InputStream otherIs = otherMarshaller.stream(other);
+    otherIs.available();
+
+    assertArrayEquals(new TSerializer().serialize(m), IoUtils.toByteArray(is));
+    assertArrayEquals(new TSerializer().serialize(other), IoUtils.toByteArray(otherIs));
+  }
+
+  @Test
+  public void parseUnknownLengthStream() throws Exception {
+    Message m = new Message();
+    m.i = 2;
+    m.s = "string";
+    m.l = Arrays.asList(1, 2, 3);
+    InputStream is = new BufferedInputStream(new ByteArrayInputStream(
+        new TSerializer().serialize(m)));
+    assertEquals(m, marshaller.parse(is));
+  }
+
+  @Test
+  public void parseTruncatedUnknownLengthStream() throws Exception {
+    Message m = new Message();
+    m.s = "string";
+    byte[] bytes = new TSerializer().serialize(m);
+    InputStream is = new BufferedInputStream(
+        new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 2)));
+    try {
+      marshaller.parse(is);
+      fail("Expected exception");
+    } catch (StatusRuntimeException ex) {
+      assertEquals(Status.Code.INTERNAL, ex.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void compactProtocol() throws Exception {
+    Marshaller<Message> compactMarshaller = ThriftUtils.marshaller(
+        new MessageFactory<Message>() {
+          @Override
+          public Message newInstance() {
+            return new Message();
+          }
+        },
+        new TCompactProtocol.Factory());
+    Message m = new Message();
+    m.i = 2;
+    m.b = true;
+    m.s = "string";
+    byte[] bytes = IoUtils.toByteArray(compactMarshaller.stream(m));
+    assertArrayEquals(new TSerializer(new TCompactProtocol.Factory()).serialize(m), bytes);
+    assertEquals(m, compactMarshaller.parse(new ByteArrayInputStream(bytes)));
+    assertEquals(m, compactMarshaller.parse(compactMarshaller.stream(m)));
+  }
+}